@@ -3,6 +3,7 @@ package com.aih.chatpartner.ai;
 import com.aih.chatpartner.service.ChatHistoryService;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
 import dev.langchain4j.community.store.memory.chat.redis.RedisChatMemoryStore;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
@@ -40,6 +41,23 @@ public class AiServiceFactory {
     @Resource
     private ChatHistoryService chatHistoryService;
 
+    /**
+     * 对话记忆保留的消息条数
+     */
+    private static final int MEMORY_WINDOW = 20;
+
+    /**
+     * 服务实例及其对话记忆：同一缓存项，保证服务存活期间总能取到它正在使用的记忆（推测回复命中时同步到这份记忆）
+     */
+    private record Entry(AiService service, MessageWindowChatMemory memory) {
+    }
+
+    /**
+     * 一次性服务及其副本记忆：副本只在本进程内存中，写入不影响 groupId 的正式记忆
+     */
+    public record ScratchService(AiService service, MessageWindowChatMemory memory) {
+    }
+
     /**
      * AI 服务实例缓存
      * 缓存策略：
@@ -47,14 +65,26 @@ public class AiServiceFactory {
      * - 写入后 30 分钟过期
      * - 访问后 10 分钟过期
      */
-    private final Cache<Long, AiService> serviceCache = Caffeine.newBuilder()
-            .maximumSize(1000)
-            .expireAfterWrite(Duration.ofMinutes(30))
-            .expireAfterAccess(Duration.ofMinutes(10))
-            .removalListener((key, value, cause) -> {
-                log.debug("AI 服务实例被移除，appId: {}, 原因: {}", key, cause);
-            })
-            .build();
+    private final Cache<Long, Entry> serviceCache;
+
+    public AiServiceFactory() {
+        this(Ticker.systemTicker());
+    }
+
+    /**
+     * 指定缓存过期所用的时钟（测试用）
+     */
+    public AiServiceFactory(Ticker ticker) {
+        this.serviceCache = Caffeine.newBuilder()
+                .ticker(ticker)
+                .maximumSize(1000)
+                .expireAfterWrite(Duration.ofMinutes(30))
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .removalListener((key, value, cause) -> {
+                    log.debug("AI 服务实例被移除，appId: {}, 原因: {}", key, cause);
+                })
+                .build();
+    }
 
 
     /**
@@ -69,7 +99,18 @@ public class AiServiceFactory {
      * 根据 groupId 获取服务（带缓存）
      */
     public AiService getAiService(Long groupId) {
-        return serviceCache.get(groupId, this::createAiService);
+        return entry(groupId).service();
+    }
+
+    /**
+     * 获取 groupId 对应服务实例使用的对话记忆（与 {@link #getAiService} 同一缓存项，不会为 null）
+     */
+    public MessageWindowChatMemory getChatMemory(Long groupId) {
+        return entry(groupId).memory();
+    }
+
+    private Entry entry(Long groupId) {
+        return serviceCache.get(groupId, this::createEntry);
     }
 
     /**
@@ -78,22 +119,44 @@ public class AiServiceFactory {
      * @return
      */
     public AiService createAiService(Long groupId) {
+        return createEntry(groupId).service();
+    }
+
+    /**
+     * 创建一次性服务（推测回复用）：对话记忆是 groupId 当前记忆的副本，调用期间写入的消息只进入副本
+     */
+    public ScratchService createScratchService(Long groupId) {
+        MessageWindowChatMemory copy = MessageWindowChatMemory.builder()
+                .id(groupId)
+                .maxMessages(MEMORY_WINDOW)
+                .build();
+        getChatMemory(groupId).messages().forEach(copy::add);
+        AiService service = AiServices.builder(AiService.class)
+                .chatModel(chatModel)
+                .streamingChatModel(streamingChatModel)
+                .chatMemory(copy)
+                .build();
+        return new ScratchService(service, copy);
+    }
+
+    private Entry createEntry(Long groupId) {
         log.info("Creating AiService with ChatModel: {}", chatModel.getClass().getSimpleName());
 
         // 根据 groupId 构建独立的对话记忆
         MessageWindowChatMemory chatMemory = MessageWindowChatMemory.builder()
                 .id(groupId)
                 .chatMemoryStore(redisChatMemoryStore)
-                .maxMessages(20)
+                .maxMessages(MEMORY_WINDOW)
                 .build();
 
         // 从数据库加载历史对话到记忆中 - 懒加载
-        chatHistoryService.loadChatHistoryToMemory(groupId, chatMemory, 20);
+        chatHistoryService.loadChatHistoryToMemory(groupId, chatMemory, MEMORY_WINDOW);
 
-        return AiServices.builder(AiService.class)
+        AiService service = AiServices.builder(AiService.class)
                 .chatModel(chatModel)
                 .streamingChatModel(streamingChatModel)
                 .chatMemory(chatMemory)
                 .build();
+        return new Entry(service, chatMemory);
     }
 }
@@ -0,0 +1,138 @@
+package com.aih.chatpartner.ai;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * LLM 流式 token 合并器
+ * 逐 token 下发时帧开销远大于内容本身，这里把 token 攒起来，满 maxChars 个字符或距首个未发 token 超过 windowMs 即发送一次，
+ * 流结束、出错或被打断时立即冲刷。windowMs 为 0 时不合并，逐 token 透传。
+ *
+ * @author AiHyo
+ */
+public final class TokenCoalescer {
+
+    public static final long DEFAULT_WINDOW_MS = 50;
+    public static final int DEFAULT_MAX_CHARS = 32;
+
+    private static final long MAX_WINDOW_MS = 1000;
+    private static final int MAX_CHARS_LIMIT = 4096;
+
+    private final long windowMs;
+    private final int maxChars;
+    private final Scheduler scheduler;
+    private final Consumer<String> emit;
+
+    // 以下字段受 this 锁保护；emit 也在锁内调用，保证输出顺序
+    private final StringBuilder buf = new StringBuilder(64);
+    private Disposable timer;
+    private long generation;
+    private boolean closed;
+
+    /**
+     * @param windowMs 合并窗口（毫秒），客户端协商值会被限制在 0~1000
+     * @param maxChars 单帧最多字符数，客户端协商值会被限制在 1~4096
+     * @param emit     接收合并后的文本
+     */
+    public TokenCoalescer(long windowMs, int maxChars, Scheduler scheduler, Consumer<String> emit) {
+        this.windowMs = Math.max(0, Math.min(MAX_WINDOW_MS, windowMs));
+        this.maxChars = Math.max(1, Math.min(MAX_CHARS_LIMIT, maxChars));
+        this.scheduler = scheduler;
+        this.emit = emit;
+    }
+
+    /**
+     * 在 token 流上加一层合并：完成或出错前先发出剩余内容；下游取消时丢弃未发内容
+     */
+    public static Flux<String> coalesce(Flux<String> tokens, long windowMs, int maxChars) {
+        if (windowMs <= 0) {
+            return tokens;
+        }
+        return Flux.create(sink -> {
+            TokenCoalescer coalescer = new TokenCoalescer(windowMs, maxChars, Schedulers.parallel(), sink::next);
+            Disposable upstream = tokens.subscribe(
+                    coalescer::append,
+                    err -> {
+                        coalescer.close();
+                        sink.error(err);
+                    },
+                    () -> {
+                        coalescer.close();
+                        sink.complete();
+                    });
+            sink.onDispose(() -> {
+                coalescer.discard();
+                upstream.dispose();
+            });
+        });
+    }
+
+    public synchronized void append(String token) {
+        if (closed || token == null || token.isEmpty()) return;
+        if (windowMs == 0) {
+            emit.accept(token);
+            return;
+        }
+        buf.append(token);
+        if (buf.length() >= maxChars) {
+            flushLocked();
+        } else if (timer == null) {
+            long gen = generation;
+            timer = scheduler.schedule(() -> onTimer(gen), windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 立即发出已攒的内容
+     */
+    public synchronized void flush() {
+        flushLocked();
+    }
+
+    /**
+     * 发出剩余内容后停止，之后的 token 被忽略
+     */
+    public synchronized void close() {
+        flushLocked();
+        closed = true;
+    }
+
+    /**
+     * 丢弃剩余内容并停止
+     */
+    public synchronized void discard() {
+        cancelTimer();
+        buf.setLength(0);
+        closed = true;
+    }
+
+    private void onTimer(long gen) {
+        synchronized (this) {
+            if (gen != generation) return;
+            timer = null;
+            flushLocked();
+        }
+    }
+
+    private void flushLocked() {
+        cancelTimer();
+        generation++;
+        if (buf.length() > 0) {
+            String text = buf.toString();
+            buf.setLength(0);
+            emit.accept(text);
+        }
+    }
+
+    private void cancelTimer() {
+        if (timer != null) {
+            timer.dispose();
+            timer = null;
+        }
+    }
+}
@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 七牛云配置类
  *
@@ -80,6 +83,54 @@ public class QiniuConfig {
          * 默认提示词
          */
         private String prompt = "";
+
+        /**
+         * 上行音频帧是否 gzip 压缩；服务端接受未压缩 PCM 时可关闭以节省 CPU
+         */
+        private Boolean compressAudio = true;
+
+        /**
+         * 上行音频合并帧时长（毫秒），客户端小帧在服务端攒满该时长后再发往 ASR
+         */
+        private Integer uplinkFrameMs = 100;
+
+        /**
+         * 不完整帧最长等待时间（毫秒），超时即发送，保证识别延迟有界
+         */
+        private Integer uplinkMaxDelayMs = 150;
+
+        /**
+         * 预连接池配置
+         */
+        private AsrPoolConfig pool = new AsrPoolConfig();
+    }
+
+    @Data
+    public static class AsrPoolConfig {
+        /**
+         * 是否启用预连接；关闭后每次 start 现建连接
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 保持的已握手空闲连接数
+         */
+        private Integer size = 4;
+
+        /**
+         * 预连接最长空闲时间（毫秒），超时关闭换新
+         */
+        private Long maxIdleMs = 20_000L;
+
+        /**
+         * 握手超时（毫秒）
+         */
+        private Integer connectTimeoutMs = 10_000;
+
+        /**
+         * 巡检间隔（毫秒）：回收过期连接并补足
+         */
+        private Long maintainIntervalMs = 5_000L;
     }
     
     @Data
@@ -103,5 +154,134 @@ public class QiniuConfig {
          * 语速比例
          */
         private Double speedRatio = 1.0;
+
+        /**
+         * 流式 TTS 同时合成的句子数（会话可在 start 消息中以 ttsPipeline 覆盖）
+         */
+        private Integer pipelineDepth = 3;
+
+        /**
+         * 流式 TTS WebSocket 连接池配置
+         */
+        private TtsPoolConfig pool = new TtsPoolConfig();
+
+        /**
+         * TTS 音频缓存配置（REST 与流式共用）
+         */
+        private TtsCacheConfig cache = new TtsCacheConfig();
+
+        /**
+         * 角色开场白预合成配置
+         */
+        private GreetingAudioConfig greeting = new GreetingAudioConfig();
+    }
+
+    @Data
+    public static class GreetingAudioConfig {
+        /**
+         * 是否在后台预合成角色开场白音频
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 预合成的音色（常用音色），与语速、编码做笛卡尔积
+         */
+        private List<String> voiceTypes = new ArrayList<>(List.of("qiniu_zh_female_tmjxxy"));
+
+        /**
+         * 预合成的语速
+         */
+        private List<Double> speedRatios = new ArrayList<>(List.of(1.0));
+
+        /**
+         * 预合成的音频编码（REST 与流式默认均为 mp3）
+         */
+        private List<String> encodings = new ArrayList<>(List.of("mp3"));
+    }
+
+    @Data
+    public static class TtsCacheConfig {
+        /**
+         * 是否启用缓存
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 参与缓存的最长文本字数，更长的文本几乎不会重复
+         */
+        private Integer maxTextChars = 60;
+
+        /**
+         * 单条音频最大字节数
+         */
+        private Integer maxEntryBytes = 2 * 1024 * 1024;
+
+        /**
+         * 内存层总字节数上限
+         */
+        private Long memoryMaxBytes = 32L * 1024 * 1024;
+
+        /**
+         * 是否启用磁盘层（内存映射分段文件）
+         */
+        private Boolean diskEnabled = true;
+
+        /**
+         * 磁盘层目录
+         */
+        private String diskDir = "data/tts-cache";
+
+        /**
+         * 单个分段文件字节数
+         */
+        private Integer segmentBytes = 64 * 1024 * 1024;
+
+        /**
+         * 磁盘层总字节数上限，超出时删除最旧的分段
+         */
+        private Long diskMaxBytes = 512L * 1024 * 1024;
+    }
+
+    @Data
+    public static class TtsPoolConfig {
+        /**
+         * 单节点最大连接数（所有音色合计）
+         */
+        private Integer maxTotal = 64;
+
+        /**
+         * 每个音色最多保留的空闲连接数
+         */
+        private Integer maxIdlePerVoice = 4;
+
+        /**
+         * 会话 start 时为该音色预热的连接数
+         */
+        private Integer prewarmPerVoice = 2;
+
+        /**
+         * 空闲连接最大存活时间（毫秒），超时后被回收
+         */
+        private Long idleTimeoutMs = 60_000L;
+
+        /**
+         * 连接最大生命周期（毫秒），到期后不再复用
+         */
+        private Long maxLifetimeMs = 10 * 60_000L;
+
+        /**
+         * 租借连接的最长等待时间（毫秒）
+         */
+        private Long leaseTimeoutMs = 5_000L;
+
+        /**
+         * 握手超时（毫秒）
+         */
+        private Integer connectTimeoutMs = 10_000;
+
+        /**
+         * 空闲回收巡检间隔（毫秒）
+         */
+        private Long evictIntervalMs = 10_000L;
     }
 }
@@ -0,0 +1,230 @@
+package com.aih.chatpartner.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 实时语音链路（/ws/voice-chat）配置类
+ *
+ * @author AiHyo
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "voice-stream")
+public class VoiceStreamConfig {
+
+    /**
+     * 下行发送队列配置
+     */
+    private OutboundConfig outbound = new OutboundConfig();
+
+    /**
+     * ASR 中间结果稳定后提前启动 LLM 的推测配置
+     */
+    private SpeculationConfig speculation = new SpeculationConfig();
+
+    /**
+     * 聊天记录异步落库配置
+     */
+    private PersistenceConfig persistence = new PersistenceConfig();
+
+    /**
+     * ASR 断线重连的音频回放配置
+     */
+    private AsrReplayConfig asrReplay = new AsrReplayConfig();
+
+    /**
+     * TTS 音频下行节奏控制配置
+     */
+    private EgressConfig egress = new EgressConfig();
+
+    /**
+     * 会话生命周期配置：心跳、空闲与半开连接回收、节点上限
+     */
+    private SessionConfig session = new SessionConfig();
+
+    /**
+     * 节点准入配置：握手阶段按会话、LLM 流与上游连接的预算拒绝新会话
+     */
+    private AdmissionConfig admission = new AdmissionConfig();
+
+    /**
+     * 回复进行中到达的用户语句合并配置
+     */
+    private TurnMergeConfig turnMerge = new TurnMergeConfig();
+
+    @Data
+    public static class OutboundConfig {
+        /**
+         * 每个会话最多排队的消息数
+         */
+        private Integer maxQueuedMessages = 512;
+
+        /**
+         * 每个会话最多排队的字节数
+         */
+        private Integer maxQueuedBytes = 4 * 1024 * 1024;
+    }
+
+    @Data
+    public static class SpeculationConfig {
+        /**
+         * 是否默认开启，客户端可在 start.speculative 中单独开关
+         */
+        private Boolean enabled = false;
+
+        /**
+         * asr_partial 保持不变多久（毫秒）后开始推测
+         */
+        private Long stableMs = 350L;
+
+        /**
+         * 参与推测的最少字符数（去掉标点与空白后）
+         */
+        private Integer minChars = 4;
+    }
+
+    @Data
+    public static class PersistenceConfig {
+        /**
+         * 写入通道数，同一 groupId 固定落在一个通道
+         */
+        private Integer lanes = 4;
+
+        /**
+         * 所有通道合计的排队上限，超出时在调用线程同步写入
+         */
+        private Integer queueCapacity = 4096;
+
+        /**
+         * 瞬时数据库错误的最多尝试次数（含首次）
+         */
+        private Integer maxAttempts = 3;
+
+        /**
+         * 重试退避基数（毫秒），第 n 次重试前等待 n 倍
+         */
+        private Long retryBackoffMs = 200L;
+    }
+
+    @Data
+    public static class AsrReplayConfig {
+        /**
+         * 每个会话保留的最近上行音频时长（毫秒），重连时未确认的部分从这里重放
+         */
+        private Long bufferMs = 6_000L;
+    }
+
+    @Data
+    public static class EgressConfig {
+        /**
+         * 是否按实时节奏下发 TTS 音频；关闭时合成多快就发多快
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 下发速度相对实时播放的倍数，略大于 1 以吸收网络抖动
+         */
+        private Double rate = 1.2;
+
+        /**
+         * 默认领先量（毫秒）：客户端已收到但尚未播放的音频上限，会话可在 start.audioLeadMs 中覆盖
+         */
+        private Long leadMs = 400L;
+
+        /**
+         * 会话可设置的最大领先量（毫秒）
+         */
+        private Long maxLeadMs = 3_000L;
+    }
+
+    @Data
+    public static class SessionConfig {
+        /**
+         * 心跳间隔（毫秒）：这段时间内客户端没有任何上行时发送 ping
+         */
+        private Long pingIntervalMs = 15_000L;
+
+        /**
+         * 半开判定（毫秒）：超过该时长未收到任何上行（含 pong）即关闭连接
+         */
+        private Long halfOpenTimeoutMs = 45_000L;
+
+        /**
+         * 空闲判定（毫秒）：连接正常但无用户消息、音频且无进行中的回复，超过该时长关闭；0 表示不回收
+         */
+        private Long idleTimeoutMs = 600_000L;
+
+        /**
+         * 回收时间轮的刻度（毫秒）
+         */
+        private Long reaperTickMs = 500L;
+
+        /**
+         * 回收时间轮的槽数（取 2 的幂）
+         */
+        private Integer wheelSlots = 512;
+
+        /**
+         * 单节点最大会话数，超出时新连接被拒绝
+         */
+        private Integer maxSessions = 2000;
+
+        /**
+         * 单节点会话估算内存上限（字节），超出时新连接被拒绝
+         */
+        private Long maxMemoryBytes = 512L * 1024 * 1024;
+    }
+
+    @Data
+    public static class AdmissionConfig {
+        /**
+         * 是否在握手阶段做准入判断
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 单节点同时进行的 LLM 流式回复上限（含推测回复）
+         */
+        private Integer maxLlmStreams = 300;
+
+        /**
+         * 单节点同时占用的 ASR 连接上限
+         */
+        private Integer maxAsrSockets = 1500;
+
+        /**
+         * 单节点同时占用的 TTS 连接上限；0 表示取 qiniu.tts.pool.max-total
+         */
+        private Integer maxTtsSockets = 0;
+
+        /**
+         * 任一项用量达到预算的该比例即拒绝新会话，为已有会话留出余量
+         */
+        private Double highWatermark = 0.9;
+
+        /**
+         * 拒绝时建议客户端重试的基础间隔（秒）
+         */
+        private Integer retryAfterSeconds = 5;
+
+        /**
+         * 重试间隔上叠加的随机抖动上限（秒），避免被拒绝的客户端同时重连
+         */
+        private Integer retryAfterJitterSeconds = 5;
+    }
+
+    @Data
+    public static class TurnMergeConfig {
+        /**
+         * 是否合并：关闭时回复进行中到达的每条语句各触发一轮回复
+         */
+        private Boolean enabled = true;
+
+        /**
+         * 宽限期（毫秒）：最后一条语句到达后等待该时长再出队，期间到达的语句并入同一轮
+         */
+        private Long graceMs = 800L;
+    }
+}
@@ -18,6 +18,7 @@ public class WebSocketConfig implements WebSocketConfigurer {
     @Override
     public void registerWebSocketHandlers(@NonNull WebSocketHandlerRegistry registry) {
         registry.addHandler(voiceStreamHandler, "/ws/voice-chat")
+                .addInterceptors(voiceStreamHandler.admissionInterceptor())
                 .setAllowedOrigins("*");
     }
 }
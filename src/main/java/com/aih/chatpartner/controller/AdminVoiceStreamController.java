@@ -0,0 +1,92 @@
+package com.aih.chatpartner.controller;
+
+import com.aih.chatpartner.annotation.AuthCheck;
+import com.aih.chatpartner.common.BaseResponse;
+import com.aih.chatpartner.common.ResultUtils;
+import com.aih.chatpartner.constant.UserConstant;
+import com.aih.chatpartner.service.voice.RoleGreetingAudioService;
+import com.aih.chatpartner.voice.cache.TtsAudioCache;
+import com.aih.chatpartner.voice.stream.AsrWsPool;
+import com.aih.chatpartner.voice.stream.ChatHistoryWriteBehind;
+import com.aih.chatpartner.voice.stream.TtsWsPool;
+import com.aih.chatpartner.voice.stream.VoiceMetrics;
+import com.aih.chatpartner.voice.stream.VoiceStreamHandler;
+import jakarta.annotation.Resource;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 管理端：实时语音链路运行指标
+ */
+@RestController
+@RequestMapping("/admin/voiceStream")
+public class AdminVoiceStreamController {
+
+    @Resource
+    private TtsWsPool ttsWsPool;
+
+    @Resource
+    private AsrWsPool asrWsPool;
+
+    @Resource
+    private TtsAudioCache ttsAudioCache;
+
+    @Resource
+    private RoleGreetingAudioService roleGreetingAudioService;
+
+    @Resource
+    private VoiceStreamHandler voiceStreamHandler;
+
+    @Resource
+    private ChatHistoryWriteBehind chatHistoryWriteBehind;
+
+    @Resource
+    private VoiceMetrics voiceMetrics;
+
+    /**
+     * 指标快照
+     */
+    @GetMapping("/stats")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Map<String, Object>> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ttsPool", ttsWsPool.stats());
+        stats.put("asrPool", asrWsPool.stats());
+        stats.put("ttsCache", ttsAudioCache.stats());
+        stats.put("greetingAudio", roleGreetingAudioService.stats());
+        stats.put("asrUplink", voiceStreamHandler.uplinkStats());
+        stats.put("outbound", voiceStreamHandler.outboundStats());
+        stats.put("speculation", voiceStreamHandler.speculationStats());
+        stats.put("turnMerge", voiceStreamHandler.turnMergeStats());
+        stats.put("egress", voiceStreamHandler.egressStats());
+        stats.put("actor", voiceStreamHandler.actorStats());
+        stats.put("sessions", voiceStreamHandler.sessionStats());
+        stats.put("admission", voiceStreamHandler.admissionStats());
+        stats.put("persistence", chatHistoryWriteBehind.stats());
+        return ResultUtils.success(stats);
+    }
+
+    /**
+     * 分阶段延迟直方图（ASR/LLM/TTS 各阶段与首音频、整轮耗时）与打断、重连、错误计数
+     */
+    @GetMapping("/metrics")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Map<String, Object>> metrics() {
+        return ResultUtils.success(voiceMetrics.snapshot());
+    }
+
+    /**
+     * 按估算内存从大到小列出在线会话
+     */
+    @GetMapping("/sessions")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<List<Map<String, Object>>> sessions(@RequestParam(defaultValue = "20") int limit) {
+        return ResultUtils.success(voiceStreamHandler.heaviestSessions(Math.min(limit, 200)));
+    }
+}
@@ -2,6 +2,7 @@ package com.aih.chatpartner.controller;
 
 import com.aih.chatpartner.ai.AiService;
 import com.aih.chatpartner.ai.AiServiceFactory;
+import com.aih.chatpartner.ai.TokenCoalescer;
 import com.aih.chatpartner.common.BaseResponse;
 import com.aih.chatpartner.common.ResultUtils;
 import com.aih.chatpartner.exception.BusinessException;
@@ -106,10 +107,15 @@ public class SimpleChatController {
 
     /**
      * 文本聊天（SSE流式）
+     *
+     * @param windowMs 分片合并窗口（毫秒），0 表示逐 token 推送
+     * @param maxChars 单个事件最多字符数
      */
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamChat(@RequestParam Long groupId,
                                  @RequestParam String message,
+                                 @RequestParam(required = false) Long windowMs,
+                                 @RequestParam(required = false) Integer maxChars,
                                  HttpServletRequest request) {
         if (groupId == null) throw new BusinessException(ErrorCode.PARAMS_ERROR);
         if (message == null || message.trim().isEmpty()) throw new BusinessException(ErrorCode.PARAMS_ERROR, "消息不能为空");
@@ -127,7 +133,10 @@ public class SimpleChatController {
         // 流式生成
         AiService aiService = aiServiceFactory.getAiService(groupId);
         StringBuilder buf = new StringBuilder(1024);
-        Flux<String> flux = aiService.chatStreamInXiYangYangRole(message);
+        // 按时间/长度窗口合并 token，减少 SSE 事件数
+        Flux<String> flux = TokenCoalescer.coalesce(aiService.chatStreamInXiYangYangRole(message),
+                windowMs != null ? windowMs : TokenCoalescer.DEFAULT_WINDOW_MS,
+                maxChars != null ? maxChars : TokenCoalescer.DEFAULT_MAX_CHARS);
 
         flux.subscribe(
                 chunk -> {
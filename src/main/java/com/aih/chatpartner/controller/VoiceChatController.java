@@ -12,7 +12,10 @@ import com.aih.chatpartner.model.entity.User;
 import com.aih.chatpartner.service.ChatGroupService;
 import com.aih.chatpartner.service.UserService;
 import com.aih.chatpartner.service.VoiceChatService;
+import com.aih.chatpartner.service.voice.RoleGreetingAudioService;
 import com.aih.chatpartner.service.voice.TtsService;
+import com.aih.chatpartner.voice.cache.TtsAudioCache;
+import com.aih.chatpartner.voice.stream.VoiceStreamHandler;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
@@ -26,7 +29,9 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 语音聊天控制器
@@ -44,12 +49,18 @@ public class VoiceChatController {
     
     @Resource
     private TtsService ttsService;
+
+    @Resource
+    private RoleGreetingAudioService roleGreetingAudioService;
     
     @Resource
     private UserService userService;
     
     @Resource
     private ChatGroupService chatGroupService;
+
+    @Resource
+    private VoiceStreamHandler voiceStreamHandler;
     
     /**
      * 语音聊天（上传音频文件）
@@ -218,6 +229,45 @@ public class VoiceChatController {
         }
     }
     
+    /**
+     * 角色开场白语音（MP3）
+     * 常用音色已由后台预合成，直接返回；其他音色现场合成
+     */
+    @GetMapping("/greeting")
+    @Operation(summary = "角色开场白语音", description = "获取角色开场白的语音，常用音色为预合成音频")
+    public ResponseEntity<byte[]> greetingVoice(
+            @RequestParam Long roleId,
+            @RequestParam(required = false) String voiceType,
+            @RequestParam(required = false) Double speedRatio,
+            HttpServletRequest httpRequest) {
+        
+        // 验证用户
+        userService.getLoginUser(httpRequest);
+        
+        RoleGreetingAudioService.Greeting greeting = roleGreetingAudioService.find(roleId, voiceType, speedRatio, "mp3");
+        if (greeting == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "角色不存在或未启用");
+        }
+        
+        try {
+            byte[] audioData = greeting.audio() != null
+                    ? TtsAudioCache.toBytes(greeting.audio())
+                    : ttsService.textToSpeech(greeting.text(), voiceType, speedRatio, "mp3");
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(new MediaType("audio", "mpeg"));
+            headers.setContentLength(audioData.length);
+            
+            return new ResponseEntity<>(audioData, headers, HttpStatus.OK);
+            
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("开场白转语音失败", e);
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "开场白转语音失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 文本转语音（Base64）
      */
@@ -265,6 +315,20 @@ public class VoiceChatController {
         return ResultUtils.success(voices);
     }
     
+    /**
+     * 本节点实时语音负载，供负载均衡与扩缩容探测，无需登录；各项明细见管理端 /admin/voiceStream/stats
+     */
+    @GetMapping("/load")
+    @Operation(summary = "实时语音负载", description = "本节点饱和度（0~1，各项预算占用的最大值）及是否接受新会话")
+    public BaseResponse<Map<String, Object>> load() {
+        Map<String, Object> admission = voiceStreamHandler.admissionStats();
+        Map<String, Object> load = new LinkedHashMap<>();
+        load.put("saturation", admission.get("saturation"));
+        load.put("bottleneck", admission.get("bottleneck"));
+        load.put("accepting", admission.get("accepting"));
+        return ResultUtils.success(load);
+    }
+    
     /**
      * 验证分组访问权限
      */
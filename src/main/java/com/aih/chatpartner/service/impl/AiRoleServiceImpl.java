@@ -10,11 +10,14 @@ import com.aih.chatpartner.model.entity.AiRole;
 import com.aih.chatpartner.model.entity.UserAi;
 import com.aih.chatpartner.model.entity.RoleLike;
 import com.aih.chatpartner.service.AiRoleService;
+import com.aih.chatpartner.service.voice.RoleGreetingAudioService;
 import com.aih.chatpartner.common.PageResponse;
 import com.mybatisflex.core.query.QueryWrapper;
 import com.mybatisflex.spring.service.impl.ServiceImpl;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -35,6 +38,22 @@ public class AiRoleServiceImpl extends ServiceImpl<AiRoleMapper, AiRole> impleme
     private UserAiMapper userAiMapper;
     @Resource
     private RoleLikeMapper roleLikeMapper;
+    @Resource
+    private RoleGreetingAudioService roleGreetingAudioService;
+
+    /**
+     * 启动后为所有启用中的角色（含建表脚本初始化的系统角色）预合成开场白音频，已合成的从磁盘缓存加载
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmGreetingAudio() {
+        try {
+            List<AiRole> roles = this.list(QueryWrapper.create().eq("isActive", 1).eq("isDelete", 0));
+            roles.forEach(roleGreetingAudioService::schedule);
+            log.info("Greeting audio warm-up scheduled for {} roles", roles.size());
+        } catch (Exception e) {
+            log.warn("Greeting audio warm-up failed: {}", e.getMessage());
+        }
+    }
 
     @Override
     public List<AiRole> getAvailableSystemRoles() {
@@ -310,6 +329,7 @@ public class AiRoleServiceImpl extends ServiceImpl<AiRoleMapper, AiRole> impleme
             r.setCreatorId(adminUserId);
         }
         boolean ok = this.save(r);
+        if (ok) roleGreetingAudioService.schedule(r);
         return ok ? r.getId() : null;
     }
 
@@ -327,7 +347,9 @@ public class AiRoleServiceImpl extends ServiceImpl<AiRoleMapper, AiRole> impleme
         if (req.getTags() != null) exist.setTags(req.getTags());
         if (req.getIsSystem() != null) exist.setIsSystem(req.getIsSystem());
         if (req.getIsActive() != null) exist.setIsActive(req.getIsActive());
-        return this.updateById(exist);
+        boolean ok = this.updateById(exist);
+        if (ok) roleGreetingAudioService.schedule(exist);
+        return ok;
     }
 
     @Override
@@ -337,7 +359,9 @@ public class AiRoleServiceImpl extends ServiceImpl<AiRoleMapper, AiRole> impleme
         AiRole r = new AiRole();
         r.setId(id);
         r.setIsActive(isActive);
-        return this.updateById(r);
+        boolean ok = this.updateById(r);
+        if (ok) roleGreetingAudioService.schedule(this.getById(id));
+        return ok;
     }
 
     @Override
@@ -347,7 +371,9 @@ public class AiRoleServiceImpl extends ServiceImpl<AiRoleMapper, AiRole> impleme
         AiRole r = new AiRole();
         r.setId(id);
         r.setIsDelete(1);
-        return this.updateById(r);
+        boolean ok = this.updateById(r);
+        if (ok) roleGreetingAudioService.evict(id);
+        return ok;
     }
 
     @Override
@@ -360,6 +386,7 @@ public class AiRoleServiceImpl extends ServiceImpl<AiRoleMapper, AiRole> impleme
             r.setId(id);
             r.setIsDelete(1);
             ok = ok && this.updateById(r);
+            roleGreetingAudioService.evict(id);
         }
         return ok;
     }
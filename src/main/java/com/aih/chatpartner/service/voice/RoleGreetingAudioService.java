@@ -0,0 +1,217 @@
+package com.aih.chatpartner.service.voice;
+
+import com.aih.chatpartner.config.QiniuConfig;
+import com.aih.chatpartner.model.entity.AiRole;
+import com.aih.chatpartner.voice.cache.TtsAudioCache;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 角色开场白音频预合成
+ * - 角色创建、更新（事务提交后）及应用启动时，后台按配置的常用音色 × 语速 × 编码合成开场白
+ * - 合成结果写入 {@link TtsAudioCache}（磁盘层持久化，重启后直接加载，不再调用 TTS），并按 key 常驻内存，
+ *   不受缓存淘汰影响；开场白通常超过缓存的短文本上限，这里绕过 cacheable 判断直接按 key 读写
+ * - REST 与 /ws/voice-chat 打开会话时经 {@link #find} 取音频，命中即下发，不产生 TTS 调用
+ * 合成任务单线程串行执行，同一 key 同时只有一个任务。
+ */
+@Slf4j
+@Service
+public class RoleGreetingAudioService {
+
+    static final String DEFAULT_VOICE_TYPE = "qiniu_zh_female_tmjxxy";
+    static final String DEFAULT_ENCODING = "mp3";
+
+    /**
+     * 查找结果：开场白文本及其预合成音频（尚未合成完成时 audio 为 null）
+     */
+    public record Greeting(String text, ByteBuffer audio) {
+    }
+
+    private final TtsService ttsService;
+    private final TtsAudioCache ttsAudioCache;
+    private final QiniuConfig qiniuConfig;
+    private final QiniuConfig.GreetingAudioConfig cfg;
+
+    // 启用中的角色 → 当前开场白文本
+    private final Map<Long, String> roleGreetings = new ConcurrentHashMap<>();
+    // 缓存 key → 开场白音频（只读视图）
+    private final Map<String, ByteBuffer> audio = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "greeting-tts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 指标
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder synthesized = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public RoleGreetingAudioService(TtsService ttsService, TtsAudioCache ttsAudioCache, QiniuConfig qiniuConfig) {
+        this.ttsService = ttsService;
+        this.ttsAudioCache = ttsAudioCache;
+        this.qiniuConfig = qiniuConfig;
+        this.cfg = qiniuConfig.getTts().getGreeting();
+    }
+
+    /**
+     * 角色变更后刷新其开场白音频；处于事务中时推迟到提交之后，回滚不产生合成
+     */
+    public void schedule(AiRole role) {
+        if (role == null || role.getId() == null) return;
+        Long roleId = role.getId();
+        String greeting = role.getGreeting();
+        boolean active = (role.getIsActive() == null || role.getIsActive() == 1)
+                && (role.getIsDelete() == null || role.getIsDelete() == 0);
+        afterCommit(() -> refresh(roleId, greeting, active));
+    }
+
+    /**
+     * 角色删除：释放其开场白音频，同样在事务提交后生效
+     */
+    public void evict(Long roleId) {
+        if (roleId == null) return;
+        afterCommit(() -> refresh(roleId, null, false));
+    }
+
+    /**
+     * 查找角色开场白及其音频；角色未知（未启用或已删除）返回 null
+     */
+    public Greeting find(Long roleId, String voiceType, Double speedRatio, String encoding) {
+        String text = roleId != null ? roleGreetings.get(roleId) : null;
+        if (text == null) return null;
+        ByteBuffer v = audio.get(key(text, voiceType, speedRatio, encoding));
+        if (v == null) {
+            misses.increment();
+            return new Greeting(text, null);
+        }
+        hits.increment();
+        return new Greeting(text, v.duplicate());
+    }
+
+    /**
+     * 预合成指标快照
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long h = hits.sum();
+        long miss = misses.sum();
+        long bytes = 0;
+        for (ByteBuffer v : audio.values()) bytes += v.remaining();
+        m.put("enabled", Boolean.TRUE.equals(cfg.getEnabled()));
+        m.put("roles", roleGreetings.size());
+        m.put("entries", audio.size());
+        m.put("bytes", bytes);
+        m.put("pending", pending.size());
+        m.put("hits", h);
+        m.put("misses", miss);
+        m.put("hitRatio", h + miss == 0 ? 0.0 : (double) h / (h + miss));
+        m.put("synthesized", synthesized.sum());
+        m.put("loadedFromCache", loaded.sum());
+        m.put("failures", failures.sum());
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void refresh(Long roleId, String greeting, boolean active) {
+        boolean keep = active && greeting != null && !greeting.isBlank();
+        String old = keep ? roleGreetings.put(roleId, greeting) : roleGreetings.remove(roleId);
+        // 旧文本不再被任何角色使用时释放其音频（缓存中的副本按缓存策略淘汰）
+        if (old != null && !(keep && old.equals(greeting)) && !roleGreetings.containsValue(old)) {
+            audio.keySet().removeAll(variantKeys(old).keySet());
+        }
+        if (!keep || !Boolean.TRUE.equals(cfg.getEnabled())) return;
+        variantKeys(greeting).forEach((key, variant) -> submit(key, greeting, variant));
+    }
+
+    private Map<String, Variant> variantKeys(String text) {
+        Map<String, Variant> keys = new LinkedHashMap<>();
+        for (String voiceType : cfg.getVoiceTypes()) {
+            for (Double speedRatio : cfg.getSpeedRatios()) {
+                for (String encoding : cfg.getEncodings()) {
+                    keys.put(key(text, voiceType, speedRatio, encoding), new Variant(voiceType, speedRatio, encoding));
+                }
+            }
+        }
+        return keys;
+    }
+
+    private record Variant(String voiceType, Double speedRatio, String encoding) {
+    }
+
+    private void submit(String key, String text, Variant variant) {
+        if (audio.containsKey(key) || !pending.add(key)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    synthesize(key, text, variant);
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+        }
+    }
+
+    private void synthesize(String key, String text, Variant variant) {
+        // 排队期间角色又改了开场白，放弃旧文本
+        if (!roleGreetings.containsValue(text)) return;
+        ByteBuffer v = ttsAudioCache.get(key);
+        if (v != null) {
+            if (roleGreetings.containsValue(text)) audio.put(key, v);
+            loaded.increment();
+            return;
+        }
+        try {
+            byte[] data = ttsService.textToSpeech(text, variant.voiceType(), variant.speedRatio(), variant.encoding());
+            ttsAudioCache.put(key, data);
+            if (roleGreetings.containsValue(text)) audio.put(key, ByteBuffer.wrap(data).asReadOnlyBuffer());
+            synthesized.increment();
+        } catch (Exception e) {
+            failures.increment();
+            log.warn("Greeting TTS failed: voice={}, err={}", variant.voiceType(), e.getMessage());
+        }
+    }
+
+    // 与 TtsService 相同的默认值，保证 REST / 流式 / 预合成算出同一个 key
+    private String key(String text, String voiceType, Double speedRatio, String encoding) {
+        return TtsAudioCache.key(text,
+                voiceType == null || voiceType.isEmpty() ? DEFAULT_VOICE_TYPE : voiceType,
+                speedRatio != null ? speedRatio : qiniuConfig.getTts().getSpeedRatio(),
+                encoding == null || encoding.isEmpty() ? DEFAULT_ENCODING : encoding);
+    }
+}
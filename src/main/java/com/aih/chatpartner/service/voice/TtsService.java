@@ -6,6 +6,7 @@ import cn.hutool.http.HttpResponse;
 import com.aih.chatpartner.config.QiniuConfig;
 import com.aih.chatpartner.exception.BusinessException;
 import com.aih.chatpartner.exception.ErrorCode;
+import com.aih.chatpartner.voice.cache.TtsAudioCache;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.Resource;
@@ -13,6 +14,7 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -30,6 +32,9 @@ public class TtsService {
     
     @Resource
     private ObjectMapper objectMapper;
+
+    @Resource
+    private TtsAudioCache ttsAudioCache;
     
     /**
      * 获取可用的音色列表
@@ -133,6 +138,16 @@ public class TtsService {
         if (speedRatio < 0.5 || speedRatio > 2.0) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR, "语速比例必须在0.5-2.0之间");
         }
+
+        // 短文本先查缓存（开场白、错误提示等固定文案）
+        String cacheKey = ttsAudioCache.cacheable(text) ? TtsAudioCache.key(text, voiceType, speedRatio, encoding) : null;
+        if (cacheKey != null) {
+            ByteBuffer cached = ttsAudioCache.get(cacheKey);
+            if (cached != null) {
+                log.debug("TTS缓存命中，音频大小: {} bytes", cached.remaining());
+                return TtsAudioCache.toBytes(cached);
+            }
+        }
         
         try {
             // 构建请求URL
@@ -188,7 +203,11 @@ public class TtsService {
                 } else {
                     log.info("TTS转换成功，音频大小: {} bytes", audioData.length);
                 }
-                
+
+                if (cacheKey != null) {
+                    // 缓存持有副本，调用方可随意修改返回的数组
+                    ttsAudioCache.put(cacheKey, audioData.clone());
+                }
                 return audioData;
             }
             
@@ -0,0 +1,214 @@
+package com.aih.chatpartner.voice.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 只追加的内存映射分段存储（TTS 缓存的磁盘层）
+ * - 目录下若干个定长分段文件（00000001.seg ...），创建时预分配并整体映射，写入即对映射区 put
+ * - 记录格式：[int 长度][32 字节 key][音频数据][int MAGIC]，MAGIC 最后写入作为提交标记
+ * - 索引常驻内存（key → 分段、偏移、长度），启动时扫描分段重建，遇到未提交的记录即视为该分段末尾
+ * - 当前分段写满后新开分段；分段数超过上限时整段删除最旧的分段及其索引（FIFO 淘汰）
+ * - 读取返回映射区上的只读切片，不复制；已删除分段的映射在切片被回收前仍然有效
+ * 所有方法由 this 锁串行化，读取到的切片可在锁外使用。
+ */
+@Slf4j
+final class MappedSegmentStore implements AutoCloseable {
+
+    static final int KEY_BYTES = 32;
+    private static final int MAGIC = 0x54545331; // "TTS1"
+    private static final int HEADER_BYTES = 4 + KEY_BYTES;
+    private static final int TRAILER_BYTES = 4;
+
+    private static final class Segment {
+        final long id;
+        final Path path;
+        final MappedByteBuffer buf;
+        int writePos;
+        final List<String> keys = new ArrayList<>();
+        final int capacity;
+
+        Segment(long id, Path path, MappedByteBuffer buf) {
+            this.id = id;
+            this.path = path;
+            this.buf = buf;
+            this.capacity = buf.capacity();
+        }
+    }
+
+    private record Location(Segment segment, int offset, int length) {
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<String, Location> index = new HashMap<>();
+    private long dataBytes = 0;
+    private long evictedSegments = 0;
+    private boolean closed = false;
+
+    MappedSegmentStore(Path dir, int segmentBytes, int maxSegments) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(2, maxSegments);
+        Files.createDirectories(dir);
+        List<Path> files;
+        try (Stream<Path> s = Files.list(dir)) {
+            files = s.filter(p -> p.getFileName().toString().endsWith(".seg")).sorted().toList();
+        }
+        for (Path p : files) {
+            long id;
+            try {
+                id = Long.parseLong(p.getFileName().toString().replace(".seg", ""));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            Segment seg = new Segment(id, p, map(p, Files.size(p)));
+            recover(seg);
+            segments.addLast(seg);
+        }
+        while (segments.size() > this.maxSegments) {
+            dropOldest();
+        }
+        if (!segments.isEmpty()) {
+            log.info("TTS disk cache recovered {} entries in {} segments from {}", index.size(), segments.size(), dir);
+        }
+    }
+
+    /**
+     * 返回 key 对应音频的只读切片，不存在时返回 null
+     */
+    synchronized ByteBuffer get(String key) {
+        Location loc = index.get(key);
+        if (loc == null) return null;
+        return loc.segment.buf.slice(loc.offset, loc.length).asReadOnlyBuffer();
+    }
+
+    synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * 追加一条记录；key 已存在时忽略
+     *
+     * @return 是否写入（超过单个分段容量的数据不写入）
+     */
+    synchronized boolean put(String key, byte[] keyBytes, ByteBuffer data) throws IOException {
+        if (closed || index.containsKey(key)) return false;
+        int len = data.remaining();
+        int record = HEADER_BYTES + len + TRAILER_BYTES;
+        if (record > segmentBytes) return false;
+        Segment seg = segments.peekLast();
+        if (seg == null || seg.capacity - seg.writePos < record) {
+            seg = roll();
+        }
+        int at = seg.writePos;
+        MappedByteBuffer buf = seg.buf;
+        buf.putInt(at, len);
+        buf.put(at + 4, keyBytes, 0, KEY_BYTES);
+        buf.put(at + HEADER_BYTES, data, data.position(), len);
+        buf.putInt(at + HEADER_BYTES + len, MAGIC);
+        seg.writePos = at + record;
+        seg.keys.add(key);
+        index.put(key, new Location(seg, at + HEADER_BYTES, len));
+        dataBytes += len;
+        return true;
+    }
+
+    synchronized int entries() {
+        return index.size();
+    }
+
+    synchronized long dataBytes() {
+        return dataBytes;
+    }
+
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    synchronized long evictedSegments() {
+        return evictedSegments;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Segment s : segments) {
+            s.buf.force();
+        }
+    }
+
+    private Segment roll() throws IOException {
+        long id = segments.isEmpty() ? 1 : segments.peekLast().id + 1;
+        Path p = dir.resolve(String.format("%08d.seg", id));
+        Segment seg = new Segment(id, p, map(p, segmentBytes));
+        segments.addLast(seg);
+        while (segments.size() > maxSegments) {
+            dropOldest();
+        }
+        return seg;
+    }
+
+    private void dropOldest() {
+        Segment old = segments.pollFirst();
+        if (old == null) return;
+        for (String k : old.keys) {
+            Location loc = index.get(k);
+            if (loc != null && loc.segment == old) {
+                index.remove(k);
+                dataBytes -= loc.length;
+            }
+        }
+        evictedSegments++;
+        try {
+            Files.deleteIfExists(old.path);
+        } catch (IOException e) {
+            log.warn("Delete TTS cache segment failed: {}", old.path, e);
+        }
+    }
+
+    // 扫描分段重建索引，确定写入位置
+    private void recover(Segment seg) {
+        ByteBuffer buf = seg.buf;
+        int pos = 0;
+        byte[] key = new byte[KEY_BYTES];
+        while (pos + HEADER_BYTES + TRAILER_BYTES <= seg.capacity) {
+            int len = buf.getInt(pos);
+            if (len < 0 || pos + HEADER_BYTES + len + TRAILER_BYTES > seg.capacity) break;
+            if (buf.getInt(pos + HEADER_BYTES + len) != MAGIC) break;
+            buf.get(pos + 4, key);
+            String k = TtsAudioCache.hex(key);
+            Location prev = index.put(k, new Location(seg, pos + HEADER_BYTES, len));
+            if (prev != null) dataBytes -= prev.length;
+            dataBytes += len;
+            seg.keys.add(k);
+            pos += HEADER_BYTES + len + TRAILER_BYTES;
+        }
+        seg.writePos = pos;
+    }
+
+    private static MappedByteBuffer map(Path p, long size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(p.toFile(), "rw");
+             FileChannel ch = raf.getChannel()) {
+            if (raf.length() < size) raf.setLength(size);
+            // 映射在通道关闭后依然有效
+            return ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
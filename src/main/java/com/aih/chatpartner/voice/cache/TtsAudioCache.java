@@ -0,0 +1,200 @@
+package com.aih.chatpartner.voice.cache;
+
+import com.aih.chatpartner.config.QiniuConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TTS 音频缓存（内容寻址）
+ * key 为 SHA-256(文本, 音色, 语速, 编码)，REST 与流式合成共用：
+ * - 热层：Caffeine，按音频字节数限制总大小
+ * - 温层：只追加的内存映射分段文件（{@link MappedSegmentStore}），写穿，重启后仍可命中
+ * 命中时返回只读 ByteBuffer 视图（温层为映射区切片），不复制音频；只缓存不超过 maxTextChars 的短文本，
+ * 角色开场白、错误提示、常用短回复会被反复命中，长回复几乎不会重复，不占缓存。
+ */
+@Slf4j
+@Component
+public class TtsAudioCache {
+
+    private final QiniuConfig.TtsCacheConfig cfg;
+    private final Cache<String, ByteBuffer> hot;
+    private final MappedSegmentStore disk;
+
+    // 指标
+    private final LongAdder hotHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder hotEvictions = new LongAdder();
+    private final LongAdder oversized = new LongAdder();
+    private final LongAdder diskWriteFailures = new LongAdder();
+
+    public TtsAudioCache(QiniuConfig qiniuConfig) {
+        this(qiniuConfig.getTts().getCache());
+    }
+
+    TtsAudioCache(QiniuConfig.TtsCacheConfig cfg) {
+        this.cfg = cfg;
+        this.hot = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1L, cfg.getMemoryMaxBytes()))
+                .weigher((String k, ByteBuffer v) -> v.remaining())
+                .removalListener((String k, ByteBuffer v, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) hotEvictions.increment();
+                })
+                .build();
+        MappedSegmentStore store = null;
+        if (Boolean.TRUE.equals(cfg.getEnabled()) && Boolean.TRUE.equals(cfg.getDiskEnabled())) {
+            try {
+                int segments = (int) Math.max(2, cfg.getDiskMaxBytes() / cfg.getSegmentBytes());
+                store = new MappedSegmentStore(Path.of(cfg.getDiskDir()), cfg.getSegmentBytes(), segments);
+            } catch (Exception e) {
+                log.warn("TTS disk cache unavailable, memory only: dir={}, err={}", cfg.getDiskDir(), e.getMessage());
+            }
+        }
+        this.disk = store;
+    }
+
+    /**
+     * 该文本是否参与缓存
+     */
+    public boolean cacheable(String text) {
+        return Boolean.TRUE.equals(cfg.getEnabled()) && text != null && !text.isEmpty()
+                && text.length() <= cfg.getMaxTextChars();
+    }
+
+    /**
+     * 缓存键：SHA-256(文本, 音色, 语速, 编码) 的十六进制；语速按两位小数归一（固定用 Locale.ROOT，键不随 JVM 默认区域变化）
+     */
+    public static String key(String text, String voiceType, double speedRatio, String encoding) {
+        String material = text + '\u0000' + voiceType + '\u0000'
+                + String.format(Locale.ROOT, "%.2f", speedRatio) + '\u0000' + encoding;
+        return hex(sha256(material.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 查找缓存音频，先热层后温层；返回只读视图（position 为 0），未命中返回 null
+     */
+    public ByteBuffer get(String key) {
+        if (!Boolean.TRUE.equals(cfg.getEnabled())) return null;
+        ByteBuffer v = hot.getIfPresent(key);
+        if (v != null) {
+            hotHits.increment();
+            return v.duplicate();
+        }
+        if (disk != null) {
+            v = disk.get(key);
+            if (v != null) {
+                diskHits.increment();
+                // 提升到热层的是映射区切片，不占堆内存
+                hot.put(key, v);
+                return v.duplicate();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 写入合成结果（热层 + 温层写穿）；调用方此后不得修改 audio
+     */
+    public void put(String key, byte[] audio) {
+        if (!Boolean.TRUE.equals(cfg.getEnabled()) || audio == null || audio.length == 0) return;
+        if (audio.length > cfg.getMaxEntryBytes()) {
+            oversized.increment();
+            return;
+        }
+        ByteBuffer v = ByteBuffer.wrap(audio).asReadOnlyBuffer();
+        hot.put(key, v);
+        puts.increment();
+        if (disk != null) {
+            try {
+                disk.put(key, unhex(key), v.duplicate());
+            } catch (Exception e) {
+                diskWriteFailures.increment();
+                log.warn("TTS disk cache write failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 复制为字节数组，供只接受 byte[] 的调用方使用
+     */
+    public static byte[] toBytes(ByteBuffer audio) {
+        byte[] out = new byte[audio.remaining()];
+        audio.get(audio.position(), out);
+        return out;
+    }
+
+    /**
+     * 缓存指标快照
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long h = hotHits.sum();
+        long d = diskHits.sum();
+        long miss = misses.sum();
+        long lookups = h + d + miss;
+        m.put("enabled", Boolean.TRUE.equals(cfg.getEnabled()));
+        m.put("lookups", lookups);
+        m.put("hotHits", h);
+        m.put("diskHits", d);
+        m.put("misses", miss);
+        m.put("hitRatio", lookups == 0 ? 0.0 : (double) (h + d) / lookups);
+        m.put("puts", puts.sum());
+        m.put("oversized", oversized.sum());
+        m.put("hotEntries", hot.estimatedSize());
+        m.put("hotBytes", hot.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L));
+        m.put("hotEvictions", hotEvictions.sum());
+        if (disk != null) {
+            m.put("diskEntries", disk.entries());
+            m.put("diskBytes", disk.dataBytes());
+            m.put("diskSegments", disk.segmentCount());
+            m.put("diskEvictedSegments", disk.evictedSegments());
+            m.put("diskWriteFailures", diskWriteFailures.sum());
+        }
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (disk != null) disk.close();
+    }
+
+    static String hex(byte[] b) {
+        StringBuilder sb = new StringBuilder(b.length * 2);
+        for (byte x : b) {
+            sb.append(Character.forDigit((x >> 4) & 0xf, 16)).append(Character.forDigit(x & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] unhex(String s) {
+        byte[] out = new byte[s.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(s, 2 * i, 2 * i + 2, 16);
+        }
+        return out;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
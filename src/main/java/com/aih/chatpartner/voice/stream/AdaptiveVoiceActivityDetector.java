@@ -0,0 +1,134 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 能量 + 过零率 + 自适应噪声基线的 VAD
+ * <p>
+ * 输入按固定时长窗口（默认 20ms）分析，窗口可跨越多次 process 调用，结果与客户端帧长无关：
+ * - 窗口 RMS 高于 max(minRms, 噪声基线 × thresholdRatio) 且过零率不超过 zcrMax 时判为语音窗口
+ * - 连续语音达到 attackMs 进入“说话中”，之后无语音持续 hangoverMs 才退出
+ * - 非语音窗口以指数平滑跟踪噪声基线（下降快、上升慢）；说话中也极缓慢上调，避免被持续噪声卡住
+ * <p>
+ * 直接按绝对下标读取 ByteBuffer（堆内/堆外均可），稳态下不分配对象。
+ */
+public final class AdaptiveVoiceActivityDetector implements VoiceActivityDetector {
+
+    private static final double FLOOR_ALPHA_DOWN = 0.2;
+    private static final double FLOOR_ALPHA_UP = 0.05;
+    private static final double FLOOR_ALPHA_SPEECH = 0.002;
+
+    private final int windowSamples;
+    private final double minRms;
+    private final double thresholdRatio;
+    private final double zcrMax;
+    private final int attackWindows;
+    private final int hangoverWindows;
+
+    // 当前窗口的累积量
+    private long sumSq;
+    private int zeroCrossings;
+    private int samples;
+    private int prevSample;
+    private int pendingLow = -1; // 上一段末尾落单的低字节
+
+    private double noiseRms;
+    private int speechRun;
+    private int hangoverLeft;
+    private boolean speaking;
+
+    public AdaptiveVoiceActivityDetector(VadConfig vadConfig) {
+        // 未设置的字段（含客户端显式传 null）取默认值
+        VadConfig config = vadConfig.withDefaults();
+        int windowMs = Math.max(5, config.getWindowMs());
+        this.windowSamples = Math.max(16, config.getSampleRate() * windowMs / 1000);
+        this.minRms = Math.max(1.0, config.getMinRms());
+        this.thresholdRatio = Math.max(1.0, config.getThresholdRatio());
+        this.zcrMax = config.getZcrMax();
+        this.attackWindows = Math.max(1, (config.getAttackMs() + windowMs - 1) / windowMs);
+        this.hangoverWindows = Math.max(0, config.getHangoverMs() / windowMs);
+        reset();
+    }
+
+    @Override
+    public boolean process(ByteBuffer pcm) {
+        int i = pcm.position();
+        int limit = pcm.limit();
+        if (pendingLow >= 0 && i < limit) {
+            accept((short) (pendingLow | (pcm.get(i) << 8)));
+            pendingLow = -1;
+            i++;
+        }
+        for (; i + 1 < limit; i += 2) {
+            accept((short) ((pcm.get(i) & 0xff) | (pcm.get(i + 1) << 8)));
+        }
+        if (i < limit) {
+            pendingLow = pcm.get(i) & 0xff;
+        }
+        return speaking;
+    }
+
+    @Override
+    public boolean isSpeaking() {
+        return speaking;
+    }
+
+    @Override
+    public void reset() {
+        sumSq = 0;
+        zeroCrossings = 0;
+        samples = 0;
+        prevSample = 0;
+        pendingLow = -1;
+        noiseRms = minRms / thresholdRatio;
+        speechRun = 0;
+        hangoverLeft = 0;
+        speaking = false;
+    }
+
+    /**
+     * 当前噪声基线 RMS
+     */
+    public double noiseFloor() {
+        return noiseRms;
+    }
+
+    private void accept(int s) {
+        sumSq += (long) s * s;
+        if ((s ^ prevSample) < 0) {
+            zeroCrossings++;
+        }
+        prevSample = s;
+        if (++samples == windowSamples) {
+            endWindow();
+        }
+    }
+
+    private void endWindow() {
+        double rms = Math.sqrt((double) sumSq / samples);
+        double zcr = (double) zeroCrossings / samples;
+        sumSq = 0;
+        zeroCrossings = 0;
+        samples = 0;
+
+        double threshold = Math.max(minRms, noiseRms * thresholdRatio);
+        boolean voiced = rms >= threshold && zcr <= zcrMax;
+        if (voiced) {
+            speechRun++;
+            if (speaking || speechRun >= attackWindows) {
+                speaking = true;
+                hangoverLeft = hangoverWindows;
+            }
+            noiseRms += (rms - noiseRms) * FLOOR_ALPHA_SPEECH;
+        } else {
+            speechRun = 0;
+            if (speaking && --hangoverLeft <= 0) {
+                speaking = false;
+            }
+            noiseRms += (rms - noiseRms) * (rms < noiseRms ? FLOOR_ALPHA_DOWN : FLOOR_ALPHA_UP);
+        }
+        if (noiseRms < 1.0) {
+            noiseRms = 1.0;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 上行 PCM 帧合并器（每个会话一个）
+ * 浏览器每帧可能只有 20ms~250ms 音频，这里统一攒成固定时长（如 100ms）再发给 ASR，减少小包与压缩开销：
+ * - 缓冲区为空且来帧不小于目标帧长时直接透传整帧，不复制
+ * - 不足一帧的部分进入缓冲区，最多等待 maxDelayMs，超时即发送不完整帧，保证延迟有界
+ * - stop 时调用 {@link #flush()} 立即冲刷
+ */
+final class AsrFrameCoalescer {
+
+    /**
+     * 节点级统计，由所有会话共享
+     */
+    static final class Stats {
+        final LongAdder frames = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder passthroughFrames = new LongAdder();
+        final LongAdder fullFlushes = new LongAdder();
+        final LongAdder deadlineFlushes = new LongAdder();
+        final LongAdder stopFlushes = new LongAdder();
+
+        Map<String, Object> snapshot() {
+            long f = frames.sum();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("frames", f);
+            m.put("bytes", bytes.sum());
+            m.put("avgFrameBytes", f == 0 ? 0 : bytes.sum() / f);
+            m.put("passthroughFrames", passthroughFrames.sum());
+            m.put("fullFlushes", fullFlushes.sum());
+            m.put("deadlineFlushes", deadlineFlushes.sum());
+            m.put("stopFlushes", stopFlushes.sum());
+            return m;
+        }
+    }
+
+    private final int frameBytes;
+    private final long maxDelayMs;
+    private final Consumer<ByteBuffer> sink;
+    private final ScheduledExecutorService timer;
+    private final Stats stats;
+
+    private final byte[] buf;
+    private final ByteBuffer bufView;
+    private int len = 0;
+    private long generation = 0;      // 每次冲刷 +1，用于识别过期的超时任务
+    private ScheduledFuture<?> deadline;
+    private boolean closed = false;
+
+    /**
+     * @param frameBytes 目标帧字节数（按采样率、声道、16bit 与帧时长计算）
+     * @param sink       接收合并后的帧；调用期间 ByteBuffer 有效，不得保留引用或修改 position
+     */
+    AsrFrameCoalescer(int frameBytes, long maxDelayMs, Consumer<ByteBuffer> sink,
+                      ScheduledExecutorService timer, Stats stats) {
+        this.frameBytes = Math.max(2, frameBytes & ~1);
+        this.maxDelayMs = Math.max(1, maxDelayMs);
+        this.sink = sink;
+        this.timer = timer;
+        this.stats = stats;
+        this.buf = new byte[this.frameBytes];
+        this.bufView = ByteBuffer.wrap(buf);
+    }
+
+    static int frameBytes(int sampleRate, int channels, int frameMs) {
+        return sampleRate * channels * 2 * frameMs / 1000;
+    }
+
+    /**
+     * 追加一段 PCM，消费 in 的全部剩余字节
+     * in 只在本次调用期间被读取（整帧直通时同步交给 sink），返回后不再引用，调用方可立即复用或归还
+     */
+    synchronized void append(ByteBuffer in) {
+        if (closed) return;
+        while (in.hasRemaining()) {
+            if (len == 0 && in.remaining() >= frameBytes) {
+                // 直通：临时收窄 limit，把来帧中的整帧直接交给下游
+                int pos = in.position();
+                int lim = in.limit();
+                in.limit(pos + frameBytes);
+                emit(in);
+                in.limit(lim);
+                in.position(pos + frameBytes);
+                stats.passthroughFrames.increment();
+                continue;
+            }
+            int n = Math.min(frameBytes - len, in.remaining());
+            if (len == 0) {
+                scheduleDeadline();
+            }
+            in.get(buf, len, n);
+            len += n;
+            if (len == frameBytes) {
+                stats.fullFlushes.increment();
+                flushBuffered();
+            }
+        }
+    }
+
+    /**
+     * 立即发送缓冲中的不完整帧（stop 时调用）
+     */
+    synchronized void flush() {
+        if (len > 0) {
+            stats.stopFlushes.increment();
+            flushBuffered();
+        }
+    }
+
+    /**
+     * 丢弃缓冲并停止超时任务
+     */
+    synchronized void close() {
+        closed = true;
+        len = 0;
+        cancelDeadline();
+    }
+
+    /**
+     * 当前缓冲的字节数
+     */
+    synchronized int buffered() {
+        return len;
+    }
+
+    private void onDeadline(long gen) {
+        synchronized (this) {
+            if (gen != generation || len == 0 || closed) return;
+            stats.deadlineFlushes.increment();
+            flushBuffered();
+        }
+    }
+
+    private void flushBuffered() {
+        bufView.clear();
+        bufView.limit(len);
+        emit(bufView);
+        len = 0;
+        generation++;
+        cancelDeadline();
+    }
+
+    private void emit(ByteBuffer frame) {
+        stats.frames.increment();
+        stats.bytes.add(frame.remaining());
+        sink.accept(frame);
+    }
+
+    private void scheduleDeadline() {
+        long gen = generation;
+        deadline = timer.schedule(() -> onDeadline(gen), maxDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelDeadline() {
+        if (deadline != null) {
+            deadline.cancel(false);
+            deadline = null;
+        }
+    }
+}
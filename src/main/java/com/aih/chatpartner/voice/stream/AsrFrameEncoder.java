@@ -0,0 +1,134 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 七牛云 ASR 二进制协议上行帧编码器（每条 ASR 连接一个实例，非线程安全）
+ * 复用 Deflater/CRC32 与输出缓冲区，一次写出 协议头 + 序列号 + payload 长度 + payload，
+ * 稳态下每帧不产生新的数组分配。
+ * <p>
+ * gzip 由原始 deflate 流手工拼装 10 字节头与 CRC32/ISIZE 尾，与 GZIPOutputStream 输出兼容。
+ * 返回的 ByteBuffer 在下一次 encode 前有效：Java-WebSocket 的 send 会在调用线程内把 payload 复制进帧，
+ * 因此 send 返回后即可复用。
+ */
+final class AsrFrameEncoder {
+
+    static final int MSG_FULL_CLIENT_REQUEST = 0x01;
+    static final int MSG_AUDIO_ONLY_REQUEST = 0x02;
+    static final int FLAG_POS_SEQUENCE = 0x01;
+    static final int SERIAL_NONE = 0x00;
+    static final int SERIAL_JSON = 0x01;
+    static final int COMPRESSION_NONE = 0x00;
+    static final int COMPRESSION_GZIP = 0x01;
+
+    private static final int PREFIX_SIZE = 12; // 协议头 4 + 序列号 4 + 长度 4
+    private static final int GZIP_OVERHEAD = 18; // 头 10 + 尾 8
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final boolean compressAudio;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer out = ByteBuffer.allocate(8 * 1024);
+    private boolean released;
+
+    /**
+     * @param compressAudio 音频帧是否 gzip；服务端接受原始 PCM 时可关闭以省去压缩开销
+     */
+    AsrFrameEncoder(boolean compressAudio) {
+        this.compressAudio = compressAudio;
+    }
+
+    /**
+     * 编码音频帧，不改变 pcm 的 position
+     */
+    ByteBuffer encodeAudio(int seq, ByteBuffer pcm) {
+        return encode(MSG_AUDIO_ONLY_REQUEST, SERIAL_JSON,
+                compressAudio ? COMPRESSION_GZIP : COMPRESSION_NONE, seq, pcm);
+    }
+
+    /**
+     * 编码配置帧（JSON，始终 gzip）
+     */
+    ByteBuffer encodeFullRequest(int seq, byte[] json) {
+        return encode(MSG_FULL_CLIENT_REQUEST, SERIAL_JSON, COMPRESSION_GZIP, seq, ByteBuffer.wrap(json));
+    }
+
+    private ByteBuffer encode(int messageType, int serial, int compression, int seq, ByteBuffer payload) {
+        if (released) {
+            throw new IllegalStateException("AsrFrameEncoder already released");
+        }
+        int start = payload.position();
+        int len = payload.remaining();
+        // deflate 最坏情况略大于原文，预留余量，不够时再扩容
+        ByteBuffer b = ensureCapacity(PREFIX_SIZE + GZIP_OVERHEAD + len + (len >>> 4) + 64);
+        b.clear();
+        b.put((byte) ((0x01 << 4) | 0x01)); // protocol version + header size
+        b.put((byte) ((messageType << 4) | FLAG_POS_SEQUENCE));
+        b.put((byte) ((serial << 4) | compression));
+        b.put((byte) 0x00); // reserved
+        b.putInt(seq);
+        int lengthPos = b.position();
+        b.putInt(0);
+        int payloadStart = b.position();
+
+        if (compression == COMPRESSION_GZIP) {
+            b.put(GZIP_HEADER);
+            crc.reset();
+            crc.update(payload);
+            payload.position(start);
+            deflater.reset();
+            deflater.setInput(payload);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (!b.hasRemaining()) {
+                    b = grow(b);
+                }
+                deflater.deflate(b);
+            }
+            if (b.remaining() < 8) {
+                b = grow(b);
+            }
+            putIntLE(b, (int) crc.getValue());
+            putIntLE(b, len);
+        } else {
+            b.put(payload);
+        }
+        payload.position(start);
+
+        b.putInt(lengthPos, b.position() - payloadStart);
+        b.flip();
+        return b;
+    }
+
+    /**
+     * 释放 Deflater 的本地内存；可重复调用，释放后不能再编码
+     */
+    void release() {
+        released = true;
+        deflater.end();
+    }
+
+    private ByteBuffer ensureCapacity(int need) {
+        if (out.capacity() < need) {
+            out = ByteBuffer.allocate(Math.max(need, out.capacity() * 2));
+        }
+        return out;
+    }
+
+    private ByteBuffer grow(ByteBuffer b) {
+        ByteBuffer nb = ByteBuffer.allocate(b.capacity() * 2);
+        b.flip();
+        nb.put(b);
+        out = nb;
+        return nb;
+    }
+
+    private static void putIntLE(ByteBuffer b, int v) {
+        b.put((byte) v);
+        b.put((byte) (v >>> 8));
+        b.put((byte) (v >>> 16));
+        b.put((byte) (v >>> 24));
+    }
+}
@@ -0,0 +1,284 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 七牛云 ASR 下行帧解码器（每条 ASR 连接一个实例，非线程安全）
+ * 直接在收到的 ByteBuffer 上解析协议头，复用 Inflater 与解压缓冲区，
+ * 再用 Jackson 流式 JsonParser 只提取 result 下的 text / utterances[].definite,end_time / additions.log_id 等字段，
+ * 不构建 JsonNode 树，也不生成中间 String。
+ * 与 GZIPInputStream 一样校验 gzip 尾部的 CRC32 与长度，截断或损坏的压缩数据抛出 DataFormatException。
+ */
+final class AsrResponseDecoder {
+
+    static final int MSG_FULL_SERVER_RESPONSE = 0x09;
+    static final int SERIAL_JSON = 0x01;
+    static final int COMPRESSION_GZIP = 0x01;
+
+    private static final int FHCRC = 0x02;
+    private static final int FEXTRA = 0x04;
+    private static final int FNAME = 0x08;
+    private static final int FCOMMENT = 0x10;
+
+    /**
+     * 解析结果，随解码器复用；仅在下一次 decode 前有效
+     */
+    static final class Result {
+        String text;
+        String logId;
+        long maxFinalEnd;
+        boolean hasUtterances;
+        boolean isFinalFlag;
+        boolean typeFinal;
+
+        void reset() {
+            text = null;
+            logId = "";
+            maxFinalEnd = -1L;
+            hasUtterances = false;
+            isFinalFlag = false;
+            typeFinal = false;
+        }
+    }
+
+    private final JsonFactory jsonFactory;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final Result result = new Result();
+    private byte[] plain = new byte[4 * 1024];
+    private int plainLen;
+    // 最近一次解析的 JSON 所在区间，仅供调试日志使用
+    private byte[] lastJson;
+    private int lastJsonOff;
+    private int lastJsonLen;
+
+    AsrResponseDecoder(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * 解码一帧；没有可用文本结果时返回 null。不改变 frame 的 position
+     */
+    Result decode(ByteBuffer frame) throws IOException, DataFormatException {
+        result.reset();
+        int base = frame.position();
+        int limit = frame.limit();
+        if (limit - base < 4) {
+            return null;
+        }
+        int headerSize = frame.get(base) & 0x0f;
+        int messageType = (frame.get(base + 1) >>> 4) & 0x0f;
+        int flags = frame.get(base + 1) & 0x0f;
+        int serialMethod = (frame.get(base + 2) >>> 4) & 0x0f;
+        int compression = frame.get(base + 2) & 0x0f;
+
+        int offset = base + headerSize * 4;
+        // 如果有序列号，跳过4字节
+        if ((flags & 0x01) != 0) {
+            offset += 4;
+        }
+        int payloadEnd;
+        if (messageType == MSG_FULL_SERVER_RESPONSE) {
+            if (offset + 4 > limit) return null;
+            int payloadLength = frame.getInt(offset);
+            offset += 4;
+            if (payloadLength < 0 || offset + payloadLength > limit) return null;
+            payloadEnd = offset + payloadLength;
+        } else {
+            // 其他消息类型，剩余所有数据作为payload
+            payloadEnd = limit;
+        }
+        if (offset >= payloadEnd || serialMethod != SERIAL_JSON) {
+            return null;
+        }
+
+        if (compression == COMPRESSION_GZIP) {
+            inflateGzip(frame, offset, payloadEnd);
+            setJson(plain, 0, plainLen);
+        } else if (frame.hasArray()) {
+            setJson(frame.array(), frame.arrayOffset() + offset, payloadEnd - offset);
+        } else {
+            plainLen = payloadEnd - offset;
+            ensurePlain(plainLen);
+            frame.get(offset, plain, 0, plainLen);
+            setJson(plain, 0, plainLen);
+        }
+        try (JsonParser parser = jsonFactory.createParser(lastJson, lastJsonOff, lastJsonLen)) {
+            parseRoot(parser);
+        }
+        return (result.text != null && !result.text.isEmpty()) ? result : null;
+    }
+
+    /**
+     * 最近一次解码的明文 JSON（仅用于调试日志）
+     */
+    String lastJson() {
+        return lastJson == null ? "" : new String(lastJson, lastJsonOff, lastJsonLen, StandardCharsets.UTF_8);
+    }
+
+    private void setJson(byte[] arr, int off, int len) {
+        lastJson = arr;
+        lastJsonOff = off;
+        lastJsonLen = len;
+    }
+
+    void release() {
+        inflater.end();
+    }
+
+    private void inflateGzip(ByteBuffer frame, int from, int to) throws DataFormatException {
+        int p = skipGzipHeader(frame, from, to);
+        inflater.reset();
+        if (frame.hasArray()) {
+            inflater.setInput(frame.array(), frame.arrayOffset() + p, to - p);
+        } else {
+            ByteBuffer in = frame.duplicate();
+            in.limit(to).position(p);
+            inflater.setInput(in);
+        }
+        plainLen = 0;
+        while (!inflater.finished()) {
+            if (plainLen == plain.length) {
+                ensurePlain(plain.length * 2);
+            }
+            int n = inflater.inflate(plain, plainLen, plain.length - plainLen);
+            plainLen += n;
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Truncated GZIP data");
+            }
+        }
+        int trailer = to - inflater.getRemaining();
+        if (to - trailer < 8) {
+            throw new DataFormatException("Truncated GZIP trailer");
+        }
+        crc.reset();
+        crc.update(plain, 0, plainLen);
+        if (intLe(frame, trailer) != (int) crc.getValue() || intLe(frame, trailer + 4) != plainLen) {
+            throw new DataFormatException("Corrupt GZIP trailer");
+        }
+    }
+
+    private static int intLe(ByteBuffer b, int p) {
+        return (b.get(p) & 0xff) | ((b.get(p + 1) & 0xff) << 8) | ((b.get(p + 2) & 0xff) << 16) | ((b.get(p + 3) & 0xff) << 24);
+    }
+
+    private static int skipGzipHeader(ByteBuffer b, int p, int to) throws DataFormatException {
+        if (to - p < 10 || (b.get(p) & 0xff) != 0x1f || (b.get(p + 1) & 0xff) != 0x8b) {
+            throw new DataFormatException("Not in GZIP format");
+        }
+        int flg = b.get(p + 3) & 0xff;
+        p += 10;
+        if ((flg & FEXTRA) != 0) {
+            int xlen = (b.get(p) & 0xff) | ((b.get(p + 1) & 0xff) << 8);
+            p += 2 + xlen;
+        }
+        if ((flg & FNAME) != 0) {
+            while (p < to && b.get(p++) != 0) { }
+        }
+        if ((flg & FCOMMENT) != 0) {
+            while (p < to && b.get(p++) != 0) { }
+        }
+        if ((flg & FHCRC) != 0) {
+            p += 2;
+        }
+        if (p > to) {
+            throw new DataFormatException("Truncated GZIP header");
+        }
+        return p;
+    }
+
+    private void ensurePlain(int need) {
+        if (plain.length < need) {
+            byte[] n = new byte[Math.max(need, plain.length * 2)];
+            System.arraycopy(plain, 0, n, 0, plainLen);
+            plain = n;
+        }
+    }
+
+    private void parseRoot(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.START_OBJECT) return;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            if ("result".equals(name) && t == JsonToken.START_OBJECT) {
+                parseResult(p);
+            } else {
+                p.skipChildren();
+            }
+        }
+    }
+
+    private void parseResult(JsonParser p) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            switch (name) {
+                case "text" -> result.text = t.isScalarValue() ? p.getValueAsString("") : skip(p, null);
+                case "is_final" -> result.isFinalFlag = t.isScalarValue() && p.getValueAsBoolean(false);
+                case "type" -> result.typeFinal = t.isScalarValue() && "final".equals(p.getValueAsString(""));
+                case "additions" -> {
+                    if (t == JsonToken.START_OBJECT) parseAdditions(p);
+                    else p.skipChildren();
+                }
+                case "utterances" -> {
+                    if (t == JsonToken.START_ARRAY) parseUtterances(p);
+                    else p.skipChildren();
+                }
+                default -> p.skipChildren();
+            }
+        }
+    }
+
+    private void parseAdditions(JsonParser p) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            if ("log_id".equals(name) && t.isScalarValue()) {
+                result.logId = p.getValueAsString("");
+            } else {
+                p.skipChildren();
+            }
+        }
+    }
+
+    private void parseUtterances(JsonParser p) throws IOException {
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY && t != null) {
+            result.hasUtterances = true;
+            if (t != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                continue;
+            }
+            boolean definite = false;
+            long endTime = -1L;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                JsonToken v = p.nextToken();
+                if ("definite".equals(name) && v.isScalarValue()) {
+                    definite = p.getValueAsBoolean(false);
+                } else if ("end_time".equals(name) && v.isScalarValue()) {
+                    endTime = p.getValueAsLong(-1L);
+                } else {
+                    p.skipChildren();
+                }
+            }
+            if (definite && endTime > result.maxFinalEnd) {
+                result.maxFinalEnd = endTime;
+            }
+        }
+    }
+
+    private static String skip(JsonParser p, String dft) throws IOException {
+        p.skipChildren();
+        return dft;
+    }
+}
@@ -0,0 +1,259 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.config.QiniuConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 七牛云 ASR WebSocket 预连接池
+ * - 后台保持 size 条已握手、未发送配置帧的连接；配置帧取决于会话的格式/采样率/模型，领取后才发送
+ * - 会话 start 与断线重连时领取一条，领取后立即在后台补足；池空时现建连接（计为未命中）
+ * - 预连接空闲超过 maxIdleMs 即关闭换新，避免服务端因长时间未收到配置而断开
+ * ASR 连接只服务一个会话，用完关闭，不归还。
+ */
+@Slf4j
+@Component
+public class AsrWsPool {
+
+    private final QiniuConfig qiniuConfig;
+    private final ObjectMapper objectMapper;
+    private final VoiceMetrics metrics;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // 以下两个字段受 lock 保护
+    private final Deque<QiniuAsrWsClient> idle = new ArrayDeque<>();
+    private int dialing = 0;
+    private volatile boolean closed = false;
+
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("asr-pool-", 0).factory());
+    private final ScheduledExecutorService maintainer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "asr-pool-maintainer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 指标
+    private final LongAdder acquires = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder handshakeFailures = new LongAdder();
+    private final LongAdder handshakeNanosTotal = new LongAdder();
+    private final AtomicLong handshakeNanosMax = new AtomicLong();
+    private final LongAdder expired = new LongAdder();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+
+    public AsrWsPool(QiniuConfig qiniuConfig, ObjectMapper objectMapper, VoiceMetrics metrics) {
+        this.qiniuConfig = qiniuConfig;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        long interval = Math.max(1000L, cfg().getMaintainIntervalMs());
+        // 首次巡检立即执行，启动后即开始预连接
+        maintainer.scheduleWithFixedDelay(this::maintain, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private QiniuConfig.AsrPoolConfig cfg() {
+        return qiniuConfig.getAsr().getPool();
+    }
+
+    /**
+     * 领取一条 ASR 连接，调用方随后 connect 发送会话配置；不阻塞
+     */
+    public QiniuAsrWsClient acquire() {
+        acquires.increment();
+        QiniuAsrWsClient c = pollHealthyIdle();
+        if (c != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            c = new QiniuAsrWsClient(qiniuConfig, objectMapper, metrics, QiniuAsrWsClient.LEASED, this::leaseEnded);
+        }
+        peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+        refill();
+        return c;
+    }
+
+    private QiniuAsrWsClient pollHealthyIdle() {
+        List<QiniuAsrWsClient> stale = new ArrayList<>();
+        QiniuAsrWsClient found = null;
+        lock.lock();
+        try {
+            QiniuAsrWsClient c;
+            // LIFO：优先领取最新握手的连接，最旧的留在队尾等待过期
+            while ((c = idle.pollFirst()) != null) {
+                if (c.isHandshaken() && c.lease()) {
+                    found = c;
+                    break;
+                }
+                stale.add(c);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (QiniuAsrWsClient s : stale) {
+            expired.increment();
+            s.close();
+        }
+        return found;
+    }
+
+    private void leaseEnded() {
+        inUse.decrementAndGet();
+    }
+
+    /**
+     * 已领取、尚未结束的 ASR 连接数（含未命中时直连的）
+     */
+    int inUse() {
+        return inUse.get();
+    }
+
+    /**
+     * 补足预连接到 size 条（计入正在握手的连接）
+     */
+    private void refill() {
+        if (closed || !Boolean.TRUE.equals(cfg().getEnabled())) return;
+        String apiKey = qiniuConfig.getApiKey();
+        if (apiKey == null || apiKey.isBlank()) return;
+        int want;
+        lock.lock();
+        try {
+            want = cfg().getSize() - idle.size() - dialing;
+            if (want <= 0) return;
+            dialing += want;
+        } finally {
+            lock.unlock();
+        }
+        for (int i = 0; i < want; i++) {
+            executor.execute(this::dialOne);
+        }
+    }
+
+    private void dialOne() {
+        QiniuAsrWsClient c = new QiniuAsrWsClient(qiniuConfig, objectMapper, metrics, QiniuAsrWsClient.IDLE, this::leaseEnded);
+        long t0 = System.nanoTime();
+        boolean ok = c.openBlocking(cfg().getConnectTimeoutMs());
+        long cost = System.nanoTime() - t0;
+        handshakes.increment();
+        handshakeNanosTotal.add(cost);
+        handshakeNanosMax.accumulateAndGet(cost, Math::max);
+        boolean kept = false;
+        lock.lock();
+        try {
+            dialing--;
+            if (ok && !closed) {
+                idle.addFirst(c);
+                kept = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!ok) {
+            handshakeFailures.increment();
+            log.warn("ASR pool pre-connect failed, handshake={}ms", TimeUnit.NANOSECONDS.toMillis(cost));
+        }
+        if (!kept) c.close();
+    }
+
+    /**
+     * 定期巡检：关闭空闲过久或已断开的预连接，再补足；握手失败时等到下一次巡检才重试
+     */
+    private void maintain() {
+        try {
+            List<QiniuAsrWsClient> stale = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            lock.lock();
+            try {
+                Iterator<QiniuAsrWsClient> it = idle.iterator();
+                while (it.hasNext()) {
+                    QiniuAsrWsClient c = it.next();
+                    if (!c.isHandshaken() || now - c.handshakeDoneAtMs >= cfg().getMaxIdleMs()) {
+                        it.remove();
+                        stale.add(c);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (QiniuAsrWsClient c : stale) {
+                expired.increment();
+                c.close();
+            }
+            refill();
+        } catch (Exception e) {
+            log.warn("ASR pool maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 连接池指标快照；utilization 为会话占用数 / (占用数 + 空闲预连接数)
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        int idleCount;
+        int dialingCount;
+        lock.lock();
+        try {
+            idleCount = idle.size();
+            dialingCount = dialing;
+        } finally {
+            lock.unlock();
+        }
+        int used = inUse.get();
+        long acq = acquires.sum();
+        long hs = handshakes.sum();
+        m.put("enabled", Boolean.TRUE.equals(cfg().getEnabled()));
+        m.put("size", cfg().getSize());
+        m.put("idle", idleCount);
+        m.put("dialing", dialingCount);
+        m.put("inUse", used);
+        m.put("peakInUse", peakInUse.get());
+        m.put("utilization", used + idleCount == 0 ? 0.0 : (double) used / (used + idleCount));
+        m.put("acquires", acq);
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("missRate", acq == 0 ? 0.0 : (double) misses.sum() / acq);
+        m.put("handshakes", hs);
+        m.put("handshakeFailures", handshakeFailures.sum());
+        m.put("handshakeAvgMs", hs == 0 ? 0.0 : handshakeNanosTotal.sum() / 1e6 / hs);
+        m.put("handshakeMaxMs", handshakeNanosMax.get() / 1e6);
+        m.put("expired", expired.sum());
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        maintainer.shutdownNow();
+        executor.shutdownNow();
+        List<QiniuAsrWsClient> all;
+        lock.lock();
+        try {
+            all = new ArrayList<>(idle);
+            idle.clear();
+        } finally {
+            lock.unlock();
+        }
+        all.forEach(QiniuAsrWsClient::close);
+    }
+}
@@ -0,0 +1,138 @@
+package com.aih.chatpartner.voice.stream;
+
+/**
+ * 按编码元数据估算一句 TTS 音频分片的播放时长（每句一个实例，分片按顺序喂入）
+ * - mp3：逐帧解析帧头（版本、采样率、码率、填充位），按每帧采样数累计，VBR 同样适用；
+ *   帧头跨分片时暂存，失步时逐字节重新同步，句首的 ID3v2 标签整体跳过
+ * - wav：从 RIFF 头取每秒字节数，其余按 PCM 计
+ * - pcm：16bit 单声道，采样率取配置
+ * - 其他编码（如 ogg_opus）返回 0，即不参与节奏控制
+ * 非线程安全。
+ */
+final class AudioDuration {
+
+    private static final int[] MPEG1_L3_KBPS = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 0};
+    private static final int[] MPEG2_L3_KBPS = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, 0};
+    private static final int[][] SAMPLE_RATES = {
+            {11025, 12000, 8000, 0},  // MPEG 2.5
+            {0, 0, 0, 0},             // 保留
+            {22050, 24000, 16000, 0}, // MPEG 2
+            {44100, 48000, 32000, 0}  // MPEG 1
+    };
+    private static final int WAV_HEADER_BYTES = 44;
+
+    private final int codec;
+    private long byteRate;
+
+    // mp3 帧解析状态
+    private final byte[] header = new byte[4];
+    private int headerLen;
+    private long skip;          // 当前帧剩余未跳过的字节数
+    private boolean first = true;
+
+    // pcm / wav：按累计字节换算，避免逐片取整的累积误差
+    private long pcmBytes;
+    private long pcmMicros;
+
+    AudioDuration(int codec, int pcmSampleRate) {
+        this.codec = codec;
+        this.byteRate = 2L * Math.max(1, pcmSampleRate);
+    }
+
+    /**
+     * 下一个分片的时长（微秒）
+     */
+    long micros(byte[] data, int off, int len) {
+        boolean head = first;
+        first = false;
+        return switch (codec) {
+            case TtsAudioFrame.CODEC_MP3 -> mp3(data, off, len, head);
+            case TtsAudioFrame.CODEC_WAV -> wav(data, off, len, head);
+            case TtsAudioFrame.CODEC_PCM -> pcm(len);
+            default -> 0;
+        };
+    }
+
+    private long wav(byte[] b, int off, int len, boolean head) {
+        if (head && len >= WAV_HEADER_BYTES && b[off] == 'R' && b[off + 1] == 'I' && b[off + 2] == 'F' && b[off + 3] == 'F') {
+            long rate = le32(b, off + 28);
+            if (rate > 0) byteRate = rate;
+            return pcm(len - WAV_HEADER_BYTES);
+        }
+        return pcm(len);
+    }
+
+    private long pcm(int len) {
+        pcmBytes += len;
+        long total = pcmBytes * 1_000_000L / byteRate;
+        long d = total - pcmMicros;
+        pcmMicros = total;
+        return d;
+    }
+
+    private long mp3(byte[] b, int off, int len, boolean head) {
+        int i = off;
+        int end = off + len;
+        if (head && len >= 10 && b[off] == 'I' && b[off + 1] == 'D' && b[off + 2] == '3') {
+            // ID3v2：10 字节头 + syncsafe 长度
+            skip = 10L + ((b[off + 6] & 0x7f) << 21 | (b[off + 7] & 0x7f) << 14 | (b[off + 8] & 0x7f) << 7 | (b[off + 9] & 0x7f));
+        }
+        long micros = 0;
+        while (i < end) {
+            if (skip > 0) {
+                int n = (int) Math.min(skip, end - i);
+                skip -= n;
+                i += n;
+                continue;
+            }
+            int need = 4 - headerLen;
+            if (end - i < need) {
+                System.arraycopy(b, i, header, headerLen, end - i);
+                headerLen += end - i;
+                break;
+            }
+            System.arraycopy(b, i, header, headerLen, need);
+            int frameBytes = frameBytes(header);
+            if (frameBytes > 0) {
+                micros += frameMicros(header);
+                skip = frameBytes - 4;
+                i += need;
+                headerLen = 0;
+            } else if (headerLen > 0) {
+                // 失步：丢弃暂存的首字节重试
+                System.arraycopy(header, 1, header, 0, --headerLen);
+            } else {
+                i++;
+            }
+        }
+        return micros;
+    }
+
+    /**
+     * Layer III 帧长（含帧头），不是合法帧头时返回 0
+     */
+    static int frameBytes(byte[] h) {
+        if ((h[0] & 0xff) != 0xff || (h[1] & 0xe0) != 0xe0) return 0;
+        int version = (h[1] >> 3) & 3;
+        int layer = (h[1] >> 1) & 3;
+        int bitrateIdx = (h[2] >> 4) & 0xf;
+        int rateIdx = (h[2] >> 2) & 3;
+        if (version == 1 || layer != 1) return 0;
+        int kbps = (version == 3 ? MPEG1_L3_KBPS : MPEG2_L3_KBPS)[bitrateIdx];
+        int sampleRate = SAMPLE_RATES[version][rateIdx];
+        if (kbps == 0 || sampleRate == 0) return 0;
+        int padding = (h[2] >> 1) & 1;
+        int coef = version == 3 ? 144 : 72;
+        return coef * kbps * 1000 / sampleRate + padding;
+    }
+
+    private static long frameMicros(byte[] h) {
+        int version = (h[1] >> 3) & 3;
+        int samples = version == 3 ? 1152 : 576;
+        return samples * 1_000_000L / SAMPLE_RATES[version][(h[2] >> 2) & 3];
+    }
+
+    private static long le32(byte[] b, int off) {
+        return (b[off] & 0xffL) | (b[off + 1] & 0xffL) << 8 | (b[off + 2] & 0xffL) << 16 | (b[off + 3] & 0xffL) << 24;
+    }
+}
@@ -0,0 +1,142 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话级 TTS 下行节奏控制
+ * 七牛合成速度远快于实时，直接转发会让数秒音频堆在客户端和套接字缓冲区里，打断时已发出的部分无法收回。
+ * 这里按音频时长以 rate 倍实时速度放行：客户端已收到的音频最多领先 lead（估算的播放进度按 1 倍速），
+ * 其余留在服务端队列，打断时直接丢弃。
+ * - 音频项按时长放行；控制消息（tts_start / tts_done 等）时长为 0，轮到即发，与音频保持原有顺序
+ * - 客户端估算已播完（已放行时长 ≤ 经过时间）时重新起算，长时间静默后不会攒出突发额度
+ * 非线程安全，只在会话 actor 内调用。
+ */
+final class AudioPacer {
+
+    /**
+     * 节点级统计，由所有会话共享
+     */
+    static final class Stats {
+        final LongAdder pacedChunks = new LongAdder();
+        final LongAdder pacedMicros = new LongAdder();
+        final LongAdder throttled = new LongAdder();
+        final LongAdder discards = new LongAdder();
+        final LongAdder savedChunks = new LongAdder();
+        final LongAdder savedMicros = new LongAdder();
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("pacedChunks", pacedChunks.sum());
+            m.put("pacedAudioMs", pacedMicros.sum() / 1000);
+            m.put("throttled", throttled.sum());
+            m.put("discards", discards.sum());
+            m.put("savedChunks", savedChunks.sum());
+            m.put("savedAudioMs", savedMicros.sum() / 1000);
+            return m;
+        }
+    }
+
+    private record Item(long micros, int bytes, Runnable send) {
+    }
+
+    private final ArrayDeque<Item> queue = new ArrayDeque<>();
+    private final double rate;
+    private final long leadMicros;
+    private final Stats stats;
+    private long anchorNanos = -1;   // 本段连续下发的起点
+    private long releasedMicros;     // 自起点以来已放行的音频时长
+    private long queuedBytes;
+
+    AudioPacer(double rate, long leadMs, Stats stats) {
+        this.rate = Math.max(1.0, rate);
+        this.leadMicros = Math.max(0, leadMs) * 1000;
+        this.stats = stats;
+    }
+
+    long leadMs() {
+        return leadMicros / 1000;
+    }
+
+    /**
+     * 排入一项；micros 为 0 表示控制消息或时长未知的音频，轮到即发
+     */
+    void offer(long micros, Runnable send) {
+        offer(micros, 0, send);
+    }
+
+    /**
+     * 排入一项，bytes 为其持有的消息大小，用于会话内存统计
+     */
+    void offer(long micros, int bytes, Runnable send) {
+        queue.addLast(new Item(Math.max(0, micros), bytes, send));
+        queuedBytes += bytes;
+    }
+
+    /**
+     * 放行所有已到期的项
+     *
+     * @return 距队首到期的纳秒数；队列已空返回 -1
+     */
+    long pump(long nowNanos) {
+        Item item;
+        while ((item = queue.peekFirst()) != null) {
+            if (item.micros > 0) {
+                long elapsedMicros = anchorNanos < 0 ? 0 : (nowNanos - anchorNanos) / 1000;
+                if (anchorNanos < 0 || releasedMicros <= elapsedMicros) {
+                    anchorNanos = nowNanos;
+                    releasedMicros = 0;
+                    elapsedMicros = 0;
+                }
+                long budget = leadMicros + (long) (elapsedMicros * rate);
+                if (releasedMicros > budget) {
+                    stats.throttled.increment();
+                    return (long) Math.ceil((releasedMicros - budget) / rate * 1000);
+                }
+                releasedMicros += item.micros;
+                stats.pacedChunks.increment();
+                stats.pacedMicros.add(item.micros);
+            }
+            queue.pollFirst();
+            queuedBytes -= item.bytes;
+            item.send.run();
+        }
+        return -1;
+    }
+
+    /**
+     * 丢弃所有未放行的项（打断），并重新起算
+     *
+     * @return 被丢弃的音频时长（毫秒）
+     */
+    long discard() {
+        long micros = 0;
+        int chunks = 0;
+        for (Item item : queue) {
+            if (item.micros > 0) {
+                micros += item.micros;
+                chunks++;
+            }
+        }
+        queue.clear();
+        queuedBytes = 0;
+        anchorNanos = -1;
+        releasedMicros = 0;
+        if (chunks > 0) {
+            stats.discards.increment();
+            stats.savedChunks.add(chunks);
+            stats.savedMicros.add(micros);
+        }
+        return micros / 1000;
+    }
+
+    int pending() {
+        return queue.size();
+    }
+
+    long queuedBytes() {
+        return queuedBytes;
+    }
+}
@@ -0,0 +1,236 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.config.VoiceStreamConfig;
+import com.aih.chatpartner.service.ChatHistoryService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 实时语音链路的聊天记录异步落库（write-behind）
+ * - 会话 actor 只把消息放入有界队列，插入 chat_history 与更新 chat_group 由后台虚拟线程完成
+ * - 按 groupId 分到固定的写入通道，每个通道一个写线程，同一对话的消息按提交顺序落库
+ * - 连接超时、锁等待超时等瞬时数据库错误按退避重试，参数错误等不重试
+ * - 队列已满时在调用线程同步写入：先写完该通道中排在前面的消息，保证顺序不乱
+ * - 应用关闭时停止异步接收并把队列中的消息全部写完
+ */
+@Slf4j
+@Component
+public class ChatHistoryWriteBehind {
+
+    /**
+     * 待落库的一条消息
+     */
+    record PendingMessage(Long groupId, Long userId, String message, boolean ai, long enqueuedAt) {
+    }
+
+    /**
+     * 写入通道：队列的出队与写库都在 writeLock 内进行，同步兜底写入时也持有该锁
+     */
+    private static final class Lane {
+        final ArrayBlockingQueue<PendingMessage> queue;
+        final Semaphore ready = new Semaphore(0);
+        final ReentrantLock writeLock = new ReentrantLock();
+        Thread writer;
+
+        Lane(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    /**
+     * 落库统计
+     */
+    static final class Stats {
+        final LongAdder enqueued = new LongAdder();
+        final LongAdder written = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder syncFallbacks = new LongAdder();
+        final LongAdder lagMsTotal = new LongAdder();
+        final AtomicLong lagMsMax = new AtomicLong();
+
+        Map<String, Object> snapshot(int queued) {
+            long w = written.sum();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("enqueued", enqueued.sum());
+            m.put("written", w);
+            m.put("queued", queued);
+            m.put("retries", retries.sum());
+            m.put("failed", failed.sum());
+            m.put("syncFallbacks", syncFallbacks.sum());
+            m.put("lagAvgMs", w == 0 ? 0.0 : (double) lagMsTotal.sum() / w);
+            m.put("lagMaxMs", lagMsMax.get());
+            return m;
+        }
+    }
+
+    private final Consumer<PendingMessage> sink;
+    private final VoiceStreamConfig.PersistenceConfig cfg;
+    private final Lane[] lanes;
+    private final Stats stats = new Stats();
+    private volatile boolean closed;
+
+    public ChatHistoryWriteBehind(ChatHistoryService chatHistoryService, VoiceStreamConfig voiceStreamConfig) {
+        this(m -> {
+            if (m.ai()) {
+                chatHistoryService.saveAiMessage(m.groupId(), m.userId(), m.message());
+            } else {
+                chatHistoryService.saveUserMessage(m.groupId(), m.userId(), m.message());
+            }
+        }, voiceStreamConfig.getPersistence());
+    }
+
+    ChatHistoryWriteBehind(Consumer<PendingMessage> sink, VoiceStreamConfig.PersistenceConfig cfg) {
+        this.sink = sink;
+        this.cfg = cfg;
+        int n = Math.max(1, cfg.getLanes());
+        int perLane = Math.max(1, cfg.getQueueCapacity() / n);
+        this.lanes = new Lane[n];
+        for (int i = 0; i < n; i++) {
+            Lane lane = new Lane(perLane);
+            lane.writer = Thread.ofVirtual().name("chat-history-writer-" + i).start(() -> runWriter(lane));
+            lanes[i] = lane;
+        }
+    }
+
+    /**
+     * 保存用户消息（异步）
+     */
+    public void saveUserMessage(Long groupId, Long userId, String message) {
+        submit(groupId, userId, message, false);
+    }
+
+    /**
+     * 保存 AI 消息（异步）
+     */
+    public void saveAiMessage(Long groupId, Long userId, String message) {
+        submit(groupId, userId, message, true);
+    }
+
+    public Map<String, Object> stats() {
+        int queued = 0;
+        for (Lane lane : lanes) queued += lane.queue.size();
+        return stats.snapshot(queued);
+    }
+
+    private void submit(Long groupId, Long userId, String message, boolean ai) {
+        if (groupId == null || groupId <= 0 || userId == null || message == null || message.isBlank()) return;
+        PendingMessage m = new PendingMessage(groupId, userId, message, ai, System.currentTimeMillis());
+        Lane lane = lanes[Math.floorMod(groupId.hashCode(), lanes.length)];
+        if (!closed && lane.queue.offer(m)) {
+            stats.enqueued.increment();
+            lane.ready.release();
+            return;
+        }
+        // 队列已满或已关闭：在调用线程写入，并先写完同通道排在前面的消息
+        stats.syncFallbacks.increment();
+        lane.writeLock.lock();
+        try {
+            drainLocked(lane);
+            write(m);
+        } finally {
+            lane.writeLock.unlock();
+        }
+    }
+
+    private void runWriter(Lane lane) {
+        while (true) {
+            try {
+                lane.ready.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            lane.writeLock.lock();
+            try {
+                // 同步兜底可能已经替写线程写掉了这条，此时取到 null
+                PendingMessage m = lane.queue.poll();
+                if (m != null) write(m);
+            } finally {
+                lane.writeLock.unlock();
+            }
+        }
+    }
+
+    private void drainLocked(Lane lane) {
+        PendingMessage m;
+        while ((m = lane.queue.poll()) != null) {
+            write(m);
+        }
+    }
+
+    private void write(PendingMessage m) {
+        int maxAttempts = Math.max(1, cfg.getMaxAttempts());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                sink.accept(m);
+                long lag = System.currentTimeMillis() - m.enqueuedAt();
+                stats.written.increment();
+                stats.lagMsTotal.add(lag);
+                stats.lagMsMax.accumulateAndGet(lag, Math::max);
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts || !isTransient(e)) {
+                    stats.failed.increment();
+                    log.warn("Chat history write failed, groupId={}, ai={}, attempts={}, err={}",
+                            m.groupId(), m.ai(), attempt, e.getMessage());
+                    return;
+                }
+                stats.retries.increment();
+                try {
+                    Thread.sleep(cfg.getRetryBackoffMs() * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    stats.failed.increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 只有瞬时错误值得重试：连接池取连接超时、连接中断、锁等待超时/死锁回滚等
+     */
+    static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof TransientDataAccessException
+                    || t instanceof RecoverableDataAccessException
+                    || t instanceof SQLTransientException
+                    || t instanceof SQLRecoverableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 停止异步接收，写完所有排队消息后结束写线程；之后的提交走同步写入
+     */
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        for (Lane lane : lanes) {
+            lane.writeLock.lock();
+            try {
+                drainLocked(lane);
+            } finally {
+                lane.writeLock.unlock();
+            }
+            lane.writer.interrupt();
+        }
+        log.info("Chat history write-behind flushed, stats={}", stats());
+    }
+}
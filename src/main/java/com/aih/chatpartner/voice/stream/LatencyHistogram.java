@@ -0,0 +1,103 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定内存的延迟直方图（HDR 风格的对数-线性分桶，线程安全，记录无锁无分配）
+ * 以微秒为单位：小于 32µs 每微秒一个桶，之后每个 2 的幂区间再等分 16 个桶，相对误差不超过约 6%；
+ * 超过上限（约 38 小时）的值计入最后一个桶。
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;     // 32
+    private static final int HALF = SUB_COUNT >> 1;         // 16
+    private static final int MAX_SHIFT = 32;
+    private static final int BUCKETS = SUB_COUNT + MAX_SHIFT * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    void recordNanos(long nanos) {
+        if (nanos < 0) return;
+        recordMicros(nanos / 1000);
+    }
+
+    void recordMicros(long micros) {
+        if (micros < 0) return;
+        counts.incrementAndGet(index(micros));
+        total.increment();
+        sumMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    long count() {
+        return total.sum();
+    }
+
+    static int index(long v) {
+        if (v < SUB_COUNT) return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int shift = msb - (SUB_BITS - 1);
+        if (shift > MAX_SHIFT) return BUCKETS - 1;
+        int sub = (int) (v >>> shift);                      // [16, 32)
+        return SUB_COUNT + (shift - 1) * HALF + (sub - HALF);
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB_COUNT) return index;
+        int shift = (index - SUB_COUNT) / HALF + 1;
+        long sub = (index - SUB_COUNT) % HALF + HALF;
+        return sub << shift;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_COUNT) return index;
+        int shift = (index - SUB_COUNT) / HALF + 1;
+        return lowerBound(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * 分位数（微秒），取所在桶的中点且不超过记录到的最大值；p100 即最大值，无数据时为 0
+     */
+    long percentileMicros(double p) {
+        long n = total.sum();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+        if (rank >= n) return maxMicros.get();
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                long mid = (lowerBound(i) + upperBound(i)) / 2;
+                return Math.min(mid, maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * 以毫秒输出（保留一位小数）：count / mean / p50 / p90 / p99 / max
+     */
+    Map<String, Object> snapshot() {
+        long n = total.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("count", n);
+        m.put("meanMs", n == 0 ? 0.0 : ms((double) sumMicros.sum() / n));
+        m.put("p50Ms", ms(percentileMicros(50)));
+        m.put("p90Ms", ms(percentileMicros(90)));
+        m.put("p99Ms", ms(percentileMicros(99)));
+        m.put("maxMs", ms(maxMicros.get()));
+        return m;
+    }
+
+    private static double ms(double micros) {
+        return Math.round(micros / 100.0) / 10.0;
+    }
+}
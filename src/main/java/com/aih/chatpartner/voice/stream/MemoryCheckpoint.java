@@ -0,0 +1,50 @@
+package com.aih.chatpartner.voice.stream;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 推测调用所用副本记忆上的检查点，推测命中时把推测调用写入副本的消息同步到正式记忆
+ * 推测调用只写副本（见 AiServiceFactory#createScratchService）：放弃推测时丢掉副本即可，
+ * 取消订阅后仍在后台跑完的流写入的回复不会进入正式记忆，也不会与正式轮次并发改写正式记忆。
+ * - 检查点之后新增的消息：副本中接在检查点记忆尾部之后的部分（窗口满时检查点头部可能已被挤出）
+ * - 每次同步后检查点前移：提交时同步用户消息，流结束时再同步一次补上 AI 回复
+ * 只在会话 actor 内使用。
+ */
+final class MemoryCheckpoint {
+
+    private final MessageWindowChatMemory scratch;
+    private List<ChatMessage> synced;
+
+    MemoryCheckpoint(MessageWindowChatMemory scratch) {
+        this.scratch = scratch;
+        this.synced = new ArrayList<>(scratch.messages());
+    }
+
+    /**
+     * 把上次同步之后写入副本的消息按序追加到 target
+     *
+     * @return 同步的消息数
+     */
+    int sync(ChatMemory target) {
+        List<ChatMessage> current = new ArrayList<>(scratch.messages());
+        List<ChatMessage> added = current.subList(overlap(synced, current), current.size());
+        added.forEach(target::add);
+        synced = current;
+        return added.size();
+    }
+
+    /**
+     * before 的最长后缀与 current 前缀重合的长度
+     */
+    static int overlap(List<ChatMessage> before, List<ChatMessage> current) {
+        for (int k = Math.min(before.size(), current.size()); k > 0; k--) {
+            if (before.subList(before.size() - k, before.size()).equals(current.subList(0, k))) return k;
+        }
+        return 0;
+    }
+}
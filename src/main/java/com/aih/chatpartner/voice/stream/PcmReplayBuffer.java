@@ -0,0 +1,114 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * 会话级上行 PCM 回放环形缓冲
+ * - 固定容量，只保留最近 capacity 字节音频，更早的被覆盖
+ * - 按流内绝对偏移（会话累计写入的字节数）寻址：ASR 重连后从最后确认的位置起重放到新连接
+ * - 底层数组在首次写入时分配，纯文本会话不占内存
+ * 非线程安全，由调用方加锁。
+ */
+final class PcmReplayBuffer {
+
+    private final int capacity;
+    private byte[] ring;
+    private long end = 0; // 累计写入字节数，即下一个字节的绝对偏移
+
+    PcmReplayBuffer(int capacity) {
+        this.capacity = Math.max(2, capacity & ~1);
+    }
+
+    /**
+     * 指定时长的 PCM 字节数（16bit），按采样帧对齐
+     */
+    static long bytesForMs(int sampleRate, int channels, long ms) {
+        int frame = 2 * Math.max(1, channels);
+        long bytes = (long) sampleRate * frame * Math.max(0, ms) / 1000;
+        return bytes - bytes % frame;
+    }
+
+    /**
+     * 追加 data 的剩余字节，不改变其 position；超过容量时只保留末尾
+     */
+    void append(ByteBuffer data) {
+        int len = data.remaining();
+        if (len == 0) return;
+        if (ring == null) ring = new byte[capacity];
+        int src = data.position();
+        if (len > capacity) {
+            src += len - capacity;
+            end += len - capacity;
+            len = capacity;
+        }
+        int at = (int) (end % capacity);
+        int first = Math.min(len, capacity - at);
+        data.get(src, ring, at, first);
+        if (first < len) {
+            data.get(src + first, ring, 0, len - first);
+        }
+        end += len;
+    }
+
+    /**
+     * 缓冲中最早仍可读取的绝对偏移
+     */
+    long start() {
+        return Math.max(0, end - capacity);
+    }
+
+    long end() {
+        return end;
+    }
+
+    /**
+     * 已分配的环形缓冲字节数（未写入过音频时为 0）
+     */
+    long allocatedBytes() {
+        return ring == null ? 0 : capacity;
+    }
+
+    /**
+     * 从 from 起到末尾按 chunkBytes 分段交给 sink（早于 {@link #start()} 的部分已被覆盖，从 start 起）
+     * sink 收到的 ByteBuffer 只在调用期间有效
+     *
+     * @return 重放的字节数
+     */
+    long replay(long from, int chunkBytes, Consumer<ByteBuffer> sink) {
+        long pos = Math.max(from, start());
+        if (pos >= end) return 0;
+        byte[] chunk = new byte[(int) Math.min(Math.max(2, chunkBytes), end - pos)];
+        ByteBuffer view = ByteBuffer.wrap(chunk);
+        long total = 0;
+        while (pos < end) {
+            int n = (int) Math.min(chunk.length, end - pos);
+            copy(pos, chunk, n);
+            view.clear().limit(n);
+            sink.accept(view);
+            pos += n;
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * 复制从 from 起到末尾的音频（早于 {@link #start()} 的部分从 start 起）
+     */
+    byte[] copySince(long from) {
+        long pos = Math.max(from, start());
+        if (pos >= end) return new byte[0];
+        byte[] out = new byte[(int) (end - pos)];
+        copy(pos, out, out.length);
+        return out;
+    }
+
+    private void copy(long pos, byte[] dst, int n) {
+        int at = (int) (pos % capacity);
+        int first = Math.min(n, capacity - at);
+        System.arraycopy(ring, at, dst, 0, first);
+        if (first < n) {
+            System.arraycopy(ring, 0, dst, first, n - first);
+        }
+    }
+}
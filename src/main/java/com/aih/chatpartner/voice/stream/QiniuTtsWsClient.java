@@ -1,34 +1,49 @@
 package com.aih.chatpartner.voice.stream;
 
-import com.aih.chatpartner.config.QiniuConfig;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.aih.chatpartner.voice.cache.TtsAudioCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.drafts.Draft_6455;
-import org.java_websocket.handshake.ServerHandshake;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
-import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 /**
  * 七牛云 TTS WebSocket 客户端（流式）
+ * 每个句子从 {@link TtsWsPool} 租借一条已握手的连接，合成结束后归还，避免逐句 TLS 握手
+ * 短句先查 {@link TtsAudioCache}，命中则直接按分片回放缓存音频；未命中的句子合成完整结束后写入缓存
  */
 @Slf4j
 public class QiniuTtsWsClient {
 
-    private final QiniuConfig qiniuConfig;
+    private final TtsWsPool pool;
     private final ObjectMapper objectMapper;
+    private final VoiceMetrics metrics;
+    private final TtsAudioCache audioCache;
 
-    public QiniuTtsWsClient(QiniuConfig qiniuConfig, ObjectMapper objectMapper) {
-        this.qiniuConfig = qiniuConfig;
+    /**
+     * 缓存命中时回放的分片字节数。按字节而非时长切分：16k 单声道 PCM 下为 100ms，
+     * 默认的 mp3 下视码率约 200~800ms（128k~32kbps）；开启下行节奏控制时 AudioPacer 按每片的实际时长限速，与分片大小无关
+     */
+    static final int CACHED_CHUNK_BYTES = 3200;
+
+    public QiniuTtsWsClient(TtsWsPool pool, ObjectMapper objectMapper, VoiceMetrics metrics) {
+        this(pool, objectMapper, metrics, null);
+    }
+
+    public QiniuTtsWsClient(TtsWsPool pool, ObjectMapper objectMapper, VoiceMetrics metrics, TtsAudioCache audioCache) {
+        this.pool = pool;
         this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.audioCache = audioCache;
     }
 
     /**
@@ -42,126 +57,136 @@ public class QiniuTtsWsClient {
                                       Consumer<String> onAudioBase64Chunk,
                                       Runnable onDone,
                                       Consumer<Throwable> onError) {
-        try {
-            String url = qiniuConfig.getTtsWsUrl();
-            Map<String, String> headers = new HashMap<>();
-            headers.put("Authorization", "Bearer " + qiniuConfig.getApiKey());
-            // 某些实现需要在握手头中附带 VoiceType，参考官方示例
-            headers.put("VoiceType", voiceType);
-
-            AtomicBoolean finished = new AtomicBoolean(false);
-            // 追踪握手是否成功与是否收到任何音频数据
-            AtomicBoolean connected = new AtomicBoolean(false);
-            AtomicBoolean receivedAnyData = new AtomicBoolean(false);
-
-            WebSocketClient client = new WebSocketClient(new URI(url), new Draft_6455(), headers, 10000) {
-                @Override
-                public void onOpen(ServerHandshake handshakedata) {
-                    log.info("TTS WS connected");
-                    connected.set(true);
-                    try {
-                        Map<String, Object> root = new HashMap<>();
-                        Map<String, Object> audio = new HashMap<>();
-                        audio.put("voice_type", voiceType);
-                        audio.put("encoding", encoding);
-                        audio.put("speed_ratio", speedRatio);
-                        root.put("audio", audio);
-                        Map<String, Object> request = new HashMap<>();
-                        request.put("text", text);
-                        root.put("request", request);
-
-                        String payload = objectMapper.writeValueAsString(root);
-                        send(payload.getBytes(StandardCharsets.UTF_8));
-                    } catch (Exception e) {
-                        log.error("Send TTS request error", e);
-                        tryClose();
-                        if (onError != null) onError.accept(e);
-                    }
-                }
+        String cacheKey = audioCache != null && audioCache.cacheable(text)
+                ? TtsAudioCache.key(text, voiceType, speedRatio, encoding) : null;
+        if (cacheKey != null) {
+            ByteBuffer cached = audioCache.get(cacheKey);
+            if (cached != null) {
+                replayCached(cached, onAudioBase64Chunk, onDone);
+                return () -> {};
+            }
+        }
+        // 可缓存的句子边合成边收集解码后的音频（回调都在同一连接的读线程上）
+        ByteArrayOutputStream collected = cacheKey != null ? new ByteArrayOutputStream(16 * 1024) : null;
 
-                private void handleJsonMessage(String message) {
-                    try {
-                        JsonNode node = objectMapper.readTree(message);
-                        if (node.has("data")) {
-                            String base64 = node.get("data").asText("");
-                            if (!base64.isEmpty() && onAudioBase64Chunk != null) {
-                                receivedAnyData.set(true);
-                                onAudioBase64Chunk.accept(base64);
-                            }
-                        }
-                        if (node.has("sequence")) {
-                            int seq = node.get("sequence").asInt(0);
-                            if (seq < 0) {
-                                if (finished.compareAndSet(false, true)) {
-                                    if (onDone != null) onDone.run();
-                                }
-                                tryClose();
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.error("Parse TTS message error", e);
-                        if (onError != null) onError.accept(e);
-                    }
-                }
+        byte[] payload;
+        try {
+            Map<String, Object> root = new HashMap<>();
+            Map<String, Object> audio = new HashMap<>();
+            audio.put("voice_type", voiceType);
+            audio.put("encoding", encoding);
+            audio.put("speed_ratio", speedRatio);
+            root.put("audio", audio);
+            Map<String, Object> request = new HashMap<>();
+            request.put("text", text);
+            root.put("request", request);
+            payload = objectMapper.writeValueAsBytes(root);
+        } catch (Exception e) {
+            log.error("Build TTS request error", e);
+            metrics.ttsErrors.increment();
+            if (onError != null) onError.accept(e);
+            return () -> {}; // 返回空的 Closeable
+        }
 
-                @Override
-                public void onMessage(String message) { handleJsonMessage(message); }
+        // 句子只会以 完成 / 出错 / 取消 之一结束
+        AtomicBoolean finished = new AtomicBoolean(false);
+        AtomicBoolean receivedAnyData = new AtomicBoolean(false);
+        AtomicReference<TtsWsConnection> leased = new AtomicReference<>();
 
-                @Override
-                public void onMessage(ByteBuffer bytes) {
-                    // Some servers may send JSON in binary frames
-                    String message = StandardCharsets.UTF_8.decode(bytes).toString();
-                    handleJsonMessage(message);
+        long leaseStart = System.nanoTime();
+        pool.lease(voiceType).whenComplete((conn, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                log.error("Lease TTS connection error", cause);
+                if (finished.compareAndSet(false, true)) {
+                    metrics.ttsErrors.increment();
+                    if (onError != null) onError.accept(cause);
                 }
+                return;
+            }
+            // 拿到可用连接的耗时：预热命中时只有排队时间，冷连接含 TLS/WS 握手
+            metrics.ttsHandshake.recordNanos(System.nanoTime() - leaseStart);
+            leased.set(conn);
+            if (finished.get()) {
+                // 租借期间已被取消，连接未被使用，直接归还
+                TtsWsConnection unused = leased.getAndSet(null);
+                if (unused != null) pool.release(unused);
+                return;
+            }
+            try {
+                conn.begin(new TtsWsConnection.Listener() {
+                    @Override
+                    public void onAudio(String base64) {
+                        if (finished.get()) return;
+                        receivedAnyData.set(true);
+                        if (collected != null) collected.writeBytes(Base64.getDecoder().decode(base64));
+                        if (onAudioBase64Chunk != null) onAudioBase64Chunk.accept(base64);
+                    }
 
-                @Override
-                public void onClose(int code, String reason, boolean remote) {
-                    log.info("TTS WS closed: {} {} remote={} ", code, reason, remote);
-                    // 区分握手失败/无数据 与 正常结束
-                    if (!connected.get()) {
-                        if (onError != null) onError.accept(new RuntimeException("TTS WS handshake failed: " + code + " " + reason));
-                        return;
+                    @Override
+                    public void onDone() {
+                        if (finished.compareAndSet(false, true)) {
+                            pool.release(conn);
+                            // 只缓存以结束标记正常完成的句子，取消或中途断开的音频不完整
+                            if (collected != null) audioCache.put(cacheKey, collected.toByteArray());
+                            if (onDone != null) onDone.run();
+                        }
                     }
-                    if (!receivedAnyData.get()) {
-                        if (onError != null) onError.accept(new RuntimeException("TTS WS closed without data: " + code + " " + reason));
-                        return;
+
+                    @Override
+                    public void onError(Throwable t) {
+                        if (finished.compareAndSet(false, true)) {
+                            pool.discard(conn);
+                            metrics.ttsErrors.increment();
+                            if (onError != null) onError.accept(t);
+                        }
                     }
-                    // 若正常结束但未给出 sequence<0，兜底触发完成
-                    if (finished.compareAndSet(false, true)) {
-                        if (onDone != null) onDone.run();
+
+                    @Override
+                    public void onClosed(int code, String reason) {
+                        if (!finished.compareAndSet(false, true)) return;
+                        pool.discard(conn);
+                        // 区分无数据关闭 与 正常结束但未给出 sequence<0
+                        if (!receivedAnyData.get()) {
+                            metrics.ttsErrors.increment();
+                            if (onError != null) onError.accept(new RuntimeException("TTS WS closed without data: " + code + " " + reason));
+                        } else if (onDone != null) {
+                            onDone.run();
+                        }
                     }
+                }, payload);
+            } catch (Exception e) {
+                log.error("Send TTS request error", e);
+                if (finished.compareAndSet(false, true)) {
+                    pool.discard(conn);
+                    metrics.ttsErrors.increment();
+                    if (onError != null) onError.accept(e);
                 }
+            }
+        });
 
-                @Override
-                public void onError(Exception ex) {
-                    log.error("TTS WS error", ex);
-                    if (onError != null) onError.accept(ex);
-                    // Also mark finished to avoid blocking the queue
-                    finished.compareAndSet(false, true);
-                }
+        // 返回一个 Closeable 包装器，用于取消 TTS 操作；合成中途的连接仍在下发旧音频，不可复用
+        return () -> {
+            if (finished.compareAndSet(false, true)) {
+                TtsWsConnection conn = leased.getAndSet(null);
+                if (conn != null) pool.discard(conn);
+            }
+        };
+    }
 
-                private void tryClose() {
-                    try {
-                        close();
-                    } catch (Exception ignore) {
-                    }
-                }
-            };
-            client.connect();
-            // 返回一个 Closeable 包装器，用于取消 TTS 操作
-            return () -> {
-                try {
-                    if (client.isOpen()) {
-                        client.close();
-                    }
-                } catch (Exception ignore) {
-                    log.debug("Error closing TTS client", ignore);
-                }
-            };
-        } catch (Exception e) {
-            log.error("Create TTS WS error", e);
-            if (onError != null) onError.accept(e);
-            return () -> {}; // 返回空的 Closeable
+    /**
+     * 将整段音频按 CACHED_CHUNK_BYTES 切片，依次以 base64 回调，最后回调 onDone
+     */
+    static void replayCached(ByteBuffer audio, Consumer<String> onAudioBase64Chunk, Runnable onDone) {
+        if (onAudioBase64Chunk != null) {
+            Base64.Encoder enc = Base64.getEncoder();
+            while (audio.hasRemaining()) {
+                int n = Math.min(CACHED_CHUNK_BYTES, audio.remaining());
+                ByteBuffer chunk = audio.slice(audio.position(), n);
+                onAudioBase64Chunk.accept(StandardCharsets.ISO_8859_1.decode(enc.encode(chunk)).toString());
+                audio.position(audio.position() + n);
+            }
         }
+        if (onDone != null) onDone.run();
     }
 }
@@ -0,0 +1,136 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.config.VoiceStreamConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 语音会话生命周期判定（节点级，线程安全）
+ * - 心跳：客户端 pingIntervalMs 内没有任何上行时发送 ping（JSON ping 与协议层 ping 帧各一），
+ *   任何上行帧（音频、控制消息、pong）都算存活
+ * - 半开：超过 halfOpenTimeoutMs 没有任何上行，说明连接已断而 TCP 未感知，直接关闭
+ * - 空闲：连接正常但超过 idleTimeoutMs 没有用户消息或音频，且没有进行中的回复，关闭以释放 ASR 连接等资源
+ * - 准入：会话数或估算内存超过节点上限时拒绝新连接
+ * 各会话的下一次检查时间由 {@link #nextCheckAt} 给出，挂在 {@link TimingWheel} 上。
+ */
+final class SessionLifecycle {
+
+    enum Action { NONE, PING, REAP_IDLE, REAP_HALF_OPEN }
+
+    /**
+     * 节点级统计
+     */
+    static final class Stats {
+        final LongAdder pings = new LongAdder();
+        final LongAdder pongs = new LongAdder();
+        final LongAdder rttMillis = new LongAdder();
+        final AtomicLong rttMaxMillis = new AtomicLong();
+        final LongAdder reapedIdle = new LongAdder();
+        final LongAdder reapedHalfOpen = new LongAdder();
+        final LongAdder rejectedSessions = new LongAdder();
+        final LongAdder rejectedMemory = new LongAdder();
+
+        void rtt(long ms) {
+            if (ms < 0) return;
+            pongs.increment();
+            rttMillis.add(ms);
+            rttMaxMillis.accumulateAndGet(ms, Math::max);
+        }
+
+        Map<String, Object> snapshot() {
+            long n = pongs.sum();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("pings", pings.sum());
+            m.put("pongs", n);
+            m.put("rttAvgMs", n == 0 ? 0.0 : (double) rttMillis.sum() / n);
+            m.put("rttMaxMs", rttMaxMillis.get());
+            m.put("reapedIdle", reapedIdle.sum());
+            m.put("reapedHalfOpen", reapedHalfOpen.sum());
+            m.put("rejectedSessions", rejectedSessions.sum());
+            m.put("rejectedMemory", rejectedMemory.sum());
+            return m;
+        }
+    }
+
+    private final long pingIntervalMs;
+    private final long halfOpenTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long tickMs;
+    private final int maxSessions;
+    private final long maxMemoryBytes;
+    private final Stats stats;
+    // 所有会话最近一次估算的内存之和
+    private final AtomicLong memoryBytes = new AtomicLong();
+
+    SessionLifecycle(VoiceStreamConfig.SessionConfig cfg, Stats stats) {
+        this.pingIntervalMs = Math.max(1, cfg.getPingIntervalMs());
+        this.halfOpenTimeoutMs = Math.max(pingIntervalMs, cfg.getHalfOpenTimeoutMs());
+        this.idleTimeoutMs = Math.max(0, cfg.getIdleTimeoutMs());
+        this.tickMs = Math.max(1, cfg.getReaperTickMs());
+        this.maxSessions = cfg.getMaxSessions();
+        this.maxMemoryBytes = cfg.getMaxMemoryBytes();
+        this.stats = stats;
+    }
+
+    /**
+     * 按最近上行、最近用户活动、最近 ping 的时刻判定本次检查要做什么
+     */
+    Action decide(long nowMs, long lastSeenMs, long lastActiveMs, long lastPingMs, boolean busy) {
+        if (nowMs - lastSeenMs >= halfOpenTimeoutMs) return Action.REAP_HALF_OPEN;
+        if (!busy && idleTimeoutMs > 0 && nowMs - lastActiveMs >= idleTimeoutMs) return Action.REAP_IDLE;
+        if (nowMs - lastSeenMs >= pingIntervalMs && nowMs - lastPingMs >= pingIntervalMs) return Action.PING;
+        return Action.NONE;
+    }
+
+    /**
+     * 下一次需要检查的时刻：最早的半开、空闲、心跳期限，至少晚一个刻度
+     */
+    long nextCheckAt(long nowMs, long lastSeenMs, long lastActiveMs, long lastPingMs, boolean busy) {
+        long next = lastSeenMs + halfOpenTimeoutMs;
+        next = Math.min(next, Math.max(lastSeenMs, lastPingMs) + pingIntervalMs);
+        if (idleTimeoutMs > 0) {
+            // 有进行中的回复时空闲期限顺延，到下一次心跳再看
+            next = Math.min(next, busy ? nowMs + pingIntervalMs : lastActiveMs + idleTimeoutMs);
+        }
+        return Math.max(next, nowMs + tickMs);
+    }
+
+    /**
+     * 新连接准入
+     *
+     * @return 拒绝原因；允许时返回 null
+     */
+    String admit(int sessions) {
+        if (maxSessions > 0 && sessions >= maxSessions) {
+            stats.rejectedSessions.increment();
+            return "too many sessions";
+        }
+        if (maxMemoryBytes > 0 && memoryBytes.get() >= maxMemoryBytes) {
+            stats.rejectedMemory.increment();
+            return "memory limit reached";
+        }
+        return null;
+    }
+
+    /**
+     * 会话估算内存由 before 变为 after
+     */
+    void memoryChanged(long before, long after) {
+        if (before != after) memoryBytes.addAndGet(after - before);
+    }
+
+    long memoryBytes() {
+        return memoryBytes.get();
+    }
+
+    long tickMs() {
+        return tickMs;
+    }
+
+    Stats stats() {
+        return stats;
+    }
+}
@@ -0,0 +1,104 @@
+package com.aih.chatpartner.voice.stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 语音会话 actor 的邮箱（每个会话一个）
+ * WebSocket 容器线程、Reactor、ASR/TTS 回调线程、定时线程都只通过 {@link #execute} 投递事件：
+ * 入队为无锁的 CAS 操作；有事件时由 executor 启动一个排空任务，按投递顺序逐个执行，同一时刻至多一个。
+ * 因此会话状态只在事件内读写，不需要加锁或 volatile；空闲会话不占用线程。
+ */
+@Slf4j
+final class SessionMailbox implements Executor {
+
+    /**
+     * 节点级统计，由所有会话共享
+     */
+    static final class Stats {
+        final LongAdder events = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder activeDrains = new LongAdder();
+        final AtomicLong maxDepth = new AtomicLong();
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("events", events.sum());
+            m.put("failures", failures.sum());
+            m.put("droppedAfterClose", dropped.sum());
+            m.put("activeDrains", activeDrains.sum());
+            m.put("maxDepth", maxDepth.get());
+            return m;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    // 已入队且未执行完的事件数；由 0 变 1 的投递者负责启动排空任务
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Executor executor;
+    private final String name;
+    private final Stats stats;
+    private volatile boolean closed;
+
+    SessionMailbox(Executor executor, String name, Stats stats) {
+        this.executor = executor;
+        this.name = name;
+        this.stats = stats;
+    }
+
+    /**
+     * 投递事件，任意线程可调用，不阻塞；关闭后的事件被丢弃
+     */
+    @Override
+    public void execute(Runnable event) {
+        if (closed) {
+            stats.dropped.increment();
+            return;
+        }
+        queue.offer(event);
+        int depth = pending.incrementAndGet();
+        if (depth == 1) {
+            stats.activeDrains.increment();
+            executor.execute(this::drain);
+        } else {
+            stats.maxDepth.accumulateAndGet(depth, Math::max);
+        }
+    }
+
+    /**
+     * 停止接收新事件；应作为会话的最后一个事件在邮箱内调用
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * 当前排队（含正在执行）的事件数
+     */
+    int depth() {
+        return pending.get();
+    }
+
+    private void drain() {
+        do {
+            // 每次计数加一都发生在对应的 offer 之后，这里一定能取到事件
+            Runnable event = queue.poll();
+            try {
+                event.run();
+            } catch (Throwable t) {
+                stats.failures.increment();
+                log.warn("Voice session event failed, session={}, err={}", name, t.toString());
+            }
+            stats.events.increment();
+        } while (pending.decrementAndGet() > 0);
+        stats.activeDrains.decrement();
+    }
+}
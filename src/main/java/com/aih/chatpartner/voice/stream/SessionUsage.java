@@ -0,0 +1,37 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 会话内存估算快照，由会话 actor 在每次生命周期检查时生成，供节点上限判断与管理端查看
+ *
+ * @param replayBytes      上行音频回放环形缓冲（已分配的容量）
+ * @param uplinkBytes      上行合并器中不足一帧的音频
+ * @param outboundBytes    下行发送队列中的消息
+ * @param ttsAudioBytes    节奏控制队列中尚未下发的音频
+ * @param ttsTextBytes     待合成句子与重排缓冲中的文本及 base64 音频
+ * @param pendingTextBytes 切句器残余、本轮 AI 回复与待处理的用户输入
+ */
+record SessionUsage(Long userId, Long groupId, boolean busy,
+                    long replayBytes, long uplinkBytes, long outboundBytes,
+                    long ttsAudioBytes, long ttsTextBytes, long pendingTextBytes) {
+
+    static final SessionUsage EMPTY = new SessionUsage(null, null, false, 0, 0, 0, 0, 0, 0);
+
+    long total() {
+        return replayBytes + uplinkBytes + outboundBytes + ttsAudioBytes + ttsTextBytes + pendingTextBytes;
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("totalBytes", total());
+        m.put("replayBytes", replayBytes);
+        m.put("uplinkBytes", uplinkBytes);
+        m.put("outboundBytes", outboundBytes);
+        m.put("ttsAudioBytes", ttsAudioBytes);
+        m.put("ttsTextBytes", ttsTextBytes);
+        m.put("pendingTextBytes", pendingTextBytes);
+        return m;
+    }
+}
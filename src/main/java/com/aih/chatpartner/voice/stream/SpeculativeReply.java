@@ -0,0 +1,195 @@
+package com.aih.chatpartner.voice.stream;
+
+import reactor.core.Disposable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于稳定 asr_partial 提前启动的一轮 LLM 回复（每次推测一个）
+ * 推测期间 token 只在本地暂存，不下发、不切句、不入库；推测调用只写对话记忆的副本。asr_final 到达后：
+ * - 与推测文本一致（忽略标点、空白、大小写）：{@link #commit} 把暂存内容按原顺序交给正式下游，之后的 token 直接转发；
+ *   提交时与流结束时各同步一次副本记忆到正式记忆
+ * - 不一致或推测已失败：{@link #discard} 取消订阅，副本记忆随之丢弃，由调用方按 final 文本重新开始
+ */
+final class SpeculativeReply {
+
+    /**
+     * 正式下游，回调在本对象锁内串行执行
+     */
+    interface Sink {
+        void token(String token);
+
+        void complete();
+
+        void error(Throwable err);
+    }
+
+    /**
+     * 节点级统计，由所有会话共享
+     */
+    static final class Stats {
+        final LongAdder started = new LongAdder();
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder cancelled = new LongAdder();
+        final LongAdder savedMs = new LongAdder();
+        final AtomicLong savedMaxMs = new AtomicLong();
+
+        Map<String, Object> snapshot() {
+            long h = hits.sum();
+            long resolved = h + misses.sum() + cancelled.sum();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("started", started.sum());
+            m.put("hits", h);
+            m.put("misses", misses.sum());
+            m.put("cancelled", cancelled.sum());
+            m.put("hitRate", resolved == 0 ? 0.0 : (double) h / resolved);
+            m.put("ttfaSavedAvgMs", h == 0 ? 0.0 : (double) savedMs.sum() / h);
+            m.put("ttfaSavedMaxMs", savedMaxMs.get());
+            return m;
+        }
+    }
+
+    private final String key;
+    private final Runnable syncMemory;
+    private final Stats stats;
+    private final long startedAt = System.currentTimeMillis();
+
+    // 以下字段受 this 锁保护
+    private final List<String> held = new ArrayList<>();
+    private long firstTokenAt;
+    private boolean completed;
+    private Throwable failure;
+    private Sink sink;
+    private boolean done;                 // 已提交或已丢弃
+    private Disposable subscription;
+
+    /**
+     * @param text       推测所用的 asr_partial 文本
+     * @param syncMemory 把推测调用写入副本的对话记忆同步到正式记忆，只在提交后调用
+     */
+    SpeculativeReply(String text, Runnable syncMemory, Stats stats) {
+        this.key = normalize(text);
+        this.syncMemory = syncMemory;
+        this.stats = stats;
+        stats.started.increment();
+    }
+
+    /**
+     * 比较用的文本：只保留字母与数字，英文转小写
+     */
+    static String normalize(String text) {
+        if (text == null) return "";
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    boolean matches(String text) {
+        return key.equals(normalize(text));
+    }
+
+    synchronized boolean failed() {
+        return failure != null;
+    }
+
+    /**
+     * 关联 LLM 订阅；若已被丢弃则立即取消
+     */
+    void attach(Disposable sub) {
+        boolean cancel;
+        synchronized (this) {
+            subscription = sub;
+            cancel = done && sink == null;
+        }
+        if (cancel && sub != null) sub.dispose();
+    }
+
+    synchronized Disposable subscription() {
+        return subscription;
+    }
+
+    synchronized void token(String token) {
+        if (sink != null) {
+            sink.token(token);
+        } else if (!done) {
+            if (firstTokenAt == 0) firstTokenAt = System.currentTimeMillis();
+            held.add(token);
+        }
+    }
+
+    synchronized void complete() {
+        if (sink != null) {
+            syncMemory.run();
+            sink.complete();
+        } else {
+            completed = true;
+        }
+    }
+
+    synchronized void error(Throwable err) {
+        if (sink != null) {
+            syncMemory.run();
+            sink.error(err);
+        } else {
+            failure = err;
+        }
+    }
+
+    /**
+     * 命中：暂存的 token（以及已到达的完成信号）按序交给 target，之后的回调直接转发
+     *
+     * @return 估算节省的首音频时间（毫秒）：LLM 提前启动的时长，不超过其首 token 耗时
+     */
+    synchronized long commit(Sink target) {
+        if (done) return 0;
+        done = true;
+        long now = System.currentTimeMillis();
+        long saved = firstTokenAt > 0 ? firstTokenAt - startedAt : now - startedAt;
+        stats.hits.increment();
+        stats.savedMs.add(saved);
+        stats.savedMaxMs.accumulateAndGet(saved, Math::max);
+        // 先同步已写入副本的消息（推测的用户消息，已完成时连同 AI 回复），再交给下游
+        syncMemory.run();
+        for (String t : held) {
+            target.token(t);
+        }
+        held.clear();
+        if (completed) {
+            target.complete();
+        } else {
+            sink = target;
+        }
+        return saved;
+    }
+
+    /**
+     * 放弃推测：取消 LLM 订阅；取消后流可能仍在后台跑完，它只会写入副本记忆，不做同步
+     *
+     * @param miss true 表示 asr_final 与推测不一致，false 表示在 final 之前被取消
+     */
+    void discard(boolean miss) {
+        Disposable sub;
+        synchronized (this) {
+            if (done) return;
+            done = true;
+            held.clear();
+            sub = subscription;
+        }
+        (miss ? stats.misses : stats.cancelled).increment();
+        if (sub != null) {
+            try {
+                sub.dispose();
+            } catch (Exception ignore) {
+            }
+        }
+    }
+}
@@ -4,74 +4,198 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * 将 LLM token 流按标点/长度阈值切分为句子
+ * 将 LLM token 流按标点/长度阈值切分为送往 TTS 的文本块
+ * <p>
+ * 增量扫描：每次只检查新追加的字符，记录引号/括号嵌套与最近的句末、分句位置，整轮回复为线性时间。
+ * - 连续的句末标点（！！、……）以及紧跟其后的右引号/右括号归入同一句，遇到下一个普通字符时才确认切分
+ * - 引号、括号内部不切分（超过 maxLen 时强制切分，保证延迟有界）
+ * - 英文句点只有后面跟空白时才算句末，避免把 3.14 这类小数切开
+ * - fastFirstChunk 开启时，首块在第一个逗号/顿号处即输出，让 TTS 尽早开口
+ * - 之后的块目标长度逐块翻倍（MIN_LEN, 2×MIN_LEN, ... 直到 maxLen），不足目标长度的句子与下一句合并，
+ *   达到 maxLen 时在最近的句末/分句处切分，都没有则硬切
+ * <p>
+ * 非线程安全，由 LLM 流的订阅线程串行调用。
  */
 public class TextChunker {
 
+    public static final int DEFAULT_MAX_LEN = 60;
+    private static final int MIN_LEN = 12;
+
     private final StringBuilder buffer = new StringBuilder();
     private final int maxLen;
+    private final boolean fastFirstChunk;
+
+    private int scanPos;            // buffer 中尚未扫描的起点
+    private int pendingEnd;         // 待确认的句末位置（不含），0 表示没有
+    private boolean pendingDot;     // 待确认的句末仅由英文句点构成，需后跟空白
+    private int lastSentenceEnd;    // 最近一个已确认的句末位置，0 表示没有
+    private int lastClauseEnd;      // 最近一个分句位置，0 表示没有
+    private int nesting;            // 中文引号与括号的嵌套深度
+    private boolean inAsciiQuote;
+    private int chunkIndex;         // 本轮已输出的块数
 
     public TextChunker() {
-        this(60); // 默认每 ~60 字/标点切一次
+        this(DEFAULT_MAX_LEN); // 默认每 ~60 字/标点切一次
     }
 
     public TextChunker(int maxLen) {
+        this(maxLen, false);
+    }
+
+    public TextChunker(int maxLen, boolean fastFirstChunk) {
         this.maxLen = Math.max(20, maxLen);
+        this.fastFirstChunk = fastFirstChunk;
     }
 
     /**
-     * 追加 token，并返回可输出的完整句子列表
+     * 追加 token，并返回可输出的文本块列表
      */
-    public synchronized List<String> appendAndExtract(String token) {
-        List<String> out = new ArrayList<>();
+    public List<String> appendAndExtract(String token) {
         if (token == null || token.isEmpty()) {
-            return out;
+            return List.of();
         }
         buffer.append(token);
+        List<String> out = null;
+        while (scanPos < buffer.length()) {
+            char c = buffer.charAt(scanPos++);
 
-        // 标点优先作为切分点
-        int idx = findSentenceBreak(buffer);
-        if (idx >= 0) {
-            String sentence = buffer.substring(0, idx + 1).trim();
-            if (!sentence.isEmpty()) {
-                out.add(sentence);
+            if (pendingEnd > 0 && !extendsSentenceEnd(c)) {
+                int end = pendingEnd;
+                boolean confirmed = isTopLevel() && (!pendingDot || Character.isWhitespace(c));
+                pendingEnd = 0;
+                pendingDot = false;
+                if (confirmed) {
+                    lastSentenceEnd = end;
+                    if (shouldEmitAt(end, true)) {
+                        out = emit(out, end);
+                    }
+                }
+            }
+
+            int i = scanPos - 1;
+            if (isOpening(c)) {
+                nesting++;
+            } else if (isClosing(c)) {
+                if (nesting > 0) nesting--;
+                if (pendingEnd > 0) pendingEnd = i + 1;
+            } else if (c == '"') {
+                if (inAsciiQuote && pendingEnd > 0) pendingEnd = i + 1;
+                inAsciiQuote = !inAsciiQuote;
+            } else if (isSentenceEnd(c)) {
+                pendingDot = c == '.' && (pendingEnd == 0 || pendingDot);
+                pendingEnd = i + 1;
+            } else if (isClauseEnd(c) && isTopLevel()) {
+                lastClauseEnd = i + 1;
+                if (shouldEmitAt(i + 1, false)) {
+                    out = emit(out, i + 1);
+                    continue;
+                }
             }
-            buffer.delete(0, idx + 1);
-            return out;
-        }
 
-        // 长度阈值兜底
-        if (buffer.length() >= maxLen) {
-            String sentence = buffer.toString().trim();
-            if (!sentence.isEmpty()) {
-                out.add(sentence);
-                buffer.setLength(0);
+            if (i + 1 >= maxLen && !Character.isHighSurrogate(c)) {
+                int cut = lastSentenceEnd > 0 ? lastSentenceEnd : lastClauseEnd > 0 ? lastClauseEnd : i + 1;
+                out = emit(out, cut);
             }
         }
-        return out;
+        return out == null ? List.of() : out;
     }
 
     /**
-     * 冲刷剩余文本为一句
+     * 冲刷剩余文本为一块，并开始新的一轮
      */
-    public synchronized String flushRemainder() {
+    public String flushRemainder() {
         String rest = buffer.toString().trim();
-        buffer.setLength(0);
+        reset();
         return rest;
     }
 
-    private int findSentenceBreak(CharSequence sb) {
-        String s = sb.toString();
-        int idx = -1;
-        char[] punct = {'。', '！', '？', '.', '!', '?', '\n'};
-        for (char p : punct) {
-            int i = s.indexOf(p);
-            if (i >= 0) {
-                if (idx == -1 || i < idx) {
-                    idx = i;
-                }
-            }
+    /**
+     * 尚未切出的缓冲字符数
+     */
+    public int pendingChars() {
+        return buffer.length();
+    }
+
+    /**
+     * 丢弃缓冲与切分状态，下一块重新按“首块”处理
+     */
+    public void reset() {
+        buffer.setLength(0);
+        scanPos = 0;
+        pendingEnd = 0;
+        pendingDot = false;
+        lastSentenceEnd = 0;
+        lastClauseEnd = 0;
+        nesting = 0;
+        inAsciiQuote = false;
+        chunkIndex = 0;
+    }
+
+    private boolean shouldEmitAt(int end, boolean sentence) {
+        if (chunkIndex == 0) {
+            return (sentence || fastFirstChunk) && visibleLength(end) >= 2;
+        }
+        return sentence && visibleLength(end) >= targetLength();
+    }
+
+    /**
+     * 第 k 块（k≥1）的目标长度：MIN_LEN × 2^(k-1)，不超过 maxLen
+     */
+    private int targetLength() {
+        int shift = Math.min(chunkIndex - 1, 8);
+        return Math.min(maxLen, MIN_LEN << shift);
+    }
+
+    private List<String> emit(List<String> out, int end) {
+        String chunk = buffer.substring(0, end).trim();
+        buffer.delete(0, end);
+        scanPos -= end;
+        pendingEnd = Math.max(0, pendingEnd - end);
+        pendingDot &= pendingEnd > 0;
+        lastSentenceEnd = Math.max(0, lastSentenceEnd - end);
+        lastClauseEnd = Math.max(0, lastClauseEnd - end);
+        if (chunk.isEmpty()) {
+            return out;
+        }
+        chunkIndex++;
+        if (out == null) out = new ArrayList<>(2);
+        out.add(chunk);
+        return out;
+    }
+
+    /**
+     * buffer[0, end) 中的非空白字符数；end 不超过 maxLen，整轮仍为线性
+     */
+    private int visibleLength(int end) {
+        int n = 0;
+        for (int i = 0; i < end; i++) {
+            if (!Character.isWhitespace(buffer.charAt(i))) n++;
         }
-        return idx;
+        return n;
+    }
+
+    private boolean isTopLevel() {
+        return nesting == 0 && !inAsciiQuote;
+    }
+
+    private boolean extendsSentenceEnd(char c) {
+        return isSentenceEnd(c) || isClosing(c) || (c == '"' && inAsciiQuote);
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '.' || c == '!' || c == '?' || c == '；' || c == ';'
+                || c == '…' || c == '\n';
+    }
+
+    private static boolean isClauseEnd(char c) {
+        return c == '，' || c == '、' || c == ',';
+    }
+
+    private static boolean isOpening(char c) {
+        return c == '“' || c == '‘' || c == '「' || c == '『' || c == '（' || c == '(' || c == '【' || c == '[' || c == '《';
+    }
+
+    private static boolean isClosing(char c) {
+        return c == '”' || c == '’' || c == '」' || c == '』' || c == '）' || c == ')' || c == '】' || c == ']' || c == '》';
     }
 }
@@ -0,0 +1,77 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 哈希时间轮：按到期时间把对象挂到 tick 对应的槽上，每次推进只处理走过的槽
+ * 登记与推进都是 O(1)（均摊），不需要每个刻度扫描全部会话；到期时间超过一圈的对象按绝对 tick 判断，
+ * 轮到时尚未到期则留在槽内等下一圈。不支持取消：调用方在到期回调里自行判断对象是否仍有效并重新登记。
+ * 方法由 this 锁串行化。
+ */
+final class TimingWheel<T> {
+
+    private static final class Entry<T> {
+        final T item;
+        final long tick;
+
+        Entry(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+
+    private final long tickMs;
+    private final List<Entry<T>>[] slots;
+    private final int mask;
+    private long cursor;    // 下一个待处理的 tick
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMs, int slotCount, long nowMs) {
+        this.tickMs = Math.max(1, tickMs);
+        int n = Integer.highestOneBit(Math.max(2, slotCount - 1)) << 1;
+        this.slots = new List[n];
+        for (int i = 0; i < n; i++) slots[i] = new ArrayList<>();
+        this.mask = n - 1;
+        this.cursor = nowMs / this.tickMs;
+    }
+
+    /**
+     * 登记对象在 deadlineMs 之后到期（向上取整到刻度，不会提前；已过期的在下一次推进时到期）
+     */
+    synchronized void schedule(T item, long deadlineMs) {
+        long tick = Math.max(cursor, (deadlineMs + tickMs - 1) / tickMs);
+        slots[(int) (tick & mask)].add(new Entry<>(item, tick));
+        size++;
+    }
+
+    /**
+     * 推进到 nowMs，取出所有已到期的对象
+     */
+    synchronized List<T> advance(long nowMs) {
+        long target = nowMs / tickMs;
+        if (target < cursor) return List.of();
+        List<T> expired = new ArrayList<>();
+        // 落后超过一圈时每个槽只需扫描一次
+        long steps = Math.min(target - cursor + 1, slots.length);
+        for (long t = cursor; t < cursor + steps; t++) {
+            Iterator<Entry<T>> it = slots[(int) (t & mask)].iterator();
+            while (it.hasNext()) {
+                Entry<T> e = it.next();
+                if (e.tick <= target) {
+                    it.remove();
+                    size--;
+                    expired.add(e.item);
+                }
+            }
+        }
+        cursor = target + 1;
+        return expired;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
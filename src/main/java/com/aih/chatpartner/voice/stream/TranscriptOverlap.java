@@ -0,0 +1,65 @@
+package com.aih.chatpartner.voice.stream;
+
+/**
+ * ASR 重连重放后的转写去重
+ * 重放从上一条连接最后确认的位置开始，确认点可能略早于真实断句，新连接的首条结果会重复上一条 final 的末尾。
+ * 这里找出“上一条 final 的后缀 == 新结果的前缀”的最长重叠并去掉；比较时忽略标点、空白与大小写，
+ * 两条连接的断句标点可能不同。重叠只可能出现在重放的音频里，长度受重放时长限制；
+ * 新结果整句都落在重叠里时视为用户重复说了一遍，原样保留。
+ */
+final class TranscriptOverlap {
+
+    /**
+     * 少于该字数的重叠视为巧合（如连说两次“好的”），不去除
+     */
+    static final int MIN_OVERLAP = 4;
+
+    /**
+     * 估算重放音频最多能覆盖的字数：按每秒 8 个有效字符，宽于正常语速
+     */
+    static final int MAX_CHARS_PER_SECOND = 8;
+
+    private TranscriptOverlap() {
+    }
+
+    /**
+     * 重放 replayedMs 毫秒音频最多能转写出的有效字符数
+     */
+    static int maxOverlapChars(long replayedMs) {
+        if (replayedMs <= 0) return 0;
+        return (int) Math.min(Integer.MAX_VALUE, (replayedMs * MAX_CHARS_PER_SECOND + 999) / 1000);
+    }
+
+    /**
+     * 去掉 next 开头与 prev 末尾重叠的部分，重叠不超过 maxOverlap 个有效字符；
+     * next 完全包含在重叠中时原样返回，不会返回空串
+     */
+    static String strip(String prev, String next, int maxOverlap) {
+        if (prev == null || prev.isEmpty() || next == null || next.isEmpty()) return next;
+        String a = SpeculativeReply.normalize(prev);
+        // next 中每个有效字符的原始下标
+        int[] at = new int[next.length()];
+        StringBuilder b = new StringBuilder(next.length());
+        for (int i = 0; i < next.length(); i++) {
+            char c = next.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                at[b.length()] = i;
+                b.append(Character.toLowerCase(c));
+            }
+        }
+        String bs = b.toString();
+        for (int k = Math.min(Math.min(a.length(), bs.length()), maxOverlap); k >= MIN_OVERLAP; k--) {
+            if (a.regionMatches(a.length() - k, bs, 0, k)) {
+                if (k == bs.length()) return next;
+                return trimLeading(next.substring(at[k]));
+            }
+        }
+        return next;
+    }
+
+    private static String trimLeading(String s) {
+        int i = 0;
+        while (i < s.length() && !Character.isLetterOrDigit(s.charAt(i))) i++;
+        return s.substring(i);
+    }
+}
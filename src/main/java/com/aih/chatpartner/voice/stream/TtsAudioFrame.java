@@ -0,0 +1,85 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * 二进制 TTS 音频帧（客户端在 start 消息中以 audioOut=binary 开启，默认仍为 JSON+base64 的 tts_chunk）
+ * <pre>
+ * 偏移  长度  含义
+ * 0     1     版本号，当前为 1
+ * 1     1     标志位：低 4 位为编码（0 未知 / 1 mp3 / 2 pcm / 3 wav / 4 ogg_opus），bit4 表示句子首个分片
+ * 2     4     句子序号（大端，与 tts_start/tts_done 的 seq 一致）
+ * 6     4     句内分片序号（大端，从 0 开始）
+ * 10    ...   音频数据
+ * </pre>
+ */
+final class TtsAudioFrame {
+
+    static final int HEADER_SIZE = 10;
+    static final byte VERSION = 1;
+
+    static final int CODEC_UNKNOWN = 0;
+    static final int CODEC_MP3 = 1;
+    static final int CODEC_PCM = 2;
+    static final int CODEC_WAV = 3;
+    static final int CODEC_OGG_OPUS = 4;
+
+    static final int FLAG_FIRST_CHUNK = 0x10;
+
+    private TtsAudioFrame() {
+    }
+
+    static int codecOf(String encoding) {
+        if (encoding == null) return CODEC_UNKNOWN;
+        return switch (encoding.toLowerCase()) {
+            case "mp3" -> CODEC_MP3;
+            case "pcm", "raw" -> CODEC_PCM;
+            case "wav" -> CODEC_WAV;
+            case "ogg_opus", "opus" -> CODEC_OGG_OPUS;
+            default -> CODEC_UNKNOWN;
+        };
+    }
+
+    /**
+     * 将七牛返回的 base64 分片直接解码进帧数组，不经过中间的音频数组
+     * JDK 的 Base64.Decoder 只能写到目标数组开头，这里先解码到帧首再在数组内后移到帧头之后。
+     *
+     * @throws IllegalArgumentException base64 不合法
+     */
+    static byte[] encode(long sentenceSeq, int chunkSeq, int codec, String base64) {
+        byte[] src = base64.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] frame = new byte[HEADER_SIZE + decodedLength(src)];
+        int n = Base64.getDecoder().decode(src, frame);
+        System.arraycopy(frame, 0, frame, HEADER_SIZE, n);
+        if (HEADER_SIZE + n != frame.length) {
+            frame = Arrays.copyOf(frame, HEADER_SIZE + n);
+        }
+        frame[0] = VERSION;
+        frame[1] = (byte) ((codec & 0x0f) | (chunkSeq == 0 ? FLAG_FIRST_CHUNK : 0));
+        putInt(frame, 2, (int) sentenceSeq);
+        putInt(frame, 6, chunkSeq);
+        return frame;
+    }
+
+    /**
+     * 解码后的字节数（允许省略末尾的 '=' 填充）
+     */
+    private static int decodedLength(byte[] src) {
+        int len = src.length;
+        int pad = 0;
+        while (pad < 2 && len > 0 && src[len - 1] == '=') {
+            len--;
+            pad++;
+        }
+        return (int) ((long) len * 3 / 4);
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+}
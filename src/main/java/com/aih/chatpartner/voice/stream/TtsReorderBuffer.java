@@ -0,0 +1,122 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 多句并发合成时的重排缓冲区：按句子序号缓存音频分片，严格按序号顺序输出。
+ * 队首句子的分片直接透传，后续句子的分片在其成为队首后一次性冲刷。
+ */
+class TtsReorderBuffer {
+
+    /**
+     * 按序输出的目标
+     */
+    interface Sink {
+        void start(long seq, String text);
+
+        void chunk(long seq, String base64);
+
+        void done(long seq);
+
+        void error(long seq, Throwable t);
+    }
+
+    private static final class Slot {
+        final String text;
+        final ArrayDeque<String> chunks = new ArrayDeque<>();
+        boolean done;
+        Throwable error;
+
+        Slot(String text) { this.text = text; }
+    }
+
+    private final Sink sink;
+    private final Map<Long, Slot> slots = new HashMap<>();
+    private long head = 1;          // 下一个待输出的句子序号
+    private boolean headStarted = false;
+
+    TtsReorderBuffer(Sink sink) {
+        this.sink = sink;
+    }
+
+    synchronized void open(long seq, String text) {
+        if (seq < head) return;
+        slots.put(seq, new Slot(text));
+        advance();
+    }
+
+    synchronized void chunk(long seq, String base64) {
+        Slot slot = slots.get(seq);
+        if (slot == null || slot.done) return; // 已被打断或已结束
+        slot.chunks.add(base64);
+        if (seq == head) advance();
+    }
+
+    synchronized void complete(long seq) {
+        Slot slot = slots.get(seq);
+        if (slot == null) return;
+        slot.done = true;
+        if (seq == head) advance();
+    }
+
+    synchronized void fail(long seq, Throwable t) {
+        Slot slot = slots.get(seq);
+        if (slot == null) return;
+        slot.done = true;
+        slot.error = t;
+        if (seq == head) advance();
+    }
+
+    /**
+     * 丢弃所有未输出内容，之后从 nextSeq 开始输出
+     */
+    synchronized void reset(long nextSeq) {
+        slots.clear();
+        head = nextSeq;
+        headStarted = false;
+    }
+
+    /**
+     * 尚未完整输出的句子数（合成中 + 已合成待输出）
+     */
+    synchronized int pending() {
+        return slots.size();
+    }
+
+    /**
+     * 缓冲中的句子文本与 base64 音频分片的字符总数
+     */
+    synchronized long bufferedChars() {
+        long n = 0;
+        for (Slot slot : slots.values()) {
+            n += slot.text == null ? 0 : slot.text.length();
+            for (String chunk : slot.chunks) n += chunk.length();
+        }
+        return n;
+    }
+
+    private void advance() {
+        Slot slot;
+        while ((slot = slots.get(head)) != null) {
+            if (!headStarted) {
+                headStarted = true;
+                sink.start(head, slot.text);
+            }
+            String c;
+            while ((c = slot.chunks.poll()) != null) {
+                sink.chunk(head, c);
+            }
+            if (!slot.done) return;
+            if (slot.error != null) {
+                sink.error(head, slot.error);
+            } else {
+                sink.done(head);
+            }
+            slots.remove(head);
+            head++;
+            headStarted = false;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 可复用的七牛云 TTS WebSocket 连接，由 {@link TtsWsPool} 管理。
+ * 同一时刻只服务一个句子：通过 {@link #begin(Listener, byte[])} 绑定当前句子的回调，句子结束后解绑归还连接池。
+ */
+@Slf4j
+class TtsWsConnection extends WebSocketClient {
+
+    /**
+     * 单个句子合成过程的回调
+     */
+    interface Listener {
+        void onAudio(String base64);
+
+        void onDone();
+
+        void onError(Throwable t);
+
+        void onClosed(int code, String reason);
+    }
+
+    private final ObjectMapper objectMapper;
+    final String voiceType;
+    final long createdAtMs = System.currentTimeMillis();
+    volatile long lastUsedAtMs = createdAtMs;
+    volatile long handshakeNanos = -1L;
+    /** 已被连接池淘汰（只计数一次） */
+    final AtomicBoolean retired = new AtomicBoolean(false);
+
+    private volatile Listener listener;
+
+    TtsWsConnection(URI uri, Map<String, String> headers, int connectTimeoutMs,
+                    String voiceType, ObjectMapper objectMapper) {
+        super(uri, new Draft_6455(), headers, connectTimeoutMs);
+        this.voiceType = voiceType;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 绑定句子回调并发送合成请求
+     */
+    void begin(Listener l, byte[] requestPayload) {
+        this.listener = l;
+        this.lastUsedAtMs = System.currentTimeMillis();
+        send(requestPayload);
+    }
+
+    /**
+     * 解绑当前句子回调
+     */
+    void end() {
+        this.listener = null;
+        this.lastUsedAtMs = System.currentTimeMillis();
+    }
+
+    boolean isIdle() { return listener == null; }
+
+    @Override
+    public void onOpen(ServerHandshake handshakedata) {
+        log.debug("TTS WS connected, voiceType={}, status={}", voiceType, handshakedata.getHttpStatus());
+    }
+
+    @Override
+    public void onMessage(String message) { handleJsonMessage(message); }
+
+    @Override
+    public void onMessage(ByteBuffer bytes) {
+        // Some servers may send JSON in binary frames
+        handleJsonMessage(StandardCharsets.UTF_8.decode(bytes).toString());
+    }
+
+    private void handleJsonMessage(String message) {
+        Listener l = this.listener;
+        if (l == null) {
+            log.debug("TTS message on idle connection ignored, voiceType={}", voiceType);
+            return;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(message);
+            if (node.has("data")) {
+                String base64 = node.get("data").asText("");
+                if (!base64.isEmpty()) {
+                    l.onAudio(base64);
+                }
+            }
+            if (node.has("sequence") && node.get("sequence").asInt(0) < 0) {
+                l.onDone();
+            }
+        } catch (Exception e) {
+            log.error("Parse TTS message error", e);
+            l.onError(e);
+        }
+    }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote) {
+        log.debug("TTS WS closed: {} {} remote={} voiceType={}", code, reason, remote, voiceType);
+        Listener l = this.listener;
+        if (l != null) l.onClosed(code, reason);
+    }
+
+    @Override
+    public void onError(Exception ex) {
+        log.error("TTS WS error, voiceType={}", voiceType, ex);
+        Listener l = this.listener;
+        if (l != null) l.onError(ex);
+    }
+}
@@ -0,0 +1,392 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.config.QiniuConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 七牛云 TTS WebSocket 连接池
+ * - 按音色（握手头 VoiceType）分桶保存空闲连接，会话 start 时预热
+ * - 每个句子租借一条连接，正常结束后归还；取消/出错的连接直接淘汰
+ * - 租借时做健康检查（是否打开、是否超过最大生命周期），后台定期回收空闲超时连接
+ * - 单节点连接总数受 maxTotal 限制，超限时等待归还，超时失败
+ */
+@Slf4j
+@Component
+public class TtsWsPool {
+
+    private final QiniuConfig qiniuConfig;
+    private final ObjectMapper objectMapper;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotReleased = lock.newCondition();
+    // 以下三个字段受 lock 保护
+    private final Map<String, Deque<TtsWsConnection>> idle = new HashMap<>();
+    private final Map<String, Integer> dialing = new HashMap<>(); // 预热中正在握手的连接，按音色
+    private int total = 0; // 包含正在握手、空闲与租借中的连接
+
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tts-pool-", 0).factory());
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "tts-pool-evictor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 指标
+    private final LongAdder leases = new LongAdder();
+    private final LongAdder warmHits = new LongAdder();
+    private final LongAdder leaseTimeouts = new LongAdder();
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder handshakeFailures = new LongAdder();
+    private final LongAdder handshakeNanosTotal = new LongAdder();
+    private final AtomicLong handshakeNanosMax = new AtomicLong();
+    private final LongAdder waitNanosTotal = new LongAdder();
+    private final AtomicLong waitNanosMax = new AtomicLong();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+
+    public TtsWsPool(QiniuConfig qiniuConfig, ObjectMapper objectMapper) {
+        this.qiniuConfig = qiniuConfig;
+        this.objectMapper = objectMapper;
+        long interval = Math.max(1000L, cfg().getEvictIntervalMs());
+        evictor.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private QiniuConfig.TtsPoolConfig cfg() {
+        return qiniuConfig.getTts().getPool();
+    }
+
+    /**
+     * 异步租借一条指定音色的连接（不阻塞调用线程）
+     */
+    CompletableFuture<TtsWsConnection> lease(String voiceType) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return leaseBlocking(voiceType);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * 为指定音色预热空闲连接，补足到 prewarmPerVoice 条（计入正在握手的预热连接）
+     */
+    public void prewarm(String voiceType) {
+        if (voiceType == null || voiceType.isBlank()) return;
+        executor.execute(() -> {
+            int want;
+            lock.lock();
+            try {
+                Deque<TtsWsConnection> q = idle.get(voiceType);
+                int have = (q == null ? 0 : q.size()) + dialing.getOrDefault(voiceType, 0);
+                want = Math.min(cfg().getPrewarmPerVoice() - have, cfg().getMaxTotal() - total);
+                if (want <= 0) return;
+                total += want;
+                dialing.merge(voiceType, want, Integer::sum);
+            } finally {
+                lock.unlock();
+            }
+            for (int i = 0; i < want; i++) {
+                TtsWsConnection conn = null;
+                try {
+                    conn = dial(voiceType);
+                } catch (Exception e) {
+                    log.warn("TTS pool prewarm failed, voiceType={}, err={}", voiceType, e.getMessage());
+                }
+                // 握手结束与放入空闲队列在同一次加锁内完成，leased() 不会把它算作被占用
+                lock.lock();
+                try {
+                    dialing.computeIfPresent(voiceType, (k, n) -> n > 1 ? n - 1 : null);
+                    if (conn != null) release(conn);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * 句子正常结束，归还连接；不可复用时直接淘汰
+     */
+    void release(TtsWsConnection conn) {
+        if (conn == null) return;
+        conn.end();
+        if (!isHealthy(conn)) {
+            discard(conn);
+            return;
+        }
+        lock.lock();
+        try {
+            Deque<TtsWsConnection> q = idle.computeIfAbsent(conn.voiceType, k -> new ArrayDeque<>());
+            if (q.size() >= cfg().getMaxIdlePerVoice()) {
+                discard(conn);
+                return;
+            }
+            // LIFO：优先复用最近使用过的连接，冷连接更容易被回收
+            q.offerFirst(conn);
+            slotReleased.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 淘汰连接（取消、出错或不再健康）
+     */
+    void discard(TtsWsConnection conn) {
+        if (conn == null || !conn.retired.compareAndSet(false, true)) return;
+        conn.end();
+        try {
+            conn.close();
+        } catch (Exception ignore) {
+        }
+        discards.increment();
+        releaseSlot();
+    }
+
+    private void releaseSlot() {
+        lock.lock();
+        try {
+            total--;
+            slotReleased.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TtsWsConnection leaseBlocking(String voiceType) throws Exception {
+        leases.increment();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(cfg().getLeaseTimeoutMs());
+        lock.lock();
+        try {
+            while (true) {
+                TtsWsConnection c = pollHealthyIdle(voiceType);
+                if (c != null) {
+                    warmHits.increment();
+                    recordWait(start);
+                    return c;
+                }
+                if (total < cfg().getMaxTotal()) {
+                    total++;
+                    break;
+                }
+                // 名额已满：先尝试腾出其它音色的空闲连接
+                if (evictOneIdle(voiceType)) {
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    leaseTimeouts.increment();
+                    throw new IllegalStateException("TTS pool exhausted, total=" + total);
+                }
+                slotReleased.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+        recordWait(start);
+        return dial(voiceType);
+    }
+
+    /**
+     * 调用方已占用一个名额；握手失败时归还名额
+     */
+    private TtsWsConnection dial(String voiceType) throws Exception {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer " + qiniuConfig.getApiKey());
+        // 某些实现需要在握手头中附带 VoiceType，参考官方示例
+        headers.put("VoiceType", voiceType);
+        TtsWsConnection conn;
+        try {
+            conn = new TtsWsConnection(new URI(qiniuConfig.getTtsWsUrl()), headers,
+                    cfg().getConnectTimeoutMs(), voiceType, objectMapper);
+        } catch (Exception e) {
+            releaseSlot();
+            throw e;
+        }
+        long t0 = System.nanoTime();
+        boolean ok;
+        try {
+            ok = conn.connectBlocking(cfg().getConnectTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            ok = false;
+        }
+        long cost = System.nanoTime() - t0;
+        handshakes.increment();
+        handshakeNanosTotal.add(cost);
+        handshakeNanosMax.accumulateAndGet(cost, Math::max);
+        if (!ok) {
+            handshakeFailures.increment();
+            discard(conn);
+            throw new IllegalStateException("TTS WS handshake failed, voiceType=" + voiceType);
+        }
+        conn.handshakeNanos = cost;
+        log.debug("TTS WS dialed, voiceType={}, handshake={}ms", voiceType, TimeUnit.NANOSECONDS.toMillis(cost));
+        return conn;
+    }
+
+    // 需持有 lock
+    private TtsWsConnection pollHealthyIdle(String voiceType) {
+        Deque<TtsWsConnection> q = idle.get(voiceType);
+        if (q == null) return null;
+        TtsWsConnection c;
+        while ((c = q.pollFirst()) != null) {
+            if (isHealthy(c)) return c;
+            discard(c);
+        }
+        return null;
+    }
+
+    // 需持有 lock：回收任意一条其它音色的空闲连接
+    private boolean evictOneIdle(String exceptVoiceType) {
+        for (Map.Entry<String, Deque<TtsWsConnection>> e : idle.entrySet()) {
+            if (e.getKey().equals(exceptVoiceType)) continue;
+            TtsWsConnection c = e.getValue().pollLast();
+            if (c != null) {
+                evictions.increment();
+                discard(c);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isHealthy(TtsWsConnection c) {
+        return c.isOpen() && !c.retired.get()
+                && System.currentTimeMillis() - c.createdAtMs < cfg().getMaxLifetimeMs();
+    }
+
+    private void evictIdle() {
+        List<TtsWsConnection> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            for (Deque<TtsWsConnection> q : idle.values()) {
+                Iterator<TtsWsConnection> it = q.iterator();
+                while (it.hasNext()) {
+                    TtsWsConnection c = it.next();
+                    if (!isHealthy(c) || now - c.lastUsedAtMs >= cfg().getIdleTimeoutMs()) {
+                        it.remove();
+                        expired.add(c);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (TtsWsConnection c : expired) {
+            evictions.increment();
+            discard(c);
+        }
+        if (!expired.isEmpty()) {
+            log.debug("TTS pool evicted {} idle connections", expired.size());
+        }
+    }
+
+    private void recordWait(long startNanos) {
+        long w = System.nanoTime() - startNanos;
+        waitNanosTotal.add(w);
+        waitNanosMax.accumulateAndGet(w, Math::max);
+    }
+
+    /**
+     * 被会话占用的连接数，含为句子租借时正在握手的；空闲与预热中的不计
+     */
+    int leased() {
+        lock.lock();
+        try {
+            int free = 0;
+            for (Deque<TtsWsConnection> q : idle.values()) free += q.size();
+            for (int n : dialing.values()) free += n;
+            return Math.max(0, total - free);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int maxTotal() {
+        return cfg().getMaxTotal();
+    }
+
+    /**
+     * 连接池指标快照
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        int idleCount = 0;
+        int dialingCount = 0;
+        Map<String, Integer> idleByVoice = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            m.put("total", total);
+            for (Map.Entry<String, Deque<TtsWsConnection>> e : idle.entrySet()) {
+                idleByVoice.put(e.getKey(), e.getValue().size());
+                idleCount += e.getValue().size();
+            }
+            for (int n : dialing.values()) dialingCount += n;
+        } finally {
+            lock.unlock();
+        }
+        long leaseCount = leases.sum();
+        long hsCount = handshakes.sum();
+        m.put("idle", idleCount);
+        m.put("dialing", dialingCount);
+        m.put("idleByVoice", idleByVoice);
+        m.put("maxTotal", cfg().getMaxTotal());
+        m.put("leases", leaseCount);
+        m.put("warmHits", warmHits.sum());
+        m.put("leaseTimeouts", leaseTimeouts.sum());
+        m.put("waitAvgMs", leaseCount == 0 ? 0.0 : waitNanosTotal.sum() / 1e6 / leaseCount);
+        m.put("waitMaxMs", waitNanosMax.get() / 1e6);
+        m.put("handshakes", hsCount);
+        m.put("handshakeFailures", handshakeFailures.sum());
+        m.put("handshakeAvgMs", hsCount == 0 ? 0.0 : handshakeNanosTotal.sum() / 1e6 / hsCount);
+        m.put("handshakeMaxMs", handshakeNanosMax.get() / 1e6);
+        m.put("evictions", evictions.sum());
+        m.put("discards", discards.sum());
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictor.shutdownNow();
+        executor.shutdownNow();
+        List<TtsWsConnection> all = new ArrayList<>();
+        lock.lock();
+        try {
+            idle.values().forEach(all::addAll);
+            idle.clear();
+        } finally {
+            lock.unlock();
+        }
+        all.forEach(this::discard);
+    }
+}
@@ -0,0 +1,134 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 回复进行中到达的用户语句：合并为一轮，回复结束后一次性交给 LLM
+ * 用户常在回复播放时接着说（一句话被 ASR 断成几条 final，或补充一句），逐条排队会对每条各调用一次 LLM，
+ * 回复一个接一个堆叠且多半已过时。这里把待处理的语句拼成一轮：
+ * - 开启合并时，新语句并入最后一轮；关闭时每条语句各成一轮（即原先的排队行为）
+ * - 最后一条语句到达后 graceMs 内不出队，给用户接着说的余地
+ * - 出队的一轮按一条用户消息入库、对应一次 LLM 调用，省下的调用数计入 llmCallsAvoided
+ * - 会话结束时尚未出队的语句只入库、不再回复，计入 dropped
+ * 非线程安全，只在会话 actor 内调用。
+ */
+final class TurnCoalescer {
+
+    /**
+     * 节点级统计，由所有会话共享
+     */
+    static final class Stats {
+        final LongAdder utterances = new LongAdder();
+        final LongAdder turns = new LongAdder();
+        final LongAdder llmCallsAvoided = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final AtomicLong maxParts = new AtomicLong();
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("utterances", utterances.sum());
+            m.put("turns", turns.sum());
+            m.put("llmCallsAvoided", llmCallsAvoided.sum());
+            m.put("dropped", dropped.sum());
+            m.put("maxPartsPerTurn", maxParts.get());
+            return m;
+        }
+    }
+
+    private static final class Turn {
+        final StringBuilder text = new StringBuilder();
+        int parts;
+    }
+
+    private static final String TERMINATORS = "。！？，、；：…,.!?;:~～";
+
+    private final ArrayDeque<Turn> turns = new ArrayDeque<>();
+    private final boolean merge;
+    private final long graceMs;
+    private final Stats stats;
+    private long lastAtMs;
+
+    TurnCoalescer(boolean merge, long graceMs, Stats stats) {
+        this.merge = merge;
+        this.graceMs = Math.max(0, graceMs);
+        this.stats = stats;
+    }
+
+    void add(String utterance, long nowMs) {
+        if (utterance == null || utterance.isBlank()) return;
+        String u = utterance.trim();
+        Turn last = turns.peekLast();
+        if (!merge || last == null) {
+            last = new Turn();
+            turns.addLast(last);
+        }
+        join(last.text, u);
+        last.parts++;
+        lastAtMs = nowMs;
+        stats.utterances.increment();
+    }
+
+    boolean isEmpty() {
+        return turns.isEmpty();
+    }
+
+    /**
+     * 队首一轮可出队的时刻：合并时等到最后一条语句的宽限期结束，不合并时立即
+     */
+    long readyAt() {
+        return merge && turns.size() == 1 ? lastAtMs + graceMs : 0;
+    }
+
+    /**
+     * 取出队首一轮的合并文本；队列为空返回 null
+     */
+    String take() {
+        Turn t = turns.pollFirst();
+        if (t == null) return null;
+        stats.turns.increment();
+        stats.llmCallsAvoided.add(t.parts - 1);
+        stats.maxParts.accumulateAndGet(t.parts, Math::max);
+        return t.text.toString();
+    }
+
+    /**
+     * 会话结束：取出所有待处理语句的拼接文本（只入库、不再回复），队列为空返回 null
+     */
+    String drain() {
+        if (turns.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder();
+        for (Turn t : turns) {
+            stats.dropped.add(t.parts);
+            join(sb, t.text.toString());
+        }
+        turns.clear();
+        return sb.toString();
+    }
+
+    int pendingChars() {
+        int n = 0;
+        for (Turn t : turns) n += t.text.length();
+        return n;
+    }
+
+    /**
+     * 拼接两段语句：前一段已以标点结尾时直接相接，否则中文间补逗号、英文间补空格
+     */
+    static void join(StringBuilder sb, String next) {
+        if (sb.length() > 0 && !next.isEmpty()) {
+            char prev = sb.charAt(sb.length() - 1);
+            if (TERMINATORS.indexOf(prev) < 0 && TERMINATORS.indexOf(next.charAt(0)) < 0) {
+                sb.append(isAsciiWord(prev) && isAsciiWord(next.charAt(0)) ? " " : "，");
+            }
+        }
+        sb.append(next);
+    }
+
+    private static boolean isAsciiWord(char c) {
+        return c < 128 && Character.isLetterOrDigit(c);
+    }
+}
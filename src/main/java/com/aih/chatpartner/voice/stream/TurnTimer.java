@@ -0,0 +1,86 @@
+package com.aih.chatpartner.voice.stream;
+
+/**
+ * 一轮回复的分阶段计时（只在会话 actor 内使用，非线程安全）
+ * 本轮的句子是 TTS 序号 [firstSeq, lastSeq]：创建时还不知道 lastSeq，LLM 结束时确定；
+ * 各阶段第一次发生时记入 {@link VoiceMetrics}，最后一句 tts_done 时本轮完成。
+ * 时间均为 System.nanoTime()，耗时以毫秒输出，-1 表示尚未发生。
+ */
+final class TurnTimer {
+
+    private final VoiceMetrics metrics;
+    private final long startNanos;
+    final long firstSeq;
+    private long lastSeq = -1;                              // LLM 结束前未知
+
+    long llmFirstTokenMs = -1;
+    long firstChunkMs = -1;
+    long firstAudioMs = -1;
+    long turnMs = -1;
+
+    TurnTimer(VoiceMetrics metrics, long firstSeq, long startNanos) {
+        this.metrics = metrics;
+        this.firstSeq = firstSeq;
+        this.startNanos = startNanos;
+        metrics.turns.increment();
+    }
+
+    void llmToken(long now) {
+        if (llmFirstTokenMs < 0) llmFirstTokenMs = elapsed(metrics.llmFirstToken, now);
+    }
+
+    void chunk(long now) {
+        if (firstChunkMs < 0) firstChunkMs = elapsed(metrics.firstChunk, now);
+    }
+
+    /**
+     * 句子 seq 是否属于本轮（LLM 未结束时，之后分配的序号都属于本轮）
+     */
+    boolean owns(long seq) {
+        return seq >= firstSeq && (lastSeq < 0 || seq <= lastSeq);
+    }
+
+    void audio(long now) {
+        if (firstAudioMs < 0) firstAudioMs = elapsed(metrics.firstAudio, now);
+    }
+
+    /**
+     * LLM 结束，本轮最后一句的序号为 lastSeq；没有任何句子时本轮立即完成
+     *
+     * @return 本轮是否已完成
+     */
+    boolean llmDone(long lastSeq, long now) {
+        this.lastSeq = lastSeq;
+        if (lastSeq < firstSeq) {
+            this.lastSeq = firstSeq - 1;
+            finish(now);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 句子 seq 合成结束（成功或失败）
+     *
+     * @return 是否为本轮最后一句，此时本轮完成
+     */
+    boolean ttsDone(long seq, long now) {
+        if (lastSeq < 0 || seq != lastSeq || turnMs >= 0) return false;
+        finish(now);
+        return true;
+    }
+
+    boolean complete() {
+        return turnMs >= 0;
+    }
+
+    private void finish(long now) {
+        turnMs = elapsed(metrics.turnComplete, now);
+    }
+
+    private long elapsed(LatencyHistogram h, long now) {
+        long nanos = now - startNanos;
+        h.recordNanos(nanos);
+        return nanos / 1_000_000;
+    }
+}
@@ -0,0 +1,60 @@
+package com.aih.chatpartner.voice.stream;
+
+import lombok.Data;
+
+/**
+ * VAD 参数，客户端可在 start 消息的 vad 字段中逐项覆盖
+ */
+@Data
+public class VadConfig {
+
+    /**
+     * 采样率，决定分析窗口的样本数
+     */
+    private Integer sampleRate = 16000;
+
+    /**
+     * 分析窗口时长（毫秒）
+     */
+    private Integer windowMs = 20;
+
+    /**
+     * 语音最低 RMS（0~32767），低于该值一律视为静音
+     */
+    private Double minRms = 300.0;
+
+    /**
+     * 语音 RMS 需高于噪声基线的倍数
+     */
+    private Double thresholdRatio = 2.5;
+
+    /**
+     * 过零率上限（次/样本），高于该值的窗口视为嘶声类噪声
+     */
+    private Double zcrMax = 0.25;
+
+    /**
+     * 连续多长时间（毫秒）判定为语音才进入“说话中”
+     */
+    private Integer attackMs = 60;
+
+    /**
+     * 语音结束后保持“说话中”的时长（毫秒），避免字间停顿造成抖动
+     */
+    private Integer hangoverMs = 300;
+
+    /**
+     * 返回逐项补齐默认值的副本：客户端显式传 null 的字段按默认值处理
+     */
+    public VadConfig withDefaults() {
+        VadConfig c = new VadConfig();
+        if (sampleRate != null) c.setSampleRate(sampleRate);
+        if (windowMs != null) c.setWindowMs(windowMs);
+        if (minRms != null) c.setMinRms(minRms);
+        if (thresholdRatio != null) c.setThresholdRatio(thresholdRatio);
+        if (zcrMax != null) c.setZcrMax(zcrMax);
+        if (attackMs != null) c.setAttackMs(attackMs);
+        if (hangoverMs != null) c.setHangoverMs(hangoverMs);
+        return c;
+    }
+}
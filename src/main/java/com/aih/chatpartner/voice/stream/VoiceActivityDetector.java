@@ -0,0 +1,27 @@
+package com.aih.chatpartner.voice.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 流式语音活动检测（VAD），用于实时语音链路中的打断判定
+ * 每个会话一个实例，由接收音频的线程串行调用，实现无需线程安全
+ */
+public interface VoiceActivityDetector {
+
+    /**
+     * 输入一段 16bit 小端 PCM（长度任意，可跨帧拼接），不改变 pcm 的 position/limit
+     *
+     * @return 处理完这段音频后是否处于“说话中”状态
+     */
+    boolean process(ByteBuffer pcm);
+
+    /**
+     * 当前是否处于“说话中”状态
+     */
+    boolean isSpeaking();
+
+    /**
+     * 清空状态（含噪声基线），重新开始检测
+     */
+    void reset();
+}
@@ -0,0 +1,167 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.common.BaseResponse;
+import com.aih.chatpartner.config.VoiceStreamConfig;
+import com.aih.chatpartner.exception.ErrorCode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 节点准入控制：/ws/voice-chat 握手阶段判断本节点是否还能承接新会话
+ * - 各项用量（会话数、估算内存、LLM 流、ASR/TTS 连接）与预算之比即饱和度，任一项达到 highWatermark 时拒绝，
+ *   为已有会话的后续回复留出余量，避免突发流量让所有在线用户一起变慢
+ * - 拒绝时握手返回 503 + Retry-After，响应体为 BaseResponse（code=42900，data 含原因与重试秒数）；
+ *   重试间隔叠加随机抖动，避免被拒绝的客户端同时重连
+ * - 饱和度快照供管理端与扩缩容使用
+ * 并发握手可能同时通过判断，会话数与内存的硬上限仍由 {@link SessionLifecycle#admit} 在连接建立后兜底。
+ */
+@Slf4j
+final class VoiceAdmission implements HandshakeInterceptor {
+
+    /**
+     * 一项用量；limit ≤ 0 表示不限制
+     */
+    record Gauge(String name, long used, long limit) {
+
+        double saturation() {
+            return limit > 0 ? (double) used / limit : 0.0;
+        }
+    }
+
+    /**
+     * 节点级统计
+     */
+    static final class Stats {
+        final LongAdder admitted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final Map<String, LongAdder> rejectedBy = new ConcurrentHashMap<>();
+
+        void reject(String gauge) {
+            rejected.increment();
+            rejectedBy.computeIfAbsent(gauge, k -> new LongAdder()).increment();
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("admitted", admitted.sum());
+            m.put("rejected", rejected.sum());
+            Map<String, Long> by = new LinkedHashMap<>();
+            rejectedBy.forEach((k, v) -> by.put(k, v.sum()));
+            m.put("rejectedBy", by);
+            return m;
+        }
+    }
+
+    private final VoiceStreamConfig.AdmissionConfig cfg;
+    private final Supplier<List<Gauge>> gauges;
+    private final ObjectMapper objectMapper;
+    private final Stats stats;
+
+    VoiceAdmission(VoiceStreamConfig.AdmissionConfig cfg, Supplier<List<Gauge>> gauges, ObjectMapper objectMapper, Stats stats) {
+        this.cfg = cfg;
+        this.gauges = gauges;
+        this.objectMapper = objectMapper;
+        this.stats = stats;
+    }
+
+    /**
+     * 饱和度最高的一项已达到 highWatermark 时返回该项，否则返回 null
+     */
+    Gauge saturated() {
+        Gauge worst = worst(gauges.get());
+        return worst != null && worst.saturation() >= cfg.getHighWatermark() ? worst : null;
+    }
+
+    /**
+     * 建议的重试间隔（秒）：基础间隔加随机抖动
+     */
+    int retryAfterSeconds() {
+        int base = Math.max(1, cfg.getRetryAfterSeconds());
+        int jitter = Math.max(0, cfg.getRetryAfterJitterSeconds());
+        return base + (jitter > 0 ? ThreadLocalRandom.current().nextInt(jitter + 1) : 0);
+    }
+
+    @Override
+    public boolean beforeHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+                                   @NonNull WebSocketHandler wsHandler, @NonNull Map<String, Object> attributes) {
+        if (!Boolean.TRUE.equals(cfg.getEnabled())) return true;
+        Gauge g = saturated();
+        if (g == null) {
+            stats.admitted.increment();
+            return true;
+        }
+        stats.reject(g.name());
+        int retryAfter = retryAfterSeconds();
+        log.warn("Voice session rejected: {} {}/{}, retry after {}s", g.name(), g.used(), g.limit(), retryAfter);
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("reason", g.name());
+        data.put("saturation", g.saturation());
+        data.put("retryAfterSeconds", retryAfter);
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        HttpHeaders headers = response.getHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        try {
+            ErrorCode code = ErrorCode.TOO_MANY_REQUEST;
+            response.getBody().write(objectMapper.writeValueAsBytes(new BaseResponse<>(code.getCode(), data, code.getMessage())));
+        } catch (Exception e) {
+            log.debug("Failed to write busy response: {}", e.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public void afterHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+                               @NonNull WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    /**
+     * 饱和度快照：总体饱和度（各项最大值）、瓶颈项、是否接受新会话及各项用量
+     */
+    Map<String, Object> snapshot() {
+        List<Gauge> list = gauges.get();
+        Gauge worst = worst(list);
+        double saturation = worst != null ? worst.saturation() : 0.0;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", Boolean.TRUE.equals(cfg.getEnabled()));
+        m.put("saturation", saturation);
+        m.put("bottleneck", worst != null ? worst.name() : null);
+        m.put("accepting", !Boolean.TRUE.equals(cfg.getEnabled()) || saturation < cfg.getHighWatermark());
+        m.put("highWatermark", cfg.getHighWatermark());
+        Map<String, Object> byGauge = new LinkedHashMap<>();
+        for (Gauge g : list) {
+            Map<String, Object> v = new LinkedHashMap<>();
+            v.put("used", g.used());
+            v.put("limit", g.limit());
+            v.put("saturation", g.saturation());
+            byGauge.put(g.name(), v);
+        }
+        m.put("gauges", byGauge);
+        m.putAll(stats.snapshot());
+        return m;
+    }
+
+    private static Gauge worst(List<Gauge> list) {
+        Gauge worst = null;
+        for (Gauge g : list) {
+            if (g.limit() > 0 && (worst == null || g.saturation() > worst.saturation())) worst = g;
+        }
+        return worst;
+    }
+}
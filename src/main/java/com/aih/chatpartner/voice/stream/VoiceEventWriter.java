@@ -0,0 +1,299 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * /ws/voice-chat 下行事件编码器（每个会话一个，方法内部加锁，可被多个回调线程调用）
+ * 复用同一个 JsonGenerator 与字符缓冲区，逐个字段流式写出，
+ * 每个事件只产生最终的 String，不再构建 Map，也不再为每条消息创建 ObjectMapper。
+ */
+final class VoiceEventWriter {
+
+    private final CharBuffer buf = new CharBuffer();
+    private final JsonGenerator gen;
+
+    VoiceEventWriter(JsonFactory jsonFactory) {
+        try {
+            gen = jsonFactory.createGenerator(buf);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // 连续写多个根对象时不插入分隔符，每个事件从空缓冲区开始
+        gen.setRootValueSeparator(null);
+    }
+
+    String started(String audioOut) {
+        return started(audioOut, -1);
+    }
+
+    /**
+     * jitterBufferMs 为下行节奏控制的领先量，提示客户端缓冲多少音频后开始播放；负数表示未开启，不输出
+     */
+    String started(String audioOut, long jitterBufferMs) {
+        synchronized (this) {
+            begin("started");
+            field("audioOut", audioOut);
+            if (jitterBufferMs >= 0) field("jitterBufferMs", jitterBufferMs);
+            return end();
+        }
+    }
+
+    String configAck(boolean autoReply) {
+        synchronized (this) {
+            begin("config_ack");
+            field("autoReply", autoReply);
+            return end();
+        }
+    }
+
+    String warn(String message) {
+        return typed("warn", "message", message);
+    }
+
+    String error(String message) {
+        return typed("error", "message", message);
+    }
+
+    String asrPartial(String text) {
+        return typed("asr_partial", "text", text);
+    }
+
+    String asrFinal(String text) {
+        return typed("asr_final", "text", text);
+    }
+
+    /**
+     * 带本句识别耗时的 asr_final（毫秒，负数表示未测到，不输出）
+     */
+    String asrFinal(String text, long firstPartialMs, long finalAfterSpeechEndMs) {
+        synchronized (this) {
+            begin("asr_final");
+            field("text", text);
+            if (firstPartialMs >= 0 || finalAfterSpeechEndMs >= 0) {
+                startObject("timing");
+                timing("firstPartialMs", firstPartialMs);
+                timing("finalAfterSpeechEndMs", finalAfterSpeechEndMs);
+                endObject();
+            }
+            return end();
+        }
+    }
+
+    String asrClosed() {
+        synchronized (this) {
+            begin("asr_closed");
+            return end();
+        }
+    }
+
+    String llmPartial(String text) {
+        return typed("llm_partial", "text", text);
+    }
+
+    String ttsStart(long seq, String text) {
+        synchronized (this) {
+            begin("tts_start");
+            field("seq", seq);
+            field("text", text);
+            return end();
+        }
+    }
+
+    String ttsChunk(String base64) {
+        return typed("tts_chunk", "data", base64);
+    }
+
+    String ttsDone(long seq) {
+        synchronized (this) {
+            begin("tts_done");
+            field("seq", seq);
+            return end();
+        }
+    }
+
+    /**
+     * 本轮最后一句的 tts_done 附带整轮各阶段耗时；turn 为 null 或未完成时与 {@link #ttsDone(long)} 相同
+     */
+    String ttsDone(long seq, TurnTimer turn) {
+        synchronized (this) {
+            begin("tts_done");
+            field("seq", seq);
+            if (turn != null && turn.complete()) {
+                startObject("timing");
+                timing("llmFirstTokenMs", turn.llmFirstTokenMs);
+                timing("firstChunkMs", turn.firstChunkMs);
+                timing("firstAudioMs", turn.firstAudioMs);
+                timing("turnMs", turn.turnMs);
+                endObject();
+            }
+            return end();
+        }
+    }
+
+    String ttsInterrupted(String reason) {
+        return typed("tts_interrupted", "reason", reason);
+    }
+
+    /**
+     * savedMs 为打断时服务端丢弃、未发给客户端的音频时长
+     */
+    String ttsInterrupted(String reason, long savedMs) {
+        synchronized (this) {
+            begin("tts_interrupted");
+            field("reason", reason);
+            field("savedMs", savedMs);
+            return end();
+        }
+    }
+
+    /**
+     * 服务端心跳，ts 为服务端毫秒时间戳，客户端应以 pong 带回
+     */
+    String ping(long ts) {
+        synchronized (this) {
+            begin("ping");
+            field("ts", ts);
+            return end();
+        }
+    }
+
+    /**
+     * 对客户端 ping 的应答；ts 为空时不输出
+     */
+    String pong(Long ts) {
+        synchronized (this) {
+            begin("pong");
+            if (ts != null) field("ts", ts.longValue());
+            return end();
+        }
+    }
+
+    private String typed(String type, String name, String value) {
+        synchronized (this) {
+            begin(type);
+            field(name, value);
+            return end();
+        }
+    }
+
+    private void begin(String type) {
+        try {
+            buf.reset();
+            gen.writeStartObject();
+            gen.writeStringField("type", type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void field(String name, String value) {
+        try {
+            gen.writeStringField(name, value == null ? "" : value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void field(String name, long value) {
+        try {
+            gen.writeNumberField(name, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void timing(String name, long ms) {
+        if (ms >= 0) field(name, ms);
+    }
+
+    private void startObject(String name) {
+        try {
+            gen.writeObjectFieldStart(name);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void endObject() {
+        try {
+            gen.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void field(String name, boolean value) {
+        try {
+            gen.writeBooleanField(name, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String end() {
+        try {
+            gen.writeEndObject();
+            gen.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * 可复用的字符缓冲区；容量按最大事件（通常是 tts_chunk）增长后保持
+     */
+    private static final class CharBuffer extends Writer {
+        private char[] chars = new char[1024];
+        private int len;
+
+        void reset() {
+            len = 0;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int n) {
+            ensure(n);
+            System.arraycopy(cbuf, off, chars, len, n);
+            len += n;
+        }
+
+        @Override
+        public void write(String s, int off, int n) {
+            ensure(n);
+            s.getChars(off, off + n, chars, len);
+            len += n;
+        }
+
+        @Override
+        public void write(int c) {
+            ensure(1);
+            chars[len++] = (char) c;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, len);
+        }
+
+        private void ensure(int n) {
+            if (len + n > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(len + n, chars.length * 2));
+            }
+        }
+    }
+}
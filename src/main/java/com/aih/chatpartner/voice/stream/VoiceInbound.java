@@ -0,0 +1,79 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * /ws/voice-chat 客户端控制消息，按 type 字段解码为对应记录
+ * 未知或缺失的 type 解码为 {@link Unknown}，JSON 字面量 null 同样按 {@link Unknown} 处理
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type", defaultImpl = VoiceInbound.Unknown.class)
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = VoiceInbound.Start.class, name = "start"),
+        @JsonSubTypes.Type(value = VoiceInbound.UserText.class, name = "user_text"),
+        @JsonSubTypes.Type(value = VoiceInbound.Config.class, name = "config"),
+        @JsonSubTypes.Type(value = VoiceInbound.Stop.class, name = "stop"),
+        @JsonSubTypes.Type(value = VoiceInbound.Ping.class, name = "ping"),
+        @JsonSubTypes.Type(value = VoiceInbound.Pong.class, name = "pong")
+})
+public sealed interface VoiceInbound {
+
+    /**
+     * 用 reader 解码一条控制消息，不会返回 null
+     */
+    static VoiceInbound read(ObjectReader reader, String json) throws JsonProcessingException {
+        VoiceInbound msg = reader.readValue(json);
+        return msg != null ? msg : new Unknown();
+    }
+
+    /**
+     * 开始会话；未提供的字段取服务端默认值
+     *
+     * @param audioOut    音频下行格式：binary / json
+     * @param ttsPipeline TTS 并发合成句数
+     * @param vad         VAD 参数覆盖
+     * @param llmPartial  llm_partial 合并参数
+     * @param speculative 是否在 asr_partial 稳定后提前启动 LLM，缺省取服务端配置
+     * @param greeting    是否播放会话角色的开场白（优先下发预合成音频）
+     * @param audioLeadMs TTS 音频下行领先量（毫秒），缺省取服务端配置
+     */
+    record Start(Long groupId, String voiceType, Double speedRatio, String audioFormat, Boolean autoReply,
+                 String audioOut, Integer ttsPipeline, VadConfig vad, LlmPartial llmPartial,
+                 Boolean speculative, Boolean greeting, Long audioLeadMs) implements VoiceInbound {
+    }
+
+    /**
+     * llm_partial 合并参数：满 maxChars 个字符或等待超过 windowMs 即下发，windowMs=0 表示逐 token 下发
+     */
+    record LlmPartial(Long windowMs, Integer maxChars) {
+    }
+
+    record UserText(String text) implements VoiceInbound {
+    }
+
+    /**
+     * 动态配置：当前仅支持 autoReply 切换
+     */
+    record Config(Boolean autoReply) implements VoiceInbound {
+    }
+
+    record Stop() implements VoiceInbound {
+    }
+
+    /**
+     * 客户端心跳，服务端以 pong 原样带回 ts
+     */
+    record Ping(Long ts) implements VoiceInbound {
+    }
+
+    /**
+     * 对服务端 ping 的应答，ts 为 ping 中的服务端时间戳，用于计算往返时延
+     */
+    record Pong(Long ts) implements VoiceInbound {
+    }
+
+    record Unknown() implements VoiceInbound {
+    }
+}
@@ -0,0 +1,69 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 实时语音链路的分阶段延迟与事件计数（节点级，所有会话共享）
+ * 延迟均以用户可感知的起点计时：
+ * - asrFirstPartial：VAD 判定开口 → 第一条 asr_partial
+ * - asrFinalAfterSpeechEnd：VAD 判定说完 → asr_final
+ * - llmFirstToken / firstChunk / firstAudio / turnComplete：本轮开始（asr_final 或 user_text）→
+ *   首个 LLM token / 首个切好的句子 / 首个 tts_chunk 下发 / 本轮最后一句 tts_done
+ * - asrHandshake：ASR WS 连接到配置帧发出；ttsHandshake：句子拿到可用 TTS 连接（预热命中接近 0，冷连接含握手）
+ * 计数中 asrReplays / asrReplayedMs 为重连后重放的次数与音频时长，asrReplayOverflows 为未确认音频已超出回放缓冲的次数，
+ * asrOverlapTrimmed 为重连后新连接 final 与上一条 final 重叠而被裁掉开头的次数
+ */
+@Component
+public class VoiceMetrics {
+
+    final LatencyHistogram asrHandshake = new LatencyHistogram();
+    final LatencyHistogram asrFirstPartial = new LatencyHistogram();
+    final LatencyHistogram asrFinalAfterSpeechEnd = new LatencyHistogram();
+    final LatencyHistogram llmFirstToken = new LatencyHistogram();
+    final LatencyHistogram firstChunk = new LatencyHistogram();
+    final LatencyHistogram ttsHandshake = new LatencyHistogram();
+    final LatencyHistogram firstAudio = new LatencyHistogram();
+    final LatencyHistogram turnComplete = new LatencyHistogram();
+
+    final LongAdder turns = new LongAdder();
+    final LongAdder bargeIns = new LongAdder();
+    final LongAdder asrReconnects = new LongAdder();
+    final LongAdder asrReplays = new LongAdder();
+    final LongAdder asrReplayedMs = new LongAdder();
+    final LongAdder asrReplayOverflows = new LongAdder();
+    final LongAdder asrOverlapTrimmed = new LongAdder();
+    final LongAdder asrErrors = new LongAdder();
+    final LongAdder ttsErrors = new LongAdder();
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("asrHandshake", asrHandshake.snapshot());
+        latency.put("asrFirstPartial", asrFirstPartial.snapshot());
+        latency.put("asrFinalAfterSpeechEnd", asrFinalAfterSpeechEnd.snapshot());
+        latency.put("llmFirstToken", llmFirstToken.snapshot());
+        latency.put("firstChunk", firstChunk.snapshot());
+        latency.put("ttsHandshake", ttsHandshake.snapshot());
+        latency.put("firstAudio", firstAudio.snapshot());
+        latency.put("turnComplete", turnComplete.snapshot());
+
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("turns", turns.sum());
+        counters.put("bargeIns", bargeIns.sum());
+        counters.put("asrReconnects", asrReconnects.sum());
+        counters.put("asrReplays", asrReplays.sum());
+        counters.put("asrReplayedMs", asrReplayedMs.sum());
+        counters.put("asrReplayOverflows", asrReplayOverflows.sum());
+        counters.put("asrOverlapTrimmed", asrOverlapTrimmed.sum());
+        counters.put("asrErrors", asrErrors.sum());
+        counters.put("ttsErrors", ttsErrors.sum());
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("latency", latency);
+        m.put("counters", counters);
+        return m;
+    }
+}
@@ -0,0 +1,227 @@
+package com.aih.chatpartner.voice.stream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话下行发送队列（每个 WebSocket 会话一个）
+ * LLM、TTS、ASR 回调线程只入队不阻塞，由单一写线程按入队顺序调用 sendMessage：
+ * - 相邻未发出的 asr_partial 只保留最新一条（后一条覆盖队尾的前一条）
+ * - 超出消息数/字节预算时先丢弃所有排队中的 asr_partial；仍超出则判定为慢客户端，清空队列并断开
+ */
+@Slf4j
+final class VoiceOutbound {
+
+    /**
+     * 节点级统计，由所有会话共享
+     */
+    static final class Stats {
+        final LongAdder enqueued = new LongAdder();
+        final LongAdder sent = new LongAdder();
+        final LongAdder coalesced = new LongAdder();
+        final LongAdder droppedPartials = new LongAdder();
+        final LongAdder slowConsumerDisconnects = new LongAdder();
+        final LongAdder sendErrors = new LongAdder();
+        final LongAdder queuedMessages = new LongAdder();
+        final LongAdder queuedBytes = new LongAdder();
+        final AtomicLong maxSessionDepth = new AtomicLong();
+        final LongAdder latencyNanos = new LongAdder();
+        final AtomicLong latencyMaxNanos = new AtomicLong();
+
+        Map<String, Object> snapshot() {
+            long n = sent.sum();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("enqueued", enqueued.sum());
+            m.put("sent", n);
+            m.put("coalesced", coalesced.sum());
+            m.put("droppedPartials", droppedPartials.sum());
+            m.put("slowConsumerDisconnects", slowConsumerDisconnects.sum());
+            m.put("sendErrors", sendErrors.sum());
+            m.put("queuedMessages", queuedMessages.sum());
+            m.put("queuedBytes", queuedBytes.sum());
+            m.put("maxSessionDepth", maxSessionDepth.get());
+            m.put("latencyAvgMs", n == 0 ? 0.0 : latencyNanos.sum() / 1e6 / n);
+            m.put("latencyMaxMs", latencyMaxNanos.get() / 1e6);
+            return m;
+        }
+    }
+
+    private static final class Entry {
+        WebSocketMessage<?> message;
+        int bytes;
+        final long enqueuedAt;
+        final boolean partial;
+
+        Entry(WebSocketMessage<?> message, int bytes, long enqueuedAt, boolean partial) {
+            this.message = message;
+            this.bytes = bytes;
+            this.enqueuedAt = enqueuedAt;
+            this.partial = partial;
+        }
+    }
+
+    private final WebSocketSession session;
+    private final Executor executor;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final Stats stats;
+
+    // 以下字段受 this 锁保护
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private long bytes;
+    private boolean draining;
+    private boolean closed;
+
+    VoiceOutbound(WebSocketSession session, Executor executor, int maxMessages, long maxBytes, Stats stats) {
+        this.session = session;
+        this.executor = executor;
+        this.maxMessages = Math.max(1, maxMessages);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.stats = stats;
+    }
+
+    /**
+     * 入队一条必须送达的消息
+     */
+    void send(WebSocketMessage<?> message) {
+        offer(message, false);
+    }
+
+    /**
+     * 入队一条可被后续同类消息取代、过载时可丢弃的消息（asr_partial）
+     */
+    void sendPartial(WebSocketMessage<?> message) {
+        offer(message, true);
+    }
+
+    /**
+     * 当前排队消息数
+     */
+    synchronized int depth() {
+        return queue.size();
+    }
+
+    /**
+     * 当前排队字节数
+     */
+    synchronized long queuedBytes() {
+        return bytes;
+    }
+
+    /**
+     * 丢弃未发送的消息，之后的入队请求被忽略
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            clearLocked();
+        }
+    }
+
+    private void offer(WebSocketMessage<?> message, boolean partial) {
+        int size = message.getPayloadLength();
+        boolean schedule;
+        synchronized (this) {
+            if (closed) return;
+            stats.enqueued.increment();
+            Entry tail = queue.peekLast();
+            if (partial && tail != null && tail.partial) {
+                // 队尾尚未发出的 asr_partial 已过时，原地替换
+                bytes += size - tail.bytes;
+                stats.queuedBytes.add(size - tail.bytes);
+                tail.message = message;
+                tail.bytes = size;
+                stats.coalesced.increment();
+                return;
+            }
+            queue.addLast(new Entry(message, size, System.nanoTime(), partial));
+            bytes += size;
+            stats.queuedMessages.increment();
+            stats.queuedBytes.add(size);
+            stats.maxSessionDepth.accumulateAndGet(queue.size(), Math::max);
+            if (overBudget()) {
+                dropPartialsLocked();
+                if (overBudget()) {
+                    closed = true;
+                    clearLocked();
+                    stats.slowConsumerDisconnects.increment();
+                    executor.execute(this::disconnectSlowConsumer);
+                    return;
+                }
+            }
+            schedule = !draining;
+            draining = true;
+        }
+        if (schedule) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        for (;;) {
+            Entry e;
+            synchronized (this) {
+                e = closed ? null : queue.pollFirst();
+                if (e == null) {
+                    draining = false;
+                    return;
+                }
+                bytes -= e.bytes;
+                stats.queuedMessages.decrement();
+                stats.queuedBytes.add(-e.bytes);
+            }
+            try {
+                if (session.isOpen()) {
+                    session.sendMessage(e.message);
+                    long latency = System.nanoTime() - e.enqueuedAt;
+                    stats.sent.increment();
+                    stats.latencyNanos.add(latency);
+                    stats.latencyMaxNanos.accumulateAndGet(latency, Math::max);
+                }
+            } catch (Exception ex) {
+                stats.sendErrors.increment();
+                log.debug("WS send failed, session={}, err={}", session.getId(), ex.getMessage());
+            }
+        }
+    }
+
+    private boolean overBudget() {
+        return queue.size() > maxMessages || bytes > maxBytes;
+    }
+
+    private void dropPartialsLocked() {
+        queue.removeIf(e -> {
+            if (!e.partial) return false;
+            bytes -= e.bytes;
+            stats.queuedMessages.decrement();
+            stats.queuedBytes.add(-e.bytes);
+            stats.droppedPartials.increment();
+            return true;
+        });
+    }
+
+    private void clearLocked() {
+        stats.queuedMessages.add(-queue.size());
+        stats.queuedBytes.add(-bytes);
+        queue.clear();
+        bytes = 0;
+    }
+
+    private void disconnectSlowConsumer() {
+        log.warn("WS slow consumer, closing session={}", session.getId());
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason("slow consumer"));
+        } catch (Exception ignore) {
+        }
+    }
+}
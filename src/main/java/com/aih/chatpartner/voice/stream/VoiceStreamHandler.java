@@ -2,27 +2,37 @@ package com.aih.chatpartner.voice.stream;
 
 import com.aih.chatpartner.ai.AiService;
 import com.aih.chatpartner.ai.AiServiceFactory;
+import com.aih.chatpartner.ai.TokenCoalescer;
 import com.aih.chatpartner.config.QiniuConfig;
+import com.aih.chatpartner.config.VoiceStreamConfig;
 import com.aih.chatpartner.model.entity.ChatGroup;
 import com.aih.chatpartner.service.ChatGroupService;
-import com.aih.chatpartner.service.ChatHistoryService;
 import com.aih.chatpartner.service.voice.AsrService;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.aih.chatpartner.service.voice.RoleGreetingAudioService;
+import com.aih.chatpartner.voice.cache.TtsAudioCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.annotation.PreDestroy;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.lang.NonNull;
 import org.springframework.web.socket.*;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
 
-import java.io.IOException;
-import java.io.ByteArrayOutputStream;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * /ws/voice-chat WebSocket 端点
@@ -31,6 +41,11 @@ import reactor.core.Disposable;
  *   - 客户端发送 user_text {text}
  *   - 服务端：LLM 流式 token -> llm_partial
  *   - 将切好的句子分段发送到七牛 TTS WS，收到 base64 音频块 -> tts_chunk
+ *     （start 携带 audioOut=binary 时改为二进制帧，格式见 {@link TtsAudioFrame}）
+ *   - start 携带 greeting=true 时先播放会话角色的开场白，预合成音频直接下发
+ *   - TTS 音频经 {@link AudioPacer} 按略快于实时的节奏下发，打断时丢弃未发出的部分
+ *   - 会话生命周期见 {@link SessionLifecycle}：心跳、半开与空闲回收（时间轮驱动）、内存估算与节点上限
+ *   - 握手阶段由 {@link VoiceAdmission} 按会话、内存、LLM 流与上游连接的饱和度决定是否接受新会话
  */
 @Slf4j
 @Component
@@ -40,110 +55,365 @@ public class VoiceStreamHandler extends TextWebSocketHandler {
     private final AiServiceFactory aiServiceFactory;
     private final QiniuConfig qiniuConfig;
     private final AsrService asrService;
-    private final ChatHistoryService chatHistoryService;
+    private final ChatHistoryWriteBehind chatHistoryWriter;
     private final ChatGroupService chatGroupService;
+    private final TtsWsPool ttsWsPool;
+    private final AsrWsPool asrWsPool;
+    private final TtsAudioCache ttsAudioCache;
+    private final RoleGreetingAudioService roleGreetingAudioService;
+    private final VoiceStreamConfig voiceStreamConfig;
+    private final VoiceMetrics voiceMetrics;
 
+    private final ObjectReader inboundReader;
     private final Map<String, SessionCtx> sessions = new ConcurrentHashMap<>();
+    // 会话级定时任务（上行帧合并超时冲刷等）共用的调度线程
+    private final ScheduledExecutorService voiceTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "voice-stream-timer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AsrFrameCoalescer.Stats uplinkStats = new AsrFrameCoalescer.Stats();
+    // 下行写线程：每个会话排空队列时占用一个虚拟线程，慢客户端只阻塞自己的写线程
+    private final ExecutorService outboundExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("voice-out-", 0).factory());
+    private final VoiceOutbound.Stats outboundStats = new VoiceOutbound.Stats();
+    // 会话 actor：每个会话的事件在各自邮箱中串行执行，有事件时占用一个虚拟线程
+    private final ExecutorService actorExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("voice-session-", 0).factory());
+    private final SessionMailbox.Stats mailboxStats = new SessionMailbox.Stats();
+    private final SpeculativeReply.Stats speculationStats = new SpeculativeReply.Stats();
+    private final AudioPacer.Stats egressStats = new AudioPacer.Stats();
+    private final TurnCoalescer.Stats turnMergeStats = new TurnCoalescer.Stats();
+    private final SessionLifecycle lifecycle;
+    private final TimingWheel<SessionCtx> reaper;
+    private final VoiceAdmission admission;
+    private final AtomicInteger llmStreams = new AtomicInteger();   // 进行中的 LLM 流（含推测）
 
     public VoiceStreamHandler(ObjectMapper objectMapper,
                               AiServiceFactory aiServiceFactory,
                               QiniuConfig qiniuConfig,
                               AsrService asrService,
-                              ChatHistoryService chatHistoryService,
-                              ChatGroupService chatGroupService) {
+                              ChatHistoryWriteBehind chatHistoryWriter,
+                              ChatGroupService chatGroupService,
+                              TtsWsPool ttsWsPool,
+                              AsrWsPool asrWsPool,
+                              TtsAudioCache ttsAudioCache,
+                              RoleGreetingAudioService roleGreetingAudioService,
+                              VoiceStreamConfig voiceStreamConfig,
+                              VoiceMetrics voiceMetrics) {
         this.objectMapper = objectMapper;
         this.aiServiceFactory = aiServiceFactory;
         this.qiniuConfig = qiniuConfig;
         this.asrService = asrService;
-        this.chatHistoryService = chatHistoryService;
+        this.chatHistoryWriter = chatHistoryWriter;
         this.chatGroupService = chatGroupService;
+        this.ttsWsPool = ttsWsPool;
+        this.asrWsPool = asrWsPool;
+        this.ttsAudioCache = ttsAudioCache;
+        this.roleGreetingAudioService = roleGreetingAudioService;
+        this.voiceStreamConfig = voiceStreamConfig;
+        this.voiceMetrics = voiceMetrics;
+        VoiceStreamConfig.SessionConfig sc = voiceStreamConfig.getSession();
+        this.lifecycle = new SessionLifecycle(sc, new SessionLifecycle.Stats());
+        this.reaper = new TimingWheel<>(lifecycle.tickMs(), sc.getWheelSlots(), System.currentTimeMillis());
+        voiceTimer.scheduleAtFixedRate(this::reapTick, lifecycle.tickMs(), lifecycle.tickMs(), TimeUnit.MILLISECONDS);
+        this.admission = new VoiceAdmission(voiceStreamConfig.getAdmission(), this::admissionGauges, objectMapper,
+                new VoiceAdmission.Stats());
+        // 控制消息解码器只构建一次；未知字段忽略，未知 type 落到 VoiceInbound.Unknown
+        this.inboundReader = objectMapper.readerFor(VoiceInbound.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .without(DeserializationFeature.FAIL_ON_INVALID_SUBTYPE);
+    }
+
+    /**
+     * ASR 上行帧合并指标
+     */
+    public Map<String, Object> uplinkStats() {
+        return uplinkStats.snapshot();
+    }
+
+    /**
+     * 下行发送队列指标
+     */
+    public Map<String, Object> outboundStats() {
+        return outboundStats.snapshot();
+    }
+
+    /**
+     * 会话 actor 邮箱指标
+     */
+    public Map<String, Object> actorStats() {
+        return mailboxStats.snapshot();
+    }
+
+    /**
+     * 推测回复指标：命中率与估算节省的首音频时间
+     */
+    public Map<String, Object> speculationStats() {
+        return speculationStats.snapshot();
+    }
+
+    /**
+     * 回复进行中用户语句的合并指标：合并出的轮次与省下的 LLM 调用
+     */
+    public Map<String, Object> turnMergeStats() {
+        return turnMergeStats.snapshot();
+    }
+
+    /**
+     * /ws/voice-chat 的握手拦截器：节点饱和时拒绝新会话
+     */
+    public HandshakeInterceptor admissionInterceptor() {
+        return admission;
+    }
+
+    /**
+     * 节点饱和度：各项用量与预算，供管理端与扩缩容判断
+     */
+    public Map<String, Object> admissionStats() {
+        return admission.snapshot();
+    }
+
+    private List<VoiceAdmission.Gauge> admissionGauges() {
+        VoiceStreamConfig.SessionConfig sc = voiceStreamConfig.getSession();
+        VoiceStreamConfig.AdmissionConfig ac = voiceStreamConfig.getAdmission();
+        int maxTts = ac.getMaxTtsSockets() > 0 ? ac.getMaxTtsSockets() : ttsWsPool.maxTotal();
+        return List.of(
+                new VoiceAdmission.Gauge("sessions", sessions.size(), sc.getMaxSessions()),
+                new VoiceAdmission.Gauge("memoryBytes", lifecycle.memoryBytes(), sc.getMaxMemoryBytes()),
+                new VoiceAdmission.Gauge("llmStreams", llmStreams.get(), ac.getMaxLlmStreams()),
+                new VoiceAdmission.Gauge("asrSockets", asrWsPool.inUse(), ac.getMaxAsrSockets()),
+                new VoiceAdmission.Gauge("ttsSockets", ttsWsPool.leased(), maxTts));
+    }
+
+    /**
+     * 会话的 LLM 流，订阅期间计入节点 LLM 流数（完成、出错、取消时扣除）
+     */
+    private Flux<String> llmStream(AiService service, String text) {
+        return service.chatStreamInXiYangYangRole(text)
+                .doOnSubscribe(s -> llmStreams.incrementAndGet())
+                .doFinally(signal -> llmStreams.decrementAndGet());
+    }
+
+    /**
+     * 会话生命周期指标：在线数、估算内存、心跳与回收、拒绝计数
+     */
+    public Map<String, Object> sessionStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("active", sessions.size());
+        m.put("memoryBytes", lifecycle.memoryBytes());
+        m.put("scheduledChecks", reaper.size());
+        m.putAll(lifecycle.stats().snapshot());
+        return m;
+    }
+
+    /**
+     * 按估算内存从大到小列出会话（估算值为最近一次生命周期检查时的快照）
+     */
+    public List<Map<String, Object>> heaviestSessions(int limit) {
+        long now = System.currentTimeMillis();
+        return sessions.values().stream()
+                .sorted(Comparator.comparingLong((SessionCtx c) -> c.usage.total()).reversed())
+                .limit(Math.max(1, limit))
+                .map(c -> {
+                    SessionUsage u = c.usage;
+                    Map<String, Object> m = new LinkedHashMap<>();
+                    m.put("sessionId", c.session.getId());
+                    m.put("userId", u.userId());
+                    m.put("groupId", u.groupId());
+                    m.put("busy", u.busy());
+                    m.put("ageMs", now - c.createdAtMs);
+                    m.put("silentMs", now - c.lastSeenMs);
+                    m.put("idleMs", now - c.lastActiveMs);
+                    m.put("rttMs", c.rttMs);
+                    m.put("memory", u.toMap());
+                    return m;
+                })
+                .toList();
+    }
+
+    /**
+     * TTS 下行节奏控制指标：放行量与打断时少发的音频
+     */
+    public Map<String, Object> egressStats() {
+        return egressStats.snapshot();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        voiceTimer.shutdownNow();
+        outboundExecutor.shutdownNow();
+        actorExecutor.shutdownNow();
     }
 
     @Override
     public void afterConnectionEstablished(@NonNull WebSocketSession session) {
+        String rejected = lifecycle.admit(sessions.size());
+        if (rejected != null) {
+            log.warn("WS rejected: {} {}", session.getId(), rejected);
+            try {
+                session.sendMessage(new TextMessage(new VoiceEventWriter(objectMapper.getFactory()).error("server busy: " + rejected)));
+            } catch (Exception ignore) {}
+            try { session.close(CloseStatus.SERVICE_OVERLOAD.withReason(rejected)); } catch (Exception ignore) {}
+            return;
+        }
         SessionCtx ctx = new SessionCtx(session);
         sessions.put(session.getId(), ctx);
+        long now = ctx.createdAtMs;
+        reaper.schedule(ctx, lifecycle.nextCheckAt(now, now, now, now, false));
         log.info("WS connected: {}", session.getId());
     }
 
+    /**
+     * 时间轮刻度：到期的会话在各自 actor 内检查
+     */
+    private void reapTick() {
+        try {
+            for (SessionCtx ctx : reaper.advance(System.currentTimeMillis())) {
+                ctx.tell(ctx::checkLiveness);
+            }
+        } catch (Exception e) {
+            log.warn("Session reaper tick failed", e);
+        }
+    }
+
     @Override
     protected void handleTextMessage(@NonNull WebSocketSession session, @NonNull TextMessage message) throws Exception {
         String payload = message.getPayload();
         log.debug("WS recv text: {}", payload);
-        Map<String, Object> req = objectMapper.readValue(payload, new TypeReference<>() {});
-        String type = (String) req.getOrDefault("type", "");
         SessionCtx ctx = sessions.get(session.getId());
         if (ctx == null) {
             return;
         }
-        switch (type) {
-            case "start" -> {
-                ctx.groupId = asLong(req.get("groupId"), 0L);
-                ctx.voiceType = asStr(req.get("voiceType"), "qiniu_zh_female_tmjxxy");
-                ctx.speedRatio = asDouble(req.get("speedRatio"), 1.0);
-                ctx.audioFormat = asStr(req.get("audioFormat"), "raw");
-                ctx.autoReply = asBool(req.get("autoReply"), true);
-                ctx.chunker = new TextChunker(24);
-                ctx.ttsClient = new QiniuTtsWsClient(qiniuConfig, objectMapper);
+        long now = System.currentTimeMillis();
+        ctx.lastSeenMs = now;
+        VoiceInbound req;
+        try {
+            req = VoiceInbound.read(inboundReader, payload);
+        } catch (JsonProcessingException e) {
+            ctx.send(ctx.events.error("bad message: " + e.getOriginalMessage()));
+            return;
+        }
+        if (req instanceof VoiceInbound.Pong pong) {
+            // 往返时延在入站线程上计算，不经过邮箱排队
+            if (pong.ts() != null) {
+                ctx.rttMs = now - pong.ts();
+                lifecycle.stats().rtt(ctx.rttMs);
+            }
+            return;
+        }
+        if (!(req instanceof VoiceInbound.Ping)) ctx.lastActiveMs = now;
+        ctx.tell(() -> onInbound(session, ctx, req));
+    }
+
+    /**
+     * 控制消息处理，在会话 actor 内执行
+     */
+    private void onInbound(WebSocketSession session, SessionCtx ctx, VoiceInbound req) {
+        switch (req) {
+            case VoiceInbound.Start start -> {
+                ctx.groupId = start.groupId() != null ? start.groupId() : 0L;
+                ctx.voiceType = start.voiceType() != null ? start.voiceType() : "qiniu_zh_female_tmjxxy";
+                ctx.speedRatio = start.speedRatio() != null ? start.speedRatio() : 1.0;
+                ctx.audioFormat = start.audioFormat() != null ? start.audioFormat() : "raw";
+                ctx.autoReply = start.autoReply() == null || start.autoReply();
+                // 音频下行格式协商：binary 为二进制帧（见 TtsAudioFrame），默认 json 保持旧客户端兼容
+                ctx.binaryAudio = "binary".equalsIgnoreCase(start.audioOut());
+                int pipeline = start.ttsPipeline() != null ? start.ttsPipeline() : qiniuConfig.getTts().getPipelineDepth();
+                ctx.ttsPipelineDepth = Math.max(1, Math.min(8, pipeline));
+                ctx.vad = new AdaptiveVoiceActivityDetector(vadConfigOf(start.vad()));
+                VoiceInbound.LlmPartial lp = start.llmPartial();
+                ctx.llmPartialWindowMs = lp != null && lp.windowMs() != null ? lp.windowMs() : TokenCoalescer.DEFAULT_WINDOW_MS;
+                ctx.llmPartialMaxChars = lp != null && lp.maxChars() != null ? lp.maxChars() : TokenCoalescer.DEFAULT_MAX_CHARS;
+                ctx.speculative = start.speculative() != null ? start.speculative()
+                        : Boolean.TRUE.equals(voiceStreamConfig.getSpeculation().getEnabled());
+                // 下行节奏控制：有音频排队时保留原有节奏器，避免丢弃
+                VoiceStreamConfig.EgressConfig egress = voiceStreamConfig.getEgress();
+                if (!Boolean.TRUE.equals(egress.getEnabled())) {
+                    ctx.pacer = null;
+                } else if (ctx.pacer == null || ctx.pacer.pending() == 0) {
+                    long lead = start.audioLeadMs() != null ? start.audioLeadMs() : egress.getLeadMs();
+                    ctx.pacer = new AudioPacer(egress.getRate(), Math.max(0, Math.min(egress.getMaxLeadMs(), lead)), egressStats);
+                }
+                ctx.ttsClient = new QiniuTtsWsClient(ttsWsPool, objectMapper, voiceMetrics, ttsAudioCache);
+                // 提前为该音色预热 TTS 连接，首句无需等待握手
+                ttsWsPool.prewarm(ctx.voiceType);
+                if (ctx.uplink == null) {
+                    QiniuConfig.AsrConfig asr = qiniuConfig.getAsr();
+                    int frameBytes = AsrFrameCoalescer.frameBytes(asr.getSampleRate(), asr.getChannels(), asr.getUplinkFrameMs());
+                    ctx.uplink = new AsrFrameCoalescer(frameBytes, asr.getUplinkMaxDelayMs(), ctx::sendUplink, voiceTimer, uplinkStats);
+                }
                 ctx.streamingService = aiServiceFactory.getAiService(ctx.groupId);
                 ctx.asrService = this.asrService;
-                // 通过 groupId 反查 userId，用于持久化
+                // 通过 groupId 反查 userId（用于持久化）与 roleId（用于开场白）
+                Long roleId = null;
                 try {
                     if (ctx.groupId != null && ctx.groupId > 0) {
                         ChatGroup grp = chatGroupService.getById(ctx.groupId);
-                        if (grp != null) ctx.userId = grp.getUserId();
+                        if (grp != null) {
+                            ctx.userId = grp.getUserId();
+                            roleId = grp.getRoleId();
+                        }
                     }
                 } catch (Exception ignore) {}
                 // 只在首次start时初始化 ASR WS
                 if (ctx.asrWsClient == null || !ctx.asrWsClient.isOpened()) {
                     ctx.startAsr(session);
                 }
-                sendJson(session, Map.of("type", "started"));
+                ctx.send(ctx.events.started(ctx.binaryAudio ? "binary" : "json", ctx.pacer != null ? ctx.pacer.leadMs() : -1));
+                if (Boolean.TRUE.equals(start.greeting())) ctx.playGreeting(roleId);
             }
-            case "user_text" -> {
-                String text = asStr(req.get("text"), "");
+            case VoiceInbound.UserText userText -> {
+                String text = userText.text() != null ? userText.text() : "";
                 if (text.isEmpty()) return;
                 if (ctx.streaming) {
-                    sendJson(session, Map.of("type", "warn", "message", "already streaming"));
+                    ctx.send(ctx.events.warn("already streaming"));
                     return;
                 }
                 startLlmStreaming(session, ctx, text);
             }
-            case "config" -> {
+            case VoiceInbound.Config config -> {
                 // 动态配置：当前仅支持 autoReply 切换
-                Boolean ar = (req.get("autoReply") instanceof Boolean) ? (Boolean) req.get("autoReply") : null;
+                Boolean ar = config.autoReply();
                 if (ar != null) {
                     ctx.autoReply = ar;
-                    safeSendJson(session, Map.of("type", "config_ack", "autoReply", ctx.autoReply));
+                    ctx.send(ctx.events.configAck(ctx.autoReply));
                 }
             }
-            case "stop" -> {
-                // 关闭ASR连接
-                ctx.closeAsr();
-                // 如果累积了音频，先做一次 ASR -> LLM -> TTS 的链路
+            case VoiceInbound.Stop stop -> {
+                // 先把尚未凑满一帧的尾音发出去，再关闭ASR连接
+                if (ctx.uplink != null) ctx.uplink.flush();
+                // ASR 不在线时取出未转写的音频，先做一次 ASR -> LLM -> TTS 的链路
                 byte[] audio = ctx.drainAudio();
+                ctx.closeAsr();
                 if (audio != null && audio.length > 0) {
                     // 进行 ASR 识别（当前 AsrService 需要对象存储 URL，暂以演示模式返回）
                     String userText = ctx.asrService.speechToText(audio, ctx.audioFormat);
-                    safeSendJson(session, Map.of("type", "asr_final", "text", userText));
-                    // 保存用户消息
-                    try {
-                        if (ctx.groupId != null && ctx.groupId > 0 && ctx.userId != null && userText != null && !userText.isBlank()) {
-                            chatHistoryService.saveUserMessage(ctx.groupId, ctx.userId, userText);
-                        }
-                    } catch (Exception e) {
-                        log.warn("saveUserMessage failed groupId={}, userId={}, err={}", ctx.groupId, ctx.userId, e.getMessage());
+                    ctx.send(ctx.events.asrFinal(userText));
+                    // 触发回复时由 startLlmStreaming 入库（可能与回复进行中的语句合并），否则直接入库
+                    if (ctx.autoReply) {
+                        startLlmStreaming(session, ctx, userText);
+                    } else {
+                        chatHistoryWriter.saveUserMessage(ctx.groupId, ctx.userId, userText);
                     }
-                    if (ctx.autoReply) startLlmStreaming(session, ctx, userText);
                 }
                 // 等待LLM完成后再关闭会话
                 // 不立即关闭，让客户端通过 asr_closed 消息决定何时关闭
-                safeSendJson(session, Map.of("type", "asr_closed"));
+                ctx.send(ctx.events.asrClosed());
+            }
+            case VoiceInbound.Ping ping -> ctx.send(ctx.events.pong(ping.ts()));
+            case VoiceInbound.Pong pong -> {
+                // 已在入站线程处理
             }
-            default -> sendJson(session, Map.of("type", "error", "message", "unknown type"));
+            case VoiceInbound.Unknown unknown -> ctx.send(ctx.events.error("unknown type"));
         }
     }
 
+    /**
+     * 上行音频零拷贝入口
+     * 负载 ByteBuffer 由容器持有，仅在本方法调用期间有效（借用语义）：VAD、合并器、ASR 编码器都直接读取它，
+     * 不保留引用；需要跨调用保存的数据（合并器里不足一帧的尾巴、ASR 不可用时的本地累积）由各自复制进自有缓冲。
+     */
     @Override
     protected void handleBinaryMessage(@NonNull WebSocketSession session, @NonNull BinaryMessage message) {
         SessionCtx ctx = sessions.get(session.getId());
@@ -151,42 +421,44 @@ public class VoiceStreamHandler extends TextWebSocketHandler {
             log.warn("Binary message received but no session context found: {}", session.getId());
             return;
         }
+        long now = System.currentTimeMillis();
+        ctx.lastSeenMs = now;
+        ctx.lastActiveMs = now;
         java.nio.ByteBuffer buf = message.getPayload();
-        byte[] data = new byte[buf.remaining()];
-        buf.get(data);
-        log.debug("Received binary audio data: {} bytes from session {}", data.length, session.getId());
-        // 若检测到语音活动且当前正在流式或播放 TTS，进行打断（问题5）
-        boolean active = ctx.isVoiceActive(data);
-        if (active && (ctx.ttsBusy.get() || ctx.streaming)) {
-            ctx.vadActiveFrames = active ? (ctx.vadActiveFrames + 1) : 0;
-            long now = System.currentTimeMillis();
-            if (ctx.vadActiveFrames >= ctx.vadRequiredFrames
-                    && (now - ctx.lastBargeInAtMs) >= ctx.bargeInCooldownMs) {
-                ctx.lastBargeInAtMs = now;
-                ctx.handleUserInterruption();
-                log.info("User interruption triggered during TTS/LLM streaming");
+        // 检测到用户开口时通知 actor，由其判断是否正在流式或播放 TTS 并打断（问题5）；VAD 不移动 position
+        VoiceActivityDetector vad = ctx.vad;
+        if (vad != null) {
+            boolean speaking = vad.process(buf);
+            if (speaking != ctx.vadSpeaking) {
+                // 开口/说完的时刻，作为 ASR 延迟的计时起点
+                ctx.vadSpeaking = speaking;
+                if (speaking) {
+                    ctx.speechStartNanos = System.nanoTime();
+                } else {
+                    ctx.speechEndNanos = System.nanoTime();
+                }
             }
-        } else if (!active) {
-            ctx.vadActiveFrames = 0;
+            if (speaking) ctx.tell(ctx::onSpeech);
         }
-        // 优先走 ASR WS 实时流
-        if (ctx.asrWsClient != null && ctx.asrWsClient.isOpened()) {
-            try {
-                ctx.asrWsClient.sendAudio(data);
-            } catch (Exception e) {
-                log.warn("Failed to send audio to ASR, will reconnect: {}", e.getMessage());
-                // 尝试重新连接ASR
-                ctx.closeAsr();
-                ctx.startAsr(session);
-                // 同时累积音频以备后用
-                ctx.appendAudio(data);
-            }
+        log.debug("Received binary audio data: {} bytes from session {}", buf.remaining(), session.getId());
+        // 经上行合并器攒成固定时长的帧后进入 sendUplink：先写入回放缓冲，ASR 在线时实时发送
+        AsrFrameCoalescer uplink = ctx.uplink;
+        if (uplink != null) {
+            uplink.append(buf);
         } else {
-            // 兜底：本地累积，stop 时走 REST ASR（演示）
-            ctx.appendAudio(data);
+            ctx.sendUplink(buf);
         }
     }
 
+    /**
+     * 协议层 pong 帧（浏览器对 ping 帧自动应答）同样视为存活
+     */
+    @Override
+    protected void handlePongMessage(@NonNull WebSocketSession session, @NonNull PongMessage message) {
+        SessionCtx ctx = sessions.get(session.getId());
+        if (ctx != null) ctx.lastSeenMs = System.currentTimeMillis();
+    }
+
     @Override
     public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus status) {
         log.info("WS closed: {} {}", session.getId(), status);
@@ -194,124 +466,429 @@ public class VoiceStreamHandler extends TextWebSocketHandler {
     }
 
     private void closeSession(WebSocketSession session) {
-        try { session.close(); } catch (Exception ignore) {}
+        closeSession(session, CloseStatus.NORMAL);
+    }
+
+    private void closeSession(WebSocketSession session, CloseStatus status) {
+        try { session.close(status); } catch (Exception ignore) {}
         SessionCtx ctx = sessions.remove(session.getId());
         if (ctx != null) {
-            ctx.dispose();
+            ctx.tell(() -> {
+                ctx.dispose();
+                ctx.mailbox.close();
+            });
         }
     }
 
-    private void sendJson(WebSocketSession session, Map<String, ?> payload) throws IOException {
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(payload)));
+    /**
+     * 客户端 start.vad 未提供的参数取默认值；采样率始终以服务端 ASR 配置为准
+     */
+    private VadConfig vadConfigOf(VadConfig requested) {
+        // 逐项补齐默认值：客户端传 null 的字段不能覆盖默认值
+        VadConfig cfg = requested != null ? requested.withDefaults() : new VadConfig();
+        cfg.setSampleRate(qiniuConfig.getAsr().getSampleRate());
+        return cfg;
     }
 
-    private void safeSendJson(WebSocketSession session, Map<String, ?> payload) {
-        try { sendJson(session, payload); } catch (Exception ignore) {}
-    }
-
-    private static String asStr(Object o, String dft) { return o == null ? dft : String.valueOf(o); }
-    private static long asLong(Object o, long dft) { try { return o == null ? dft : Long.parseLong(String.valueOf(o)); } catch (Exception e) { return dft; } }
-    private static double asDouble(Object o, double dft) { try { return o == null ? dft : Double.parseDouble(String.valueOf(o)); } catch (Exception e) { return dft; } }
-    private static boolean asBool(Object o, boolean dft) { try { return o == null ? dft : (o instanceof Boolean ? (Boolean) o : Boolean.parseBoolean(String.valueOf(o))); } catch (Exception e) { return dft; } }
-
     private void startLlmStreaming(WebSocketSession session, SessionCtx ctx, String text) {
         if (text == null || text.isBlank()) return;
         if (ctx.streaming) {
-            // 正在流式，排队
+            // 正在流式，并入待处理的用户轮次，本轮结束后再回复（此时才入库）
             log.info("Already streaming, enqueue text: {}", text);
             ctx.enqueueUserText(text);
             return;
         }
         
-        // 先保存用户消息（问题1：及时保存）
-        try {
-            if (ctx.groupId != null && ctx.groupId > 0 && ctx.userId != null && !text.isBlank()) {
-                chatHistoryService.saveUserMessage(ctx.groupId, ctx.userId, text);
-                log.info("User message saved immediately: {}", text);
-            }
-        } catch (Exception e) {
-            log.warn("saveUserMessage failed in startLlmStreaming: {}", e.getMessage());
-        }
-        
-        ctx.streaming = true;
-        // 新一轮 AI 累积缓冲
-        ctx.aiBuf = new StringBuilder(1024);
-        // 若已有订阅，先取消
-        try { if (ctx.llmSub != null && !ctx.llmSub.isDisposed()) ctx.llmSub.dispose(); } catch (Exception ignore) {}
+        // 先保存用户消息（问题1：及时保存；异步落库，不阻塞会话）
+        chatHistoryWriter.saveUserMessage(ctx.groupId, ctx.userId, text);
         
+        LlmTurn turn = new LlmTurn(session, ctx);
         log.info("Starting LLM streaming for text: {}", text);
-        ctx.llmSub = ctx.streamingService.chatStreamInXiYangYangRole(text)
-                .doOnError(err -> {
-                    log.error("LLM stream error", err);
-                    safeSendJson(session, Map.of("type", "error", "message", "llm error: " + err.getMessage()));
-                    // 将已生成的部分内容入库（符合"截断也入库"的要求）
-                    ctx.saveAiIfBufferExists();
-                    ctx.streaming = false;
-                    // 清理当前订阅
-                    try { if (ctx.llmSub != null && !ctx.llmSub.isDisposed()) ctx.llmSub.dispose(); } catch (Exception ignore) {}
-                    ctx.llmSub = null;
-                    // 继续下一个
-                    ctx.drainLlm(session);
-                })
-                .doOnComplete(() -> {
-                    log.info("LLM streaming completed");
-                    String rest = ctx.chunker.flushRemainder();
-                    if (rest != null && !rest.isEmpty()) {
-                        ctx.enqueueTts(rest);
-                        // 同步追加到 AI 累积
-                        if (ctx.aiBuf != null) ctx.aiBuf.append(rest);
-                    }
-                    // 本轮完整生成完成，立即持久化 AI 消息（问题1：及时保存）
-                    ctx.saveAiIfBufferExists();
-                    ctx.streaming = false;
-                    // 清理当前订阅
-                    try { if (ctx.llmSub != null && !ctx.llmSub.isDisposed()) ctx.llmSub.dispose(); } catch (Exception ignore) {}
-                    ctx.llmSub = null;
-                    // 继续下一个
-                    ctx.drainLlm(session);
-                })
-                .subscribe(token -> {
-                    safeSendJson(session, Map.of("type", "llm_partial", "text", token));
-                    if (ctx.aiBuf != null) ctx.aiBuf.append(token);
-                    for (String sentence : ctx.chunker.appendAndExtract(token)) {
-                        ctx.enqueueTts(sentence);
-                    }
-                });
+        ctx.llmSub = llmStream(ctx.streamingService, text).subscribe(
+                token -> ctx.tell(() -> turn.token(token)),
+                err -> ctx.tell(() -> turn.error(err)),
+                () -> ctx.tell(turn::complete));
+    }
+
+    /**
+     * 推测命中：由推测中的 LLM 流接管本轮回复，暂存的 token 立即进入正式下游
+     */
+    private void commitSpeculation(WebSocketSession session, SessionCtx ctx, SpeculativeReply spec, String text) {
+        LlmTurn turn = new LlmTurn(session, ctx);
+        ctx.llmSub = spec.subscription();
+        long saved = spec.commit(turn);
+        log.info("Speculative LLM reply committed, saved ~{} ms: {}", saved, text);
+    }
+
+    /**
+     * 一轮 LLM 回复的正式下游：llm_partial 合并下发、累积入库、切句送 TTS
+     * 创建时即进入 streaming 状态；回调都在会话 actor 内执行，本轮被打断或结束后迟到的回调直接忽略
+     */
+    private final class LlmTurn implements SpeculativeReply.Sink {
+        private final WebSocketSession session;
+        private final SessionCtx ctx;
+        private final TokenCoalescer partials;
+        private final TextChunker chunker;
+        private final TurnTimer timer;
+
+        LlmTurn(WebSocketSession session, SessionCtx ctx) {
+            this.session = session;
+            this.ctx = ctx;
+            ctx.streaming = true;
+            ctx.turn = this;
+            // 本轮的句子从下一个待分配的 TTS 序号开始
+            this.timer = new TurnTimer(voiceMetrics, ctx.ttsSeq + ctx.ttsQueue.size() + 1, System.nanoTime());
+            ctx.turnTimers.add(timer);
+            // 新一轮 AI 累积缓冲
+            ctx.aiBuf = new StringBuilder(1024);
+            // llm_partial 按时间/长度窗口合并下发，本轮结束或被打断时冲刷
+            this.partials = new TokenCoalescer(ctx.llmPartialWindowMs, ctx.llmPartialMaxChars,
+                    Schedulers.parallel(), merged -> ctx.send(ctx.events.llmPartial(merged)));
+            ctx.closeLlmPartials();
+            ctx.llmPartials = partials;
+            // 每轮独立的切句器，只在本轮 LLM 回调中使用；首块在第一个逗号处即送 TTS
+            this.chunker = new TextChunker(TextChunker.DEFAULT_MAX_LEN, true);
+            ctx.chunker = chunker;
+            // 若已有订阅，先取消
+            try { if (ctx.llmSub != null && !ctx.llmSub.isDisposed()) ctx.llmSub.dispose(); } catch (Exception ignore) {}
+        }
+
+        @Override
+        public void token(String token) {
+            if (ctx.turn != this) return;
+            timer.llmToken(System.nanoTime());
+            partials.append(token);
+            if (ctx.aiBuf != null) ctx.aiBuf.append(token);
+            for (String sentence : chunker.appendAndExtract(token)) {
+                timer.chunk(System.nanoTime());
+                ctx.enqueueTts(sentence);
+            }
+        }
+
+        @Override
+        public void complete() {
+            if (ctx.turn != this) return;
+            log.info("LLM streaming completed");
+            partials.close();
+            String rest = chunker.flushRemainder();
+            if (rest != null && !rest.isEmpty()) {
+                ctx.enqueueTts(rest);
+                // 同步追加到 AI 累积
+                if (ctx.aiBuf != null) ctx.aiBuf.append(rest);
+            }
+            // 本轮完整生成完成，立即持久化 AI 消息（问题1：及时保存）
+            ctx.saveAiIfBufferExists();
+            finish();
+        }
+
+        @Override
+        public void error(Throwable err) {
+            if (ctx.turn != this) return;
+            log.error("LLM stream error", err);
+            partials.close();
+            ctx.send(ctx.events.error("llm error: " + err.getMessage()));
+            // 将已生成的部分内容入库（符合"截断也入库"的要求）
+            ctx.saveAiIfBufferExists();
+            finish();
+        }
+
+        private void finish() {
+            ctx.streaming = false;
+            ctx.turn = null;
+            // 本轮句子已全部入队，最后一句 tts_done 时本轮完成
+            if (timer.llmDone(ctx.ttsSeq + ctx.ttsQueue.size(), System.nanoTime())) {
+                ctx.turnTimers.remove(timer);
+            }
+            // 清理当前订阅
+            try { if (ctx.llmSub != null && !ctx.llmSub.isDisposed()) ctx.llmSub.dispose(); } catch (Exception ignore) {}
+            ctx.llmSub = null;
+            // 继续下一个
+            ctx.drainLlm(session);
+        }
     }
 
+    /**
+     * 会话状态（actor）
+     * 除标注为入站线程可见的 volatile 字段外，所有字段只在 mailbox 的事件中读写；
+     * 其他线程（容器、Reactor、ASR/TTS 回调、定时器）通过 {@link #tell} 投递事件，不直接修改状态。
+     */
     @Data
     class SessionCtx {
         final WebSocketSession session;
+        final SessionMailbox mailbox;
+        final VoiceOutbound outbound;
+        final VoiceEventWriter events = new VoiceEventWriter(objectMapper.getFactory());
         Long groupId = 0L;
         Long userId = null;
         String voiceType = "qiniu_zh_female_tmjxxy";
         Double speedRatio = 1.0;
-        volatile boolean streaming = false;
+        boolean streaming = false;
         boolean autoReply = true;
+        boolean binaryAudio = false;
+        String ttsEncoding = "mp3";
 
         transient AiService streamingService;
         transient TextChunker chunker;
         transient QiniuTtsWsClient ttsClient;
         transient AsrService asrService;
-        transient QiniuAsrWsClient asrWsClient;
-        transient AutoCloseable ttsCancelHandle;
+        // 以下三个字段由 actor 写入、入站线程读取：音频直通路径不经过邮箱
+        transient volatile QiniuAsrWsClient asrWsClient;
+        transient volatile AsrFrameCoalescer uplink;
+        transient volatile VoiceActivityDetector vad;       // start 时按会话参数创建，只在入站线程上使用
+        transient boolean vadSpeaking;                      // 只在入站线程上使用
+        // 入站线程写入的 VAD 开口/说完时刻（nanoTime），actor 读取用于 ASR 延迟计时
+        transient volatile long speechStartNanos;
+        transient volatile long speechEndNanos;
+        transient long partialTimedFor;                     // 已记录首个 asr_partial 的开口时刻
+        transient long finalTimedFor;                       // 已记录 asr_final 的说完时刻
+        transient long firstPartialMs = -1;                 // 本句首个 asr_partial 相对开口的耗时
+        // 进行中各轮回复的计时，按轮次先后排列（上一轮的 TTS 可能仍在播放）
+        transient final Deque<TurnTimer> turnTimers = new ArrayDeque<>();
+        transient LlmTurn turn;                             // 当前进行中的 LLM 回复
         transient Disposable llmSub;
         transient StringBuilder aiBuf;
-        // VAD 与打断控制
-        transient int vadActiveFrames = 0;                 // 连续被判定为“有声”的帧计数
-        transient final int vadRequiredFrames = 2;         // 达到多少连续帧才认为用户开始说话
+        transient TokenCoalescer llmPartials;
+        long llmPartialWindowMs = TokenCoalescer.DEFAULT_WINDOW_MS;
+        int llmPartialMaxChars = TokenCoalescer.DEFAULT_MAX_CHARS;
+        // 打断控制
         transient long lastBargeInAtMs = 0;                // 上次触发打断的时间
         transient final long bargeInCooldownMs = 700;      // 连续打断之间的冷却期
-        transient final int vadAbsThreshold = 600;         // 平均绝对幅度阈值（0~32767）
+        // 推测回复
+        boolean speculative = false;
+        transient String partialKey = "";                  // 最近一条 asr_partial 的归一化文本
+        transient long partialGen;                          // asr_partial 变化计数，用于作废过期的稳定计时
+        transient SpeculativeReply speculation;
 
         String audioFormat = "raw";
-        final ByteArrayOutputStream audioBuf = new ByteArrayOutputStream(32 * 1024);
+        // 上行音频回放缓冲：保留最近 asrReplay.bufferMs 的 PCM，ASR 重连后从最后确认处重放到新连接
+        final PcmReplayBuffer replay;
+        final int replayChunkBytes;
+        // 以下三个字段受 replay 锁保护
+        transient boolean asrLive;                          // 当前 ASR 连接已完成重放，新音频直接发送
+        transient long asrStreamBase;                       // 当前 ASR 连接收到的首个字节在回放缓冲中的偏移
+        transient long ackedOffset;                         // 此前的音频已由 final 确认或已交给 REST 兜底
+        transient String lastAsrFinal = "";
+        transient QiniuAsrWsClient lastFinalFrom;           // lastAsrFinal 来自哪条 ASR 连接
+        transient String overlapCandidate;                  // 断开的连接给出的最后一条 final，重放后才决定是否去重
+        transient String resumeOverlap;                     // 重连后待去重的上一条 final
+        transient int resumeOverlapMax;                     // 可去重的最多有效字符数，受重放时长限制
+
+        final Queue<String> ttsQueue = new ArrayDeque<>();
+        // 回复进行中到达的用户语句，合并为一轮后出队
+        final TurnCoalescer pendingTurn;
+        transient boolean drainScheduled;
+        // TTS 流水线：最多 ttsPipelineDepth 个句子同时合成，音频经重排缓冲区按句序下发
+        int ttsPipelineDepth = 3;
+        long ttsSeq = 0;                                    // 已分配的最大句子序号
+        final Map<Long, AutoCloseable> ttsInflight = new HashMap<>();
+        // TTS 下行节奏控制，为 null 时不限速；句子按序输出，同一时刻只有一个句子在估算时长
+        transient AudioPacer pacer;
+        transient AudioDuration ttsDuration;
+        transient boolean egressScheduled;
+        // 生命周期：入站线程写入 lastSeen / lastActive / rtt，actor 读取；lastPing 只在 actor 内
+        final long createdAtMs = System.currentTimeMillis();
+        transient volatile long lastSeenMs = createdAtMs;       // 最近一次任何上行（含 pong）
+        transient volatile long lastActiveMs = createdAtMs;     // 最近一次用户消息或音频
+        transient volatile long rttMs = -1;
+        transient long lastPingMs = createdAtMs;
+        transient volatile SessionUsage usage = SessionUsage.EMPTY;
+        final TtsReorderBuffer ttsReorder = new TtsReorderBuffer(new TtsReorderBuffer.Sink() {
+            private int chunkSeq = 0; // 句内分片序号，Sink 回调都在 actor 内
+
+            @Override
+            public void start(long seq, String text) {
+                chunkSeq = 0;
+                ttsDuration = new AudioDuration(TtsAudioFrame.codecOf(ttsEncoding), qiniuConfig.getTts().getSampleRate());
+                egress(0, 0, () -> send(events.ttsStart(seq, text)));
+            }
+
+            @Override
+            public void chunk(long seq, String base64) {
+                byte[] frame = null;
+                long micros = 0;
+                try {
+                    if (binaryAudio) {
+                        frame = TtsAudioFrame.encode(seq, chunkSeq++, TtsAudioFrame.codecOf(ttsEncoding), base64);
+                        if (pacer != null) {
+                            micros = ttsDuration.micros(frame, TtsAudioFrame.HEADER_SIZE, frame.length - TtsAudioFrame.HEADER_SIZE);
+                        }
+                    } else if (pacer != null) {
+                        byte[] audio = Base64.getDecoder().decode(base64);
+                        micros = ttsDuration.micros(audio, 0, audio.length);
+                    }
+                } catch (IllegalArgumentException e) {
+                    log.warn("Invalid base64 TTS chunk dropped, seq={}", seq);
+                    return;
+                }
+                byte[] binary = frame;
+                egress(micros, binary != null ? binary.length : base64.length(), () -> {
+                    TurnTimer timer = turnTimerOf(seq);
+                    if (timer != null) timer.audio(System.nanoTime());
+                    if (binary != null) {
+                        sendBinary(binary);
+                    } else {
+                        send(events.ttsChunk(base64));
+                    }
+                });
+            }
+
+            @Override
+            public void done(long seq) {
+                egress(0, 0, () -> {
+                    TurnTimer timer = ttsFinished(seq);
+                    send(events.ttsDone(seq, timer));
+                });
+            }
+
+            @Override
+            public void error(long seq, Throwable t) {
+                egress(0, 0, () -> {
+                    ttsFinished(seq);
+                    send(events.error("tts error: " + t.getMessage()));
+                });
+            }
+        });
+
+        SessionCtx(WebSocketSession session) {
+            this.session = session;
+            this.mailbox = new SessionMailbox(actorExecutor, session.getId(), mailboxStats);
+            VoiceStreamConfig.OutboundConfig oc = voiceStreamConfig.getOutbound();
+            this.outbound = new VoiceOutbound(session, outboundExecutor,
+                    oc.getMaxQueuedMessages(), oc.getMaxQueuedBytes(), outboundStats);
+            QiniuConfig.AsrConfig asr = qiniuConfig.getAsr();
+            this.replay = new PcmReplayBuffer((int) PcmReplayBuffer.bytesForMs(asr.getSampleRate(), asr.getChannels(),
+                    voiceStreamConfig.getAsrReplay().getBufferMs()));
+            this.replayChunkBytes = AsrFrameCoalescer.frameBytes(asr.getSampleRate(), asr.getChannels(), asr.getUplinkFrameMs());
+            VoiceStreamConfig.TurnMergeConfig tm = voiceStreamConfig.getTurnMerge();
+            this.pendingTurn = new TurnCoalescer(Boolean.TRUE.equals(tm.getEnabled()), tm.getGraceMs(), turnMergeStats);
+        }
+
+        /**
+         * 投递一个在本会话 actor 内执行的事件
+         */
+        void tell(Runnable event) {
+            mailbox.execute(event);
+        }
+
+        /**
+         * 入站线程的 VAD 判定用户正在说话：若正在流式或播放 TTS 且已过冷却期则打断
+         */
+        void onSpeech() {
+            if (!isTtsBusy() && !streaming) return;
+            long now = System.currentTimeMillis();
+            if ((now - lastBargeInAtMs) < bargeInCooldownMs) return;
+            lastBargeInAtMs = now;
+            voiceMetrics.bargeIns.increment();
+            handleUserInterruption();
+            log.info("User interruption triggered during TTS/LLM streaming");
+        }
 
-        final Queue<String> ttsQueue = new ConcurrentLinkedQueue<>();
-        final AtomicBoolean ttsBusy = new AtomicBoolean(false);
-        final Queue<String> llmQueue = new ConcurrentLinkedQueue<>();
+        /**
+         * 句子 seq 所属轮次的计时
+         */
+        TurnTimer turnTimerOf(long seq) {
+            Iterator<TurnTimer> it = turnTimers.descendingIterator();
+            while (it.hasNext()) {
+                TurnTimer t = it.next();
+                if (t.owns(seq)) return t;
+            }
+            return null;
+        }
+
+        /**
+         * 句子 seq 输出结束；若为所属轮次的最后一句，本轮完成并返回其计时
+         */
+        TurnTimer ttsFinished(long seq) {
+            TurnTimer t = turnTimerOf(seq);
+            if (t == null || !t.ttsDone(seq, System.nanoTime())) return null;
+            turnTimers.remove(t);
+            return t;
+        }
+
+        boolean isTtsBusy() {
+            return ttsReorder.pending() > 0 || !ttsQueue.isEmpty() || (pacer != null && pacer.pending() > 0);
+        }
+
+        /**
+         * 经节奏控制下发；未开启时直接发送
+         */
+        void egress(long micros, int bytes, Runnable send) {
+            if (pacer == null) {
+                send.run();
+                return;
+            }
+            pacer.offer(micros, bytes, send);
+            pumpEgress();
+        }
 
-        SessionCtx(WebSocketSession session) { this.session = session; }
+        void pumpEgress() {
+            if (pacer == null) return;
+            long waitNanos = pacer.pump(System.nanoTime());
+            if (waitNanos < 0 || egressScheduled) return;
+            egressScheduled = true;
+            voiceTimer.schedule(() -> tell(() -> {
+                egressScheduled = false;
+                pumpEgress();
+            }), Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * 时间轮到期：刷新内存估算，按心跳 / 半开 / 空闲判定处理，仍在线则登记下一次检查
+         */
+        void checkLiveness() {
+            if (sessions.get(session.getId()) != this) return;
+            long now = System.currentTimeMillis();
+            boolean busy = streaming || isTtsBusy() || !pendingTurn.isEmpty();
+            SessionUsage u = measureUsage(busy);
+            lifecycle.memoryChanged(usage.total(), u.total());
+            usage = u;
+            switch (lifecycle.decide(now, lastSeenMs, lastActiveMs, lastPingMs, busy)) {
+                case REAP_HALF_OPEN -> {
+                    lifecycle.stats().reapedHalfOpen.increment();
+                    log.info("WS half-open, closing: {} silent {}ms", session.getId(), now - lastSeenMs);
+                    closeSession(session, CloseStatus.SESSION_NOT_RELIABLE.withReason("heartbeat timeout"));
+                    return;
+                }
+                case REAP_IDLE -> {
+                    lifecycle.stats().reapedIdle.increment();
+                    log.info("WS idle, closing: {} idle {}ms", session.getId(), now - lastActiveMs);
+                    closeSession(session, CloseStatus.GOING_AWAY.withReason("idle timeout"));
+                    return;
+                }
+                case PING -> {
+                    lastPingMs = now;
+                    lifecycle.stats().pings.increment();
+                    // JSON ping 供应用层测 RTT；协议层 ping 帧由浏览器自动应答，旧客户端同样能保活
+                    send(events.ping(now));
+                    outbound.send(new PingMessage());
+                }
+                case NONE -> {
+                }
+            }
+            reaper.schedule(this, lifecycle.nextCheckAt(now, lastSeenMs, lastActiveMs, lastPingMs, busy));
+        }
+
+        /**
+         * 估算本会话持有的缓冲内存；文本按 UTF-16 每字符 2 字节计
+         */
+        SessionUsage measureUsage(boolean busy) {
+            long replayBytes;
+            synchronized (replay) {
+                replayBytes = replay.allocatedBytes();
+            }
+            AsrFrameCoalescer up = uplink;
+            long ttsText = ttsReorder.bufferedChars();
+            for (String t : ttsQueue) ttsText += t.length();
+            long pendingText = (chunker != null ? chunker.pendingChars() : 0) + (aiBuf != null ? aiBuf.length() : 0);
+            pendingText += pendingTurn.pendingChars();
+            return new SessionUsage(userId, groupId, busy,
+                    replayBytes,
+                    up != null ? up.buffered() : 0,
+                    outbound.queuedBytes(),
+                    pacer != null ? pacer.queuedBytes() : 0,
+                    ttsText * 2,
+                    pendingText * 2);
+        }
 
         void enqueueTts(String sentence) {
             if (sentence == null || sentence.isBlank()) return;
@@ -319,47 +896,69 @@ public class VoiceStreamHandler extends TextWebSocketHandler {
             drainTts();
         }
 
+        /**
+         * 播放角色开场白：已预合成时直接按句下发音频，不经 TTS；尚未合成完成时退回普通合成
+         */
+        void playGreeting(Long roleId) {
+            RoleGreetingAudioService.Greeting greeting = roleGreetingAudioService.find(roleId, voiceType, speedRatio, ttsEncoding);
+            if (greeting == null) return;
+            if (greeting.audio() == null) {
+                enqueueTts(greeting.text());
+                return;
+            }
+            long seq = ++ttsSeq;
+            ttsReorder.open(seq, greeting.text());
+            QiniuTtsWsClient.replayCached(greeting.audio(),
+                    base64 -> ttsReorder.chunk(seq, base64),
+                    () -> ttsReorder.complete(seq));
+        }
+
         void drainTts() {
-            if (ttsBusy.get()) return;
-            String next = ttsQueue.peek();
-            if (next == null) return;
-            if (!ttsBusy.compareAndSet(false, true)) return;
-
-            // 推送 tts 开始
-            safeSendJson(session, Map.of("type", "tts_start", "text", next));
-
-            this.ttsCancelHandle = ttsClient.synthesizeStream(next, voiceType, "mp3", speedRatio,
-                    base64 -> safeSendJson(session, Map.of("type", "tts_chunk", "data", base64)),
-                    () -> {
-                        // 完成一个句子的 TTS
-                        ttsQueue.poll();
-                        ttsBusy.set(false);
-                        this.ttsCancelHandle = null;
-                        safeSendJson(session, Map.of("type", "tts_done"));
-                        // 继续下一句
-                        drainTts();
-                    },
-                    err -> {
-                        ttsQueue.poll();
-                        ttsBusy.set(false);
-                        this.ttsCancelHandle = null;
-                        safeSendJson(session, Map.of("type", "error", "message", "tts error: " + err.getMessage()));
-                        drainTts();
-                    });
+            // 窗口按“未输出完的句子数”计算，既限制并发合成数，也限制重排缓冲区大小
+            while (ttsReorder.pending() < ttsPipelineDepth) {
+                String next = ttsQueue.poll();
+                if (next == null) return;
+                long seq = ++ttsSeq;
+                ttsReorder.open(seq, next);
+                AutoCloseable handle = ttsClient.synthesizeStream(next, voiceType, ttsEncoding, speedRatio,
+                        base64 -> tell(() -> ttsReorder.chunk(seq, base64)),
+                        () -> tell(() -> {
+                            // 完成一个句子的 TTS，空出窗口继续下一句
+                            ttsInflight.remove(seq);
+                            ttsReorder.complete(seq);
+                            drainTts();
+                        }),
+                        err -> tell(() -> {
+                            ttsInflight.remove(seq);
+                            ttsReorder.fail(seq, err);
+                            drainTts();
+                        }));
+                // 回调经邮箱排在本事件之后执行，put 一定先于 remove
+                ttsInflight.put(seq, handle);
+            }
         }
 
-        void interruptTts(String reason) {
-            try {
-                if (ttsCancelHandle != null) {
-                    ttsCancelHandle.close();
+        /**
+         * @return 节奏控制队列中被丢弃、未发给客户端的音频时长（毫秒）
+         */
+        long cancelAllTts() {
+            for (AutoCloseable handle : ttsInflight.values()) {
+                try {
+                    handle.close();
+                } catch (Exception ignore) {
                 }
-            } catch (Exception ignore) {
-            } finally {
-                ttsCancelHandle = null;
             }
+            ttsInflight.clear();
             ttsQueue.clear();
-            ttsBusy.set(false);
-            safeSendJson(session, Map.of("type", "tts_interrupted", "reason", reason));
+            turnTimers.clear();
+            // 丢弃已缓冲未下发的音频，被取消句子的迟到回调因序号失效而被忽略
+            ttsReorder.reset(ttsSeq + 1);
+            return pacer != null ? pacer.discard() : 0;
+        }
+
+        void interruptTts(String reason) {
+            long savedMs = cancelAllTts();
+            send(pacer != null ? events.ttsInterrupted(reason, savedMs) : events.ttsInterrupted(reason));
             // 注意：不取消 LLM；若随后会话关闭，在 dispose 时会将已生成内容入库
         }
         
@@ -369,7 +968,9 @@ public class VoiceStreamHandler extends TextWebSocketHandler {
             // 1. 停止TTS播放
             interruptTts("user_interruption");
             
-            // 2. 保存当前已生成的AI内容
+            // 2. 发出已攒的 llm_partial，保存当前已生成的AI内容；本轮迟到的 LLM 回调将被忽略
+            turn = null;
+            closeLlmPartials();
             saveAiIfBufferExists();
             
             // 3. 停止LLM流
@@ -383,11 +984,15 @@ public class VoiceStreamHandler extends TextWebSocketHandler {
             // 4. 重置状态
             streaming = false;
             
-            // 5. 清空队列，准备接收新输入
-            llmQueue.clear();
-            
-            // 6. 重置切句器
-            chunker = new TextChunker(64);
+            // 5. 丢弃切句器中的残余文本（下一轮会新建）
+            chunker = null;
+
+            // 6. 放弃尚未提交的推测回复
+            discardSpeculation();
+
+            // 7. 待处理的用户语句保留：打断多半是用户接着说，随后的 final 会与之合并为一轮；
+            //    已可出队时会立即开始新一轮，因此放在最后，避免上面的清理作用到新一轮上
+            drainLlm(session);
         }
 
         void dispose() {
@@ -398,61 +1003,124 @@ public class VoiceStreamHandler extends TextWebSocketHandler {
                 }
             } catch (Exception ignore) {}
             llmSub = null;
+            turn = null;
+            closeLlmPartials();
+            discardSpeculation();
             // 在关闭会话前，将已生成但未保存的 AI 内容入库
             saveAiIfBufferExists();
+            // 尚未回复的用户语句同样入库
+            String unanswered = pendingTurn.drain();
+            if (unanswered != null) chatHistoryWriter.saveUserMessage(groupId, userId, unanswered);
 
             // 停止 TTS
-            try {
-                if (ttsCancelHandle != null) {
-                    ttsCancelHandle.close();
-                }
-            } catch (Exception ignore) {}
-            ttsCancelHandle = null;
-            ttsQueue.clear();
-            ttsBusy.set(false);
+            cancelAllTts();
 
             // 关闭 ASR WS
+            if (uplink != null) uplink.close();
             closeAsr();
+
+            outbound.close();
+
+            lifecycle.memoryChanged(usage.total(), 0);
+            usage = SessionUsage.EMPTY;
         }
 
-        private void safeSendJson(WebSocketSession session, Map<String, ?> payload) {
-            try {
-                session.sendMessage(new TextMessage(new ObjectMapper().writeValueAsString(payload)));
-            } catch (Exception ignore) {
-            }
+        void closeLlmPartials() {
+            TokenCoalescer p = llmPartials;
+            if (p != null) p.close();
         }
 
-        void appendAudio(byte[] data) {
-            try {
-                audioBuf.write(data);
-            } catch (IOException ignore) {
+        // 所有下行消息经 outbound 排队，由单一写线程发送，调用方不会被慢客户端阻塞
+        void send(String json) {
+            outbound.send(new TextMessage(json));
+        }
+
+        void sendPartial(String json) {
+            outbound.sendPartial(new TextMessage(json));
+        }
+
+        void sendBinary(byte[] frame) {
+            outbound.send(new BinaryMessage(frame));
+        }
+
+        /**
+         * 上行合并器的出口：先写入回放缓冲；ASR 在线则直接发送，连接已断开或发送失败交给 actor 重连。
+         * <p>
+         * 在容器线程（或合并器的定时线程）上执行，每帧都要取 replay 锁，不能把 append 挪进 actor：
+         * resumeAsr 在锁内从 ackedOffset 重放到 replay.end() 后才置 asrLive，append、asrLive 判断与直接发送
+         * 必须和这段重放互斥，否则新帧可能既被重放又被直接发送，或在重放结束与 asrLive 生效之间漏发，
+         * 打乱新连接收到的音频顺序；若整段都交给 actor，每帧都要排在 LLM / TTS 回调之后，实时转写会被拖慢。
+         * 锁只在重连重放、closeAsr、drainAudio 与用量统计时有竞争，平时是无竞争的轻量锁，
+         * 锁内的 sendAudio 只是把帧交给 WebSocket 的发送队列，不做网络阻塞写
+         */
+        void sendUplink(java.nio.ByteBuffer frame) {
+            QiniuAsrWsClient failed = null;
+            synchronized (replay) {
+                replay.append(frame);
+                QiniuAsrWsClient asr = asrWsClient;
+                if (!asrLive || asr == null) return;
+                try {
+                    if (!asr.isOpened()) throw new IllegalStateException("ASR connection closed");
+                    asr.sendAudio(frame);
+                } catch (Exception e) {
+                    log.warn("Failed to send audio to ASR, will reconnect: {}", e.getMessage());
+                    asrLive = false;
+                    failed = asr;
+                }
+            }
+            if (failed != null) {
+                QiniuAsrWsClient f = failed;
+                tell(() -> reconnectAsr(f));
             }
         }
 
+        /**
+         * 取出 ASR 未能实时转写的音频（ASR 不在线时从最后确认处起），交给 REST 兜底；ASR 在线时为空
+         */
         byte[] drainAudio() {
-            byte[] out = audioBuf.toByteArray();
-            audioBuf.reset();
-            return out;
+            synchronized (replay) {
+                byte[] out = asrLive ? new byte[0] : replay.copySince(ackedOffset);
+                ackedOffset = replay.end();
+                return out;
+            }
         }
 
         void enqueueUserText(String text) {
             if (text == null || text.isBlank()) return;
-            llmQueue.add(text.trim());
+            pendingTurn.add(text, System.currentTimeMillis());
             drainLlm(session);
         }
 
+        /**
+         * 当前没有回复时取出待处理的一轮；宽限期未过或用户仍在说话（VAD 判定）时稍后再试
+         */
         void drainLlm(WebSocketSession session) {
-            if (streaming) return;
-            String next = llmQueue.poll();
-            if (next == null) return;
+            if (streaming || pendingTurn.isEmpty()) return;
+            long wait = pendingTurn.readyAt() - System.currentTimeMillis();
+            if (wait <= 0 && speechStartNanos > speechEndNanos) {
+                wait = voiceStreamConfig.getTurnMerge().getGraceMs();
+            }
+            if (wait > 0) {
+                if (drainScheduled) return;
+                drainScheduled = true;
+                voiceTimer.schedule(() -> tell(() -> {
+                    drainScheduled = false;
+                    drainLlm(session);
+                }), wait, TimeUnit.MILLISECONDS);
+                return;
+            }
             // 调用外部处理以继续流式
-            VoiceStreamHandler.this.startLlmStreaming(session, this, next);
+            VoiceStreamHandler.this.startLlmStreaming(session, this, pendingTurn.take());
         }
 
         void startAsr(WebSocketSession session) {
             try {
                 if (asrWsClient != null && asrWsClient.isOpened()) return;
-                asrWsClient = new QiniuAsrWsClient(qiniuConfig, objectMapper);
+                // 优先领取已握手的预连接，只需发送配置帧
+                QiniuAsrWsClient client = asrWsPool.acquire();
+                asrWsClient = client;
+                // 配置帧发出后先重放握手期间（或断线期间）缓冲的音频，再切换为实时发送
+                client.whenReady(() -> tell(() -> resumeAsr(client)));
                 int sr = 16000;
                 int ch = 1;
                 String fmt = audioFormat != null ? audioFormat : "raw";
@@ -471,72 +1139,237 @@ public class VoiceStreamHandler extends TextWebSocketHandler {
                         ch,
                         model,
                         true,
-                        partial -> safeSendJson(session, java.util.Map.of("type", "asr_partial", "text", partial)),
-                        fin -> {
-                            safeSendJson(session, java.util.Map.of("type", "asr_final", "text", fin));
-                            // 保存用户消息（立即保存，问题1）
-                            try {
-                                if (groupId != null && groupId > 0 && userId != null && fin != null && !fin.isBlank()) {
-                                    chatHistoryService.saveUserMessage(groupId, userId, fin);
-                                    log.info("ASR final message saved: {}", fin);
-                                }
-                            } catch (Exception e) {
-                                log.warn("saveUserMessage failed groupId={}, userId={}, err={}", groupId, userId, e.getMessage());
-                            }
-                            // 触发 LLM 流式（受 autoReply 控制）
-                            // 防止重复触发：增强检查逻辑（问题2、3）
-                            if (autoReply && !streaming) {
-                                // 额外检查：如果LLM订阅存在且活跃，不要重复触发
-                                if (llmSub == null || llmSub.isDisposed()) {
-                                    log.info("Triggering LLM for ASR final: {}", fin);
-                                    VoiceStreamHandler.this.startLlmStreaming(session, SessionCtx.this, fin);
-                                } else {
-                                    log.warn("Skipping LLM trigger, already active for: {}", fin);
-                                }
-                            }
-                        },
-                        err -> safeSendJson(session, java.util.Map.of("type", "error", "message", "asr error: " + err.getMessage())),
-                        () -> safeSendJson(session, java.util.Map.of("type", "asr_closed"))
+                        partial -> tell(() -> onAsrPartial(partial)),
+                        fin -> tell(() -> onAsrFinal(session, client, fin)),
+                        err -> tell(() -> send(events.error("asr error: " + err.getMessage()))),
+                        () -> tell(() -> send(events.asrClosed()))
                 );
             } catch (Exception e) {
-                safeSendJson(session, java.util.Map.of("type", "error", "message", "asr start error: " + e.getMessage()));
+                send(events.error("asr start error: " + e.getMessage()));
             }
         }
 
-        void closeAsr() {
+        /**
+         * 新 ASR 连接就绪：从最后确认处重放回放缓冲中的音频，之后的音频由 sendUplink 直接发送；
+         * 确有音频重放时，才对新连接的首条结果与断开连接的最后一条 final 去重
+         */
+        void resumeAsr(QiniuAsrWsClient asr) {
+            if (asrWsClient != asr || !asr.isOpened()) return;
+            long replayed;
+            boolean overflow;
             try {
-                if (asrWsClient != null) asrWsClient.close();
-            } catch (Exception ignore) {
-            } finally {
-                asrWsClient = null;
+                synchronized (replay) {
+                    overflow = ackedOffset < replay.start();
+                    asrStreamBase = Math.max(ackedOffset, replay.start());
+                    replayed = replay.replay(asrStreamBase, replayChunkBytes, asr::sendAudio);
+                    asrLive = true;
+                }
+            } catch (Exception e) {
+                log.warn("ASR replay failed, will reconnect: {}", e.getMessage());
+                tell(() -> reconnectAsr(asr));
+                return;
+            }
+            // 未确认的音频早于缓冲起点，这部分已无法重放
+            if (overflow) voiceMetrics.asrReplayOverflows.increment();
+            String prev = overlapCandidate;
+            overlapCandidate = null;
+            resumeOverlap = null;
+            if (replayed > 0) {
+                QiniuConfig.AsrConfig cfg = qiniuConfig.getAsr();
+                long ms = replayed * 1000 / PcmReplayBuffer.bytesForMs(cfg.getSampleRate(), cfg.getChannels(), 1000);
+                if (prev != null) {
+                    resumeOverlap = prev;
+                    resumeOverlapMax = TranscriptOverlap.maxOverlapChars(ms);
+                }
+                voiceMetrics.asrReplays.increment();
+                voiceMetrics.asrReplayedMs.add(ms);
+                log.info("ASR resumed with {}ms replayed audio, session={}", ms, session.getId());
             }
         }
 
-        // 计算当前帧是否存在语音活动（简单能量阈值）
-        boolean isVoiceActive(byte[] pcm) {
-            if (pcm == null || pcm.length < 4) return false;
-            int samples = pcm.length / 2;
-            long sumAbs = 0;
-            for (int i = 0; i + 1 < pcm.length; i += 2) {
-                int lo = pcm[i] & 0xff;
-                int hi = pcm[i + 1]; // already signed
-                int val = (hi << 8) | lo; // little-endian to signed 16
-                sumAbs += Math.abs(val);
+        /**
+         * ASR 连接断开或发送失败：换一条连接，就绪后从最后确认处重放
+         */
+        void reconnectAsr(QiniuAsrWsClient failed) {
+            // 同一连接的多次失败只重连一次
+            if (asrWsClient != failed) return;
+            voiceMetrics.asrReconnects.increment();
+            closeAsr();
+            // 只有断开的这条连接给出的 final 才可能与重放的音频重叠
+            if (lastFinalFrom == failed && !lastAsrFinal.isEmpty()) overlapCandidate = lastAsrFinal;
+            startAsr(session);
+        }
+
+        /**
+         * 重连后去掉新连接结果开头与上一条 final 重叠的部分；新连接的首条 final 之后不再处理
+         */
+        String stripResumeOverlap(String text, boolean isFinal) {
+            String prev = resumeOverlap;
+            if (prev == null) return text;
+            if (isFinal) resumeOverlap = null;
+            String rest = TranscriptOverlap.strip(prev, text, resumeOverlapMax);
+            if (isFinal && rest.length() < text.length()) voiceMetrics.asrOverlapTrimmed.increment();
+            return rest;
+        }
+
+        /**
+         * asr_final：保存用户消息，推测命中则接管推测回复，否则启动 LLM
+         */
+        void onAsrFinal(WebSocketSession session, QiniuAsrWsClient from, String raw) {
+            String fin = stripResumeOverlap(raw, true);
+            lastAsrFinal = fin;
+            lastFinalFrom = from;
+            // 说完到 final 的耗时；VAD 仍判定在说话（ASR 先于 VAD 断句）时不计
+            long speechEnd = speechEndNanos;
+            long afterEndMs = -1;
+            if (speechEnd != 0 && speechEnd > speechStartNanos && speechEnd != finalTimedFor) {
+                finalTimedFor = speechEnd;
+                long nanos = System.nanoTime() - speechEnd;
+                voiceMetrics.asrFinalAfterSpeechEnd.recordNanos(nanos);
+                afterEndMs = nanos / 1_000_000;
+            }
+            send(events.asrFinal(fin, firstPartialMs, afterEndMs));
+            firstPartialMs = -1;
+            SpeculativeReply spec = takeSpeculation();
+            if (!autoReply) {
+                // 不自动回复：直接保存用户消息（异步落库）
+                chatHistoryWriter.saveUserMessage(groupId, userId, fin);
+            } else if (streaming || !pendingTurn.isEmpty()) {
+                // 回复进行中或已有待处理的语句：合并为一轮，出队时作为一条用户消息入库并回复
+                log.info("Reply in progress, merging ASR final into pending turn: {}", fin);
+                enqueueUserText(fin);
+            } else if (spec != null && spec.matches(fin) && !spec.failed()) {
+                // 推测命中：保存用户消息（立即提交，问题1），由推测中的流接管
+                chatHistoryWriter.saveUserMessage(groupId, userId, fin);
+                commitSpeculation(session, SessionCtx.this, spec, fin);
+                spec = null;
+            } else {
+                // 未命中：丢弃推测（它只写了副本记忆），按 final 文本重新开始（startLlmStreaming 负责入库）
+                if (spec != null) {
+                    spec.discard(true);
+                    spec = null;
+                }
+                log.info("Triggering LLM for ASR final: {}", fin);
+                VoiceStreamHandler.this.startLlmStreaming(session, SessionCtx.this, fin);
             }
-            int avgAbs = (int) (sumAbs / Math.max(1, samples));
-            return avgAbs >= vadAbsThreshold;
+            if (spec != null) spec.discard(false);
         }
 
-        // 将当前累积的 AI 输出入库（若存在且上下文可用）
-        void saveAiIfBufferExists() {
+        /**
+         * asr_partial 下发；开启推测时，文本变化即重新开始稳定计时，与进行中的推测不一致则将其放弃
+         */
+        void onAsrPartial(String raw) {
+            String partial = stripResumeOverlap(raw, false);
+            if (partial.isEmpty()) return;
+            // 每次开口只记录第一条 asr_partial
+            long speechStart = speechStartNanos;
+            if (speechStart != 0 && speechStart != partialTimedFor) {
+                partialTimedFor = speechStart;
+                long nanos = System.nanoTime() - speechStart;
+                voiceMetrics.asrFirstPartial.recordNanos(nanos);
+                firstPartialMs = nanos / 1_000_000;
+            }
+            sendPartial(events.asrPartial(partial));
+            if (!speculative) return;
+            VoiceStreamConfig.SpeculationConfig sc = voiceStreamConfig.getSpeculation();
+            String key = SpeculativeReply.normalize(partial);
+            if (key.equals(partialKey)) return; // 文本未变，稳定计时继续
+            partialKey = key;
+            long gen = ++partialGen;
+            if (speculation != null && !speculation.matches(partial)) {
+                speculation.discard(false);
+                speculation = null;
+            }
+            if (key.length() >= sc.getMinChars()) {
+                voiceTimer.schedule(() -> tell(() -> onPartialStable(gen, partial)),
+                        sc.getStableMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * asr_partial 已稳定 stableMs：空闲时以其文本提前启动 LLM，输出暂存在 SpeculativeReply 中
+         */
+        void onPartialStable(long gen, String text) {
+            if (gen != partialGen || speculation != null) return;
+            if (!autoReply || streaming || !pendingTurn.isEmpty() || streamingService == null
+                    || (llmSub != null && !llmSub.isDisposed())) return;
+            AiServiceFactory.ScratchService scratch;
             try {
-                if (aiBuf != null && aiBuf.length() > 0 && groupId != null && groupId > 0 && userId != null) {
-                    chatHistoryService.saveAiMessage(groupId, userId, aiBuf.toString());
-                }
+                scratch = aiServiceFactory.createScratchService(groupId);
+            } catch (Exception e) {
+                log.warn("Speculative LLM skipped, scratch memory unavailable groupId={}, err={}", groupId, e.getMessage());
+                return;
+            }
+            SpeculativeReply spec = new SpeculativeReply(text, memorySync(new MemoryCheckpoint(scratch.memory())),
+                    speculationStats);
+            speculation = spec;
+            log.debug("Speculative LLM start on stable partial: {}", text);
+            try {
+                spec.attach(llmStream(scratch.service(), text).subscribe(
+                        token -> tell(() -> spec.token(token)),
+                        err -> tell(() -> spec.error(err)),
+                        () -> tell(spec::complete)));
             } catch (Exception e) {
-                log.warn("saveAiMessage failed groupId={}, userId={}, err={}", groupId, userId, e.getMessage());
+                spec.error(e);
+            }
+        }
+
+        /**
+         * 推测命中后把副本记忆中新增的消息同步到正式记忆；正式记忆在同步时才取，与正式服务使用的是同一个
+         */
+        Runnable memorySync(MemoryCheckpoint checkpoint) {
+            return () -> {
+                try {
+                    checkpoint.sync(aiServiceFactory.getChatMemory(groupId));
+                } catch (Exception e) {
+                    log.warn("Chat memory sync failed groupId={}, err={}", groupId, e.getMessage());
+                }
+            };
+        }
+
+        /**
+         * 取走进行中的推测并重置稳定计时
+         */
+        SpeculativeReply takeSpeculation() {
+            SpeculativeReply spec = speculation;
+            speculation = null;
+            partialKey = "";
+            partialGen++;
+            return spec;
+        }
+
+        void discardSpeculation() {
+            SpeculativeReply spec = takeSpeculation();
+            if (spec != null) spec.discard(false);
+        }
+
+        void closeAsr() {
+            QiniuAsrWsClient asr = asrWsClient;
+            overlapCandidate = null;
+            resumeOverlap = null;
+            synchronized (replay) {
+                asrLive = false;
+                // 记下该连接已确认到的位置，重连时从这里重放；end_time 以该连接收到的首个字节为零点
+                long endMs = asr != null ? asr.lastFinalEndMs() : -1;
+                if (endMs >= 0) {
+                    QiniuConfig.AsrConfig cfg = qiniuConfig.getAsr();
+                    long acked = asrStreamBase + PcmReplayBuffer.bytesForMs(cfg.getSampleRate(), cfg.getChannels(), endMs);
+                    ackedOffset = Math.max(ackedOffset, Math.min(acked, replay.end()));
+                }
+            }
+            try {
+                if (asr != null) asr.close();
+            } catch (Exception ignore) {
             } finally {
-                if (aiBuf != null) aiBuf.setLength(0);
+                asrWsClient = null;
+            }
+        }
+
+        // 将当前累积的 AI 输出提交异步落库（若存在且上下文可用）
+        void saveAiIfBufferExists() {
+            if (aiBuf != null && aiBuf.length() > 0) {
+                chatHistoryWriter.saveAiMessage(groupId, userId, aiBuf.toString());
+                aiBuf.setLength(0);
             }
         }
     }
@@ -0,0 +1,65 @@
+package com.aih.chatpartner.ai;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link TokenCoalescer} 的长度/时间窗口与冲刷行为
+ */
+class TokenCoalescerTest {
+
+    private final List<String> frames = new CopyOnWriteArrayList<>();
+
+    @Test
+    void flushesWhenMaxCharsReached() {
+        TokenCoalescer c = new TokenCoalescer(10_000, 4, Schedulers.parallel(), frames::add);
+        c.append("ab");
+        c.append("cd");
+        c.append("e");
+        assertEquals(List.of("abcd"), frames);
+        c.close();
+        assertEquals(List.of("abcd", "e"), frames);
+        c.append("ignored");
+        assertEquals(2, frames.size());
+    }
+
+    @Test
+    void flushesAfterWindowElapses() throws InterruptedException {
+        TokenCoalescer c = new TokenCoalescer(30, 1000, Schedulers.parallel(), frames::add);
+        c.append("你");
+        c.append("好");
+        long deadline = System.currentTimeMillis() + 2000;
+        while (frames.isEmpty() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertEquals(List.of("你好"), frames);
+    }
+
+    @Test
+    void zeroWindowPassesTokensThrough() {
+        TokenCoalescer c = new TokenCoalescer(0, 32, Schedulers.parallel(), frames::add);
+        c.append("a");
+        c.append("b");
+        assertEquals(List.of("a", "b"), frames);
+    }
+
+    @Test
+    void discardDropsPendingText() {
+        TokenCoalescer c = new TokenCoalescer(10_000, 32, Schedulers.parallel(), frames::add);
+        c.append("a");
+        c.discard();
+        c.flush();
+        assertEquals(List.of(), frames);
+    }
+
+    @Test
+    void fluxStageFlushesRemainderOnComplete() {
+        List<String> out = TokenCoalescer.coalesce(Flux.just("a", "b", "c", "d", "e"), 10_000, 2)
+                .collectList().block();
+        assertEquals(List.of("ab", "cd", "e"), out);
+    }
+}
@@ -0,0 +1,117 @@
+package com.aih.chatpartner.service.voice;
+
+import com.aih.chatpartner.config.QiniuConfig;
+import com.aih.chatpartner.model.entity.AiRole;
+import com.aih.chatpartner.voice.cache.TtsAudioCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link RoleGreetingAudioService} 的预合成、复用与失效
+ */
+class RoleGreetingAudioServiceTest {
+
+    /**
+     * 以文本和音色拼出的字节充当音频，记录调用次数
+     */
+    private static final class FakeTts extends TtsService {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public byte[] textToSpeech(String text, String voiceType, Double speedRatio, String encoding) {
+            calls.incrementAndGet();
+            return audioOf(text, voiceType);
+        }
+    }
+
+    private final QiniuConfig cfg = config();
+    private final TtsAudioCache cache = new TtsAudioCache(cfg);
+    private final FakeTts tts = new FakeTts();
+    private RoleGreetingAudioService service = new RoleGreetingAudioService(tts, cache, cfg);
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private static QiniuConfig config() {
+        QiniuConfig cfg = new QiniuConfig();
+        cfg.getTts().getCache().setDiskEnabled(false);
+        cfg.getTts().getGreeting().setVoiceTypes(List.of("voice-a", "voice-b"));
+        return cfg;
+    }
+
+    private static byte[] audioOf(String text, String voiceType) {
+        return (text + "@" + voiceType).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static AiRole role(long id, String greeting) {
+        AiRole r = new AiRole();
+        r.setId(id);
+        r.setGreeting(greeting);
+        r.setIsActive(1);
+        r.setIsDelete(0);
+        return r;
+    }
+
+    @Test
+    void synthesizesConfiguredVoicesOnceAndServesThem() throws Exception {
+        service.schedule(role(1, "你好，我是小源，很高兴认识你！"));
+        awaitTrue(() -> (long) service.stats().get("synthesized") == 2);
+
+        RoleGreetingAudioService.Greeting g = service.find(1L, "voice-b", 1.0, "mp3");
+        assertEquals("你好，我是小源，很高兴认识你！", g.text());
+        assertArrayEquals(audioOf(g.text(), "voice-b"), TtsAudioCache.toBytes(g.audio()));
+
+        // 未预合成的音色只返回文本，由调用方现场合成
+        assertNull(service.find(1L, "voice-c", 1.0, "mp3").audio());
+        assertNull(service.find(2L, "voice-a", 1.0, "mp3"));
+
+        // 同一开场白再次触发不重复合成；重启后从缓存加载
+        service.schedule(role(1, "你好，我是小源，很高兴认识你！"));
+        service.shutdown();
+        service = new RoleGreetingAudioService(tts, cache, cfg);
+        service.schedule(role(1, "你好，我是小源，很高兴认识你！"));
+        awaitTrue(() -> (long) service.stats().get("loadedFromCache") == 2);
+        assertNotNull(service.find(1L, "voice-a", 1.0, "mp3").audio());
+        assertEquals(2, tts.calls.get());
+    }
+
+    @Test
+    void updatedGreetingReplacesAudioAndInactiveRoleIsDropped() throws Exception {
+        service.schedule(role(1, "旧的开场白"));
+        awaitTrue(() -> (long) service.stats().get("synthesized") == 2);
+
+        service.schedule(role(1, "新的开场白"));
+        awaitTrue(() -> (long) service.stats().get("synthesized") == 4);
+        RoleGreetingAudioService.Greeting g = service.find(1L, "voice-a", 1.0, "mp3");
+        assertArrayEquals(audioOf("新的开场白", "voice-a"), TtsAudioCache.toBytes(g.audio()));
+        Map<String, Object> stats = service.stats();
+        assertEquals(2, stats.get("entries"));
+
+        AiRole inactive = role(1, "新的开场白");
+        inactive.setIsActive(0);
+        service.schedule(inactive);
+        assertNull(service.find(1L, "voice-a", 1.0, "mp3"));
+        assertEquals(0, service.stats().get("entries"));
+    }
+
+    private static void awaitTrue(BooleanSupplier cond) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!cond.getAsBoolean() && System.nanoTime() < deadline) Thread.sleep(5);
+        assertTrue(cond.getAsBoolean());
+    }
+}
@@ -0,0 +1,92 @@
+package com.aih.chatpartner.voice.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link MappedSegmentStore} 的追加读取、重启恢复与分段淘汰
+ */
+class MappedSegmentStoreTest {
+
+    private final Path dir = Files.createTempDirectory("tts-cache-test");
+
+    MappedSegmentStoreTest() throws IOException {
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static String key(String text) {
+        return TtsAudioCache.key(text, "v1", 1.0, "pcm");
+    }
+
+    private static byte[] keyBytes(String hex) {
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) out[i] = (byte) Integer.parseInt(hex, 2 * i, 2 * i + 2, 16);
+        return out;
+    }
+
+    private static boolean put(MappedSegmentStore store, String text, byte[] audio) throws IOException {
+        String k = key(text);
+        return store.put(k, keyBytes(k), ByteBuffer.wrap(audio));
+    }
+
+    private static byte[] bytes(ByteBuffer b) {
+        byte[] out = new byte[b.remaining()];
+        b.get(b.position(), out);
+        return out;
+    }
+
+    @Test
+    void entriesSurviveReopen() throws IOException {
+        try (MappedSegmentStore store = new MappedSegmentStore(dir, 4096, 4)) {
+            assertTrue(put(store, "你好", new byte[]{1, 2, 3}));
+            assertTrue(put(store, "再见", new byte[]{4, 5}));
+            assertFalse(put(store, "你好", new byte[]{9}));   // 已存在，不重复写入
+        }
+        try (MappedSegmentStore store = new MappedSegmentStore(dir, 4096, 4)) {
+            assertEquals(2, store.entries());
+            assertEquals(5, store.dataBytes());
+            assertEquals(3, bytes(store.get(key("你好"))).length);
+            assertEquals(5, bytes(store.get(key("再见")))[1]);
+            // 恢复后继续在原分段末尾追加
+            assertTrue(put(store, "谢谢", new byte[]{7}));
+            assertEquals(1, store.segmentCount());
+        }
+    }
+
+    @Test
+    void oldestSegmentIsDroppedWhenFull() throws IOException {
+        // 每条记录 40 + 50 字节，一个 128 字节的分段只放得下一条
+        try (MappedSegmentStore store = new MappedSegmentStore(dir, 128, 2)) {
+            assertTrue(put(store, "一", new byte[50]));
+            assertTrue(put(store, "二", new byte[50]));
+            ByteBuffer held = store.get(key("一"));
+            assertTrue(put(store, "三", new byte[50]));
+            assertEquals(2, store.segmentCount());
+            assertEquals(1, store.evictedSegments());
+            assertNull(store.get(key("一")));
+            assertEquals(50, store.get(key("三")).remaining());
+            // 已淘汰分段的切片在被回收前仍可读取
+            assertEquals(50, held.remaining());
+            // 超过单个分段容量的数据不写入
+            assertFalse(put(store, "四", new byte[200]));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.aih.chatpartner.voice.cache;
+
+import com.aih.chatpartner.config.QiniuConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link TtsAudioCache} 的键、两级命中与指标
+ */
+class TtsAudioCacheTest {
+
+    private final Path dir = Files.createTempDirectory("tts-cache-test");
+
+    TtsAudioCacheTest() throws IOException {
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private QiniuConfig.TtsCacheConfig config() {
+        QiniuConfig.TtsCacheConfig cfg = new QiniuConfig.TtsCacheConfig();
+        cfg.setDiskDir(dir.toString());
+        cfg.setSegmentBytes(64 * 1024);
+        cfg.setDiskMaxBytes(256 * 1024L);
+        cfg.setMaxTextChars(10);
+        return cfg;
+    }
+
+    @Test
+    void keyCoversEveryParameter() {
+        String k = TtsAudioCache.key("你好", "v1", 1.0, "mp3");
+        assertEquals(64, k.length());
+        assertEquals(k, TtsAudioCache.key("你好", "v1", 1.000001, "mp3"));
+        assertNotEquals(k, TtsAudioCache.key("你好！", "v1", 1.0, "mp3"));
+        assertNotEquals(k, TtsAudioCache.key("你好", "v2", 1.0, "mp3"));
+        assertNotEquals(k, TtsAudioCache.key("你好", "v1", 1.2, "mp3"));
+        assertNotEquals(k, TtsAudioCache.key("你好", "v1", 1.0, "pcm"));
+    }
+
+    @Test
+    void keyDoesNotDependOnDefaultLocale() {
+        String k = TtsAudioCache.key("你好", "v1", 1.25, "mp3");
+        Locale saved = Locale.getDefault();
+        try {
+            // 德语区域下 %.2f 会输出 "1,25"，磁盘上的温层缓存将整体失效
+            Locale.setDefault(Locale.GERMANY);
+            assertEquals(k, TtsAudioCache.key("你好", "v1", 1.25, "mp3"));
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+
+    @Test
+    void memoryHitThenDiskHitAfterRestart() {
+        String k = TtsAudioCache.key("你好", "v1", 1.0, "mp3");
+        TtsAudioCache cache = new TtsAudioCache(config());
+        assertNull(cache.get(k));
+        cache.put(k, new byte[]{1, 2, 3});
+        ByteBuffer hit = cache.get(k);
+        assertArrayEquals(new byte[]{1, 2, 3}, TtsAudioCache.toBytes(hit));
+        assertTrue(hit.isReadOnly());
+        cache.shutdown();
+
+        TtsAudioCache reopened = new TtsAudioCache(config());
+        assertArrayEquals(new byte[]{1, 2, 3}, TtsAudioCache.toBytes(reopened.get(k)));
+        assertArrayEquals(new byte[]{1, 2, 3}, TtsAudioCache.toBytes(reopened.get(k)));
+        Map<String, Object> stats = reopened.stats();
+        assertEquals(1L, stats.get("diskHits"));
+        assertEquals(1L, stats.get("hotHits"));
+        assertEquals(1.0, stats.get("hitRatio"));
+        reopened.shutdown();
+    }
+
+    @Test
+    void longTextAndDisabledCacheAreBypassed() {
+        QiniuConfig.TtsCacheConfig cfg = config();
+        TtsAudioCache cache = new TtsAudioCache(cfg);
+        assertTrue(cache.cacheable("你好"));
+        assertFalse(cache.cacheable("这是一段明显超过十个字的长回复文本"));
+        cfg.setEnabled(false);
+        assertFalse(cache.cacheable("你好"));
+        cache.shutdown();
+    }
+}
@@ -0,0 +1,233 @@
+package com.aih.chatpartner.voice.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 本地七牛 ASR 替身：实现 {@link com.aih.chatpartner.voice.stream.QiniuAsrWsClient} 使用的二进制协议
+ * - 上行：4 字节协议头 + 序列号 + payload 长度 + payload（配置帧为 gzip JSON，音频帧为 gzip 或原始 PCM）
+ * - 下行：FULL_SERVER_RESPONSE（0x09）+ 序列号 + 长度 + gzip JSON，result.utterances[].definite 标识 final，
+ *   result.additions.log_id 标识连接
+ * 按音频能量模拟识别：有声段每 partialEveryMs 毫秒音频下发一次逐渐变长的 partial，
+ * 有声段后静音达到 finalSilenceMs 即下发 final，文本取自固定脚本。
+ */
+public class FakeAsrServer extends WebSocketServer {
+
+    private static final String[] SCRIPT = {
+            "喜羊羊你好，今天我们去哪里玩呀",
+            "给我讲一个关于灰太狼的故事吧",
+            "羊村今天的天气怎么样",
+            "你最喜欢吃什么东西呢",
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final int sampleRate;
+    private final int partialEveryMs;
+    private final int finalSilenceMs;
+    private final double speechRms;
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    final LongAdder connections = new LongAdder();
+    final LongAdder audioFrames = new LongAdder();
+    final LongAdder partials = new LongAdder();
+    final LongAdder finals = new LongAdder();
+
+    /**
+     * 每条连接的识别状态，只在该连接的消息线程上读写
+     */
+    private static final class Session {
+        final String logId = UUID.randomUUID().toString();
+        int seq;
+        long audioMs;           // 累计收到的音频时长，作为 end_time
+        boolean inSpeech;
+        long speechStartMs;
+        long speechMs;
+        long silenceMs;
+        long lastPartialAtSpeechMs;
+        int utterance;
+    }
+
+    public FakeAsrServer(int port, int sampleRate, int partialEveryMs, int finalSilenceMs, double speechRms) {
+        super(new InetSocketAddress("127.0.0.1", port));
+        this.sampleRate = sampleRate;
+        this.partialEveryMs = partialEveryMs;
+        this.finalSilenceMs = finalSilenceMs;
+        this.speechRms = speechRms;
+        setReuseAddr(true);
+    }
+
+    public FakeAsrServer(int port) {
+        this(port, 16000, 200, 400, 500.0);
+    }
+
+    /**
+     * 启动并等待监听就绪
+     */
+    public FakeAsrServer startAndWait() throws InterruptedException {
+        start();
+        if (!started.await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("fake ASR server did not start");
+        }
+        return this;
+    }
+
+    public String url() {
+        return "ws://127.0.0.1:" + getPort();
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        connections.increment();
+        conn.setAttachment(new Session());
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        // 协议只有二进制帧
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer frame) {
+        Session s = conn.getAttachment();
+        if (s == null || frame.remaining() < 12) return;
+        int base = frame.position();
+        int headerSize = (frame.get(base) & 0x0f) * 4;
+        int messageType = (frame.get(base + 1) >>> 4) & 0x0f;
+        int flags = frame.get(base + 1) & 0x0f;
+        int compression = frame.get(base + 2) & 0x0f;
+        int offset = base + headerSize;
+        if ((flags & 0x01) != 0) {
+            s.seq = frame.getInt(offset);
+            offset += 4;
+        }
+        int len = frame.getInt(offset);
+        offset += 4;
+        byte[] payload = new byte[len];
+        frame.get(offset, payload, 0, len);
+        if (compression == 0x01) payload = gunzip(payload);
+
+        if (messageType == 0x02) {
+            audioFrames.increment();
+            onAudio(conn, s, payload);
+        }
+        // 0x01 配置帧：真实服务只回一条无文本的确认，客户端不依赖它，这里不回
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+    }
+
+    private void onAudio(WebSocket conn, Session s, byte[] pcm) {
+        long frameMs = pcm.length / 2 * 1000L / sampleRate;
+        s.audioMs += frameMs;
+        if (rms(pcm) >= speechRms) {
+            if (!s.inSpeech) {
+                s.inSpeech = true;
+                s.speechStartMs = s.audioMs - frameMs;
+                s.speechMs = 0;
+                s.lastPartialAtSpeechMs = 0;
+            }
+            s.speechMs += frameMs;
+            s.silenceMs = 0;
+            if (s.speechMs - s.lastPartialAtSpeechMs >= partialEveryMs) {
+                s.lastPartialAtSpeechMs = s.speechMs;
+                String text = SCRIPT[s.utterance % SCRIPT.length];
+                int chars = (int) Math.min(text.length(), 1 + s.speechMs / 150);
+                send(conn, s, text.substring(0, chars), false);
+                partials.increment();
+            }
+        } else if (s.inSpeech) {
+            s.silenceMs += frameMs;
+            if (s.silenceMs >= finalSilenceMs) {
+                s.inSpeech = false;
+                send(conn, s, SCRIPT[s.utterance % SCRIPT.length], true);
+                s.utterance++;
+                finals.increment();
+            }
+        }
+    }
+
+    private void send(WebSocket conn, Session s, String text, boolean definite) {
+        ObjectNode root = mapper.createObjectNode();
+        ObjectNode result = root.putObject("result");
+        result.put("text", text);
+        ArrayNode utterances = result.putArray("utterances");
+        ObjectNode u = utterances.addObject();
+        u.put("text", text);
+        u.put("definite", definite);
+        u.put("start_time", s.speechStartMs);
+        u.put("end_time", s.audioMs);
+        result.putObject("additions").put("log_id", s.logId);
+        byte[] body;
+        try {
+            body = gzip(mapper.writeValueAsBytes(root));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer out = ByteBuffer.allocate(12 + body.length);
+        out.put((byte) 0x11);                    // version 1, header size 1
+        out.put((byte) ((0x09 << 4) | 0x01));    // FULL_SERVER_RESPONSE, POS_SEQUENCE
+        out.put((byte) ((0x01 << 4) | 0x01));    // JSON, GZIP
+        out.put((byte) 0x00);
+        out.putInt(s.seq);
+        out.putInt(body.length);
+        out.put(body);
+        out.flip();
+        if (conn.isOpen()) conn.send(out);
+    }
+
+    static double rms(byte[] pcm) {
+        ByteBuffer b = ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN);
+        int n = pcm.length / 2;
+        if (n == 0) return 0;
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            double v = b.getShort(i * 2);
+            sum += v * v;
+        }
+        return Math.sqrt(sum / n);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2 + 32);
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+            gz.write(data);
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] data) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.aih.chatpartner.voice.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地七牛 TTS 替身：收到 {"audio":{...},"request":{"text":...}} 后按固定节奏流式返回 base64 音频分片，
+ * 每条消息形如 {"sequence":n,"data":"..."}，最后一片的 sequence 取负数表示结束（与 TtsWsConnection 的判定一致）。
+ * 分片数与文本长度成正比；连接在句子之间保持打开，可被连接池复用。
+ */
+public class FakeTtsServer extends WebSocketServer {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final int firstChunkDelayMs;
+    private final int chunkIntervalMs;
+    private final int charsPerChunk;
+    private final String chunkBase64;
+    private final ScheduledExecutorService clock = Executors.newScheduledThreadPool(2, r -> {
+        Thread t = new Thread(r, "fake-tts-clock");
+        t.setDaemon(true);
+        return t;
+    });
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    final LongAdder connections = new LongAdder();
+    final LongAdder sentences = new LongAdder();
+    final LongAdder chunks = new LongAdder();
+
+    /**
+     * @param chunkBytes 每个分片的音频字节数（16k 单声道 PCM 下 3200 字节为 100ms）
+     */
+    public FakeTtsServer(int port, int firstChunkDelayMs, int chunkIntervalMs, int charsPerChunk, int chunkBytes) {
+        super(new InetSocketAddress("127.0.0.1", port));
+        this.firstChunkDelayMs = firstChunkDelayMs;
+        this.chunkIntervalMs = chunkIntervalMs;
+        this.charsPerChunk = Math.max(1, charsPerChunk);
+        byte[] audio = new byte[chunkBytes];
+        new Random(7).nextBytes(audio);
+        this.chunkBase64 = Base64.getEncoder().encodeToString(audio);
+        setReuseAddr(true);
+    }
+
+    public FakeTtsServer(int port) {
+        this(port, 80, 40, 4, 3200);
+    }
+
+    public FakeTtsServer startAndWait() throws InterruptedException {
+        start();
+        if (!started.await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("fake TTS server did not start");
+        }
+        return this;
+    }
+
+    public String url() {
+        return "ws://127.0.0.1:" + getPort();
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        clock.shutdownNow();
+        super.stop();
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        connections.increment();
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        synthesize(conn, message);
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        synthesize(conn, StandardCharsets.UTF_8.decode(message).toString());
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+    }
+
+    private void synthesize(WebSocket conn, String request) {
+        String text;
+        try {
+            JsonNode node = mapper.readTree(request);
+            text = node.path("request").path("text").asText("");
+        } catch (Exception e) {
+            conn.close(1003, "bad request");
+            return;
+        }
+        sentences.increment();
+        int n = Math.max(1, (text.length() + charsPerChunk - 1) / charsPerChunk);
+        for (int k = 1; k <= n; k++) {
+            int seq = k == n ? -k : k;
+            clock.schedule(() -> {
+                if (!conn.isOpen()) return;
+                chunks.increment();
+                conn.send("{\"sequence\":" + seq + ",\"data\":\"" + chunkBase64 + "\"}");
+            }, firstChunkDelayMs + (long) (k - 1) * chunkIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
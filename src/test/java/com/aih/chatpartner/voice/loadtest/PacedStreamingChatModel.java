@@ -0,0 +1,86 @@
+package com.aih.chatpartner.voice.loadtest;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地 LLM 替身：忽略请求内容，首 token 延迟 firstTokenMs 后按 tokensPerSecond 的速率吐出固定回复
+ * 回复切成 1~3 个字的 token，含逗号与句号，触发与真实回复相同的切句与 TTS 流水线。
+ */
+public class PacedStreamingChatModel implements StreamingChatModel {
+
+    private static final String REPLY = "你好呀，我是喜羊羊！今天羊村的天气特别好，阳光暖暖的。"
+            + "我们可以一起去草地上踢球，也可以去找美羊羊和懒羊羊玩捉迷藏。"
+            + "不过要小心灰太狼哦，他又在想新的抓羊计划了，我们要动动脑筋保护大家！";
+
+    private final long firstTokenMs;
+    private final long tokenIntervalMicros;
+    private final List<String> tokens;
+    private final ScheduledExecutorService clock = Executors.newScheduledThreadPool(2, r -> {
+        Thread t = new Thread(r, "paced-llm-clock");
+        t.setDaemon(true);
+        return t;
+    });
+
+    final LongAdder requests = new LongAdder();
+
+    public PacedStreamingChatModel(long firstTokenMs, int tokensPerSecond) {
+        this.firstTokenMs = firstTokenMs;
+        this.tokenIntervalMicros = 1_000_000L / Math.max(1, tokensPerSecond);
+        this.tokens = split(REPLY);
+    }
+
+    @Override
+    public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        requests.increment();
+        clock.schedule(new Emitter(handler), firstTokenMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 逐个发出 token，每次发完再调度下一个，模拟流式输出的节奏
+     */
+    private final class Emitter implements Runnable {
+        private final StreamingChatResponseHandler handler;
+        private int next;
+
+        Emitter(StreamingChatResponseHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (next < tokens.size()) {
+                    handler.onPartialResponse(tokens.get(next++));
+                    clock.schedule(this, tokenIntervalMicros, TimeUnit.MICROSECONDS);
+                } else {
+                    handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from(REPLY)).build());
+                }
+            } catch (Exception e) {
+                handler.onError(e);
+            }
+        }
+    }
+
+    private static List<String> split(String text) {
+        List<String> out = new ArrayList<>();
+        int i = 0;
+        int k = 0;
+        while (i < text.length()) {
+            int len = Math.min(1 + (k++ % 3), text.length() - i);
+            out.add(text.substring(i, i + len));
+            i += len;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,100 @@
+package com.aih.chatpartner.voice.loadtest;
+
+import com.aih.chatpartner.config.QiniuConfig;
+import com.aih.chatpartner.voice.stream.QiniuAsrWsClient;
+import com.aih.chatpartner.voice.stream.QiniuTtsWsClient;
+import com.aih.chatpartner.voice.stream.TtsWsPool;
+import com.aih.chatpartner.voice.stream.VoiceMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 压测替身与真实客户端的协议兼容性：ASR/TTS 客户端直接连接本地替身
+ */
+class QiniuStandInsTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final VoiceMetrics metrics = new VoiceMetrics();
+    private FakeAsrServer asr;
+    private FakeTtsServer tts;
+    private TtsWsPool pool;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (pool != null) pool.shutdown();
+        if (asr != null) asr.stop();
+        if (tts != null) tts.stop();
+    }
+
+    @Test
+    void asrClientReceivesGrowingPartialsThenOneFinal() throws Exception {
+        asr = new FakeAsrServer(0).startAndWait();
+        QiniuConfig cfg = new QiniuConfig();
+        cfg.setApiKey("test");
+        cfg.setAsrWsUrl(asr.url());
+
+        List<String> partials = new CopyOnWriteArrayList<>();
+        List<String> finals = new CopyOnWriteArrayList<>();
+        CountDownLatch gotFinal = new CountDownLatch(1);
+        QiniuAsrWsClient client = new QiniuAsrWsClient(cfg, mapper, metrics);
+        client.connect("raw", 16000, 1, "paraformer-realtime-v2", true,
+                partials::add, fin -> {
+                    finals.add(fin);
+                    gotFinal.countDown();
+                }, err -> { }, () -> { });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!client.isOpened() && System.nanoTime() < deadline) Thread.sleep(5);
+        assertTrue(client.isOpened());
+
+        // 1.5s 语音 + 0.6s 静音，按 100ms 一帧发送
+        byte[] speech = VoiceChatLoadDriver.syntheticSpeech(1500);
+        for (int off = 0; off < speech.length; off += 3200) {
+            client.sendAudio(Arrays.copyOfRange(speech, off, Math.min(speech.length, off + 3200)));
+        }
+        for (int i = 0; i < 6; i++) client.sendAudio(new byte[3200]);
+
+        assertTrue(gotFinal.await(5, TimeUnit.SECONDS));
+        client.close();
+        assertFalse(partials.isEmpty());
+        for (int i = 1; i < partials.size(); i++) {
+            assertTrue(partials.get(i).startsWith(partials.get(i - 1)));
+        }
+        assertEquals(1, finals.size());
+        assertTrue(finals.get(0).startsWith(partials.get(partials.size() - 1)));
+        Map<?, ?> latency = (Map<?, ?>) metrics.snapshot().get("latency");
+        assertEquals(1L, ((Map<?, ?>) latency.get("asrHandshake")).get("count"));
+    }
+
+    @Test
+    void ttsClientStreamsChunksUntilNegativeSequenceOnReusedConnection() throws Exception {
+        tts = new FakeTtsServer(0, 10, 5, 4, 320).startAndWait();
+        QiniuConfig cfg = new QiniuConfig();
+        cfg.setApiKey("test");
+        cfg.setTtsWsUrl(tts.url());
+        pool = new TtsWsPool(cfg, mapper);
+        QiniuTtsWsClient client = new QiniuTtsWsClient(pool, mapper, metrics);
+
+        for (String sentence : List.of("你好呀，我是喜羊羊。", "今天天气不错！")) {
+            List<String> chunks = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(1);
+            client.synthesizeStream(sentence, "v1", "pcm", 1.0, chunks::add, done::countDown, err -> { });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals((sentence.length() + 3) / 4, chunks.size());
+        }
+        // 第二句复用了第一句归还的连接
+        assertEquals(1L, tts.connections.sum());
+        assertEquals(2L, tts.sentences.sum());
+    }
+}
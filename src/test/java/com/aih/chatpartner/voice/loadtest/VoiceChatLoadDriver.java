@@ -0,0 +1,323 @@
+package com.aih.chatpartner.voice.loadtest;
+
+import com.aih.chatpartner.ChatPartnerApplication;
+import com.aih.chatpartner.voice.stream.VoiceMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * /ws/voice-chat 离线压测驱动：不访问七牛与 LLM 服务商，用于评估单节点能承载的会话数
+ * <p>
+ * 在同一 JVM 内启动 ASR/TTS 替身（{@link FakeAsrServer}、{@link FakeTtsServer}）与应用本身，
+ * 应用的 qiniu.asr-ws-url / tts-ws-url 指向替身，StreamingChatModel 替换为 {@link PacedStreamingChatModel}；
+ * MySQL / Redis 仍使用当前 profile 的配置（会话使用不存在的 groupId，不写聊天记录）。
+ * 随后打开 N 个并发会话，按实时节奏上行 PCM（一句话 + 静音等待回复，重复若干轮），统计：
+ * - 首音频时间（TTFA）：一句话最后一帧音频发出 → 收到本轮第一个音频分片，输出 p50/p90/p99
+ * - CPU：压测期间进程 CPU 时间 / 墙钟时间 / 会话数（含替身与驱动自身的开销，结果偏保守）
+ * - 堆：全部会话建立后 GC 后的已用堆相对启动基线的增量 / 会话数
+ * <p>
+ * 运行：mvn test-compile 后以测试 classpath 执行 main，参数形如 --sessions=200 --turns=3 --pcm=/path/to/16k-mono-s16le.pcm
+ */
+public final class VoiceChatLoadDriver {
+
+    private static final int FRAME_MS = 20;
+
+    /**
+     * 压测参数，均可通过 --name=value 覆盖
+     */
+    static final class Options {
+        int sessions = 50;
+        int turns = 3;
+        long rampUpMs = 5_000;
+        long turnGapMs = 6_000;             // 每句话之后静音等待回复的时长
+        String pcm;                         // 16kHz 单声道 16bit 小端 PCM；不指定时合成 1.5s 类语音信号
+        String audioOut = "binary";
+        long groupIdBase = 900_000_000L;
+        long llmFirstTokenMs = 300;
+        int llmTokensPerSecond = 40;
+        int ttsFirstChunkMs = 80;
+        int ttsChunkIntervalMs = 40;
+        int asrPartialEveryMs = 200;
+        int asrFinalSilenceMs = 400;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            Map<String, String> kv = new HashMap<>();
+            for (String a : args) {
+                if (!a.startsWith("--") || !a.contains("=")) continue;
+                kv.put(a.substring(2, a.indexOf('=')), a.substring(a.indexOf('=') + 1));
+            }
+            o.sessions = Integer.parseInt(kv.getOrDefault("sessions", "" + o.sessions));
+            o.turns = Integer.parseInt(kv.getOrDefault("turns", "" + o.turns));
+            o.rampUpMs = Long.parseLong(kv.getOrDefault("ramp-up-ms", "" + o.rampUpMs));
+            o.turnGapMs = Long.parseLong(kv.getOrDefault("turn-gap-ms", "" + o.turnGapMs));
+            o.pcm = kv.get("pcm");
+            o.audioOut = kv.getOrDefault("audio-out", o.audioOut);
+            o.groupIdBase = Long.parseLong(kv.getOrDefault("group-id-base", "" + o.groupIdBase));
+            o.llmFirstTokenMs = Long.parseLong(kv.getOrDefault("llm-first-token-ms", "" + o.llmFirstTokenMs));
+            o.llmTokensPerSecond = Integer.parseInt(kv.getOrDefault("llm-tokens-per-second", "" + o.llmTokensPerSecond));
+            o.ttsFirstChunkMs = Integer.parseInt(kv.getOrDefault("tts-first-chunk-ms", "" + o.ttsFirstChunkMs));
+            o.ttsChunkIntervalMs = Integer.parseInt(kv.getOrDefault("tts-chunk-interval-ms", "" + o.ttsChunkIntervalMs));
+            o.asrPartialEveryMs = Integer.parseInt(kv.getOrDefault("asr-partial-every-ms", "" + o.asrPartialEveryMs));
+            o.asrFinalSilenceMs = Integer.parseInt(kv.getOrDefault("asr-final-silence-ms", "" + o.asrFinalSilenceMs));
+            return o;
+        }
+    }
+
+    /**
+     * 全部会话共享的统计
+     */
+    static final class Results {
+        final ConcurrentLinkedQueue<Long> ttfaMicros = new ConcurrentLinkedQueue<>();
+        final LongAdder utterances = new LongAdder();
+        final LongAdder asrFinals = new LongAdder();
+        final LongAdder audioFrames = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder failedConnects = new LongAdder();
+    }
+
+    /**
+     * 一个压测会话：started 之后每 20ms 发一帧，先发完一句话，再发 turnGapMs 的静音，重复 turns 轮后关闭
+     */
+    static final class LoadSession extends WebSocketClient {
+        private final Options o;
+        private final long groupId;
+        private final byte[] utterance;
+        private final byte[] silence = new byte[16000 * 2 * FRAME_MS / 1000];
+        private final ScheduledExecutorService clock;
+        private final Results results;
+        private final CountDownLatch finished;
+        private final AtomicLong speechEndNanos = new AtomicLong();   // 0 表示本轮已收到首音频或尚未说完
+        private ScheduledFuture<?> ticker;
+        private int turn;
+        private int offset;             // 本轮已发送的音频字节数（语音 + 静音）
+        private volatile boolean done;
+
+        LoadSession(URI uri, Options o, long groupId, byte[] utterance, ScheduledExecutorService clock,
+                    Results results, CountDownLatch finished) {
+            super(uri);
+            this.o = o;
+            this.groupId = groupId;
+            this.utterance = utterance;
+            this.clock = clock;
+            this.results = results;
+            this.finished = finished;
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            send("{\"type\":\"start\",\"groupId\":" + groupId + ",\"audioOut\":\"" + o.audioOut + "\"}");
+        }
+
+        @Override
+        public void onMessage(String message) {
+            if (message.contains("\"type\":\"started\"")) {
+                ticker = clock.scheduleAtFixedRate(this::tick, 0, FRAME_MS, TimeUnit.MILLISECONDS);
+            } else if (message.contains("\"type\":\"tts_chunk\"")) {
+                firstAudio();
+            } else if (message.contains("\"type\":\"asr_final\"")) {
+                results.asrFinals.increment();
+            } else if (message.contains("\"type\":\"error\"")) {
+                results.errors.increment();
+            }
+        }
+
+        @Override
+        public void onMessage(ByteBuffer bytes) {
+            firstAudio();
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            finish();
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            results.errors.increment();
+        }
+
+        private void firstAudio() {
+            long end = speechEndNanos.getAndSet(0);
+            if (end != 0) results.ttfaMicros.add((System.nanoTime() - end) / 1000);
+        }
+
+        private void tick() {
+            if (done || !isOpen()) {
+                finish();
+                return;
+            }
+            long gapBytes = o.turnGapMs * silence.length / FRAME_MS;
+            if (offset < utterance.length) {
+                int n = Math.min(silence.length, utterance.length - offset);
+                send(Arrays.copyOfRange(utterance, offset, offset + n));
+                offset += n;
+                if (offset >= utterance.length) {
+                    results.utterances.increment();
+                    speechEndNanos.set(System.nanoTime());
+                }
+            } else if (offset < utterance.length + gapBytes) {
+                send(silence);
+                offset += silence.length;
+            } else if (++turn < o.turns) {
+                offset = 0;
+                return;
+            } else {
+                close();
+                finish();
+                return;
+            }
+            results.audioFrames.increment();
+        }
+
+        private void finish() {
+            if (done) return;
+            done = true;
+            if (ticker != null) ticker.cancel(false);
+            finished.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options o = Options.parse(args);
+        byte[] utterance = o.pcm != null ? Files.readAllBytes(Path.of(o.pcm)) : syntheticSpeech(1500);
+
+        FakeAsrServer asr = new FakeAsrServer(0, 16000, o.asrPartialEveryMs, o.asrFinalSilenceMs, 500.0).startAndWait();
+        FakeTtsServer tts = new FakeTtsServer(0, o.ttsFirstChunkMs, o.ttsChunkIntervalMs, 4, 3200).startAndWait();
+        PacedStreamingChatModel llm = new PacedStreamingChatModel(o.llmFirstTokenMs, o.llmTokensPerSecond);
+
+        ConfigurableApplicationContext app = new SpringApplicationBuilder(ChatPartnerApplication.class)
+                .initializers(ctx -> ((GenericApplicationContext) ctx).registerBean("streamingChatModel",
+                        StreamingChatModel.class, () -> llm, bd -> bd.setPrimary(true)))
+                .run("--server.port=0",
+                        "--qiniu.api-key=load-test",
+                        "--qiniu.asr-ws-url=" + asr.url(),
+                        "--qiniu.tts-ws-url=" + tts.url());
+        int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+        URI uri = URI.create("ws://127.0.0.1:" + port + "/api/ws/voice-chat");
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        System.gc();
+        long heapBase = memory.getHeapMemoryUsage().getUsed();
+
+        ScheduledExecutorService clock = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors() / 2), r -> {
+                    Thread t = new Thread(r, "load-clock");
+                    t.setDaemon(true);
+                    return t;
+                });
+        Results results = new Results();
+        CountDownLatch finished = new CountDownLatch(o.sessions);
+        List<LoadSession> sessions = new ArrayList<>(o.sessions);
+
+        long cpu0 = os.getProcessCpuTime();
+        long wall0 = System.nanoTime();
+        for (int i = 0; i < o.sessions; i++) {
+            LoadSession s = new LoadSession(uri, o, o.groupIdBase + i, utterance, clock, results, finished);
+            sessions.add(s);
+            clock.schedule(() -> {
+                try {
+                    if (!s.connectBlocking(10, TimeUnit.SECONDS)) {
+                        results.failedConnects.increment();
+                        s.finish();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    s.finish();
+                }
+            }, o.rampUpMs * i / Math.max(1, o.sessions), TimeUnit.MILLISECONDS);
+        }
+
+        // 全部会话建立并完成第一句话后采样堆
+        Thread.sleep(o.rampUpMs + utterance.length / 32 + o.turnGapMs / 2);
+        System.gc();
+        long heapLoaded = memory.getHeapMemoryUsage().getUsed();
+
+        long perSessionMs = o.turns * (utterance.length / 32 + o.turnGapMs);
+        finished.await(o.rampUpMs + perSessionMs + 60_000, TimeUnit.MILLISECONDS);
+        long wall = System.nanoTime() - wall0;
+        long cpu = os.getProcessCpuTime() - cpu0;
+
+        report(o, results, wall, cpu, heapLoaded - heapBase, app.getBean(VoiceMetrics.class).snapshot(), asr, tts, llm);
+
+        for (LoadSession s : sessions) s.close();
+        clock.shutdownNow();
+        app.close();
+        asr.stop();
+        tts.stop();
+        System.exit(0);
+    }
+
+    private static void report(Options o, Results r, long wallNanos, long cpuNanos, long heapDelta,
+                               Map<String, Object> serverMetrics, FakeAsrServer asr, FakeTtsServer tts,
+                               PacedStreamingChatModel llm) throws Exception {
+        long[] ttfa = r.ttfaMicros.stream().mapToLong(Long::longValue).sorted().toArray();
+        double cores = (double) cpuNanos / wallNanos;
+        System.out.println("==== /ws/voice-chat offline load test ====");
+        System.out.printf("sessions=%d turns=%d rampUp=%dms turnGap=%dms audioOut=%s%n",
+                o.sessions, o.turns, o.rampUpMs, o.turnGapMs, o.audioOut);
+        System.out.printf("utterances=%d asrFinals=%d ttfaSamples=%d errors=%d failedConnects=%d%n",
+                r.utterances.sum(), r.asrFinals.sum(), ttfa.length, r.errors.sum(), r.failedConnects.sum());
+        System.out.printf("TTFA (end of speech -> first audio): p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms%n",
+                pct(ttfa, 50), pct(ttfa, 90), pct(ttfa, 99), ttfa.length == 0 ? 0.0 : ttfa[ttfa.length - 1] / 1000.0);
+        System.out.printf("CPU: %.2f cores over %.1fs, %.4f cores/session%n",
+                cores, wallNanos / 1e9, cores / Math.max(1, o.sessions));
+        System.out.printf("Heap: +%.1f MB loaded, %.1f KB/session%n",
+                heapDelta / 1048576.0, heapDelta / 1024.0 / Math.max(1, o.sessions));
+        System.out.printf("stand-ins: asr partials=%d finals=%d, tts sentences=%d chunks=%d, llm requests=%d%n",
+                asr.partials.sum(), asr.finals.sum(), tts.sentences.sum(), tts.chunks.sum(), llm.requests.sum());
+        System.out.println("server metrics:");
+        System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(serverMetrics));
+    }
+
+    private static double pct(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, idx))] / 1000.0;
+    }
+
+    /**
+     * 合成一段类语音信号（基频 + 谐波，音节式起伏），能量足以触发 VAD 与 ASR 替身的有声判定
+     */
+    static byte[] syntheticSpeech(int ms) {
+        int samples = 16000 * ms / 1000;
+        ByteBuffer b = ByteBuffer.allocate(samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < samples; i++) {
+            double t = i / 16000.0;
+            double envelope = 0.6 + 0.4 * Math.sin(2 * Math.PI * 4 * t);   // 约每秒 4 个音节
+            double v = Math.sin(2 * Math.PI * 180 * t) + 0.5 * Math.sin(2 * Math.PI * 360 * t)
+                    + 0.25 * Math.sin(2 * Math.PI * 540 * t);
+            b.putShort((short) (6000 * envelope * v));
+        }
+        return b.array();
+    }
+}
@@ -0,0 +1,277 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用带标注的合成 PCM 片段验证 {@link AdaptiveVoiceActivityDetector}
+ * 片段以固定随机种子生成：谐波叠加 + 音节包络模拟浊音，高斯白噪声模拟环境底噪
+ */
+class AdaptiveVoiceActivityDetectorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    /**
+     * 标注片段：pcm 为 16bit 小端，speech 为语音区间（毫秒，左闭右开）
+     */
+    record Fixture(String name, byte[] pcm, List<int[]> speech) {
+
+        boolean labelAt(int ms) {
+            for (int[] s : speech) {
+                if (ms >= s[0] && ms < s[1]) return true;
+            }
+            return false;
+        }
+
+        /**
+         * 起止点附近的过渡区不参与打分：起点给 attack 余量，终点给 hangover 余量
+         */
+        boolean inTransition(int ms, VadConfig cfg) {
+            int onset = cfg.getAttackMs() + 2 * cfg.getWindowMs();
+            int offset = cfg.getHangoverMs() + 2 * cfg.getWindowMs();
+            for (int[] s : speech) {
+                if (ms >= s[0] && ms < s[0] + onset) return true;
+                if (ms >= s[1] && ms < s[1] + offset) return true;
+            }
+            return false;
+        }
+    }
+
+    @Test
+    void silenceNeverTriggers() {
+        Fixture f = new Builder("silence", 3000, 1).build();
+        assertNoSpeech(f);
+    }
+
+    @Test
+    void steadyHissNeverTriggers() {
+        Fixture f = new Builder("hiss", 3000, 2).noise(0, 3000, 450).build();
+        assertNoSpeech(f);
+    }
+
+    @Test
+    void noiseStepIsAbsorbedIntoFloor() {
+        Fixture f = new Builder("noise_step", 4000, 3)
+                .noise(0, 1500, 60)
+                .noise(1500, 4000, 700)
+                .build();
+        assertNoSpeech(f);
+    }
+
+    @Test
+    void shortClicksBelowAttackAreIgnored() {
+        Builder b = new Builder("clicks", 3000, 4).noise(0, 3000, 50);
+        for (int t = 300; t < 2800; t += 400) {
+            b.voice(t, t + 30, 3000);
+        }
+        assertNoSpeech(b.build());
+    }
+
+    @Test
+    void utterancesInQuietRoom() {
+        Fixture f = new Builder("quiet_room", 5000, 5)
+                .noise(0, 5000, 60)
+                .voice(500, 1400, 2000)
+                .voice(2000, 2600, 1500)
+                .voice(3300, 4500, 2500)
+                .build();
+        assertAccuracy(f, 0.97, 640);
+    }
+
+    @Test
+    void utterancesOverBackgroundNoise() {
+        Fixture f = new Builder("noisy_office", 5000, 6)
+                .noise(0, 5000, 250)
+                .voice(800, 1900, 2200)
+                .voice(2700, 4200, 2200)
+                .build();
+        assertAccuracy(f, 0.95, 640);
+    }
+
+    @Test
+    void decisionsDoNotDependOnClientFrameSize() {
+        Fixture f = new Builder("quiet_room", 5000, 5)
+                .noise(0, 5000, 60)
+                .voice(500, 1400, 2000)
+                .voice(3300, 4500, 2500)
+                .build();
+        // 奇数字节分片会把样本拆到两次调用中
+        for (int chunk : new int[]{37, 320, 641, 3200, 8001}) {
+            assertAccuracy(f, 0.97, chunk);
+        }
+    }
+
+    @Test
+    void directBufferMatchesHeapBuffer() {
+        Fixture f = new Builder("quiet_room", 3000, 7)
+                .noise(0, 3000, 60)
+                .voice(800, 2000, 2000)
+                .build();
+        VadConfig cfg = new VadConfig();
+        AdaptiveVoiceActivityDetector heap = new AdaptiveVoiceActivityDetector(cfg);
+        AdaptiveVoiceActivityDetector direct = new AdaptiveVoiceActivityDetector(cfg);
+        ByteBuffer d = ByteBuffer.allocateDirect(640);
+        for (int off = 0; off < f.pcm().length; off += 640) {
+            int len = Math.min(640, f.pcm().length - off);
+            d.clear();
+            d.put(f.pcm(), off, len).flip();
+            assertEquals(heap.process(ByteBuffer.wrap(f.pcm(), off, len)), direct.process(d));
+        }
+        assertEquals(heap.noiseFloor(), direct.noiseFloor());
+    }
+
+    @Test
+    void processDoesNotMoveBufferPosition() {
+        AdaptiveVoiceActivityDetector vad = new AdaptiveVoiceActivityDetector(new VadConfig());
+        ByteBuffer buf = ByteBuffer.wrap(new byte[1000], 10, 500);
+        vad.process(buf);
+        assertEquals(10, buf.position());
+        assertEquals(510, buf.limit());
+    }
+
+    @Test
+    void resetClearsSpeakingState() {
+        Fixture f = new Builder("speech", 1000, 8).voice(0, 1000, 3000).build();
+        AdaptiveVoiceActivityDetector vad = new AdaptiveVoiceActivityDetector(new VadConfig());
+        assertTrue(vad.process(ByteBuffer.wrap(f.pcm())));
+        vad.reset();
+        assertFalse(vad.isSpeaking());
+    }
+
+    @Test
+    void nullFieldsFallBackToDefaults() throws Exception {
+        // 客户端 start 消息中的 "vad": {"attackMs": null, ...}
+        VadConfig requested = new ObjectMapper().readValue(
+                "{\"sampleRate\":null,\"windowMs\":null,\"minRms\":null,\"thresholdRatio\":null,"
+                        + "\"zcrMax\":null,\"attackMs\":null,\"hangoverMs\":null}", VadConfig.class);
+        assertNull(requested.getAttackMs());
+        VadConfig filled = requested.withDefaults();
+        VadConfig defaults = new VadConfig();
+        assertEquals(defaults.getSampleRate(), filled.getSampleRate());
+        assertEquals(defaults.getWindowMs(), filled.getWindowMs());
+        assertEquals(defaults.getMinRms(), filled.getMinRms());
+        assertEquals(defaults.getThresholdRatio(), filled.getThresholdRatio());
+        assertEquals(defaults.getZcrMax(), filled.getZcrMax());
+        assertEquals(defaults.getAttackMs(), filled.getAttackMs());
+        assertEquals(defaults.getHangoverMs(), filled.getHangoverMs());
+
+        VadConfig partial = new VadConfig();
+        partial.setMinRms(null);
+        partial.setHangoverMs(500);
+        assertEquals(500, partial.withDefaults().getHangoverMs());
+        assertEquals(300.0, partial.withDefaults().getMinRms());
+
+        Fixture f = new Builder("speech", 1000, 9).voice(0, 1000, 3000).build();
+        AdaptiveVoiceActivityDetector fromNulls = new AdaptiveVoiceActivityDetector(requested);
+        AdaptiveVoiceActivityDetector fromDefaults = new AdaptiveVoiceActivityDetector(new VadConfig());
+        for (int off = 0; off < f.pcm().length; off += 640) {
+            assertEquals(fromDefaults.process(ByteBuffer.wrap(f.pcm(), off, 640)),
+                    fromNulls.process(ByteBuffer.wrap(f.pcm(), off, 640)));
+        }
+        assertTrue(fromNulls.isSpeaking());
+    }
+
+    private static void assertNoSpeech(Fixture f) {
+        for (int chunk : new int[]{320, 3200}) {
+            AdaptiveVoiceActivityDetector vad = new AdaptiveVoiceActivityDetector(new VadConfig());
+            for (int off = 0; off < f.pcm().length; off += chunk) {
+                int len = Math.min(chunk, f.pcm().length - off);
+                assertFalse(vad.process(ByteBuffer.wrap(f.pcm(), off, len)),
+                        f.name() + ": false trigger at " + msOf(off + len) + "ms (chunk=" + chunk + ")");
+            }
+        }
+    }
+
+    private static void assertAccuracy(Fixture f, double minAccuracy, int chunk) {
+        VadConfig cfg = new VadConfig();
+        AdaptiveVoiceActivityDetector vad = new AdaptiveVoiceActivityDetector(cfg);
+        int scored = 0;
+        int correct = 0;
+        for (int off = 0; off < f.pcm().length; off += chunk) {
+            int len = Math.min(chunk, f.pcm().length - off);
+            boolean speaking = vad.process(ByteBuffer.wrap(f.pcm(), off, len));
+            int ms = msOf(off + len);
+            if (f.inTransition(ms, cfg)) continue;
+            scored++;
+            if (speaking == f.labelAt(ms)) correct++;
+        }
+        double accuracy = (double) correct / Math.max(1, scored);
+        assertTrue(accuracy >= minAccuracy,
+                f.name() + " chunk=" + chunk + " accuracy=" + accuracy + " (" + correct + "/" + scored + ")");
+    }
+
+    private static int msOf(int byteOffset) {
+        return (int) ((long) byteOffset / 2 * 1000 / SAMPLE_RATE);
+    }
+
+    /**
+     * 合成标注片段
+     */
+    static final class Builder {
+        private final String name;
+        private final double[] signal;
+        private final Random random;
+        private final List<int[]> speech = new ArrayList<>();
+
+        Builder(String name, int durationMs, long seed) {
+            this.name = name;
+            this.signal = new double[SAMPLE_RATE * durationMs / 1000];
+            this.random = new Random(seed);
+        }
+
+        /**
+         * 叠加高斯白噪声
+         */
+        Builder noise(int fromMs, int toMs, double rms) {
+            for (int i = idx(fromMs); i < idx(toMs); i++) {
+                signal[i] += random.nextGaussian() * rms;
+            }
+            return this;
+        }
+
+        /**
+         * 叠加浊音：基频 110~190Hz 缓慢滑动，10 次谐波按 1/k 衰减，4Hz 音节包络
+         */
+        Builder voice(int fromMs, int toMs, double rms) {
+            speech.add(new int[]{fromMs, toMs});
+            double f0 = 110 + random.nextInt(80);
+            double phase = 0;
+            double norm = 0;
+            for (int k = 1; k <= 10; k++) norm += 0.5 / (k * k);
+            double amp = rms / Math.sqrt(norm);
+            for (int i = idx(fromMs); i < idx(toMs); i++) {
+                double t = (double) (i - idx(fromMs)) / SAMPLE_RATE;
+                double f = f0 * (1 + 0.1 * Math.sin(2 * Math.PI * 0.7 * t));
+                phase += 2 * Math.PI * f / SAMPLE_RATE;
+                double env = 0.55 + 0.45 * Math.sin(2 * Math.PI * 4 * t);
+                double v = 0;
+                for (int k = 1; k <= 10; k++) v += Math.sin(k * phase) / k;
+                signal[i] += amp * env * v;
+            }
+            return this;
+        }
+
+        Fixture build() {
+            ByteBuffer out = ByteBuffer.allocate(signal.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+            for (double v : signal) {
+                out.putShort((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(v))));
+            }
+            return new Fixture(name, out.array(), speech);
+        }
+
+        private static int idx(int ms) {
+            return SAMPLE_RATE * ms / 1000;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link AsrFrameCoalescer} 的固定时长分帧、超时冲刷与缓冲所有权
+ */
+class AsrFrameCoalescerTest {
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    // 超时冲刷在定时线程上回调
+    private final List<byte[]> frames = Collections.synchronizedList(new ArrayList<>());
+    private final AsrFrameCoalescer.Stats stats = new AsrFrameCoalescer.Stats();
+
+    @AfterEach
+    void tearDown() {
+        timer.shutdownNow();
+    }
+
+    private AsrFrameCoalescer newCoalescer(int frameBytes) {
+        return newCoalescer(frameBytes, 60_000);
+    }
+
+    private AsrFrameCoalescer newCoalescer(int frameBytes, long maxDelayMs) {
+        return new AsrFrameCoalescer(frameBytes, maxDelayMs, frame -> {
+            byte[] copy = new byte[frame.remaining()];
+            frame.get(frame.position(), copy);
+            frames.add(copy);
+        }, timer, stats);
+    }
+
+    @Test
+    void frameBytesFollowSampleRateChannelsAndDuration() {
+        assertEquals(3200, AsrFrameCoalescer.frameBytes(16000, 1, 100));
+        assertEquals(640, AsrFrameCoalescer.frameBytes(16000, 1, 20));
+        assertEquals(3840, AsrFrameCoalescer.frameBytes(48000, 2, 20));
+        // 帧长向下取偶，不拆开 16bit 采样
+        AsrFrameCoalescer c = newCoalescer(7);
+        c.append(ByteBuffer.wrap(new byte[14]));
+        assertEquals(2, frames.size());
+        assertEquals(6, frames.get(0).length);
+        assertEquals(2, c.buffered());
+    }
+
+    @Test
+    void unevenBrowserChunksBecomeFixedDurationFrames() {
+        int frameBytes = AsrFrameCoalescer.frameBytes(16000, 1, 100);
+        AsrFrameCoalescer c = newCoalescer(frameBytes);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        byte next = 0;
+        // 20ms、250ms、60ms、170ms 交替
+        for (int ms : new int[]{20, 250, 60, 170, 20, 20, 250, 60}) {
+            byte[] chunk = new byte[AsrFrameCoalescer.frameBytes(16000, 1, ms)];
+            for (int i = 0; i < chunk.length; i++) chunk[i] = next++;
+            sent.writeBytes(chunk);
+            c.append(ByteBuffer.wrap(chunk));
+        }
+        c.flush();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        for (int i = 0; i < frames.size(); i++) {
+            if (i < frames.size() - 1) assertEquals(frameBytes, frames.get(i).length);
+            received.writeBytes(frames.get(i));
+        }
+        assertArrayEquals(sent.toByteArray(), received.toByteArray());
+        assertEquals(sent.size() / frameBytes + 1, frames.size());
+        assertEquals((long) frames.size(), stats.frames.sum());
+        assertEquals((long) sent.size(), stats.bytes.sum());
+    }
+
+    @Test
+    void partialFrameIsSentWhenDeadlinePasses() throws Exception {
+        AsrFrameCoalescer c = newCoalescer(8, 30);
+        c.append(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        awaitFrames(1);
+        assertArrayEquals(new byte[]{1, 2, 3}, frames.get(0));
+        assertEquals(1L, stats.deadlineFlushes.sum());
+        assertEquals(0, c.buffered());
+
+        // 缓冲在期限前凑满：整帧发出，原先的超时任务失效
+        c.append(ByteBuffer.wrap(new byte[]{4, 5, 6}));
+        c.append(ByteBuffer.wrap(new byte[]{7, 8, 9, 10, 11}));
+        assertEquals(2, frames.size());
+        assertArrayEquals(new byte[]{4, 5, 6, 7, 8, 9, 10, 11}, frames.get(1));
+        Thread.sleep(80);
+        assertEquals(2, frames.size());
+        assertEquals(1L, stats.deadlineFlushes.sum());
+        assertEquals(1L, stats.fullFlushes.sum());
+
+        // 关闭后丢弃缓冲，超时不再发送
+        c.append(ByteBuffer.wrap(new byte[]{12}));
+        c.close();
+        Thread.sleep(80);
+        assertEquals(2, frames.size());
+    }
+
+    private void awaitFrames(int n) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (frames.size() < n && System.nanoTime() < deadline) Thread.sleep(5);
+        assertTrue(frames.size() >= n);
+    }
+
+    @Test
+    void smallChunksAreJoinedIntoWholeFrames() {
+        AsrFrameCoalescer c = newCoalescer(8);
+        for (int i = 0; i < 5; i++) {
+            c.append(ByteBuffer.wrap(new byte[]{(byte) (3 * i), (byte) (3 * i + 1), (byte) (3 * i + 2)}));
+        }
+        assertEquals(1, frames.size());
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5, 6, 7}, frames.get(0));
+        assertEquals(7, c.buffered());
+        c.flush();
+        assertArrayEquals(new byte[]{8, 9, 10, 11, 12, 13, 14}, frames.get(1));
+        assertEquals(1L, stats.stopFlushes.sum());
+    }
+
+    @Test
+    void largeChunkPassesThroughAndConsumesInput() {
+        AsrFrameCoalescer c = newCoalescer(4);
+        ByteBuffer in = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        c.append(in);
+        assertEquals(0, in.remaining());
+        assertEquals(2, frames.size());
+        assertEquals(2L, stats.passthroughFrames.sum());
+        assertEquals(2, c.buffered());
+    }
+
+    @Test
+    void bufferedTailDoesNotAliasCallerBuffer() {
+        AsrFrameCoalescer c = newCoalescer(4);
+        byte[] borrowed = {1, 2, 3, 4, 5, 6};
+        c.append(ByteBuffer.wrap(borrowed));
+        // 调用返回后容器会复用入站缓冲
+        Arrays.fill(borrowed, (byte) 0);
+        c.flush();
+        assertArrayEquals(new byte[]{5, 6}, frames.get(1));
+    }
+
+    @Test
+    void directInputIsSupported() {
+        AsrFrameCoalescer c = newCoalescer(4);
+        ByteBuffer in = ByteBuffer.allocateDirect(6);
+        in.put(new byte[]{1, 2, 3, 4, 5, 6}).flip();
+        c.append(in);
+        c.flush();
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, frames.get(0));
+        assertArrayEquals(new byte[]{5, 6}, frames.get(1));
+    }
+}
@@ -0,0 +1,128 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ASR 上行帧编码：旧实现（每帧 GZIPOutputStream + 两个 ByteArrayOutputStream）对比 {@link AsrFrameEncoder}
+ * <p>
+ * 运行：mvn test-compile 后以测试 classpath 执行 main，关注 gc.alloc.rate.norm（每帧分配字节数）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsrFrameEncoderBenchmark {
+
+    /**
+     * 每帧字节数：20ms / 100ms / 250ms @16kHz 16bit 单声道
+     */
+    @Param({"640", "3200", "8000"})
+    public int frameBytes;
+
+    private byte[] pcm;
+    private ByteBuffer pcmBuf;
+    private AsrFrameEncoder gzipEncoder;
+    private AsrFrameEncoder rawEncoder;
+    private int seq;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // 近似语音：低频正弦 + 少量噪声，压缩率接近真实麦克风数据
+        pcm = new byte[frameBytes];
+        Random r = new Random(42);
+        for (int i = 0; i + 1 < frameBytes; i += 2) {
+            int v = (int) (3000 * Math.sin(i / 20.0)) + r.nextInt(200) - 100;
+            pcm[i] = (byte) v;
+            pcm[i + 1] = (byte) (v >> 8);
+        }
+        pcmBuf = ByteBuffer.wrap(pcm);
+        gzipEncoder = new AsrFrameEncoder(true);
+        rawEncoder = new AsrFrameEncoder(false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gzipEncoder.release();
+        rawEncoder.release();
+    }
+
+    @Benchmark
+    public byte[] legacyGzip() throws IOException {
+        return legacyEncode(++seq, pcm);
+    }
+
+    @Benchmark
+    public ByteBuffer reusableGzip() {
+        return gzipEncoder.encodeAudio(++seq, pcmBuf);
+    }
+
+    @Benchmark
+    public ByteBuffer reusableRaw() {
+        return rawEncoder.encodeAudio(++seq, pcmBuf);
+    }
+
+    /**
+     * 旧版 QiniuAsrWsClient.sendAudioChunk 的编码逻辑
+     */
+    private static byte[] legacyEncode(int seq, byte[] audioData) throws IOException {
+        ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(gz)) {
+            gzipOut.write(audioData);
+        }
+        byte[] compressedAudio = gz.toByteArray();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] header = new byte[4];
+        header[0] = (byte) ((0x01 << 4) | 0x01);
+        header[1] = (byte) ((0x02 << 4) | 0x01);
+        header[2] = (byte) ((0x01 << 4) | 0x01);
+        header[3] = 0x00;
+        baos.write(header);
+        byte[] seqBytes = new byte[4];
+        seqBytes[0] = (byte) (seq >>> 24);
+        seqBytes[1] = (byte) (seq >>> 16);
+        seqBytes[2] = (byte) (seq >>> 8);
+        seqBytes[3] = (byte) seq;
+        baos.write(seqBytes);
+        byte[] lengthBytes = new byte[4];
+        int payloadLength = compressedAudio.length;
+        lengthBytes[0] = (byte) (payloadLength >>> 24);
+        lengthBytes[1] = (byte) (payloadLength >>> 16);
+        lengthBytes[2] = (byte) (payloadLength >>> 8);
+        lengthBytes[3] = (byte) payloadLength;
+        baos.write(lengthBytes);
+        baos.write(compressedAudio);
+        return baos.toByteArray();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(AsrFrameEncoderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
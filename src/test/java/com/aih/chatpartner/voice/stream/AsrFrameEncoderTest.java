@@ -0,0 +1,138 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link AsrFrameEncoder} 输出按协议头 / 序列号 / 长度解析，并经 GZIPInputStream 还原 payload
+ */
+class AsrFrameEncoderTest {
+
+    /**
+     * 解析后的上行帧
+     */
+    record Frame(int messageType, int serial, int compression, int seq, byte[] payload) {
+    }
+
+    @Test
+    void roundTripsEmptyTinyAndLargePayloads() throws Exception {
+        Random rnd = new Random(7);
+        byte[] noise = new byte[24 * 1024];
+        rnd.nextBytes(noise);
+        byte[] tone = new byte[64 * 1024];
+        for (int i = 0; i < tone.length; i += 2) {
+            short v = (short) (8000 * Math.sin(i / 20.0));
+            tone[i] = (byte) v;
+            tone[i + 1] = (byte) (v >> 8);
+        }
+        for (boolean compress : new boolean[]{true, false}) {
+            AsrFrameEncoder encoder = new AsrFrameEncoder(compress);
+            int seq = 1;
+            // 不可压缩的噪声超过初始 8KB 输出缓冲，需要扩容
+            for (byte[] pcm : new byte[][]{new byte[0], {42}, noise, tone, {1, 2, 3}}) {
+                Frame f = parse(encoder.encodeAudio(seq, ByteBuffer.wrap(pcm)));
+                assertEquals(AsrFrameEncoder.MSG_AUDIO_ONLY_REQUEST, f.messageType());
+                assertEquals(AsrFrameEncoder.SERIAL_JSON, f.serial());
+                assertEquals(compress ? AsrFrameEncoder.COMPRESSION_GZIP : AsrFrameEncoder.COMPRESSION_NONE, f.compression());
+                assertEquals(seq, f.seq());
+                assertArrayEquals(pcm, f.payload(), "compress=" + compress + " len=" + pcm.length);
+                seq++;
+            }
+            encoder.release();
+        }
+    }
+
+    @Test
+    void fullRequestIsAlwaysGzipJson() throws Exception {
+        AsrFrameEncoder encoder = new AsrFrameEncoder(false);
+        byte[] json = "{\"request\":{\"model_name\":\"asr\",\"enable_punc\":true}}".getBytes(StandardCharsets.UTF_8);
+        Frame f = parse(encoder.encodeFullRequest(1, json));
+        assertEquals(AsrFrameEncoder.MSG_FULL_CLIENT_REQUEST, f.messageType());
+        assertEquals(AsrFrameEncoder.SERIAL_JSON, f.serial());
+        assertEquals(AsrFrameEncoder.COMPRESSION_GZIP, f.compression());
+        assertArrayEquals(json, f.payload());
+        encoder.release();
+    }
+
+    @Test
+    void readsOnlyTheRemainingBytesAndKeepsPosition() throws Exception {
+        AsrFrameEncoder encoder = new AsrFrameEncoder(true);
+        byte[] backing = new byte[3200];
+        new Random(3).nextBytes(backing);
+        ByteBuffer heap = ByteBuffer.wrap(backing, 100, 1000);
+        assertArrayEquals(Arrays.copyOfRange(backing, 100, 1100), parse(encoder.encodeAudio(1, heap)).payload());
+        assertEquals(100, heap.position());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(backing.length);
+        direct.put(backing).position(640).limit(2560);
+        assertArrayEquals(Arrays.copyOfRange(backing, 640, 2560), parse(encoder.encodeAudio(2, direct)).payload());
+        assertEquals(640, direct.position());
+        encoder.release();
+    }
+
+    @Test
+    void reusesOutputAcrossFramesAndFailsAfterRelease() throws Exception {
+        AsrFrameEncoder encoder = new AsrFrameEncoder(true);
+        byte[] a = new byte[6000];
+        byte[] b = {9, 8, 7};
+        new Random(11).nextBytes(a);
+        ByteBuffer first = encoder.encodeAudio(1, ByteBuffer.wrap(a));
+        byte[] firstBytes = copy(first);
+        // 返回的缓冲区在下一次编码前有效：复用后内容属于新帧，且不残留上一帧数据
+        ByteBuffer second = encoder.encodeAudio(2, ByteBuffer.wrap(b));
+        assertArrayEquals(a, parse(ByteBuffer.wrap(firstBytes)).payload());
+        assertArrayEquals(b, parse(second).payload());
+        assertArrayEquals(firstBytes, copy(encoder.encodeAudio(1, ByteBuffer.wrap(a))));
+
+        encoder.release();
+        encoder.release();
+        assertThrows(IllegalStateException.class, () -> encoder.encodeAudio(3, ByteBuffer.wrap(b)));
+        assertThrows(IllegalStateException.class, () -> encoder.encodeFullRequest(3, b));
+
+        // 新编码器的输出与释放前完全一致
+        AsrFrameEncoder fresh = new AsrFrameEncoder(true);
+        assertArrayEquals(firstBytes, copy(fresh.encodeAudio(1, ByteBuffer.wrap(a))));
+        fresh.release();
+    }
+
+    private static byte[] copy(ByteBuffer frame) {
+        byte[] out = new byte[frame.remaining()];
+        frame.duplicate().get(out);
+        return out;
+    }
+
+    /**
+     * 按 4 字节协议头 + 序列号 + payload 长度解析，gzip payload 经 GZIPInputStream 还原
+     */
+    private static Frame parse(ByteBuffer frame) throws IOException {
+        ByteBuffer b = frame.duplicate();
+        assertEquals(0x11, b.get() & 0xff);
+        int typeAndFlags = b.get() & 0xff;
+        assertEquals(AsrFrameEncoder.FLAG_POS_SEQUENCE, typeAndFlags & 0x0f);
+        int serialAndCompression = b.get() & 0xff;
+        assertEquals(0, b.get());
+        int seq = b.getInt();
+        int len = b.getInt();
+        assertEquals(b.remaining(), len);
+        byte[] payload = new byte[len];
+        b.get(payload);
+        int compression = serialAndCompression & 0x0f;
+        if (compression == AsrFrameEncoder.COMPRESSION_GZIP) {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+                payload = in.readAllBytes();
+            }
+        }
+        return new Frame(typeAndFlags >>> 4, serialAndCompression >>> 4, compression, seq, payload);
+    }
+}
@@ -0,0 +1,374 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link AsrResponseDecoder} 与原先 GZIPInputStream + ObjectMapper.readTree 解析路径的逐帧对照，
+ * 以及 gzip 头部标志、截断与损坏帧的处理
+ */
+class AsrResponseDecoderTest {
+
+    private static final int FHCRC = 0x02;
+    private static final int FEXTRA = 0x04;
+    private static final int FNAME = 0x08;
+    private static final int FCOMMENT = 0x10;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AsrResponseDecoder decoder = new AsrResponseDecoder(mapper.getFactory());
+
+    @AfterEach
+    void tearDown() {
+        decoder.release();
+    }
+
+    /**
+     * 两条解析路径的可比结果
+     */
+    record Parsed(String text, String logId, long maxFinalEnd, boolean hasUtterances, boolean isFinalFlag, boolean typeFinal) {
+    }
+
+    @Test
+    void matchesTreeParsingOnServerFrames() throws Exception {
+        // 七牛 ASR 的典型下行：partial 的 utterances 未确认，final 带 definite 与 end_time
+        String partial = """
+                {"reqid":"a1b2","result":{"additions":{"log_id":"20250101120000ABCDEF"},"text":"今天天气",
+                "utterances":[{"definite":false,"end_time":880,"start_time":120,"text":"今天天气",
+                "words":[{"text":"今","start_time":120,"end_time":300}]}]},"audio_info":{"duration":880}}""";
+        String fin = """
+                {"reqid":"a1b2","result":{"additions":{"log_id":"20250101120000ABCDEF"},"text":"今天天气怎么样？",
+                "utterances":[{"definite":true,"end_time":1520,"start_time":120,"text":"今天天气怎么样？","words":[]}]},
+                "audio_info":{"duration":1520}}""";
+        for (String json : new String[]{partial, fin}) {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            assertSameAsBaseline(frame(0x09, true, true, gzip(body, 0)));
+            assertSameAsBaseline(frame(0x09, false, true, gzip(body, 0)));
+            assertSameAsBaseline(frame(0x09, true, false, body));
+            // 非 FULL_SERVER_RESPONSE：协议头之后全部作为 payload
+            assertSameAsBaseline(frame(0x0b, false, false, body));
+        }
+        Parsed p = decode(frame(0x09, true, true, gzip(fin.getBytes(StandardCharsets.UTF_8), 0)));
+        assertEquals(new Parsed("今天天气怎么样？", "20250101120000ABCDEF", 1520, true, false, false), p);
+    }
+
+    @Test
+    void matchesTreeParsingOnSyntheticFrames() throws Exception {
+        String[] jsons = {
+                // 多条 utterance：只取 definite 的最大 end_time
+                "{\"result\":{\"text\":\"一二三\",\"utterances\":[{\"definite\":true,\"end_time\":500},"
+                        + "{\"definite\":false,\"end_time\":900},{\"definite\":true,\"end_time\":700}]}}",
+                // 都未确认
+                "{\"result\":{\"text\":\"一二\",\"utterances\":[{\"definite\":false,\"end_time\":400}]}}",
+                // 空 utterances、没有 utterances
+                "{\"result\":{\"text\":\"好的。\",\"utterances\":[]}}",
+                "{\"result\":{\"text\":\"好的\"}}",
+                // is_final / type 标志
+                "{\"result\":{\"text\":\"嗯\",\"is_final\":true}}",
+                "{\"result\":{\"text\":\"嗯\",\"type\":\"final\"}}",
+                "{\"result\":{\"text\":\"嗯\",\"type\":\"partial\",\"is_final\":false}}",
+                // 字符串形式的布尔与数字
+                "{\"result\":{\"text\":\"嗯\",\"utterances\":[{\"definite\":\"true\",\"end_time\":\"1200\"}]}}",
+                // 只认 result.additions；根上的 additions 与非对象的 additions 不取 log_id
+                "{\"result\":{\"text\":\"嗯\"},\"additions\":{\"log_id\":\"root\"}}",
+                "{\"result\":{\"text\":\"嗯\",\"additions\":\"x\"}}",
+                "{\"result\":{\"text\":\"嗯\",\"additions\":{\"log_id\":{\"nested\":1},\"other\":[1,2]}}}",
+                // 非标量或空文本：没有结果
+                "{\"result\":{\"text\":{\"a\":1}}}",
+                "{\"result\":{\"text\":null}}",
+                "{\"result\":{\"text\":\"\"}}",
+                "{\"result\":\"text\"}",
+                "{\"code\":1000,\"message\":\"ok\"}",
+                "[]",
+                // 数字文本按字符串取
+                "{\"result\":{\"text\":123}}",
+                // 未知字段与嵌套结构被跳过
+                "{\"meta\":{\"result\":{\"text\":\"假\"}},\"result\":{\"x\":[{\"text\":\"假\"}],\"text\":\"真\"}}",
+        };
+        for (String json : jsons) {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            assertSameAsBaseline(frame(0x09, true, true, gzip(body, 0)));
+            assertSameAsBaseline(frame(0x09, true, false, body));
+        }
+    }
+
+    @Test
+    void skipsEveryGzipHeaderField() throws Exception {
+        byte[] body = serverJson("你好。", "log-1", true, 900);
+        Parsed expected = new Parsed("你好。", "log-1", 900, true, false, false);
+        for (int flags : new int[]{0, FEXTRA, FNAME, FCOMMENT, FHCRC, FEXTRA | FNAME | FCOMMENT | FHCRC}) {
+            byte[] frame = frame(0x09, true, true, gzip(body, flags));
+            assertSameAsBaseline(frame);
+            assertEquals(expected, decode(frame), "flags=" + flags);
+        }
+    }
+
+    @Test
+    void decodesFromDirectAndOffsetBuffers() throws Exception {
+        byte[] frame = frame(0x09, true, true, gzip(serverJson("直接缓冲", "log-2", true, 300), FNAME));
+        Parsed expected = baseline(frame);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(frame.length);
+        direct.put(frame).flip();
+        assertEquals(expected, toParsed(decoder.decode(direct)));
+        assertEquals(0, direct.position());
+
+        // 帧位于更大数组的中间：position 与 arrayOffset 都不为 0
+        byte[] big = new byte[frame.length + 16];
+        System.arraycopy(frame, 0, big, 7, frame.length);
+        ByteBuffer window = ByteBuffer.wrap(big, 3, frame.length + 10).slice();
+        window.position(4).limit(4 + frame.length);
+        assertEquals(expected, toParsed(decoder.decode(window)));
+        assertEquals(4, window.position());
+
+        byte[] raw = frame(0x09, false, false, serverJson("未压缩", "", false, -1));
+        ByteBuffer rawDirect = ByteBuffer.allocateDirect(raw.length);
+        rawDirect.put(raw).flip();
+        assertEquals(baseline(raw), toParsed(decoder.decode(rawDirect)));
+    }
+
+    @Test
+    void reusesBuffersAcrossFramesOfDifferentSizes() throws Exception {
+        // 明文超过初始 4KB 缓冲：解压缓冲需要扩容，之后的小帧不受残留数据影响
+        StringBuilder words = new StringBuilder();
+        ArrayNode list = mapper.createArrayNode();
+        for (int i = 0; i < 400; i++) {
+            list.addObject().put("text", "字" + i).put("start_time", i * 10).put("end_time", i * 10 + 9);
+            words.append('字');
+        }
+        ObjectNode root = mapper.createObjectNode();
+        ObjectNode result = root.putObject("result");
+        result.put("text", words.toString());
+        result.putArray("utterances").addObject().put("definite", true).put("end_time", 4000).set("words", list);
+        byte[] large = mapper.writeValueAsBytes(root);
+        assertTrue(large.length > 8 * 1024);
+
+        byte[][] frames = {
+                frame(0x09, true, true, gzip(large, 0)),
+                frame(0x09, true, true, gzip(serverJson("短", "log-3", false, 10), 0)),
+                frame(0x09, true, false, large),
+                frame(0x09, true, true, gzip(serverJson("再短", "log-3", true, 20), FCOMMENT)),
+        };
+        for (byte[] f : frames) {
+            assertSameAsBaseline(f);
+        }
+        assertEquals("再短", decode(frames[3]).text());
+        assertTrue(decoder.lastJson().contains("再短"));
+    }
+
+    @Test
+    void rejectsTruncatedAndCorruptFrames() throws Exception {
+        byte[] body = gzip(serverJson("截断测试", "log-4", true, 100), FNAME);
+        byte[] whole = frame(0x09, true, true, body);
+
+        // 协议头不完整、长度字段缺失、声明长度超出帧
+        assertSameAsBaseline(Arrays.copyOf(whole, 3));
+        assertSameAsBaseline(Arrays.copyOf(whole, 10));
+        assertSameAsBaseline(Arrays.copyOf(whole, whole.length - 1));
+
+        // 长度字段与截断后的 gzip 一致：解压得到的 JSON 不完整
+        for (int cut : new int[]{5, 12, body.length / 2, body.length - 8, body.length - 1}) {
+            byte[] f = frame(0x09, true, true, Arrays.copyOf(body, cut));
+            assertNull(baseline(f));
+            assertNull(decodeOrNull(f), "cut=" + cut);
+        }
+
+        // 不是 gzip、压缩数据损坏、文件名没有结束符
+        byte[] plain = serverJson("不是压缩", "", true, 1);
+        assertThrows(DataFormatException.class, () -> decoder.decode(ByteBuffer.wrap(frame(0x09, true, true, plain))));
+        byte[] corrupt = body.clone();
+        for (int i = 20; i < corrupt.length - 8; i++) corrupt[i] = (byte) 0xff;
+        assertNull(baseline(frame(0x09, true, true, corrupt)));
+        assertNull(decodeOrNull(frame(0x09, true, true, corrupt)));
+        byte[] openName = Arrays.copyOf(gzip(plain, FNAME), 14);
+        assertNull(decodeOrNull(frame(0x09, true, true, openName)));
+
+        // 非 JSON 序列化
+        byte[] thrift = frame(0x09, true, true, body);
+        thrift[2] = (byte) ((0x02 << 4) | 0x01);
+        assertNull(decodeOrNull(thrift));
+
+        // 损坏帧之后解码器仍可继续使用
+        assertEquals("截断测试", decode(whole).text());
+    }
+
+    private void assertSameAsBaseline(byte[] frame) {
+        assertEquals(baseline(frame), decodeOrNull(frame), () -> "frame " + Arrays.toString(frame));
+    }
+
+    private Parsed decode(byte[] frame) throws Exception {
+        Parsed p = toParsed(decoder.decode(ByteBuffer.wrap(frame)));
+        assertNotNull(p);
+        return p;
+    }
+
+    private Parsed decodeOrNull(byte[] frame) {
+        try {
+            return toParsed(decoder.decode(ByteBuffer.wrap(frame)));
+        } catch (IOException | DataFormatException e) {
+            return null;
+        }
+    }
+
+    private static Parsed toParsed(AsrResponseDecoder.Result r) {
+        if (r == null) return null;
+        return new Parsed(r.text, r.logId, r.maxFinalEnd, r.hasUtterances, r.isFinalFlag, r.typeFinal);
+    }
+
+    /**
+     * 原先的解析路径：复制 payload、GZIPInputStream 解压、readTree 后逐字段读取；无文本或失败时为 null
+     */
+    private Parsed baseline(byte[] data) {
+        if (data.length < 4) return null;
+        int headerSize = data[0] & 0x0f;
+        int messageType = (data[1] >>> 4) & 0x0f;
+        int flags = data[1] & 0x0f;
+        int serialMethod = (data[2] >>> 4) & 0x0f;
+        int compression = data[2] & 0x0f;
+        int offset = headerSize * 4;
+        if ((flags & 0x01) != 0) offset += 4;
+        byte[] payload = null;
+        if (messageType == 0x09) {
+            if (offset + 4 <= data.length) {
+                int payloadLength = ByteBuffer.wrap(data, offset, 4).getInt();
+                offset += 4;
+                if (payloadLength >= 0 && offset + payloadLength <= data.length) {
+                    payload = Arrays.copyOfRange(data, offset, offset + payloadLength);
+                }
+            }
+        } else if (offset < data.length) {
+            payload = Arrays.copyOfRange(data, offset, data.length);
+        }
+        if (payload == null || payload.length == 0 || serialMethod != 0x01) return null;
+        try {
+            if (compression == 0x01) {
+                try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+                    payload = in.readAllBytes();
+                }
+            }
+            JsonNode node = mapper.readTree(new String(payload, StandardCharsets.UTF_8));
+            JsonNode resultNode = node.has("result") ? node.get("result") : null;
+            String text = (resultNode != null && resultNode.has("text")) ? resultNode.get("text").asText("") : null;
+            if (text == null || text.isEmpty()) return null;
+            String logId = "";
+            if (resultNode.has("additions") && resultNode.get("additions").has("log_id")) {
+                logId = resultNode.get("additions").get("log_id").asText("");
+            }
+            long maxFinalEnd = -1L;
+            boolean hasUtterances = false;
+            if (resultNode.has("utterances") && resultNode.get("utterances").isArray()) {
+                hasUtterances = resultNode.get("utterances").size() > 0;
+                for (JsonNode u : resultNode.get("utterances")) {
+                    boolean definite = u.has("definite") && u.get("definite").asBoolean(false);
+                    if (definite) {
+                        long endTime = u.has("end_time") ? u.get("end_time").asLong(-1L) : -1L;
+                        if (endTime > maxFinalEnd) maxFinalEnd = endTime;
+                    }
+                }
+            }
+            boolean isFinalFlag = resultNode.has("is_final") && resultNode.get("is_final").asBoolean(false);
+            boolean typeFinal = resultNode.has("type") && "final".equals(resultNode.get("type").asText(""));
+            return new Parsed(text, logId, maxFinalEnd, hasUtterances, isFinalFlag, typeFinal);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private byte[] serverJson(String text, String logId, boolean definite, long endTime) throws IOException {
+        ObjectNode root = mapper.createObjectNode();
+        ObjectNode result = root.putObject("result");
+        result.put("text", text);
+        ObjectNode u = result.putArray("utterances").addObject();
+        u.put("text", text);
+        u.put("definite", definite);
+        u.put("end_time", endTime);
+        if (!logId.isEmpty()) result.putObject("additions").put("log_id", logId);
+        return mapper.writeValueAsBytes(root);
+    }
+
+    /**
+     * 下行帧：4 字节协议头 + 可选序列号 + （FULL_SERVER_RESPONSE 时）payload 长度 + payload
+     */
+    private static byte[] frame(int messageType, boolean withSeq, boolean gzip, byte[] payload) {
+        boolean full = messageType == 0x09;
+        ByteBuffer b = ByteBuffer.allocate(4 + (withSeq ? 4 : 0) + (full ? 4 : 0) + payload.length);
+        b.put((byte) 0x11);
+        b.put((byte) ((messageType << 4) | (withSeq ? 0x01 : 0x00)));
+        b.put((byte) ((0x01 << 4) | (gzip ? 0x01 : 0x00)));
+        b.put((byte) 0x00);
+        if (withSeq) b.putInt(42);
+        if (full) b.putInt(payload.length);
+        b.put(payload);
+        return b.array();
+    }
+
+    /**
+     * 按 RFC 1952 组装 gzip，可带 FEXTRA / FNAME / FCOMMENT / FHCRC 头部字段
+     */
+    private static byte[] gzip(byte[] data, int flags) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{0x1f, (byte) 0x8b, 8, (byte) flags, 0, 0, 0, 0, 0, (byte) 0xff});
+        if ((flags & FEXTRA) != 0) {
+            byte[] extra = {'A', 'B', 3, 0, 1, 2, 3};
+            out.write(extra.length);
+            out.write(0);
+            out.writeBytes(extra);
+        }
+        if ((flags & FNAME) != 0) {
+            out.writeBytes("asr.json".getBytes(StandardCharsets.ISO_8859_1));
+            out.write(0);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            out.writeBytes("frame comment".getBytes(StandardCharsets.ISO_8859_1));
+            out.write(0);
+        }
+        if ((flags & FHCRC) != 0) {
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(out.toByteArray());
+            int crc16 = (int) headerCrc.getValue() & 0xffff;
+            out.write(crc16 & 0xff);
+            out.write(crc16 >>> 8);
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buf = new byte[1024];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buf);
+            out.write(buf, 0, n);
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeIntLe(out, (int) crc.getValue());
+        writeIntLe(out, data.length);
+        return out.toByteArray();
+    }
+
+    private static void writeIntLe(ByteArrayOutputStream out, int v) {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        out.write((v >>> 16) & 0xff);
+        out.write((v >>> 24) & 0xff);
+    }
+}
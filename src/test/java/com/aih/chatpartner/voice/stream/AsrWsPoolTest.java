@@ -0,0 +1,87 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.config.QiniuConfig;
+import com.aih.chatpartner.voice.loadtest.FakeAsrServer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsrWsPoolTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final VoiceMetrics metrics = new VoiceMetrics();
+    private FakeAsrServer server;
+    private AsrWsPool pool;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (pool != null) pool.shutdown();
+        if (server != null) server.stop();
+    }
+
+    private QiniuConfig config(boolean enabled, int size) throws Exception {
+        server = new FakeAsrServer(0).startAndWait();
+        QiniuConfig cfg = new QiniuConfig();
+        cfg.setApiKey("test");
+        cfg.setAsrWsUrl(server.url());
+        cfg.getAsr().getPool().setEnabled(enabled);
+        cfg.getAsr().getPool().setSize(size);
+        return cfg;
+    }
+
+    private static void connect(QiniuAsrWsClient client) {
+        client.connect("raw", 16000, 1, "paraformer-realtime-v2", true,
+                p -> { }, f -> { }, e -> { }, () -> { });
+    }
+
+    @Test
+    void warmClientIsConfiguredImmediatelyAndPoolRefills() throws Exception {
+        pool = new AsrWsPool(config(true, 2), mapper, metrics);
+        awaitTrue(() -> idle() == 2);
+
+        QiniuAsrWsClient client = pool.acquire();
+        connect(client);
+        // 已握手的预连接在 connect 返回时就已发出配置帧
+        assertTrue(client.isOpened());
+        awaitTrue(() -> idle() == 2);
+
+        Map<String, Object> stats = pool.stats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(0L, stats.get("misses"));
+        assertEquals(1, stats.get("inUse"));
+        client.close();
+        awaitTrue(() -> (int) pool.stats().get("inUse") == 0);
+    }
+
+    @Test
+    void disabledPoolFallsBackToDialingAndCountsMiss() throws Exception {
+        pool = new AsrWsPool(config(false, 2), mapper, metrics);
+
+        QiniuAsrWsClient client = pool.acquire();
+        connect(client);
+        awaitTrue(client::isOpened);
+        client.close();
+
+        Map<String, Object> stats = pool.stats();
+        assertEquals(0, stats.get("idle"));
+        assertEquals(1L, stats.get("misses"));
+        assertEquals(1.0, stats.get("missRate"));
+    }
+
+    private int idle() {
+        return (int) pool.stats().get("idle");
+    }
+
+    private static void awaitTrue(BooleanSupplier cond) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!cond.getAsBoolean() && System.nanoTime() < deadline) Thread.sleep(5);
+        assertTrue(cond.getAsBoolean());
+    }
+}
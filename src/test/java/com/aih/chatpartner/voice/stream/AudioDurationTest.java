@@ -0,0 +1,67 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link AudioDuration} 对 mp3 帧、wav 头与 pcm 的时长估算
+ */
+class AudioDurationTest {
+
+    // MPEG-2 Layer III，24kHz，32kbps：每帧 96 字节、576 个采样（24ms）
+    private static final byte[] MP3_HEADER = {(byte) 0xff, (byte) 0xf3, 0x44, (byte) 0xc4};
+    private static final int MP3_FRAME_BYTES = 96;
+
+    private static byte[] mp3Frames(int n) {
+        byte[] b = new byte[n * MP3_FRAME_BYTES];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(MP3_HEADER, 0, b, i * MP3_FRAME_BYTES, 4);
+        }
+        return b;
+    }
+
+    private static long feed(AudioDuration d, byte[] data, int chunk) {
+        long total = 0;
+        for (int off = 0; off < data.length; off += chunk) {
+            total += d.micros(data, off, Math.min(chunk, data.length - off));
+        }
+        return total;
+    }
+
+    @Test
+    void countsMp3FramesAcrossChunkBoundaries() {
+        assertEquals(MP3_FRAME_BYTES, AudioDuration.frameBytes(MP3_HEADER));
+        // 37 字节一片，帧头多次跨片
+        assertEquals(240_000, feed(new AudioDuration(TtsAudioFrame.CODEC_MP3, 16000), mp3Frames(10), 37));
+    }
+
+    @Test
+    void skipsId3TagEvenWithFalseSyncInside() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{'I', 'D', '3', 4, 0, 0, 0, 0, 0, 20});
+        byte[] tag = new byte[20];
+        System.arraycopy(MP3_HEADER, 0, tag, 4, 4);
+        out.writeBytes(tag);
+        out.writeBytes(mp3Frames(5));
+        assertEquals(120_000, feed(new AudioDuration(TtsAudioFrame.CODEC_MP3, 16000), out.toByteArray(), 64));
+    }
+
+    @Test
+    void pcmAndWavUseByteRate() {
+        assertEquals(100_000, feed(new AudioDuration(TtsAudioFrame.CODEC_PCM, 16000), new byte[3200], 1000));
+
+        byte[] wav = new byte[44 + 6400];
+        wav[0] = 'R';
+        wav[1] = 'I';
+        wav[2] = 'F';
+        wav[3] = 'F';
+        int byteRate = 64000; // 32kHz 16bit
+        for (int i = 0; i < 4; i++) wav[28 + i] = (byte) (byteRate >>> (8 * i));
+        assertEquals(100_000, feed(new AudioDuration(TtsAudioFrame.CODEC_WAV, 16000), wav, 1000));
+
+        assertEquals(0, feed(new AudioDuration(TtsAudioFrame.CODEC_OGG_OPUS, 16000), new byte[500], 100));
+    }
+}
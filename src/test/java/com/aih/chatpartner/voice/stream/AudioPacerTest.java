@@ -0,0 +1,76 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link AudioPacer} 的领先量、倍速放行、顺序与打断丢弃
+ */
+class AudioPacerTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final AudioPacer.Stats stats = new AudioPacer.Stats();
+    private final AudioPacer pacer = new AudioPacer(1.2, 400, stats);
+    private final List<String> sent = new ArrayList<>();
+
+    private void offerChunks(String prefix, int n) {
+        for (int i = 0; i < n; i++) {
+            String name = prefix + i;
+            pacer.offer(100_000, () -> sent.add(name));
+        }
+    }
+
+    @Test
+    void releasesLeadThenPacesAtRate() {
+        pacer.offer(0, () -> sent.add("start"));
+        offerChunks("c", 8);
+        pacer.offer(0, () -> sent.add("done"));
+
+        // 起点放行领先量：已放行 ≤ 400ms 时继续，第 5 片之后超出
+        long wait = pacer.pump(0);
+        assertEquals(List.of("start", "c0", "c1", "c2", "c3", "c4"), sent);
+        assertEquals(83_333_334L, wait);
+
+        // 100ms 后额度为 400 + 120ms
+        pacer.pump(100 * MS);
+        assertEquals(7, sent.size());
+
+        // 控制消息紧跟最后一片音频
+        assertEquals(-1, pacer.pump(1_000 * MS));
+        assertEquals("done", sent.get(sent.size() - 1));
+        assertEquals(10, sent.size());
+    }
+
+    @Test
+    void restartsLeadAfterClientDrainedInsteadOfBursting() {
+        offerChunks("a", 2);
+        pacer.pump(0);
+        // 10 秒静默后，只重新放行领先量，而不是按 10 秒额度突发
+        offerChunks("b", 10);
+        pacer.pump(10_000 * MS);
+        assertEquals(2 + 5, sent.size());
+    }
+
+    @Test
+    void discardDropsUnsentAudioAndReportsSaving() {
+        offerChunks("c", 30);
+        pacer.pump(0);
+        assertEquals(5, sent.size());
+
+        assertEquals(2_500, pacer.discard());
+        assertEquals(0, pacer.pending());
+        assertEquals(-1, pacer.pump(MS));
+
+        Map<String, Object> s = stats.snapshot();
+        assertEquals(5L, s.get("pacedChunks"));
+        assertEquals(25L, s.get("savedChunks"));
+        assertEquals(2_500L, s.get("savedAudioMs"));
+        assertEquals(1L, s.get("discards"));
+    }
+}
@@ -0,0 +1,154 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.config.VoiceStreamConfig;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link ChatHistoryWriteBehind} 的保序、重试、满队列兜底与关闭冲刷
+ */
+class ChatHistoryWriteBehindTest {
+
+    private static VoiceStreamConfig.PersistenceConfig cfg(int lanes, int capacity) {
+        VoiceStreamConfig.PersistenceConfig cfg = new VoiceStreamConfig.PersistenceConfig();
+        cfg.setLanes(lanes);
+        cfg.setQueueCapacity(capacity);
+        cfg.setMaxAttempts(3);
+        cfg.setRetryBackoffMs(1L);
+        return cfg;
+    }
+
+    @Test
+    void messagesOfOneGroupAreWrittenInSubmitOrder() throws Exception {
+        Map<Long, List<String>> written = new ConcurrentHashMap<>();
+        int groups = 8;
+        int perGroup = 200;
+        CountDownLatch done = new CountDownLatch(groups * perGroup);
+        ChatHistoryWriteBehind writer = new ChatHistoryWriteBehind(m -> {
+            written.computeIfAbsent(m.groupId(), k -> Collections.synchronizedList(new ArrayList<>())).add(m.message());
+            done.countDown();
+        }, cfg(3, 4096));
+
+        for (int i = 0; i < perGroup; i++) {
+            for (long g = 1; g <= groups; g++) {
+                if (i % 2 == 0) {
+                    writer.saveUserMessage(g, 7L, String.valueOf(i));
+                } else {
+                    writer.saveAiMessage(g, 7L, String.valueOf(i));
+                }
+            }
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (long g = 1; g <= groups; g++) {
+            List<String> list = written.get(g);
+            for (int i = 0; i < perGroup; i++) {
+                assertEquals(String.valueOf(i), list.get(i));
+            }
+        }
+        writer.shutdown();
+    }
+
+    @Test
+    void transientErrorsAreRetriedOthersAreNot() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+        ChatHistoryWriteBehind writer = new ChatHistoryWriteBehind(m -> {
+            calls.incrementAndGet();
+            try {
+                if (m.message().equals("flaky") && calls.get() < 3) {
+                    throw new RuntimeException(new SQLTransientConnectionException("pool timeout"));
+                }
+                if (m.message().equals("bad")) {
+                    throw new IllegalArgumentException("参数错误");
+                }
+                written.add(m.message());
+            } finally {
+                if (!m.message().equals("flaky") || calls.get() >= 3) done.countDown();
+            }
+        }, cfg(1, 16));
+
+        writer.saveUserMessage(1L, 7L, "flaky");
+        writer.saveUserMessage(1L, 7L, "bad");
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        writer.shutdown();
+
+        assertEquals(List.of("flaky"), written);
+        assertEquals(4, calls.get());
+        Map<String, Object> stats = writer.stats();
+        assertEquals(2L, stats.get("retries"));
+        assertEquals(1L, stats.get("failed"));
+        assertEquals(1L, stats.get("written"));
+    }
+
+    @Test
+    void fullQueueWritesSynchronouslyAfterQueuedMessages() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        Consumer<ChatHistoryWriteBehind.PendingMessage> sink = m -> {
+            if (m.message().equals("a")) {
+                firstStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            written.add(m.message());
+        };
+        ChatHistoryWriteBehind writer = new ChatHistoryWriteBehind(sink, cfg(1, 2));
+
+        writer.saveUserMessage(1L, 7L, "a");
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        writer.saveAiMessage(1L, 7L, "b");
+        writer.saveUserMessage(1L, 7L, "c");
+        // 队列已满：调用线程等 "a" 写完后依次写 "b"、"c"、"d"
+        Thread caller = Thread.ofVirtual().start(() -> writer.saveAiMessage(1L, 7L, "d"));
+        Thread.sleep(50);
+        release.countDown();
+        caller.join(5000);
+
+        assertEquals(List.of("a", "b", "c", "d"), written);
+        assertEquals(1L, writer.stats().get("syncFallbacks"));
+        writer.shutdown();
+    }
+
+    @Test
+    void shutdownFlushesQueuedMessages() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        ChatHistoryWriteBehind writer = new ChatHistoryWriteBehind(m -> {
+            try {
+                release.await(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.add(m.message());
+        }, cfg(2, 64));
+
+        for (int i = 0; i < 10; i++) {
+            writer.saveUserMessage((long) (i % 3 + 1), 7L, String.valueOf(i));
+        }
+        writer.shutdown();
+        assertEquals(10, written.size());
+        assertEquals(0, writer.stats().get("queued"));
+
+        // 关闭后的提交直接同步写入
+        writer.saveAiMessage(1L, 7L, "late");
+        assertEquals("late", written.get(10));
+    }
+}
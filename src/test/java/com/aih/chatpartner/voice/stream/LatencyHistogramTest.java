@@ -0,0 +1,52 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link LatencyHistogram} 的分桶精度与分位数
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsCoverEveryValueWithBoundedRelativeError() {
+        for (long v = 0; v < 5_000_000; v = v < 100 ? v + 1 : v + v / 7) {
+            int i = LatencyHistogram.index(v);
+            long lo = LatencyHistogram.lowerBound(i);
+            long hi = LatencyHistogram.upperBound(i);
+            assertTrue(lo <= v && v <= hi, "v=" + v + " bucket=[" + lo + "," + hi + "]");
+            assertTrue(hi - lo <= Math.max(1, v / 15), "v=" + v);
+        }
+    }
+
+    @Test
+    void percentilesFollowRecordedDistribution() {
+        LatencyHistogram h = new LatencyHistogram();
+        // 1..1000 毫秒各一次
+        for (int ms = 1; ms <= 1000; ms++) {
+            h.recordMicros(ms * 1000L);
+        }
+        assertEquals(1000, h.count());
+        assertEquals(500_000, h.percentileMicros(50), 500_000 * 0.07);
+        assertEquals(990_000, h.percentileMicros(99), 990_000 * 0.07);
+        assertEquals(1_000_000, h.percentileMicros(100));
+
+        Map<String, Object> m = h.snapshot();
+        assertEquals(500.5, (Double) m.get("meanMs"), 0.05);
+        assertEquals(1000.0, (Double) m.get("maxMs"), 1e-9);
+    }
+
+    @Test
+    void emptyAndNegativeValues() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.recordNanos(-5);
+        assertEquals(0, h.count());
+        assertEquals(0, h.percentileMicros(99));
+        h.recordMicros(Long.MAX_VALUE);
+        assertEquals(1, h.count());
+    }
+}
@@ -0,0 +1,94 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.ai.TokenCoalescer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.socket.TextMessage;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一轮约 300 token 的回复：逐 token 下发 llm_partial 对比 {@link TokenCoalescer} 合并后下发
+ * frames 计数器为每轮回复产生的 WebSocket 帧数
+ * <p>
+ * 运行：mvn test-compile 后以测试 classpath 执行 main
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LlmPartialCoalescingBenchmark {
+
+    @Param({"16", "32", "64"})
+    public int maxChars;
+
+    private String[] tokens;
+    private VoiceEventWriter writer;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Frames {
+        public long frames;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String vocab = "今天天气很好我们一起去公园散步吧喜羊羊说你好呀，。！";
+        Random r = new Random(42);
+        tokens = new String[300];
+        for (int i = 0; i < tokens.length; i++) {
+            int len = 1 + r.nextInt(3);
+            StringBuilder sb = new StringBuilder(len);
+            for (int j = 0; j < len; j++) sb.append(vocab.charAt(r.nextInt(vocab.length())));
+            tokens[i] = sb.toString();
+        }
+        writer = new VoiceEventWriter(new ObjectMapper().getFactory());
+    }
+
+    @Benchmark
+    public void perToken(Frames f) {
+        for (String t : tokens) {
+            new TextMessage(writer.llmPartial(t));
+            f.frames++;
+        }
+    }
+
+    @Benchmark
+    public void coalesced(Frames f) {
+        // 窗口取足够大，仅由长度触发冲刷，衡量稳态下的帧数与 CPU
+        TokenCoalescer c = new TokenCoalescer(1000, maxChars, Schedulers.parallel(), text -> {
+            new TextMessage(writer.llmPartial(text));
+            f.frames++;
+        });
+        for (String t : tokens) {
+            c.append(t);
+        }
+        c.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(LlmPartialCoalescingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,128 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.ai.AiService;
+import com.aih.chatpartner.ai.AiServiceFactory;
+import com.aih.chatpartner.service.ChatHistoryService;
+import dev.langchain4j.community.store.memory.chat.redis.RedisChatMemoryStore;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+/**
+ * {@link MemoryCheckpoint} 推测调用只写副本记忆，命中后才同步到正式记忆
+ */
+class MemoryCheckpointTest {
+
+    private static MessageWindowChatMemory memory(int max, ChatMessage... messages) {
+        MessageWindowChatMemory m = MessageWindowChatMemory.builder().id(1L).maxMessages(max).build();
+        for (ChatMessage c : messages) m.add(c);
+        return m;
+    }
+
+    private static MessageWindowChatMemory copyOf(MessageWindowChatMemory source, int max) {
+        return memory(max, source.messages().toArray(new ChatMessage[0]));
+    }
+
+    @Test
+    void syncsSpeculativeTurnInTwoStepsOnCommit() {
+        MessageWindowChatMemory real = memory(20, UserMessage.from("你好"), AiMessage.from("你好呀"));
+        MessageWindowChatMemory scratch = copyOf(real, 20);
+        MemoryCheckpoint cp = new MemoryCheckpoint(scratch);
+        scratch.add(UserMessage.from("今天天气怎么样"));
+
+        // 提交时回复尚未生成完：先同步用户消息
+        assertEquals(1, cp.sync(real));
+        scratch.add(AiMessage.from("晴天"));
+        assertEquals(1, cp.sync(real));
+        assertEquals(0, cp.sync(real));
+        assertEquals(List.of(UserMessage.from("你好"), AiMessage.from("你好呀"),
+                UserMessage.from("今天天气怎么样"), AiMessage.from("晴天")), real.messages());
+    }
+
+    @Test
+    void syncsOnlyNewMessagesWhenWindowIsFull() {
+        MessageWindowChatMemory real = memory(4, UserMessage.from("a"), AiMessage.from("A"), UserMessage.from("b"), AiMessage.from("B"));
+        MessageWindowChatMemory scratch = copyOf(real, 4);
+        MemoryCheckpoint cp = new MemoryCheckpoint(scratch);
+        scratch.add(UserMessage.from("c"));
+        scratch.add(AiMessage.from("C"));
+        assertEquals(UserMessage.from("b"), scratch.messages().get(0));
+
+        assertEquals(2, cp.sync(real));
+        assertEquals(List.of(UserMessage.from("b"), AiMessage.from("B"), UserMessage.from("c"), AiMessage.from("C")),
+                real.messages());
+    }
+
+    @Test
+    void speculativeReplyArrivingAfterDiscardNeverReachesRealMemory() {
+        MessageWindowChatMemory real = memory(20, UserMessage.from("你好"), AiMessage.from("你好呀"));
+        MessageWindowChatMemory scratch = copyOf(real, 20);
+        MemoryCheckpoint cp = new MemoryCheckpoint(scratch);
+        SpeculativeReply spec = new SpeculativeReply("今天天", () -> cp.sync(real), new SpeculativeReply.Stats());
+        spec.attach(() -> { });
+        // 推测调用开始：用户消息写入副本
+        scratch.add(UserMessage.from("今天天"));
+        spec.token("推测");
+
+        // final 不一致：丢弃推测，按 final 开始正式轮次
+        spec.discard(true);
+        real.add(UserMessage.from("今天天气怎么样"));
+
+        // 取消订阅没有停下底层的流：推测回复在丢弃之后才生成完，写入副本并回调完成
+        scratch.add(AiMessage.from("推测的回复"));
+        spec.token("的回复");
+        spec.complete();
+        real.add(AiMessage.from("正式回复"));
+
+        assertEquals(List.of(UserMessage.from("你好"), AiMessage.from("你好呀"),
+                UserMessage.from("今天天气怎么样"), AiMessage.from("正式回复")), real.messages());
+    }
+
+    @Test
+    void scratchServiceCopiesTheMemoryTheServiceUsesAfterItWentIdle() {
+        AtomicLong nanos = new AtomicLong();
+        AiServiceFactory factory = new AiServiceFactory(nanos::get);
+        ReflectionTestUtils.setField(factory, "chatModel", mock(ChatModel.class));
+        ReflectionTestUtils.setField(factory, "streamingChatModel", mock(StreamingChatModel.class));
+        ReflectionTestUtils.setField(factory, "redisChatMemoryStore",
+                mock(RedisChatMemoryStore.class, AdditionalAnswers.delegatesTo(new InMemoryChatMemoryStore())));
+        ReflectionTestUtils.setField(factory, "chatHistoryService", mock(ChatHistoryService.class));
+
+        AiService service = factory.getAiService(7L);
+        MessageWindowChatMemory memory = factory.getChatMemory(7L);
+        memory.add(UserMessage.from("你好"));
+        // 每轮对话都取服务，记忆 25 分钟没有被单独读取（超过访问过期时间）
+        for (int i = 0; i < 5; i++) {
+            nanos.addAndGet(Duration.ofMinutes(5).toNanos());
+            assertSame(service, factory.getAiService(7L));
+        }
+        assertSame(memory, factory.getChatMemory(7L));
+
+        AiServiceFactory.ScratchService scratch = factory.createScratchService(7L);
+        assertNotSame(memory, scratch.memory());
+        assertNotSame(service, scratch.service());
+        assertEquals(List.of(UserMessage.from("你好")), scratch.memory().messages());
+
+        MemoryCheckpoint cp = new MemoryCheckpoint(scratch.memory());
+        scratch.memory().add(UserMessage.from("推测"));
+        assertEquals(List.of(UserMessage.from("你好")), memory.messages());
+        cp.sync(factory.getChatMemory(7L));
+        assertEquals(List.of(UserMessage.from("你好"), UserMessage.from("推测")), memory.messages());
+    }
+}
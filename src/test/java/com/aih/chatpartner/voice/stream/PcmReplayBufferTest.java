@@ -0,0 +1,71 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link PcmReplayBuffer} 的绝对偏移寻址、回绕与覆盖
+ */
+class PcmReplayBufferTest {
+
+    private static byte[] seq(int from, int n) {
+        byte[] b = new byte[n];
+        for (int i = 0; i < n; i++) b[i] = (byte) (from + i);
+        return b;
+    }
+
+    @Test
+    void replaysFromOffsetAcrossWrapInChunks() {
+        PcmReplayBuffer buf = new PcmReplayBuffer(8);
+        buf.append(ByteBuffer.wrap(seq(0, 6)));
+        buf.append(ByteBuffer.wrap(seq(6, 4)));   // 回绕，0、1 已被覆盖
+        assertEquals(2, buf.start());
+        assertEquals(10, buf.end());
+
+        List<byte[]> chunks = new ArrayList<>();
+        long n = buf.replay(4, 4, b -> {
+            byte[] copy = new byte[b.remaining()];
+            b.get(b.position(), copy);
+            chunks.add(copy);
+        });
+        assertEquals(6, n);
+        assertEquals(2, chunks.size());
+        assertArrayEquals(seq(4, 4), chunks.get(0));
+        assertArrayEquals(seq(8, 2), chunks.get(1));
+    }
+
+    @Test
+    void overwrittenAudioIsSkippedAndEndIsExclusive() {
+        PcmReplayBuffer buf = new PcmReplayBuffer(8);
+        buf.append(ByteBuffer.wrap(seq(0, 12)));  // 单次写入超过容量，只保留末尾
+        assertArrayEquals(seq(4, 8), buf.copySince(0));
+        assertArrayEquals(new byte[0], buf.copySince(12));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, buf.replay(12, 4, b -> out.write(0)));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void appendDoesNotMoveSourcePosition() {
+        PcmReplayBuffer buf = new PcmReplayBuffer(16);
+        ByteBuffer direct = ByteBuffer.allocateDirect(6).put(seq(1, 6)).flip();
+        direct.position(2);
+        buf.append(direct);
+        assertEquals(2, direct.position());
+        assertArrayEquals(seq(3, 4), buf.copySince(0));
+    }
+
+    @Test
+    void bytesForMsAlignsToSampleFrames() {
+        assertEquals(32_000, PcmReplayBuffer.bytesForMs(16000, 1, 1000));
+        assertEquals(0, PcmReplayBuffer.bytesForMs(16000, 2, 0) % 4);
+        assertEquals(0, PcmReplayBuffer.bytesForMs(11025, 2, 333) % 4);
+    }
+}
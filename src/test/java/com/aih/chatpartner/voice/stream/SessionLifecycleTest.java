@@ -0,0 +1,61 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.config.VoiceStreamConfig;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * {@link SessionLifecycle} 的心跳、半开、空闲判定与节点准入
+ */
+class SessionLifecycleTest {
+
+    private static SessionLifecycle lifecycle(int maxSessions, long maxMemoryBytes) {
+        VoiceStreamConfig.SessionConfig cfg = new VoiceStreamConfig.SessionConfig();
+        cfg.setPingIntervalMs(1_000L);
+        cfg.setHalfOpenTimeoutMs(3_000L);
+        cfg.setIdleTimeoutMs(10_000L);
+        cfg.setReaperTickMs(100L);
+        cfg.setMaxSessions(maxSessions);
+        cfg.setMaxMemoryBytes(maxMemoryBytes);
+        return new SessionLifecycle(cfg, new SessionLifecycle.Stats());
+    }
+
+    @Test
+    void pingsSilentClientThenReapsHalfOpen() {
+        SessionLifecycle lc = lifecycle(0, 0);
+        assertEquals(SessionLifecycle.Action.NONE, lc.decide(500, 0, 0, 0, false));
+        assertEquals(SessionLifecycle.Action.PING, lc.decide(1_000, 0, 0, 0, false));
+        // 刚发过 ping，不重复发送
+        assertEquals(SessionLifecycle.Action.NONE, lc.decide(1_500, 0, 0, 1_000, false));
+        assertEquals(SessionLifecycle.Action.REAP_HALF_OPEN, lc.decide(3_000, 0, 0, 2_000, false));
+        assertEquals(2_000, lc.nextCheckAt(1_000, 0, 0, 1_000, false));
+    }
+
+    @Test
+    void reapsIdleOnlyWhenNoReplyInProgress() {
+        SessionLifecycle lc = lifecycle(0, 0);
+        // 心跳正常但用户 10 秒无输入
+        assertEquals(SessionLifecycle.Action.REAP_IDLE, lc.decide(10_000, 9_900, 0, 9_000, false));
+        assertEquals(SessionLifecycle.Action.NONE, lc.decide(10_000, 9_900, 0, 9_000, true));
+        // 回复进行中时空闲期限顺延到下一次心跳
+        assertEquals(10_900, lc.nextCheckAt(10_000, 9_900, 0, 9_000, true));
+        assertEquals(10_000, lc.nextCheckAt(9_500, 9_400, 0, 9_400, false));
+    }
+
+    @Test
+    void rejectsBeyondSessionAndMemoryCaps() {
+        SessionLifecycle lc = lifecycle(2, 1_000);
+        assertNull(lc.admit(1));
+        assertEquals("too many sessions", lc.admit(2));
+        lc.memoryChanged(0, 600);
+        lc.memoryChanged(0, 500);
+        assertEquals("memory limit reached", lc.admit(0));
+        lc.memoryChanged(500, 0);
+        assertNull(lc.admit(1));
+        assertEquals(600, lc.memoryBytes());
+        assertEquals(1L, lc.stats().snapshot().get("rejectedSessions"));
+        assertEquals(1L, lc.stats().snapshot().get("rejectedMemory"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link SessionMailbox} 的串行执行与投递顺序
+ */
+class SessionMailboxTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final SessionMailbox.Stats stats = new SessionMailbox.Stats();
+
+    @Test
+    void eventsFromManyProducersRunOneAtATimeInPerProducerOrder() throws Exception {
+        SessionMailbox mailbox = new SessionMailbox(executor, "s1", stats);
+        int producers = 4;
+        int perProducer = 5000;
+        // 只在 actor 内读写，不加锁：若出现并发执行，计数或顺序会出错
+        List<List<Integer>> seen = new ArrayList<>();
+        for (int p = 0; p < producers; p++) seen.add(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(producers * perProducer);
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    int n = i;
+                    mailbox.execute(() -> {
+                        if (running.incrementAndGet() > 1) overlaps.incrementAndGet();
+                        seen.get(producer).add(n);
+                        running.decrementAndGet();
+                        done.countDown();
+                    });
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread t : threads) t.join();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        // 事件计数在事件执行完之后才累加，等最后一个排空任务收尾
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mailbox.depth() > 0 && System.nanoTime() < deadline) Thread.sleep(1);
+
+        assertEquals(0, overlaps.get());
+        for (List<Integer> list : seen) {
+            assertEquals(perProducer, list.size());
+            for (int i = 0; i < perProducer; i++) {
+                assertEquals(i, list.get(i).intValue());
+            }
+        }
+        assertEquals((long) producers * perProducer, stats.events.sum());
+    }
+
+    @Test
+    void failingEventDoesNotStopLaterEvents() throws Exception {
+        SessionMailbox mailbox = new SessionMailbox(executor, "s2", stats);
+        CountDownLatch after = new CountDownLatch(1);
+        mailbox.execute(() -> {
+            throw new IllegalStateException("boom");
+        });
+        mailbox.execute(after::countDown);
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+        assertEquals(1L, stats.failures.sum());
+    }
+
+    @Test
+    void eventsAfterCloseAreDropped() throws Exception {
+        SessionMailbox mailbox = new SessionMailbox(executor, "s3", stats);
+        CountDownLatch closed = new CountDownLatch(1);
+        mailbox.execute(() -> {
+            mailbox.close();
+            closed.countDown();
+        });
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        AtomicInteger ran = new AtomicInteger();
+        mailbox.execute(ran::incrementAndGet);
+        Thread.sleep(50);
+        assertEquals(0, ran.get());
+        assertEquals(1L, stats.dropped.sum());
+    }
+}
@@ -0,0 +1,126 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link SpeculativeReply} 的暂存、提交、丢弃与记忆同步
+ */
+class SpeculativeReplyTest {
+
+    private final SpeculativeReply.Stats stats = new SpeculativeReply.Stats();
+    private final AtomicInteger syncs = new AtomicInteger();
+    private final AtomicInteger disposed = new AtomicInteger();
+
+    /**
+     * 记录下游收到的回调
+     */
+    private static final class RecordingSink implements SpeculativeReply.Sink {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void token(String token) {
+            events.add(token);
+        }
+
+        @Override
+        public void complete() {
+            events.add("<complete>");
+        }
+
+        @Override
+        public void error(Throwable err) {
+            events.add("<error>");
+        }
+    }
+
+    private SpeculativeReply newReply(String text) {
+        SpeculativeReply reply = new SpeculativeReply(text, syncs::incrementAndGet, stats);
+        reply.attach(disposed::incrementAndGet);
+        return reply;
+    }
+
+    @Test
+    void finalTextMatchesIgnoringPunctuationAndCase() {
+        SpeculativeReply reply = newReply("今天天气怎么样");
+        assertTrue(reply.matches("今天天气怎么样？"));
+        assertTrue(reply.matches(" 今天，天气怎么样。"));
+        assertFalse(reply.matches("今天天气怎么样呀"));
+        assertTrue(newReply("Hello world").matches("hello, World!"));
+    }
+
+    @Test
+    void commitReplaysHeldTokensThenForwards() {
+        SpeculativeReply reply = newReply("你好");
+        reply.token("你");
+        reply.token("好，");
+        RecordingSink sink = new RecordingSink();
+        reply.commit(sink);
+        assertEquals(List.of("你", "好，"), sink.events);
+        assertEquals(1, syncs.get());
+
+        reply.token("我是喜羊羊");
+        reply.complete();
+        assertEquals(List.of("你", "好，", "我是喜羊羊", "<complete>"), sink.events);
+        // 提交时同步用户消息，流结束时补上 AI 回复
+        assertEquals(2, syncs.get());
+        assertEquals(0, disposed.get());
+        assertEquals(1L, stats.hits.sum());
+    }
+
+    @Test
+    void commitAfterStreamCompletedDeliversCompletion() {
+        SpeculativeReply reply = newReply("你好");
+        reply.token("嗨！");
+        reply.complete();
+        RecordingSink sink = new RecordingSink();
+        reply.commit(sink);
+        assertEquals(List.of("嗨！", "<complete>"), sink.events);
+    }
+
+    @Test
+    void discardCancelsOnceAndNeverSyncsMemory() {
+        SpeculativeReply reply = newReply("你好");
+        reply.token("嗨");
+        reply.discard(true);
+        reply.discard(false);
+        assertEquals(1, disposed.get());
+
+        // 取消后流仍在后台跑完：迟到的回调、完成与提交都被忽略，副本记忆不会同步到正式记忆
+        reply.token("迟到");
+        reply.complete();
+        reply.error(new IllegalStateException("late"));
+        assertEquals(0, syncs.get());
+        RecordingSink sink = new RecordingSink();
+        assertEquals(0L, reply.commit(sink));
+        assertTrue(sink.events.isEmpty());
+        assertEquals(1L, stats.misses.sum());
+        assertEquals(0L, stats.hits.sum());
+    }
+
+    @Test
+    void subscriptionAttachedAfterDiscardIsDisposed() {
+        SpeculativeReply reply = new SpeculativeReply("你好", syncs::incrementAndGet, stats);
+        reply.discard(false);
+        reply.attach(disposed::incrementAndGet);
+        assertEquals(1, disposed.get());
+        assertEquals(1L, stats.cancelled.sum());
+    }
+
+    @Test
+    void hitRateCountsResolvedSpeculations() {
+        newReply("一").commit(new RecordingSink());
+        newReply("二").commit(new RecordingSink());
+        newReply("三").discard(true);
+        newReply("四").discard(false);
+        assertEquals(0.5, (Double) stats.snapshot().get("hitRate"), 1e-9);
+        assertEquals(4L, stats.snapshot().get("started"));
+    }
+}
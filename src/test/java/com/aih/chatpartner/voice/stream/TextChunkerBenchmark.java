@@ -0,0 +1,131 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 整轮回复切句：旧实现（每个 token 做 toString + 7 次 indexOf）对比增量扫描的 {@link TextChunker}
+ * <p>
+ * 运行：mvn test-compile 后以测试 classpath 执行 main
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextChunkerBenchmark {
+
+    /**
+     * 每轮回复的 token 数
+     */
+    @Param({"300", "3000"})
+    public int tokens;
+
+    private String[] reply;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String vocab = "今天天气很好我们一起去公园散步吧喜羊羊说你好呀村长";
+        String punct = "，。！？、";
+        Random r = new Random(42);
+        reply = new String[tokens];
+        for (int i = 0; i < tokens; i++) {
+            StringBuilder sb = new StringBuilder(3);
+            int len = 1 + r.nextInt(3);
+            for (int j = 0; j < len; j++) sb.append(vocab.charAt(r.nextInt(vocab.length())));
+            if (r.nextInt(6) == 0) sb.append(punct.charAt(r.nextInt(punct.length())));
+            reply[i] = sb.toString();
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) {
+        LegacyChunker c = new LegacyChunker(60);
+        for (String t : reply) {
+            bh.consume(c.appendAndExtract(t));
+        }
+        bh.consume(c.flushRemainder());
+    }
+
+    @Benchmark
+    public void incremental(Blackhole bh) {
+        TextChunker c = new TextChunker(TextChunker.DEFAULT_MAX_LEN, true);
+        for (String t : reply) {
+            bh.consume(c.appendAndExtract(t));
+        }
+        bh.consume(c.flushRemainder());
+    }
+
+    /**
+     * 改造前的 TextChunker，仅用于对比
+     */
+    static final class LegacyChunker {
+        private final StringBuilder buffer = new StringBuilder();
+        private final int maxLen;
+
+        LegacyChunker(int maxLen) {
+            this.maxLen = Math.max(20, maxLen);
+        }
+
+        synchronized List<String> appendAndExtract(String token) {
+            List<String> out = new ArrayList<>();
+            if (token == null || token.isEmpty()) {
+                return out;
+            }
+            buffer.append(token);
+            String s = buffer.toString();
+            int idx = -1;
+            for (char p : new char[]{'。', '！', '？', '.', '!', '?', '\n'}) {
+                int i = s.indexOf(p);
+                if (i >= 0 && (idx == -1 || i < idx)) idx = i;
+            }
+            if (idx >= 0) {
+                String sentence = buffer.substring(0, idx + 1).trim();
+                if (!sentence.isEmpty()) out.add(sentence);
+                buffer.delete(0, idx + 1);
+                return out;
+            }
+            if (buffer.length() >= maxLen) {
+                String sentence = buffer.toString().trim();
+                if (!sentence.isEmpty()) {
+                    out.add(sentence);
+                    buffer.setLength(0);
+                }
+            }
+            return out;
+        }
+
+        synchronized String flushRemainder() {
+            String rest = buffer.toString().trim();
+            buffer.setLength(0);
+            return rest;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(TextChunkerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,97 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link TextChunker} 的切分结果；每个用例分别按 1 字、3 字、整段三种 token 粒度喂入，结果必须一致
+ */
+class TextChunkerTest {
+
+    private static final int[] TOKEN_SIZES = {1, 3, Integer.MAX_VALUE};
+
+    private static List<String> split(TextChunker chunker, String reply, int tokenSize) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < reply.length(); i += Math.min(tokenSize, reply.length() - i)) {
+            out.addAll(chunker.appendAndExtract(reply.substring(i, i + Math.min(tokenSize, reply.length() - i))));
+        }
+        String rest = chunker.flushRemainder();
+        if (!rest.isEmpty()) out.add(rest);
+        return out;
+    }
+
+    private static void assertSplit(List<String> expected, int maxLen, boolean fastFirst, String reply) {
+        for (int size : TOKEN_SIZES) {
+            assertEquals(expected, split(new TextChunker(maxLen, fastFirst), reply, size), "tokenSize=" + size);
+        }
+    }
+
+    @Test
+    void chineseReplyEmitsFirstClauseThenGrowingChunks() {
+        assertSplit(List.of(
+                        "你好呀，",
+                        "我是喜羊羊！今天天气真好。",
+                        "我们一起去草原上玩吧？村长说：“不要走太远。”好的，我知道啦！"),
+                60, true,
+                "你好呀，我是喜羊羊！今天天气真好。我们一起去草原上玩吧？村长说：“不要走太远。”好的，我知道啦！");
+    }
+
+    @Test
+    void englishReplyEmitsFirstClauseThenGrowingChunks() {
+        assertSplit(List.of(
+                        "Hello,",
+                        "I'm Pleasant Goat.",
+                        "The weather is great today.",
+                        "Pi is about 3.14, a bit more than three!",
+                        "Let's go (and have fun.) OK?"),
+                60, true,
+                "Hello, I'm Pleasant Goat. The weather is great today. Pi is about 3.14, a bit more than three! Let's go (and have fun.) OK?");
+    }
+
+    @Test
+    void withoutFastFirstChunkWaitsForSentenceEnd() {
+        assertSplit(List.of("你好呀，我是喜羊羊！", "今天天气真好。我们一起去草原上玩吧？", "好的。"),
+                60, false,
+                "你好呀，我是喜羊羊！今天天气真好。我们一起去草原上玩吧？好的。");
+    }
+
+    @Test
+    void neverSplitsInsideQuotesOrBrackets() {
+        assertSplit(List.of("他说：“你好。我很好！”", "然后走了（真的。）再见。"),
+                60, false,
+                "他说：“你好。我很好！”然后走了（真的。）再见。");
+        assertSplit(List.of("\"Hi. Bye!\"", "She left."),
+                60, false,
+                "\"Hi. Bye!\" She left.");
+    }
+
+    @Test
+    void decimalsAndRepeatedTerminatorsStayTogether() {
+        assertSplit(List.of("Pi is 3.14 today.", "Yes"), 60, false, "Pi is 3.14 today. Yes");
+        assertSplit(List.of("哇！！", "真的吗……太好了。"), 60, true, "哇！！真的吗……太好了。");
+    }
+
+    @Test
+    void overlongChunkIsCutAtLastClauseOrAtMaxLen() {
+        String noPunct = "一二三四五六七八九十".repeat(4) + "一二三四五";
+        assertSplit(List.of(noPunct.substring(0, 20), noPunct.substring(20, 40), noPunct.substring(40)),
+                20, false, noPunct);
+
+        assertSplit(List.of("好。", "这是第二块内容比较长，", "后面还有很多字没有句号"),
+                20, false, "好。这是第二块内容比较长，后面还有很多字没有句号");
+    }
+
+    @Test
+    void flushRemainderStartsNewRound() {
+        TextChunker chunker = new TextChunker(60, true);
+        assertEquals(List.of("你好呀，"), chunker.appendAndExtract("你好呀，今天"));
+        assertEquals("今天", chunker.flushRemainder());
+        assertEquals(List.of("再见，"), chunker.appendAndExtract("再见，"));
+        assertTrue(chunker.flushRemainder().isEmpty());
+    }
+}
@@ -0,0 +1,51 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link TimingWheel} 的到期取整、多圈与落后追赶
+ */
+class TimingWheelTest {
+
+    @Test
+    void expiresOnFirstTickAtOrAfterDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, 0);
+        wheel.schedule("a", 250);
+        wheel.schedule("b", 300);
+        assertTrue(wheel.advance(200).isEmpty());
+        // 250 向上取整到 300，不会提前
+        assertEquals(List.of("a", "b"), wheel.advance(300));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void keepsItemsBeyondOneRevolution() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, 0);
+        // 8 个槽一圈 800ms，2500ms 要转三圈多
+        wheel.schedule("far", 2_500);
+        wheel.schedule("near", 500);
+        for (long t = 100; t < 2_600; t += 100) {
+            List<String> expired = wheel.advance(t);
+            if (t == 500) assertEquals(List.of("near"), expired);
+            else if (t == 2_500) assertEquals(List.of("far"), expired);
+            else assertTrue(expired.isEmpty(), "t=" + t);
+        }
+    }
+
+    @Test
+    void catchesUpAfterLongPauseAndPastDeadlines() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(100, 8, 0);
+        for (int i = 0; i < 20; i++) wheel.schedule(i, i * 100L);
+        assertEquals(20, wheel.size());
+        // 一次推进跨过多圈，全部到期且只各出现一次
+        assertEquals(20, wheel.advance(10_000).size());
+        // 已过期的期限在下一刻度到期
+        wheel.schedule(99, 0);
+        assertEquals(List.of(99), wheel.advance(10_100));
+    }
+}
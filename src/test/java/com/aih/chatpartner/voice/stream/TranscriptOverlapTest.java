@@ -0,0 +1,57 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link TranscriptOverlap} 重连重放后的转写去重
+ */
+class TranscriptOverlapTest {
+
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+
+    @Test
+    void stripsRepeatedTailIgnoringPunctuation() {
+        assertEquals("我们去公园吧", TranscriptOverlap.strip("今天天气不错。", "天气不错，我们去公园吧", UNLIMITED));
+    }
+
+    @Test
+    void fullyRepeatedResultIsKept() {
+        assertEquals("天气不错！", TranscriptOverlap.strip("今天天气不错。", "天气不错！", UNLIMITED));
+    }
+
+    @Test
+    void shortRepeatedUtteranceIsKept() {
+        // 用户重连后又说了一遍“好的”：不能被当作重叠吞掉
+        assertEquals("好的", TranscriptOverlap.strip("好的", "好的", UNLIMITED));
+        assertEquals("好的。", TranscriptOverlap.strip("嗯，好的", "好的。", UNLIMITED));
+        // 只是开头两个字相同，不裁剪
+        assertEquals("好的，我知道了", TranscriptOverlap.strip("好的", "好的，我知道了", UNLIMITED));
+    }
+
+    @Test
+    void unrelatedOrShortOverlapIsKept() {
+        assertEquals("好的，我知道了", TranscriptOverlap.strip("你好", "好的，我知道了", UNLIMITED));
+        assertEquals("讲个故事吧", TranscriptOverlap.strip("", "讲个故事吧", UNLIMITED));
+        assertEquals("讲个故事吧", TranscriptOverlap.strip("今天天气不错", "讲个故事吧", UNLIMITED));
+        assertEquals("不错吧我们走", TranscriptOverlap.strip("今天天气不错", "不错吧我们走", UNLIMITED));
+    }
+
+    @Test
+    void overlapIsBoundedByReplayedDuration() {
+        assertEquals(0, TranscriptOverlap.maxOverlapChars(0));
+        assertEquals(4, TranscriptOverlap.maxOverlapChars(500));
+        assertEquals(1, TranscriptOverlap.maxOverlapChars(1));
+        // 重放 300ms 至多覆盖 3 个字，不足以构成重叠
+        assertEquals("天气不错，我们去公园吧",
+                TranscriptOverlap.strip("今天天气不错。", "天气不错，我们去公园吧", TranscriptOverlap.maxOverlapChars(300)));
+        // 重放 600ms 至多 5 个字：只去掉能被覆盖的最长重叠
+        assertEquals("我们去公园吧",
+                TranscriptOverlap.strip("今天天气不错。", "天气不错，我们去公园吧", TranscriptOverlap.maxOverlapChars(600)));
+        assertEquals("我们去公园吧",
+                TranscriptOverlap.strip("abcdefgh", "efgh我们去公园吧", 4));
+        assertEquals("defgh我们去公园吧",
+                TranscriptOverlap.strip("abcdefgh", "defgh我们去公园吧", 4));
+    }
+}
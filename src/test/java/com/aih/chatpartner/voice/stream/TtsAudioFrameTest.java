@@ -0,0 +1,72 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link TtsAudioFrame} 的 10 字节帧头布局与 base64 解码
+ */
+class TtsAudioFrameTest {
+
+    @Test
+    void headerLayoutIsVersionFlagsSeqChunkSeq() {
+        byte[] audio = {1, 2, 3, 4, 5};
+        byte[] frame = TtsAudioFrame.encode(0x01020304L, 0, TtsAudioFrame.CODEC_MP3, Base64.getEncoder().encodeToString(audio));
+
+        assertEquals(TtsAudioFrame.HEADER_SIZE + audio.length, frame.length);
+        assertArrayEquals(new byte[]{
+                1,                              // 版本
+                0x11,                           // 首个分片 | mp3
+                0x01, 0x02, 0x03, 0x04,         // 句子序号，大端
+                0, 0, 0, 0,                     // 句内分片序号
+                1, 2, 3, 4, 5}, frame);
+
+        byte[] next = TtsAudioFrame.encode(7, 0x0a0b0c0d, TtsAudioFrame.CODEC_PCM, Base64.getEncoder().encodeToString(audio));
+        ByteBuffer b = ByteBuffer.wrap(next);
+        assertEquals(TtsAudioFrame.VERSION, b.get());
+        assertEquals(TtsAudioFrame.CODEC_PCM, b.get());   // 非首个分片不带标志位
+        assertEquals(7, b.getInt());
+        assertEquals(0x0a0b0c0d, b.getInt());
+        assertEquals(TtsAudioFrame.HEADER_SIZE, b.position());
+    }
+
+    @Test
+    void payloadMatchesDecodedAudioForAllPaddings() {
+        Random rnd = new Random(5);
+        for (int len : new int[]{0, 1, 2, 3, 4, 5, 3200, 4097}) {
+            byte[] audio = new byte[len];
+            rnd.nextBytes(audio);
+            String padded = Base64.getEncoder().encodeToString(audio);
+            String unpadded = Base64.getEncoder().withoutPadding().encodeToString(audio);
+            for (String base64 : new String[]{padded, unpadded}) {
+                byte[] frame = TtsAudioFrame.encode(1, 3, TtsAudioFrame.CODEC_WAV, base64);
+                assertEquals(TtsAudioFrame.HEADER_SIZE + len, frame.length);
+                assertArrayEquals(audio, Arrays.copyOfRange(frame, TtsAudioFrame.HEADER_SIZE, frame.length));
+                assertEquals(TtsAudioFrame.CODEC_WAV, frame[1]);
+            }
+        }
+    }
+
+    @Test
+    void invalidBase64IsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> TtsAudioFrame.encode(1, 0, TtsAudioFrame.CODEC_MP3, "QUJD*"));
+        assertThrows(IllegalArgumentException.class, () -> TtsAudioFrame.encode(1, 0, TtsAudioFrame.CODEC_MP3, "QUJDR"));
+    }
+
+    @Test
+    void codecOfMapsEncodingNames() {
+        assertEquals(TtsAudioFrame.CODEC_MP3, TtsAudioFrame.codecOf("MP3"));
+        assertEquals(TtsAudioFrame.CODEC_PCM, TtsAudioFrame.codecOf("raw"));
+        assertEquals(TtsAudioFrame.CODEC_OGG_OPUS, TtsAudioFrame.codecOf("opus"));
+        assertEquals(TtsAudioFrame.CODEC_UNKNOWN, TtsAudioFrame.codecOf("aac"));
+        assertEquals(TtsAudioFrame.CODEC_UNKNOWN, TtsAudioFrame.codecOf(null));
+    }
+}
@@ -0,0 +1,148 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link TtsReorderBuffer} 的按序输出、空缺阻塞、打断重置与失败句子的处理
+ */
+class TtsReorderBufferTest {
+
+    private final List<String> out = new ArrayList<>();
+    private final TtsReorderBuffer buffer = new TtsReorderBuffer(new TtsReorderBuffer.Sink() {
+        @Override
+        public void start(long seq, String text) {
+            out.add("start " + seq + " " + text);
+        }
+
+        @Override
+        public void chunk(long seq, String base64) {
+            out.add("chunk " + seq + " " + base64);
+        }
+
+        @Override
+        public void done(long seq) {
+            out.add("done " + seq);
+        }
+
+        @Override
+        public void error(long seq, Throwable t) {
+            out.add("error " + seq + " " + t.getMessage());
+        }
+    });
+
+    @Test
+    void outOfOrderCompletionIsEmittedInSeqOrder() {
+        buffer.open(1, "一");
+        buffer.open(2, "二");
+        buffer.open(3, "三");
+        // 后面的句子先合成完
+        buffer.chunk(3, "c3");
+        buffer.complete(3);
+        buffer.chunk(2, "c2a");
+        buffer.chunk(2, "c2b");
+        buffer.complete(2);
+        assertEquals(List.of("start 1 一"), out);
+        assertEquals(3, buffer.pending());
+
+        // 队首的分片直接透传，结束后依次冲刷已缓冲的句子
+        buffer.chunk(1, "c1");
+        assertEquals(List.of("start 1 一", "chunk 1 c1"), out);
+        buffer.complete(1);
+        assertEquals(List.of("start 1 一", "chunk 1 c1", "done 1",
+                "start 2 二", "chunk 2 c2a", "chunk 2 c2b", "done 2",
+                "start 3 三", "chunk 3 c3", "done 3"), out);
+        assertEquals(0, buffer.pending());
+        assertEquals(0, buffer.bufferedChars());
+    }
+
+    @Test
+    void gapBlocksLaterSeqsUntilItIsOpened() {
+        buffer.open(1, "一");
+        buffer.complete(1);
+        // 句子 2 尚未开始合成，3、4 已合成完
+        buffer.open(3, "三");
+        buffer.chunk(3, "c3");
+        buffer.complete(3);
+        buffer.open(4, "四");
+        buffer.complete(4);
+        assertEquals(List.of("start 1 一", "done 1"), out);
+        assertEquals(2, buffer.pending());
+        assertEquals("三c3四".length(), buffer.bufferedChars());
+
+        buffer.open(2, "二");
+        assertEquals(List.of("start 1 一", "done 1", "start 2 二"), out);
+        buffer.complete(2);
+        assertEquals(List.of("start 1 一", "done 1", "start 2 二", "done 2",
+                "start 3 三", "chunk 3 c3", "done 3", "start 4 四", "done 4"), out);
+    }
+
+    @Test
+    void resetDuringTurnDropsBufferedAudioAndIgnoresLateCallbacks() {
+        buffer.open(1, "一");
+        buffer.chunk(1, "c1");
+        buffer.open(2, "二");
+        buffer.chunk(2, "c2");
+        assertEquals(List.of("start 1 一", "chunk 1 c1"), out);
+
+        // 打断：已分配到 2，下一轮从 3 开始
+        buffer.reset(3);
+        assertEquals(0, buffer.pending());
+        assertEquals(0, buffer.bufferedChars());
+
+        // 被清除句子的迟到回调全部忽略，也不能重新占位
+        buffer.chunk(1, "late");
+        buffer.complete(1);
+        buffer.chunk(2, "late");
+        buffer.fail(2, new IllegalStateException("closed"));
+        buffer.complete(2);
+        buffer.open(2, "二");
+        assertEquals(List.of("start 1 一", "chunk 1 c1"), out);
+        assertEquals(0, buffer.pending());
+
+        // 新一轮从 3 开始正常输出
+        buffer.open(3, "三");
+        buffer.chunk(3, "c3");
+        buffer.complete(3);
+        assertEquals(List.of("start 1 一", "chunk 1 c1", "start 3 三", "chunk 3 c3", "done 3"), out);
+    }
+
+    @Test
+    void chunksAfterCompletionAreDropped() {
+        buffer.open(1, "一");
+        buffer.open(2, "二");
+        buffer.complete(2);
+        buffer.chunk(2, "late");
+        buffer.complete(1);
+        assertEquals(List.of("start 1 一", "done 1", "start 2 二", "done 2"), out);
+    }
+
+    @Test
+    void failedSeqsDoNotStallLaterSeqs() {
+        buffer.open(1, "一");
+        buffer.open(2, "二");
+        buffer.open(3, "三");
+        // 非队首句子失败：保留已收到的分片，轮到它时先输出分片再报错
+        buffer.chunk(2, "c2");
+        buffer.fail(2, new RuntimeException("tts down"));
+        buffer.chunk(3, "c3");
+        buffer.complete(3);
+        assertEquals(List.of("start 1 一"), out);
+
+        // 队首句子失败：立即报错并继续输出后续句子
+        buffer.fail(1, new RuntimeException("timeout"));
+        assertEquals(List.of("start 1 一", "error 1 timeout",
+                "start 2 二", "chunk 2 c2", "error 2 tts down",
+                "start 3 三", "chunk 3 c3", "done 3"), out);
+        assertEquals(0, buffer.pending());
+
+        // 失败后的重复回调忽略
+        buffer.fail(1, new RuntimeException("again"));
+        buffer.complete(2);
+        assertEquals(8, out.size());
+    }
+}
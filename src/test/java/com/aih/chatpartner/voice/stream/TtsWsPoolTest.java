@@ -0,0 +1,192 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.config.QiniuConfig;
+import com.aih.chatpartner.voice.loadtest.FakeTtsServer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TtsWsPoolTest {
+
+    private static final String VOICE = "qiniu_zh_female_tmjxxy";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private FakeTtsServer server;
+    private TtsWsPool pool;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (pool != null) pool.shutdown();
+        if (server != null) server.stop();
+    }
+
+    private QiniuConfig config(int maxTotal) throws Exception {
+        server = new FakeTtsServer(0).startAndWait();
+        QiniuConfig cfg = new QiniuConfig();
+        cfg.setApiKey("test");
+        cfg.setTtsWsUrl(server.url());
+        QiniuConfig.TtsPoolConfig pc = cfg.getTts().getPool();
+        pc.setMaxTotal(maxTotal);
+        pc.setLeaseTimeoutMs(2_000L);
+        pc.setConnectTimeoutMs(2_000);
+        return cfg;
+    }
+
+    private TtsWsConnection lease(String voiceType) throws Exception {
+        return pool.lease(voiceType).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void releasedConnectionIsReusedForSameVoice() throws Exception {
+        pool = new TtsWsPool(config(4), mapper);
+        TtsWsConnection first = lease(VOICE);
+        assertEquals(1, pool.leased());
+        pool.release(first);
+        assertEquals(0, pool.leased());
+
+        assertSame(first, lease(VOICE));
+        Map<String, Object> stats = pool.stats();
+        assertEquals(2L, stats.get("leases"));
+        assertEquals(1L, stats.get("warmHits"));
+        assertEquals(1L, stats.get("handshakes"));
+        assertEquals(1, stats.get("total"));
+    }
+
+    @Test
+    void concurrentLeasesNeverExceedMaxTotal() throws Exception {
+        pool = new TtsWsPool(config(3), mapper);
+        List<CompletableFuture<TtsWsConnection>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) futures.add(pool.lease(VOICE));
+
+        awaitTrue(() -> futures.stream().filter(CompletableFuture::isDone).count() == 3);
+        assertEquals(3, pool.leased());
+        assertEquals(3, pool.stats().get("total"));
+        List<TtsWsConnection> held = new ArrayList<>();
+        for (CompletableFuture<TtsWsConnection> f : futures) {
+            if (f.isDone()) held.add(f.get());
+        }
+        assertEquals(3, new HashSet<>(held).size());
+
+        // 归还的连接交给等待中的租借，不新建连接
+        pool.release(held.get(0));
+        pool.release(held.get(1));
+        for (CompletableFuture<TtsWsConnection> f : futures) f.get(5, TimeUnit.SECONDS);
+        assertEquals(3, pool.leased());
+        assertEquals(3L, pool.stats().get("handshakes"));
+        assertEquals(3, pool.stats().get("total"));
+    }
+
+    @Test
+    void exhaustedPoolTimesOut() throws Exception {
+        QiniuConfig cfg = config(1);
+        cfg.getTts().getPool().setLeaseTimeoutMs(100L);
+        pool = new TtsWsPool(cfg, mapper);
+        lease(VOICE);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> lease(VOICE));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals(1L, pool.stats().get("leaseTimeouts"));
+    }
+
+    @Test
+    void idleConnectionOfOtherVoiceIsEvictedWhenFull() throws Exception {
+        pool = new TtsWsPool(config(1), mapper);
+        TtsWsConnection a = lease(VOICE);
+        pool.release(a);
+
+        TtsWsConnection b = lease("qiniu_zh_male_ljfdxz");
+        assertNotSame(a, b);
+        awaitTrue(() -> !a.isOpen());
+        Map<String, Object> stats = pool.stats();
+        assertEquals(1L, stats.get("evictions"));
+        assertEquals(1, stats.get("total"));
+        assertEquals(0, stats.get("idle"));
+    }
+
+    @Test
+    void expiredIdleConnectionIsNotLeased() throws Exception {
+        QiniuConfig cfg = config(2);
+        cfg.getTts().getPool().setMaxLifetimeMs(50L);
+        pool = new TtsWsPool(cfg, mapper);
+        TtsWsConnection old = lease(VOICE);
+        pool.release(old);
+        Thread.sleep(80);
+
+        TtsWsConnection fresh = lease(VOICE);
+        assertNotSame(old, fresh);
+        assertFalse(old.isOpen());
+        assertEquals(1, pool.stats().get("total"));
+    }
+
+    @Test
+    void brokenConnectionsAreDiscardedInsteadOfPooled() throws Exception {
+        pool = new TtsWsPool(config(2), mapper);
+        // 句子出错：直接淘汰，名额归还
+        TtsWsConnection failed = lease(VOICE);
+        pool.discard(failed);
+        pool.discard(failed);
+        assertEquals(0, pool.leased());
+        assertEquals(0, pool.stats().get("total"));
+        assertEquals(1L, pool.stats().get("discards"));
+
+        // 已被对端关闭的连接归还时不进入空闲队列
+        TtsWsConnection closed = lease(VOICE);
+        closed.closeBlocking();
+        pool.release(closed);
+        assertEquals(0, pool.stats().get("idle"));
+        assertEquals(0, pool.stats().get("total"));
+        assertNotSame(closed, lease(VOICE));
+    }
+
+    @Test
+    void failedHandshakeReturnsSlot() throws Exception {
+        QiniuConfig cfg = config(1);
+        server.stop();
+        server = null;
+        pool = new TtsWsPool(cfg, mapper);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> lease(VOICE));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals(0, pool.stats().get("total"));
+        assertEquals(1L, pool.stats().get("handshakeFailures"));
+    }
+
+    @Test
+    void prewarmCountsInFlightDialsAndIsNotLeased() throws Exception {
+        pool = new TtsWsPool(config(8), mapper);
+        int perVoice = 2;
+        // 连续预热：后一次应计入前一次仍在握手的连接，不重复拨号
+        for (int i = 0; i < 4; i++) pool.prewarm(VOICE);
+        assertEquals(0, pool.leased());
+        awaitTrue(() -> (int) pool.stats().get("idle") == perVoice && (int) pool.stats().get("dialing") == 0);
+        assertEquals((long) perVoice, pool.stats().get("handshakes"));
+        assertEquals(perVoice, pool.stats().get("total"));
+        assertEquals(0, pool.leased());
+
+        TtsWsConnection c = lease(VOICE);
+        assertEquals(1, pool.leased());
+        assertEquals(1L, pool.stats().get("warmHits"));
+        pool.release(c);
+    }
+
+    private static void awaitTrue(BooleanSupplier cond) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!cond.getAsBoolean() && System.nanoTime() < deadline) Thread.sleep(5);
+        assertTrue(cond.getAsBoolean());
+    }
+}
@@ -0,0 +1,64 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link TurnCoalescer} 的合并、宽限期与统计
+ */
+class TurnCoalescerTest {
+
+    private final TurnCoalescer.Stats stats = new TurnCoalescer.Stats();
+
+    @Test
+    void mergesUtterancesIntoOneTurnAfterGrace() {
+        TurnCoalescer turns = new TurnCoalescer(true, 800, stats);
+        turns.add("我想问一下", 1_000);
+        turns.add("明天会下雨吗？", 1_500);
+        turns.add("  ", 1_600);
+        // 宽限期从最后一条语句算起
+        assertEquals(2_300, turns.readyAt());
+        assertEquals("我想问一下，明天会下雨吗？", turns.take());
+        assertTrue(turns.isEmpty());
+
+        turns.add("hello", 3_000);
+        turns.add("world", 3_100);
+        turns.add("。好的", 3_200);
+        assertEquals("hello world。好的", turns.take());
+
+        Map<String, Object> snap = stats.snapshot();
+        assertEquals(5L, snap.get("utterances"));
+        assertEquals(2L, snap.get("turns"));
+        assertEquals(3L, snap.get("llmCallsAvoided"));
+        assertEquals(3L, snap.get("maxPartsPerTurn"));
+    }
+
+    @Test
+    void withoutMergingEachUtteranceIsItsOwnTurn() {
+        TurnCoalescer turns = new TurnCoalescer(false, 800, stats);
+        turns.add("第一句", 0);
+        turns.add("第二句", 10);
+        assertEquals(0, turns.readyAt());
+        assertEquals("第一句", turns.take());
+        assertEquals("第二句", turns.take());
+        assertNull(turns.take());
+        assertEquals(0L, stats.snapshot().get("llmCallsAvoided"));
+    }
+
+    @Test
+    void drainReturnsUnansweredTextOnClose() {
+        TurnCoalescer turns = new TurnCoalescer(true, 800, stats);
+        assertNull(turns.drain());
+        turns.add("还没说完", 0);
+        turns.add("就断开了", 100);
+        assertEquals(9, turns.pendingChars());
+        assertEquals("还没说完，就断开了", turns.drain());
+        assertTrue(turns.isEmpty());
+        assertEquals(2L, stats.snapshot().get("dropped"));
+    }
+}
@@ -0,0 +1,75 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link TurnTimer} 的阶段记录与句子归属
+ */
+class TurnTimerTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final VoiceMetrics metrics = new VoiceMetrics();
+
+    @Test
+    void recordsEachStageOnceAndCompletesOnLastSentence() {
+        TurnTimer t = new TurnTimer(metrics, 5, 0);
+        t.llmToken(120 * MS);
+        t.llmToken(130 * MS);
+        t.chunk(300 * MS);
+        t.chunk(400 * MS);
+        assertTrue(t.owns(5));
+        assertTrue(t.owns(99));   // LLM 未结束，之后分配的句子都属于本轮
+        assertFalse(t.owns(4));
+
+        t.audio(650 * MS);
+        assertFalse(t.ttsDone(5, 700 * MS));
+        assertFalse(t.llmDone(6, 800 * MS));
+        assertFalse(t.owns(7));
+        assertFalse(t.ttsDone(5, 900 * MS));
+        assertTrue(t.ttsDone(6, 1500 * MS));
+        assertFalse(t.ttsDone(6, 1600 * MS));
+
+        assertEquals(120, t.llmFirstTokenMs);
+        assertEquals(300, t.firstChunkMs);
+        assertEquals(650, t.firstAudioMs);
+        assertEquals(1500, t.turnMs);
+        assertEquals(1L, metrics.llmFirstToken.count());
+        assertEquals(1L, metrics.firstChunk.count());
+        assertEquals(1L, metrics.turnComplete.count());
+    }
+
+    @Test
+    void turnWithoutSentencesCompletesWhenLlmEnds() {
+        TurnTimer t = new TurnTimer(metrics, 3, 0);
+        assertTrue(t.llmDone(2, 50 * MS));
+        assertTrue(t.complete());
+        assertFalse(t.owns(3));
+        assertEquals(50, t.turnMs);
+        assertEquals(-1, t.firstAudioMs);
+    }
+
+    @Test
+    void timingIsAttachedOnlyToTheCompletingTtsDone() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        VoiceEventWriter writer = new VoiceEventWriter(mapper.getFactory());
+        TurnTimer t = new TurnTimer(metrics, 1, 0);
+        t.llmToken(100 * MS);
+        t.chunk(200 * MS);
+        t.audio(400 * MS);
+        t.llmDone(1, 500 * MS);
+        assertEquals("{\"type\":\"tts_done\",\"seq\":1}", writer.ttsDone(1, t));
+        t.ttsDone(1, 900 * MS);
+        Map<?, ?> done = mapper.readValue(writer.ttsDone(1, t), Map.class);
+        assertEquals(Map.of("llmFirstTokenMs", 100, "firstChunkMs", 200, "firstAudioMs", 400, "turnMs", 900),
+                done.get("timing"));
+        assertEquals(1L, ((Map<?, ?>) metrics.snapshot().get("counters")).get("turns"));
+    }
+}
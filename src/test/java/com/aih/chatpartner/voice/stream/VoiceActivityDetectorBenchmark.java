@@ -0,0 +1,102 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 打断检测：旧实现（复制 byte[] 后计算平均绝对幅度）对比 {@link AdaptiveVoiceActivityDetector}
+ * <p>
+ * 运行：mvn test-compile 后以测试 classpath 执行 main，关注 gc.alloc.rate.norm（每帧分配字节数）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VoiceActivityDetectorBenchmark {
+
+    /**
+     * 每帧字节数：20ms / 100ms / 250ms @16kHz 16bit 单声道
+     */
+    @Param({"640", "3200", "8000"})
+    public int frameBytes;
+
+    private ByteBuffer heapFrame;
+    private ByteBuffer directFrame;
+    private AdaptiveVoiceActivityDetector vad;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        byte[] pcm = new byte[frameBytes];
+        Random r = new Random(42);
+        for (int i = 0; i + 1 < frameBytes; i += 2) {
+            int v = (int) (3000 * Math.sin(i / 20.0)) + r.nextInt(200) - 100;
+            pcm[i] = (byte) v;
+            pcm[i + 1] = (byte) (v >> 8);
+        }
+        heapFrame = ByteBuffer.wrap(pcm);
+        directFrame = ByteBuffer.allocateDirect(frameBytes);
+        directFrame.put(pcm).flip();
+        vad = new AdaptiveVoiceActivityDetector(new VadConfig());
+    }
+
+    @Benchmark
+    public boolean legacyMeanAbs() {
+        ByteBuffer buf = heapFrame.duplicate();
+        byte[] data = new byte[buf.remaining()];
+        buf.get(data);
+        return legacyIsVoiceActive(data);
+    }
+
+    @Benchmark
+    public boolean adaptiveHeap() {
+        return vad.process(heapFrame);
+    }
+
+    @Benchmark
+    public boolean adaptiveDirect() {
+        return vad.process(directFrame);
+    }
+
+    /**
+     * 旧版 SessionCtx.isVoiceActive
+     */
+    private static boolean legacyIsVoiceActive(byte[] pcm) {
+        if (pcm == null || pcm.length < 4) return false;
+        int samples = pcm.length / 2;
+        long sumAbs = 0;
+        for (int i = 0; i + 1 < pcm.length; i += 2) {
+            int lo = pcm[i] & 0xff;
+            int hi = pcm[i + 1];
+            int val = (hi << 8) | lo;
+            sumAbs += Math.abs(val);
+        }
+        int avgAbs = (int) (sumAbs / Math.max(1, samples));
+        return avgAbs >= 600;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(VoiceActivityDetectorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,77 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.config.VoiceStreamConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link VoiceAdmission} 的饱和度判断、拒绝响应与快照
+ */
+class VoiceAdmissionTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final VoiceStreamConfig.AdmissionConfig cfg = new VoiceStreamConfig.AdmissionConfig();
+    private final List<VoiceAdmission.Gauge> gauges = new ArrayList<>();
+    private final VoiceAdmission admission = new VoiceAdmission(cfg, () -> gauges, mapper, new VoiceAdmission.Stats());
+
+    private boolean handshake(MockHttpServletResponse servlet) throws Exception {
+        ServletServerHttpResponse response = new ServletServerHttpResponse(servlet);
+        boolean ok = admission.beforeHandshake(null, response, null, new HashMap<>());
+        response.flush();
+        return ok;
+    }
+
+    @Test
+    void admitsBelowWatermarkAndRejectsWithRetryAfter() throws Exception {
+        cfg.setRetryAfterSeconds(3);
+        cfg.setRetryAfterJitterSeconds(0);
+        gauges.add(new VoiceAdmission.Gauge("sessions", 100, 2000));
+        gauges.add(new VoiceAdmission.Gauge("llmStreams", 269, 300));
+        gauges.add(new VoiceAdmission.Gauge("ttsSockets", 500, 0));   // 不限制
+        assertTrue(handshake(new MockHttpServletResponse()));
+
+        // LLM 流达到预算的 90%
+        gauges.set(1, new VoiceAdmission.Gauge("llmStreams", 270, 300));
+        MockHttpServletResponse busy = new MockHttpServletResponse();
+        assertFalse(handshake(busy));
+        assertEquals(503, busy.getStatus());
+        assertEquals("3", busy.getHeader("Retry-After"));
+        JsonNode body = mapper.readTree(busy.getContentAsByteArray());
+        assertEquals(42900, body.get("code").asInt());
+        assertEquals("llmStreams", body.get("data").get("reason").asText());
+        assertEquals(3, body.get("data").get("retryAfterSeconds").asInt());
+
+        Map<String, Object> snap = admission.snapshot();
+        assertEquals("llmStreams", snap.get("bottleneck"));
+        assertEquals(false, snap.get("accepting"));
+        assertEquals(1L, snap.get("admitted"));
+        assertEquals(Map.of("llmStreams", 1L), snap.get("rejectedBy"));
+    }
+
+    @Test
+    void disabledAdmitsEverythingAndJitterStaysInRange() throws Exception {
+        cfg.setEnabled(false);
+        gauges.add(new VoiceAdmission.Gauge("sessions", 5000, 2000));
+        assertTrue(handshake(new MockHttpServletResponse()));
+        assertEquals(true, admission.snapshot().get("accepting"));
+
+        cfg.setRetryAfterSeconds(5);
+        cfg.setRetryAfterJitterSeconds(5);
+        for (int i = 0; i < 100; i++) {
+            int s = admission.retryAfterSeconds();
+            assertTrue(s >= 5 && s <= 10, "retryAfter=" + s);
+        }
+    }
+}
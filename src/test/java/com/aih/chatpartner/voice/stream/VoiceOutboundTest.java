@@ -0,0 +1,137 @@
+package com.aih.chatpartner.voice.stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link VoiceOutbound} 的单写线程、asr_partial 合并与慢客户端策略
+ */
+class VoiceOutboundTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final AtomicInteger concurrentSends = new AtomicInteger();
+    private final AtomicInteger maxConcurrentSends = new AtomicInteger();
+    private final AtomicReference<CloseStatus> closedWith = new AtomicReference<>();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    /**
+     * 用动态代理模拟会话：sendMessage 在 gate 打开前阻塞，模拟慢客户端
+     */
+    private final WebSocketSession session = (WebSocketSession) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[]{WebSocketSession.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getId":
+                        return "s1";
+                    case "isOpen":
+                        return closed.getCount() > 0;
+                    case "sendMessage":
+                        int n = concurrentSends.incrementAndGet();
+                        maxConcurrentSends.accumulateAndGet(n, Math::max);
+                        gate.await(5, TimeUnit.SECONDS);
+                        sent.add(String.valueOf(((WebSocketMessage<?>) args[0]).getPayload()));
+                        concurrentSends.decrementAndGet();
+                        return null;
+                    case "close":
+                        closedWith.set(args == null ? CloseStatus.NORMAL : (CloseStatus) args[0]);
+                        closed.countDown();
+                        return null;
+                    default:
+                        return null;
+                }
+            });
+
+    private final VoiceOutbound.Stats stats = new VoiceOutbound.Stats();
+
+    @Test
+    void producersOnManyThreadsShareOneWriterAndKeepOrder() throws Exception {
+        VoiceOutbound out = new VoiceOutbound(session, executor, 10_000, 1 << 20, stats);
+        int producers = 4;
+        int perProducer = 200;
+        CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            executor.execute(() -> {
+                for (int i = 0; i < perProducer; i++) out.send(new TextMessage(id + ":" + i));
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        awaitSent(producers * perProducer);
+        assertEquals(1, maxConcurrentSends.get());
+        int[] next = new int[producers];
+        for (String m : sent) {
+            String[] kv = m.split(":");
+            int p = Integer.parseInt(kv[0]);
+            assertEquals(next[p]++, Integer.parseInt(kv[1]), "order of producer " + p);
+        }
+    }
+
+    @Test
+    void queuedAsrPartialsAreSupersededByTheLatest() throws Exception {
+        gate = new CountDownLatch(1);
+        VoiceOutbound out = new VoiceOutbound(session, executor, 100, 1 << 20, stats);
+        out.send(new TextMessage("tts_start"));
+        waitUntilWriterBlocked();
+        out.sendPartial(new TextMessage("p1"));
+        out.sendPartial(new TextMessage("p2"));
+        out.sendPartial(new TextMessage("p3"));
+        out.send(new TextMessage("asr_final"));
+        out.sendPartial(new TextMessage("p4"));
+        gate.countDown();
+        awaitSent(4);
+        assertEquals(List.of("tts_start", "p3", "asr_final", "p4"), sent);
+        assertEquals(2L, stats.coalesced.sum());
+    }
+
+    @Test
+    void overBudgetDropsPartialsBeforeDisconnecting() throws Exception {
+        gate = new CountDownLatch(1);
+        VoiceOutbound out = new VoiceOutbound(session, executor, 3, 1 << 20, stats);
+        out.send(new TextMessage("first"));
+        waitUntilWriterBlocked();
+        out.send(new TextMessage("a"));
+        out.sendPartial(new TextMessage("partial"));
+        out.send(new TextMessage("b"));
+        // 第 4 条超出预算：先丢掉 partial 即可容纳
+        out.send(new TextMessage("c"));
+        assertEquals(1L, stats.droppedPartials.sum());
+        assertEquals(3, out.depth());
+        assertEquals(1L, closed.getCount());
+        // 再来一条且已无可丢弃的 partial：断开慢客户端
+        out.send(new TextMessage("d"));
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE.getCode(), closedWith.get().getCode());
+        assertEquals(1L, stats.slowConsumerDisconnects.sum());
+        assertEquals(0L, stats.queuedMessages.sum());
+        gate.countDown();
+    }
+
+    private void waitUntilWriterBlocked() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (concurrentSends.get() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(1);
+    }
+
+    private void awaitSent(int n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < n && System.currentTimeMillis() < deadline) Thread.sleep(1);
+        assertEquals(n, sent.size());
+    }
+}
@@ -0,0 +1,101 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 控制协议编解码：旧实现（每条消息 new ObjectMapper + Map.of / TypeReference 解析为 Map）
+ * 对比 {@link VoiceEventWriter} 与缓存的 {@link VoiceInbound} 解码器
+ * <p>
+ * 运行：mvn test-compile 后以测试 classpath 执行 main，关注 gc.alloc.rate.norm（每条事件分配字节数）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VoiceProtocolBenchmark {
+
+    private static final String TOKEN = "今天";
+    private static final String START = "{\"type\":\"start\",\"groupId\":42,\"voiceType\":\"qiniu_zh_female_tmjxxy\","
+            + "\"speedRatio\":1.0,\"audioOut\":\"binary\",\"autoReply\":true}";
+
+    private ObjectMapper sharedMapper;
+    private ObjectReader inboundReader;
+    private VoiceEventWriter writer;
+    private String ttsChunkBase64;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sharedMapper = new ObjectMapper();
+        inboundReader = sharedMapper.readerFor(VoiceInbound.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .without(DeserializationFeature.FAIL_ON_INVALID_SUBTYPE);
+        writer = new VoiceEventWriter(sharedMapper.getFactory());
+        // 约 100ms mp3 的 base64
+        ttsChunkBase64 = "SUQzBAAAAAAAI1RTU0UAAAAPAAADTGF2ZjU4Ljc2LjEwMAAAAAAAAAAAAAAA".repeat(40);
+    }
+
+    @Benchmark
+    public String legacyLlmPartial() throws Exception {
+        return new ObjectMapper().writeValueAsString(Map.of("type", "llm_partial", "text", TOKEN));
+    }
+
+    @Benchmark
+    public String sharedMapperLlmPartial() throws Exception {
+        return sharedMapper.writeValueAsString(Map.of("type", "llm_partial", "text", TOKEN));
+    }
+
+    @Benchmark
+    public String typedLlmPartial() {
+        return writer.llmPartial(TOKEN);
+    }
+
+    @Benchmark
+    public String legacyTtsChunk() throws Exception {
+        return new ObjectMapper().writeValueAsString(Map.of("type", "tts_chunk", "data", ttsChunkBase64));
+    }
+
+    @Benchmark
+    public String typedTtsChunk() {
+        return writer.ttsChunk(ttsChunkBase64);
+    }
+
+    @Benchmark
+    public Object legacyDecodeStart() throws Exception {
+        Map<String, Object> req = sharedMapper.readValue(START, new TypeReference<>() {});
+        return req.get("type");
+    }
+
+    @Benchmark
+    public Object typedDecodeStart() throws Exception {
+        return inboundReader.readValue(START);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(VoiceProtocolBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,109 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 控制消息解码与下行事件编码，与旧版 Map 方式的输出逐字段比对
+ */
+class VoiceProtocolTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectReader reader = mapper.readerFor(VoiceInbound.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .without(DeserializationFeature.FAIL_ON_INVALID_SUBTYPE);
+    private final VoiceEventWriter writer = new VoiceEventWriter(mapper.getFactory());
+
+    @Test
+    void decodesStartWithDefaultsAndVadOverrides() throws Exception {
+        VoiceInbound msg = reader.readValue("{\"type\":\"start\",\"groupId\":\"42\",\"voiceType\":\"v1\","
+                + "\"audioOut\":\"binary\",\"extra\":1,\"vad\":{\"minRms\":500,\"hangoverMs\":200}}");
+        assertTrue(msg instanceof VoiceInbound.Start);
+        VoiceInbound.Start start = (VoiceInbound.Start) msg;
+        assertEquals(42L, start.groupId());
+        assertEquals("v1", start.voiceType());
+        assertEquals("binary", start.audioOut());
+        assertNull(start.speedRatio());
+        assertNull(start.autoReply());
+        assertEquals(500.0, start.vad().getMinRms());
+        assertEquals(200, start.vad().getHangoverMs());
+        assertEquals(new VadConfig().getAttackMs(), start.vad().getAttackMs());
+    }
+
+    @Test
+    void decodesControlMessages() throws Exception {
+        assertEquals(new VoiceInbound.UserText("你好"), reader.readValue("{\"type\":\"user_text\",\"text\":\"你好\"}"));
+        assertEquals(new VoiceInbound.Config(false), reader.readValue("{\"type\":\"config\",\"autoReply\":false}"));
+        assertEquals(new VoiceInbound.Stop(), reader.readValue("{\"type\":\"stop\"}"));
+    }
+
+    @Test
+    void unknownOrMissingTypeDecodesToUnknown() throws Exception {
+        assertTrue(reader.readValue("{\"type\":\"dance\",\"x\":1}") instanceof VoiceInbound.Unknown);
+        assertTrue(reader.readValue("{\"text\":\"hi\"}") instanceof VoiceInbound.Unknown);
+        // 字面量 null：reader 本身返回 null，read 统一成 Unknown，由 actor 回复 unknown type
+        assertNull(reader.readValue("null"));
+        assertTrue(VoiceInbound.read(reader, "null") instanceof VoiceInbound.Unknown);
+        assertTrue(VoiceInbound.read(reader, " null ") instanceof VoiceInbound.Unknown);
+        assertEquals(new VoiceInbound.Stop(), VoiceInbound.read(reader, "{\"type\":\"stop\"}"));
+    }
+
+    @Test
+    void eventsMatchLegacyMapEncoding() throws Exception {
+        String tricky = "引号\"反斜杠\\换行\n表情😀";
+        assertSameJson(Map.of("type", "llm_partial", "text", tricky), writer.llmPartial(tricky));
+        assertSameJson(Map.of("type", "tts_start", "seq", 7L, "text", tricky), writer.ttsStart(7, tricky));
+        assertSameJson(Map.of("type", "tts_done", "seq", 7L), writer.ttsDone(7));
+        assertSameJson(Map.of("type", "tts_chunk", "data", "QUJD"), writer.ttsChunk("QUJD"));
+        assertSameJson(Map.of("type", "asr_partial", "text", "ni"), writer.asrPartial("ni"));
+        assertSameJson(Map.of("type", "asr_closed"), writer.asrClosed());
+        assertSameJson(Map.of("type", "config_ack", "autoReply", true), writer.configAck(true));
+        assertSameJson(Map.of("type", "started", "audioOut", "binary"), writer.started("binary"));
+    }
+
+    @Test
+    void pacingHintsAreOptional() throws Exception {
+        assertSameJson(Map.of("type", "started", "audioOut", "json", "jitterBufferMs", 400L), writer.started("json", 400));
+        assertSameJson(Map.of("type", "started", "audioOut", "json"), writer.started("json", -1));
+        assertSameJson(Map.of("type", "tts_interrupted", "reason", "user_interruption", "savedMs", 2500L),
+                writer.ttsInterrupted("user_interruption", 2500));
+    }
+
+    @Test
+    void heartbeatRoundTrips() throws Exception {
+        assertEquals(new VoiceInbound.Ping(5L), reader.readValue("{\"type\":\"ping\",\"ts\":5}"));
+        assertEquals(new VoiceInbound.Pong(9L), reader.readValue("{\"type\":\"pong\",\"ts\":9}"));
+        assertSameJson(Map.of("type", "ping", "ts", 9L), writer.ping(9));
+        assertSameJson(Map.of("type", "pong", "ts", 5L), writer.pong(5L));
+        assertSameJson(Map.of("type", "pong"), writer.pong(null));
+    }
+
+    @Test
+    void asrFinalCarriesOnlyMeasuredTimings() throws Exception {
+        assertSameJson(Map.of("type", "asr_final", "text", "你好"), writer.asrFinal("你好", -1, -1));
+        assertSameJson(Map.of("type", "asr_final", "text", "你好", "timing", Map.of("firstPartialMs", 180L)),
+                writer.asrFinal("你好", 180, -1));
+        assertSameJson(Map.of("type", "asr_final", "text", "你好",
+                        "timing", Map.of("firstPartialMs", 180L, "finalAfterSpeechEndMs", 420L)),
+                writer.asrFinal("你好", 180, 420));
+    }
+
+    @Test
+    void consecutiveEventsDoNotLeakIntoEachOther() throws Exception {
+        writer.ttsChunk("A".repeat(10_000));
+        String small = writer.llmPartial("x");
+        assertEquals("{\"type\":\"llm_partial\",\"text\":\"x\"}", small);
+    }
+
+    private void assertSameJson(Map<String, ?> legacy, String typed) throws Exception {
+        assertEquals(mapper.readTree(mapper.writeValueAsString(legacy)), mapper.readTree(typed));
+    }
+}
@@ -0,0 +1,72 @@
+package com.aih.chatpartner.voice.stream;
+
+import com.aih.chatpartner.ai.AiService;
+import com.aih.chatpartner.config.QiniuConfig;
+import com.aih.chatpartner.config.VoiceStreamConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link VoiceStreamHandler} 会话 actor 的打断处理
+ */
+class VoiceStreamHandlerTest {
+
+    private final List<String> saved = new CopyOnWriteArrayList<>();
+    private final VoiceStreamConfig cfg = new VoiceStreamConfig();
+    private final ChatHistoryWriteBehind writer = new ChatHistoryWriteBehind(m -> saved.add(m.message()), cfg.getPersistence());
+    private final VoiceStreamHandler handler = new VoiceStreamHandler(new ObjectMapper(), null, new QiniuConfig(), null,
+            writer, null, null, null, null, null, cfg, new VoiceMetrics());
+
+    @AfterEach
+    void tearDown() {
+        handler.shutdown();
+        writer.shutdown();
+    }
+
+    @Test
+    void interruptionStartsReadyMergedTurnAfterCleanup() {
+        cfg.getTurnMerge().setGraceMs(0L);
+        WebSocketSession ws = mock(WebSocketSession.class);
+        when(ws.getId()).thenReturn("s1");
+        AiService ai = mock(AiService.class);
+        when(ai.chatStreamInXiYangYangRole(anyString())).thenReturn(Flux.never());
+        VoiceStreamHandler.SessionCtx ctx = handler.new SessionCtx(ws);
+        ctx.streamingService = ai;
+
+        ctx.enqueueUserText("讲个故事");
+        assertTrue(ctx.streaming);
+        Object interrupted = ctx.turn;
+        // 回复进行中用户接着说了两句，合并为一轮且宽限期已过
+        ctx.enqueueUserText("要短一点");
+        ctx.enqueueUserText("关于小羊的");
+
+        ctx.handleUserInterruption();
+
+        // 合并的一轮在打断的清理之后开始，清理不会作用到新一轮上
+        verify(ai).chatStreamInXiYangYangRole("要短一点，关于小羊的");
+        assertTrue(ctx.streaming);
+        assertNotNull(ctx.turn);
+        assertNotSame(interrupted, ctx.turn);
+        assertNotNull(ctx.chunker);
+        assertNotNull(ctx.llmSub);
+        assertFalse(ctx.llmSub.isDisposed());
+        assertTrue(ctx.pendingTurn.isEmpty());
+        assertNull(ctx.speculation);
+    }
+}